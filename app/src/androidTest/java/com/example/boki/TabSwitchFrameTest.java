@@ -0,0 +1,134 @@
+package com.example.boki;
+
+import android.app.Instrumentation;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import androidx.fragment.app.Fragment;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Frame times of bottom navigation switches. The first round creates the four
+ * tabs; the measured rounds only show and hide them, so no view is inflated and
+ * no fragment is created. Frame statistics are logged under the "TabSwitchFrames" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TabSwitchFrameTest {
+
+    private static final String TAG = "TabSwitchFrames";
+    private static final int ROUNDS = 20;
+    private static final int[] TABS = { R.id.operations, R.id.expenses, R.id.budget, R.id.home };
+    // Android vitals threshold for a frozen frame
+    private static final long FROZEN_FRAME_NS = 700_000_000L;
+    private static final long HOME_TIMEOUT_MS = 30_000;
+
+    private Instrumentation instrumentation;
+    private ActivityScenario<MainActivity> scenario;
+    private HandlerThread metricsThread;
+    private final List<Long> frameNanos = Collections.synchronizedList(new ArrayList<>());
+    private final Window.OnFrameMetricsAvailableListener frameListener =
+            (window, metrics, dropped) -> frameNanos.add(metrics.getMetric(FrameMetrics.TOTAL_DURATION));
+
+    @Before
+    public void setUp() {
+        instrumentation = InstrumentationRegistry.getInstrumentation();
+        scenario = ActivityScenario.launch(MainActivity.class);
+        waitForHome();
+
+        metricsThread = new HandlerThread("frame-metrics");
+        metricsThread.start();
+        Handler handler = new Handler(metricsThread.getLooper());
+        scenario.onActivity(activity -> activity.getWindow().addOnFrameMetricsAvailableListener(frameListener, handler));
+    }
+
+    @After
+    public void tearDown() {
+        scenario.onActivity(activity -> activity.getWindow().removeOnFrameMetricsAvailableListener(frameListener));
+        metricsThread.quitSafely();
+        scenario.close();
+    }
+
+    @Test
+    public void switchingKeepsTabsAndStaysSmooth() {
+        // Warm-up: creates every tab once
+        switchThroughTabs();
+        Fragment[] created = tabFragments();
+        for (Fragment fragment : created) {
+            assertNotNull(fragment);
+        }
+        frameNanos.clear();
+
+        for (int round = 0; round < ROUNDS; round++) {
+            switchThroughTabs();
+        }
+
+        // Same instances with their views: nothing was recreated
+        Fragment[] after = tabFragments();
+        for (int i = 0; i < TABS.length; i++) {
+            assertSame(created[i], after[i]);
+            assertNotNull(after[i].getView());
+        }
+
+        List<Long> frames = new ArrayList<>(frameNanos);
+        assertFalse("No frames were reported", frames.isEmpty());
+        Collections.sort(frames);
+        long p50 = frames.get(frames.size() / 2);
+        long p90 = frames.get(frames.size() * 9 / 10);
+        long max = frames.get(frames.size() - 1);
+        Log.i(TAG, ROUNDS * TABS.length + " switches, " + frames.size() + " frames: p50 " +
+                p50 / 1_000 + " us, p90 " + p90 / 1_000 + " us, max " + max / 1_000 + " us");
+        assertTrue("Frozen frame while switching tabs", max < FROZEN_FRAME_NS);
+    }
+
+    private void switchThroughTabs() {
+        for (int tab : TABS) {
+            scenario.onActivity(activity -> {
+                activity.bindingMain.bnvBottom.setSelectedItemId(tab);
+                activity.getSupportFragmentManager().executePendingTransactions();
+            });
+            instrumentation.waitForIdleSync();
+        }
+    }
+
+    private Fragment[] tabFragments() {
+        Fragment[] fragments = new Fragment[TABS.length];
+        scenario.onActivity(activity -> {
+            for (int i = 0; i < TABS.length; i++) {
+                fragments[i] = activity.getSupportFragmentManager().findFragmentByTag(MainActivity.tabTag(TABS[i]));
+            }
+        });
+        return fragments;
+    }
+
+    /**
+     * A fresh install shows Home only once the migrations are done
+     */
+    private void waitForHome() {
+        long deadline = SystemClock.elapsedRealtime() + HOME_TIMEOUT_MS;
+        boolean[] shown = { false };
+        while (!shown[0] && SystemClock.elapsedRealtime() < deadline) {
+            instrumentation.waitForIdleSync();
+            scenario.onActivity(activity -> shown[0] =
+                    activity.getSupportFragmentManager().findFragmentByTag(MainActivity.tabTag(R.id.home)) != null);
+            if (!shown[0]) SystemClock.sleep(100);
+        }
+        assertTrue("Home was not shown", shown[0]);
+    }
+}
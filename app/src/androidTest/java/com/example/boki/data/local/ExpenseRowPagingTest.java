@@ -0,0 +1,109 @@
+package com.example.boki.data.local;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.boki.models.ExpenseRow;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Keyset pages of list rows across the hot table and the archive
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExpenseRowPagingTest {
+
+    private static final String DB_NAME = "expense_row_paging.db";
+    private static final String CATEGORY = ExpenseCategories.nameOf(1);
+
+    private Context context;
+    private ExpenseDbHelper dbHelper;
+    private SQLiteDatabase db;
+    private ExpenseRepository repository;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        dbHelper = new ExpenseDbHelper(context, DB_NAME);
+        db = dbHelper.getWritableDatabase();
+        repository = new ExpenseRepository(dbHelper);
+
+        // Ties on date and time are broken by ID; deleted rows never show
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 1, "2025-12-06", "12:00:00", null);
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 2, "2025-12-06", "12:00:00", null);
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 3, "2025-12-06", "18:30:00", null);
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 4, "2025-12-07", "08:00:00", null);
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 5, "2025-12-05", "09:00:00", 1L);
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 6, "2025-09-01", "10:00:00", null);
+        insert(ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, 7, "2025-09-01", "10:00:00", null);
+        insert(ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, 8, "2025-08-15", "07:00:00", null);
+        insert(ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, 9, "2025-12-06", "12:00:00", null);
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void pagesFollowEachOtherWithoutGapsOrRepeats() {
+        long[] expected = { 4, 3, 9, 2, 1, 7, 6, 8 };
+        for (int limit = 1; limit <= expected.length + 1; limit++) {
+            List<Long> ids = new ArrayList<>();
+            ExpenseRow last = null;
+            List<ExpenseRow> page;
+            do {
+                page = repository.getExpenseRows(last, limit);
+                assertTrue(page.size() <= limit);
+                for (ExpenseRow row : page) {
+                    ids.add(row.getId());
+                }
+                last = page.isEmpty() ? last : page.get(page.size() - 1);
+            } while (page.size() == limit);
+
+            assertEquals("limit " + limit, expected.length, ids.size());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("limit " + limit + ", row " + i, expected[i], (long) ids.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void unreadableDateKeepsItsPlace() {
+        // Sorts after every ISO date, as stored
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 10, "someday", "12:00:00", null);
+
+        List<ExpenseRow> first = repository.getExpenseRows(null, 1);
+        assertEquals(10, first.get(0).getId());
+        assertEquals(EpochDays.INVALID, first.get(0).getDay());
+        assertEquals(4, repository.getExpenseRows(first.get(0), 1).get(0).getId());
+    }
+
+    private void insert(String table, long id, String date, String time, Long deletedAt) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_ID, id);
+        values.put(ExpenseDbHelper.COLUMN_TITLE, "Expense " + id);
+        values.put(ExpenseDbHelper.COLUMN_AMOUNT, 10);
+        values.put(ExpenseDbHelper.COLUMN_CATEGORY, CATEGORY);
+        values.put(ExpenseDbHelper.COLUMN_DATE, date);
+        values.put(ExpenseDbHelper.COLUMN_TIME, time);
+        if (deletedAt != null) {
+            values.put(ExpenseDbHelper.COLUMN_DELETED_AT, deletedAt);
+        }
+        assertEquals(id, db.insert(table, null, values));
+    }
+}
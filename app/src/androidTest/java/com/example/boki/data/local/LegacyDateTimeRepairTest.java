@@ -0,0 +1,136 @@
+package com.example.boki.data.local;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Legacy dates and times rewritten by the backfill, through MigrationRunner
+ */
+@RunWith(AndroidJUnit4.class)
+public class LegacyDateTimeRepairTest {
+
+    private static final String DB_NAME = "legacy_date_time_repair.db";
+    private static final String CATEGORY = ExpenseCategories.nameOf(1);
+
+    private Context context;
+    private ExpenseDbHelper dbHelper;
+    private SQLiteDatabase db;
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        dbHelper = new ExpenseDbHelper(context, DB_NAME);
+        db = dbHelper.getWritableDatabase();
+
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 1, "Lunch", 10, "6-12-2025", "12:00:00");
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 2, "Taxi", 20, "2025-12-06", "7:05 PM");
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 3, "Unknown", 5, "someday", "7:05 PM");
+        insert(ExpenseDbHelper.TABLE_EXPENSE, 4, "Books", 7, "2025-12-07", "08:00:00");
+        // Legacy dates sort before every ISO date, so archiving picked them up early
+        insert(ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, 5, "Rent", 30, "1-3-2024", "09:30:00");
+
+        spendingIndex.rebuild(db);
+    }
+
+    @After
+    public void tearDown() {
+        spendingIndex.clear();
+        dbHelper.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void rewritesLegacyRows() {
+        assertEquals(20, spendingIndex.totalBetween(day("2025-12-06"), day("2025-12-06")), 0);
+
+        LegacyDateTimeRepair repair = new LegacyDateTimeRepair();
+        int rows = MigrationRunner.runBackfill(db, repair, 2, null, 0, 5, null);
+
+        assertEquals(5, rows);
+        assertEquals("2025-12-06 12:00:00", dateTime(1));
+        assertEquals("2025-12-06 19:05:00", dateTime(2));
+        assertEquals("someday 19:05:00", dateTime(3));
+        assertEquals("2025-12-07 08:00:00", dateTime(4));
+        assertEquals("2024-03-01 09:30:00", dateTime(5));
+        assertEquals(2, repair.datesFixed);
+        assertEquals(2, repair.timesFixed);
+        assertEquals(1, repair.unrepairable);
+
+        // The archived row is back in the hot table and out of the rollup
+        assertEquals(0, TestDatabases.count(db, "SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE));
+        assertEquals(0, TestDatabases.count(db, "SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE_ROLLUP));
+        assertEquals(5, TestDatabases.count(db, "SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE));
+
+        // Repaired dates count toward range totals
+        assertEquals(30, spendingIndex.totalBetween(day("2025-12-06"), day("2025-12-06")), 0);
+        assertEquals(30, spendingIndex.totalBetween(day("2024-03-01"), day("2024-03-01")), 0);
+
+        assertEquals(1, TestDatabases.count(db, "SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_MIGRATION_PROGRESS + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_MIGRATION_NAME + " = 'normalize_legacy_date_time' " +
+                "AND " + ExpenseDbHelper.COLUMN_MIGRATION_FINISHED_AT + " IS NOT NULL"));
+        assertEquals(0, MigrationRunner.runBackfill(db, new LegacyDateTimeRepair(), 2, null, 0, 0, null));
+    }
+
+    @Test
+    public void resumedRunReportsEveryRow() {
+        CancellationSignal signal = new CancellationSignal();
+        try {
+            MigrationRunner.runBackfill(db, new LegacyDateTimeRepair(), 1,
+                    (done, total) -> signal.cancel(), 0, 5, signal);
+            fail("Expected the run to stop after one chunk");
+        } catch (OperationCanceledException expected) {
+            // The first row is committed
+        }
+        assertEquals("2025-12-06 12:00:00", dateTime(1));
+        assertEquals("2025-12-06 7:05 PM", dateTime(2));
+
+        LegacyDateTimeRepair resumed = new LegacyDateTimeRepair();
+        assertEquals(4, MigrationRunner.runBackfill(db, resumed, 1, null, 1, 5, null));
+        assertEquals(2, resumed.datesFixed);
+        assertEquals(2, resumed.timesFixed);
+        assertEquals(1, resumed.unrepairable);
+    }
+
+    private void insert(String table, long id, String title, double amount, String date, String time) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_ID, id);
+        values.put(ExpenseDbHelper.COLUMN_TITLE, title);
+        values.put(ExpenseDbHelper.COLUMN_AMOUNT, amount);
+        values.put(ExpenseDbHelper.COLUMN_CATEGORY, CATEGORY);
+        values.put(ExpenseDbHelper.COLUMN_DATE, date);
+        values.put(ExpenseDbHelper.COLUMN_TIME, time);
+        assertEquals(id, db.insert(table, null, values));
+    }
+
+    private String dateTime(long id) {
+        Cursor cursor = db.rawQuery("SELECT " + ExpenseDbHelper.COLUMN_DATE + " || ' ' || " + ExpenseDbHelper.COLUMN_TIME + " " +
+                "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " WHERE " + ExpenseDbHelper.COLUMN_ID + " = ?",
+                new String[]{ String.valueOf(id) });
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+
+    private static int day(String isoDate) {
+        return EpochDays.fromIso(isoDate);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+
+import static org.junit.Assert.*;
+
+/**
+ * Migration benchmark on a large dataset: a v1 database with ROWS expenses is taken
+ * through every schema step, then through a chunked backfill and a downgrade.
+ * Timings are logged under the "MigrationBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MigrationBenchmarkTest {
+
+    private static final String TAG = "MigrationBenchmark";
+    private static final String DB_NAME = "migration_benchmark.db";
+    private static final int ROWS = 100_000;
+
+    private Context context;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = TestDatabases.openEmpty(context, DB_NAME);
+        createVersion1(db);
+        TestDatabases.insertExpenses(db, ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void eachSchemaStep() {
+        for (SchemaMigration migration : ExpenseDbHelper.MIGRATIONS) {
+            long start = SystemClock.elapsedRealtime();
+            db.beginTransaction();
+            try {
+                // As onUpgrade does: every step sees the version the upgrade started from
+                migration.up(db, 1);
+                db.setVersion(migration.version);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            Log.i(TAG, "v" + migration.version + ": " + (SystemClock.elapsedRealtime() - start) + " ms");
+        }
+
+        assertEquals(ExpenseDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals(ROWS, ExpenseArchive.countExpenses(db));
+    }
+
+    @Test
+    public void chunkedBackfillResumes() {
+        migrateToLatest();
+        Backfill backfill = new TrimTitles();
+
+        // Stop after the third chunk, as if the user left the progress dialog
+        CancellationSignal signal = new CancellationSignal();
+        int[] chunks = { 0 };
+        try {
+            MigrationRunner.runBackfill(db, backfill, MigrationRunner.CHUNK_ROWS, (done, total) -> {
+                if (++chunks[0] == 3) signal.cancel();
+            }, 0, ROWS, signal);
+            fail("Expected cancellation");
+        } catch (OperationCanceledException expected) {
+            // Resumed below
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        int resumed = MigrationRunner.runBackfill(db, backfill, MigrationRunner.CHUNK_ROWS, null, 0, ROWS, null);
+        Log.i(TAG, "Backfill of " + resumed + " rows: " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+        assertEquals(ROWS - 3 * MigrationRunner.CHUNK_ROWS, resumed);
+        assertEquals(0, TestDatabases.count(db, "SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_TITLE + " != trim(" + ExpenseDbHelper.COLUMN_TITLE + ")"));
+        assertEquals(0, MigrationRunner.runBackfill(db, backfill, MigrationRunner.CHUNK_ROWS, null, 0, ROWS, null));
+    }
+
+    @Test
+    public void downgradeKeepsRows() {
+        migrateToLatest();
+        db.execSQL("ALTER TABLE " + ExpenseDbHelper.TABLE_EXPENSE + " ADD COLUMN future_column INTEGER");
+        db.execSQL("CREATE TABLE future_table (id INTEGER PRIMARY KEY)");
+
+        long start = SystemClock.elapsedRealtime();
+        db.beginTransaction();
+        try {
+            new ExpenseDbHelper(context).onDowngrade(db, ExpenseDbHelper.DATABASE_VERSION + 1,
+                    ExpenseDbHelper.DATABASE_VERSION);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        Log.i(TAG, "Downgrade: " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+        assertEquals(ROWS, ExpenseArchive.countExpenses(db));
+        assertEquals(0, TestDatabases.count(db, "SELECT COUNT(*) FROM sqlite_master WHERE name = 'future_table'"));
+    }
+
+    private void migrateToLatest() {
+        db.beginTransaction();
+        try {
+            new ExpenseDbHelper(context).onUpgrade(db, 1, ExpenseDbHelper.DATABASE_VERSION);
+            db.setVersion(ExpenseDbHelper.DATABASE_VERSION);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+
+    /**
+     * The first released schema: expense table and its date index only
+     */
+    private static void createVersion1(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE expense (" +
+                "id INTEGER PRIMARY KEY AUTOINCREMENT, title TEXT NOT NULL, amount REAL NOT NULL, " +
+                "category TEXT NOT NULL, note TEXT, date TEXT NOT NULL, time TEXT NOT NULL)");
+        db.execSQL("CREATE INDEX idx_expense_date ON expense (date DESC)");
+        db.setVersion(1);
+    }
+
+    /**
+     * Stand-in backfill that rewrites every row, by ID
+     */
+    private static final class TrimTitles extends Backfill {
+
+        TrimTitles() {
+            super("benchmark_trim_titles");
+        }
+
+        @Override
+        int countRemaining(SQLiteDatabase db, long afterKey) {
+            Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ?", new String[]{ String.valueOf(afterKey) });
+            try {
+                return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        Chunk runChunk(SQLiteDatabase db, long afterKey, int limit) {
+            Cursor cursor = db.rawQuery("SELECT MAX(" + ExpenseDbHelper.COLUMN_ID + "), COUNT(*) FROM (" +
+                    "SELECT " + ExpenseDbHelper.COLUMN_ID + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ? ORDER BY " + ExpenseDbHelper.COLUMN_ID + " " +
+                    "LIMIT " + limit + ")", new String[]{ String.valueOf(afterKey) });
+            long lastKey;
+            int rows;
+            try {
+                cursor.moveToFirst();
+                rows = cursor.getInt(1);
+                lastKey = rows > 0 ? cursor.getLong(0) : afterKey;
+            } finally {
+                cursor.close();
+            }
+            db.execSQL("UPDATE " + ExpenseDbHelper.TABLE_EXPENSE + " SET " +
+                    ExpenseDbHelper.COLUMN_TITLE + " = trim(" + ExpenseDbHelper.COLUMN_TITLE + ") " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ? AND " + ExpenseDbHelper.COLUMN_ID + " <= ?",
+                    new Object[]{ afterKey, lastKey });
+            return new Chunk(lastKey, rows);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.boki.models.RecurringExpense;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recurring state across edits and restores: every occurrence is written exactly once
+ */
+@RunWith(AndroidJUnit4.class)
+public class RecurringExpenseBackupTest {
+
+    private static final String DB_NAME = "recurring_backup_test.db";
+    // ExpenseBackup keeps the chain state of a database other than the app's under this name
+    private static final String CHAIN_PREFS = "expense_backup_" + DB_NAME;
+
+    private Context context;
+    private File backupFile;
+    private RecurringExpenseRepository recurring;
+    private ExpenseBackup backup;
+    private ExpenseDbHelper dbHelper;
+    private SQLiteDatabase db;
+    private int today;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_NAME);
+        context.deleteSharedPreferences(CHAIN_PREFS);
+        backupFile = new File(context.getCacheDir(), "recurring_backup_test.boki");
+        dbHelper = new ExpenseDbHelper(context, DB_NAME);
+        recurring = new RecurringExpenseRepository(dbHelper);
+        backup = new ExpenseBackup(context, dbHelper);
+        db = dbHelper.getWritableDatabase();
+        today = EpochDays.today();
+    }
+
+    @After
+    public void tearDown() {
+        SpendingIndex.getInstance().clear();
+        dbHelper.close();
+        backupFile.delete();
+        context.deleteDatabase(DB_NAME);
+        context.deleteSharedPreferences(CHAIN_PREFS);
+    }
+
+    @Test
+    public void restoreBringsBackTheClaimsOfTheBackup() throws IOException {
+        insertWeeklyRule(today - 20);
+        writeBackup();
+
+        assertEquals(3, recurring.materializeDue());
+        restoreBackup();
+        assertEquals(0, ExpenseArchive.countExpenses(db));
+
+        // The backup predates the occurrences, so they are due again
+        assertEquals(3, recurring.materializeDue());
+        assertEquals(3, ExpenseArchive.countExpenses(db));
+
+        // A backup that holds them restores them without writing them twice
+        writeBackup();
+        restoreBackup();
+        assertEquals(0, recurring.materializeDue());
+        assertEquals(3, ExpenseArchive.countExpenses(db));
+    }
+
+    @Test
+    public void rewindWritesOccurrencesAfterTheDayAgain() {
+        insertWeeklyRule(today - 20);
+        assertEquals(3, recurring.materializeDue());
+
+        // As if a backup from ten days ago had been restored
+        db.delete(ExpenseDbHelper.TABLE_EXPENSE, ExpenseDbHelper.COLUMN_DATE + " > ?",
+                new String[]{ EpochDays.toIso(today - 10) });
+        RecurringExpenseRepository.rewindAfter(db, today - 10);
+
+        assertEquals(1, recurring.materializeDue());
+        assertEquals(3, ExpenseArchive.countExpenses(db));
+        assertEquals(0, recurring.materializeDue());
+    }
+
+    @Test
+    public void editKeepsPeriodsStillToCatchUp() {
+        RecurringExpense rule = insertWeeklyRule(today - 20);
+
+        rule.setAmount(75);
+        assertEquals(1, recurring.updateRule(rule));
+        assertEquals(EpochDays.toIso(today - 20), rule.getNextDue());
+
+        assertEquals(3, recurring.materializeDue());
+        assertEquals(3, TestDatabases.count(db, "SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_AMOUNT + " = 75"));
+    }
+
+    /**
+     * Weekly rule whose first occurrence is its start day
+     */
+    private RecurringExpense insertWeeklyRule(int startDay) {
+        RecurringExpense rule = new RecurringExpense("Gym", 50, ExpenseCategories.nameOf(1), null, "18:00:00",
+                RecurringExpense.INTERVAL_WEEKLY, EpochDays.dayOfWeek(startDay), EpochDays.toIso(startDay), null, true);
+        assertTrue(recurring.insertRule(rule) > 0);
+        return rule;
+    }
+
+    private void writeBackup() throws IOException {
+        backup.backup(new FileOutputStream(backupFile), null, null);
+    }
+
+    private void restoreBackup() throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(backupFile, "r")) {
+            FileChannel channel = file.getChannel();
+            backup.restore(Collections.singletonList(channel), null, null);
+        }
+    }
+}
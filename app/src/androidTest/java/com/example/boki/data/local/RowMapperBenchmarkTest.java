@@ -0,0 +1,180 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.boki.models.Expense;
+import com.example.boki.models.ExpenseRow;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Row mapping benchmark on ROWS expenses: the same query is mapped with a column
+ * name lookup per field and row, and with the RowMapper positions resolved once.
+ * Cursor walking alone is timed too and subtracted, so the logged figures are the
+ * mapping cost per row. Timings are logged under the "RowMapperBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowMapperBenchmarkTest {
+
+    private static final String TAG = "RowMapperBenchmark";
+    private static final String DB_NAME = "row_mapper_benchmark.db";
+    private static final int ROWS = 100_000;
+    // Best of RUNS, so window allocation and GC noise do not dominate
+    private static final int RUNS = 5;
+
+    private Context context;
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = TestDatabases.openEmpty(context, DB_NAME);
+        new ExpenseDbHelper(context).onCreate(db);
+        TestDatabases.insertExpenses(db, ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        context.deleteDatabase(DB_NAME);
+    }
+
+    @Test
+    public void expenses() {
+        String sql = "SELECT " + ExpenseRepository.EXPENSE_MAPPER.projection() + " " +
+                "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "ORDER BY " + ExpenseDbHelper.COLUMN_DATE + " DESC";
+
+        long walk = Long.MAX_VALUE;
+        long lookup = Long.MAX_VALUE;
+        long mapped = Long.MAX_VALUE;
+        List<Expense> byName = null;
+        List<Expense> byPosition = null;
+        for (int run = 0; run < RUNS; run++) {
+            Cursor cursor = db.rawQuery(sql, null);
+            try {
+                long start = SystemClock.elapsedRealtimeNanos();
+                int rows = 0;
+                while (cursor.moveToNext()) rows++;
+                walk = Math.min(walk, SystemClock.elapsedRealtimeNanos() - start);
+                assertEquals(ROWS, rows);
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.rawQuery(sql, null);
+            try {
+                long start = SystemClock.elapsedRealtimeNanos();
+                byName = mapByName(cursor);
+                lookup = Math.min(lookup, SystemClock.elapsedRealtimeNanos() - start);
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.rawQuery(sql, null);
+            try {
+                long start = SystemClock.elapsedRealtimeNanos();
+                byPosition = ExpenseRepository.EXPENSE_MAPPER.mapAll(cursor);
+                mapped = Math.min(mapped, SystemClock.elapsedRealtimeNanos() - start);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        log("Expense", walk, lookup, mapped);
+        assertEquals(ROWS, byPosition.size());
+        for (int i = 0; i < ROWS; i += ROWS / 100) {
+            Expense expected = byName.get(i);
+            Expense actual = byPosition.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getTitle(), actual.getTitle());
+            assertEquals(expected.getAmount(), actual.getAmount(), 0);
+            assertEquals(expected.getCategory(), actual.getCategory());
+            assertEquals(expected.getNote(), actual.getNote());
+            assertEquals(expected.getDate(), actual.getDate());
+            assertEquals(expected.getTime(), actual.getTime());
+        }
+    }
+
+    @Test
+    public void listRows() {
+        String sql = "SELECT " + ExpenseRepository.ROW_MAPPER.projection() + " " +
+                "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "ORDER BY " + ExpenseDbHelper.COLUMN_DATE + " DESC";
+
+        long walk = Long.MAX_VALUE;
+        long mapped = Long.MAX_VALUE;
+        List<ExpenseRow> rows = null;
+        for (int run = 0; run < RUNS; run++) {
+            Cursor cursor = db.rawQuery(sql, null);
+            try {
+                long start = SystemClock.elapsedRealtimeNanos();
+                while (cursor.moveToNext()) {
+                    // Walk only
+                }
+                walk = Math.min(walk, SystemClock.elapsedRealtimeNanos() - start);
+            } finally {
+                cursor.close();
+            }
+
+            cursor = db.rawQuery(sql, null);
+            try {
+                long start = SystemClock.elapsedRealtimeNanos();
+                rows = ExpenseRepository.ROW_MAPPER.mapAll(cursor);
+                mapped = Math.min(mapped, SystemClock.elapsedRealtimeNanos() - start);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        Log.i(TAG, "ExpenseRow: " + perRow(mapped - walk) + " ns/row mapped");
+        assertEquals(ROWS, rows.size());
+        assertEquals(EpochDays.today(), rows.get(0).getDay());
+    }
+
+    /**
+     * The mapping the repositories used before RowMapper: every field looked up by name
+     */
+    private static List<Expense> mapByName(Cursor cursor) {
+        List<Expense> expenses = new ArrayList<>();
+        while (cursor.moveToNext()) {
+            int idIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_ID);
+            int titleIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_TITLE);
+            int amountIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_AMOUNT);
+            int categoryIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_CATEGORY);
+            int noteIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_NOTE);
+            int dateIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_DATE);
+            int timeIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_TIME);
+            expenses.add(new Expense(cursor.getLong(idIndex), cursor.getString(titleIndex),
+                    cursor.getDouble(amountIndex), cursor.getString(categoryIndex),
+                    cursor.getString(noteIndex), cursor.getString(dateIndex), cursor.getString(timeIndex)));
+        }
+        return expenses;
+    }
+
+    private static void log(String model, long walk, long lookup, long mapped) {
+        long byName = perRow(lookup - walk);
+        long byPosition = perRow(mapped - walk);
+        Log.i(TAG, model + ": walk " + perRow(walk) + " ns/row, by name " + byName +
+                " ns/row, by position " + byPosition + " ns/row, saved " + (byName - byPosition) + " ns/row");
+    }
+
+    private static long perRow(long nanos) {
+        return Math.max(nanos, 0) / ROWS;
+    }
+}
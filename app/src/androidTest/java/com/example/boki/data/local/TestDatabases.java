@@ -0,0 +1,72 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.File;
+
+/**
+ * Scratch databases and generated expenses shared by the database tests
+ */
+final class TestDatabases {
+
+    private TestDatabases() {
+        // Utility class
+    }
+
+    /**
+     * Open an empty database under the app's database directory, replacing any
+     * left over from an earlier run. The caller creates the schema.
+     */
+    static SQLiteDatabase openEmpty(Context context, String name) {
+        context.deleteDatabase(name);
+        File file = context.getDatabasePath(name);
+        file.getParentFile().mkdirs();
+        return SQLiteDatabase.openOrCreateDatabase(file, null);
+    }
+
+    /**
+     * Insert rows expenses in one transaction: every category in turn, the last
+     * 1000 days, and titles padded with spaces for backfills to trim.
+     * Only uses the columns of the first schema, so it works at every version.
+     */
+    static void insertExpenses(SQLiteDatabase db, int rows) {
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + ExpenseDbHelper.TABLE_EXPENSE + " (" +
+                ExpenseDbHelper.COLUMN_TITLE + ", " +
+                ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                ExpenseDbHelper.COLUMN_NOTE + ", " +
+                ExpenseDbHelper.COLUMN_DATE + ", " +
+                ExpenseDbHelper.COLUMN_TIME + ") VALUES (?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                insert.bindString(1, " expense " + i + " ");
+                insert.bindDouble(2, 1 + i % 500);
+                insert.bindString(3, ExpenseCategories.nameOf(1 + i % ExpenseCategories.OTHER));
+                insert.bindString(4, "note " + i);
+                insert.bindString(5, EpochDays.toIso(EpochDays.today() - i % 1000));
+                insert.bindString(6, "12:00:00");
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * @return First column of the first row of a query, e.g. a COUNT(*)
+     */
+    static int count(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.boki.data.sync;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process stand-in for the sync server, for tests that run several SyncEngines
+ * (devices) against one shared log.
+ *
+ * It behaves like the real server is meant to: every accepted change gets the
+ * next sequence number, and a pushed version only replaces the stored one if it
+ * wins under last-writer-wins. Superseded log entries are dropped lazily, so
+ * pulling from 0 returns one entry per live row or tombstone.
+ */
+public class FakeSyncServer implements SyncTransport {
+
+    private static final class Entry {
+        final long seq;
+        final SyncChange change;
+
+        Entry(long seq, SyncChange change) {
+            this.seq = seq;
+            this.change = change;
+        }
+    }
+
+    // Ordered by seq; an entry is stale once latest points at a newer one
+    private final List<Entry> log = new ArrayList<>();
+    private final Map<String, Entry> latest = new HashMap<>();
+    private long nextSeq = 1;
+
+    @Override
+    public synchronized void push(byte[] batch) throws IOException {
+        for (SyncChange change : SyncBatchCodec.decode(batch)) {
+            Entry current = latest.get(change.uid);
+            if (current != null && change.compareVersion(current.change.updatedAt, current.change.device) <= 0) {
+                continue; // Older or already known version
+            }
+            Entry entry = new Entry(nextSeq++, change);
+            log.add(entry);
+            latest.put(change.uid, entry);
+        }
+        if (log.size() > 2 * latest.size() + 1024) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized PullResult pull(long afterSeq, int limit) throws IOException {
+        List<SyncChange> changes = new ArrayList<>(Math.min(limit, log.size()));
+        long lastSeq = afterSeq;
+        int i = firstAfter(afterSeq);
+        for (; i < log.size() && changes.size() < limit; i++) {
+            Entry entry = log.get(i);
+            if (latest.get(entry.change.uid) == entry) {
+                changes.add(entry.change);
+            }
+            lastSeq = entry.seq;
+        }
+        return new PullResult(SyncBatchCodec.encode(changes), lastSeq, i < log.size());
+    }
+
+    /**
+     * @return Number of rows (including tombstones) the server knows about
+     */
+    public synchronized int rowCount() {
+        return latest.size();
+    }
+
+    // Binary search: the log is sorted by seq
+    private int firstAfter(long seq) {
+        int low = 0;
+        int high = log.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (log.get(mid).seq <= seq) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private void compact() {
+        List<Entry> live = new ArrayList<>(latest.size());
+        for (Entry entry : log) {
+            if (latest.get(entry.change.uid) == entry) live.add(entry);
+        }
+        log.clear();
+        log.addAll(live);
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.boki.data.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.boki.data.local.ExpenseCategories;
+import com.example.boki.data.local.ExpenseDbHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Two devices, each a SyncEngine on its own database, syncing through one FakeSyncServer
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncEngineTest {
+
+    private static final String DB_A = "sync_device_a.db";
+    private static final String DB_B = "sync_device_b.db";
+    private static final long DEVICE_A = 1;
+    private static final long DEVICE_B = 2;
+
+    private static final String CATEGORY = ExpenseCategories.nameOf(1);
+
+    private Context context;
+    private FakeSyncServer server;
+    private ExpenseDbHelper helperA;
+    private ExpenseDbHelper helperB;
+    private SQLiteDatabase dbA;
+    private SQLiteDatabase dbB;
+    private SyncEngine deviceA;
+    private SyncEngine deviceB;
+    // Edits are stamped after every version the setup wrote with the real clock
+    private long later;
+
+    @Before
+    public void setUp() throws IOException {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(DB_A);
+        context.deleteDatabase(DB_B);
+        server = new FakeSyncServer();
+
+        helperA = new ExpenseDbHelper(context, DB_A);
+        helperB = new ExpenseDbHelper(context, DB_B);
+        dbA = helperA.getWritableDatabase();
+        dbB = helperB.getWritableDatabase();
+        setDeviceId(dbA, DEVICE_A);
+        setDeviceId(dbB, DEVICE_B);
+        deviceA = new SyncEngine(context, helperA, server);
+        deviceB = new SyncEngine(context, helperB, server);
+
+        // The first sync pushes a snapshot; from the second on, changes come from the log
+        deviceA.sync(null);
+        deviceB.sync(null);
+        later = System.currentTimeMillis() + 60_000;
+    }
+
+    @After
+    public void tearDown() {
+        helperA.close();
+        helperB.close();
+        context.deleteDatabase(DB_A);
+        context.deleteDatabase(DB_B);
+    }
+
+    @Test
+    public void expensesAndBudgetsRoundTrip() throws IOException {
+        insertExpense(dbA, "Lunch", 42.5, "with team");
+        insertExpense(dbA, "Taxi", 18, null);
+        ContentValues budget = new ContentValues();
+        budget.put(ExpenseDbHelper.COLUMN_BUDGET_NAME, "Monthly");
+        budget.put(ExpenseDbHelper.COLUMN_BUDGET_AMOUNT, 3000.0);
+        budget.put(ExpenseDbHelper.COLUMN_BUDGET_START_DATE, "2025-12-01");
+        budget.put(ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE, "MONTHLY");
+        budget.put(ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE, 1);
+        budget.put(ExpenseDbHelper.COLUMN_BUDGET_ACTIVE, 1);
+        dbA.insert(ExpenseDbHelper.TABLE_BUDGET, null, budget);
+
+        assertEquals(3, deviceA.sync(null).pushed);
+        SyncEngine.Result pulled = deviceB.sync(null);
+        assertEquals(3, pulled.pulled);
+        assertEquals(3, pulled.applied);
+
+        assertEquals(rows(dbA, expenseSql()), rows(dbB, expenseSql()));
+        assertEquals("[Lunch|42.5|" + CATEGORY + "|with team|2025-12-06|12:00:00, " +
+                "Taxi|18.0|" + CATEGORY + "|null|2025-12-06|12:00:00]", rows(dbB, expenseSql()).toString());
+        assertEquals("[Monthly|3000.0|2025-12-01|MONTHLY|1|1]", rows(dbB, "SELECT " +
+                ExpenseDbHelper.COLUMN_BUDGET_NAME + ", " + ExpenseDbHelper.COLUMN_BUDGET_AMOUNT + ", " +
+                ExpenseDbHelper.COLUMN_BUDGET_START_DATE + ", " + ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE + ", " +
+                ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE + ", " + ExpenseDbHelper.COLUMN_BUDGET_ACTIVE + " " +
+                "FROM " + ExpenseDbHelper.TABLE_BUDGET).toString());
+
+        // Pulled rows are not pushed back, and A's own versions come back without effect
+        SyncEngine.Result echo = deviceB.sync(null);
+        assertEquals(0, echo.pushed);
+        assertEquals(0, deviceA.sync(null).applied);
+    }
+
+    @Test
+    public void lastWriterWins() throws IOException {
+        long idA = insertExpense(dbA, "Coffee", 12, null);
+        syncAll();
+        long idB = idOf(dbB, "Coffee");
+
+        // B edits later than A, but A syncs last
+        setTitle(dbB, idB, "Coffee (B)", later + 1_000);
+        setTitle(dbA, idA, "Coffee (A)", later);
+        deviceB.sync(null);
+        deviceA.sync(null);
+        deviceB.sync(null);
+
+        assertEquals("[Coffee (B)]", titles(dbA).toString());
+        assertEquals("[Coffee (B)]", titles(dbB).toString());
+    }
+
+    @Test
+    public void deviceIdBreaksTies() throws IOException {
+        long idA = insertExpense(dbA, "Coffee", 12, null);
+        syncAll();
+        long idB = idOf(dbB, "Coffee");
+
+        // Same timestamp: the greater device ID wins, whichever syncs first
+        setTitle(dbA, idA, "Coffee (A)", later);
+        setTitle(dbB, idB, "Coffee (B)", later);
+        deviceB.sync(null);
+        SyncEngine.Result a = deviceA.sync(null);
+
+        assertEquals(1, a.applied);
+        assertEquals("[Coffee (B)]", titles(dbA).toString());
+        assertEquals(0, deviceB.sync(null).applied);
+        assertEquals("[Coffee (B)]", titles(dbB).toString());
+    }
+
+    @Test
+    public void tombstoneBeatsStaleUpsert() throws IOException {
+        long idA = insertExpense(dbA, "Gym", 150, null);
+        syncAll();
+        long idB = idOf(dbB, "Gym");
+
+        // B's edit is older than A's delete and reaches the server after it
+        setTitle(dbB, idB, "Gym (B)", later);
+        dbA.delete(ExpenseDbHelper.TABLE_EXPENSE, ExpenseDbHelper.COLUMN_ID + " = ?",
+                new String[]{ String.valueOf(idA) });
+        stampLastChange(dbA, later + 1_000);
+        deviceA.sync(null);
+        deviceB.sync(null);
+        deviceA.sync(null);
+
+        assertTrue(titles(dbA).isEmpty());
+        assertTrue(titles(dbB).isEmpty());
+        List<SyncChange> onServer = serverRows();
+        assertEquals(1, onServer.size());
+        assertTrue(onServer.get(0).deleted);
+    }
+
+    @Test
+    public void softDeleteIsPushedAsTombstone() throws IOException {
+        long idA = insertExpense(dbA, "Books", 80, null);
+        syncAll();
+
+        ContentValues deleted = new ContentValues();
+        deleted.put(ExpenseDbHelper.COLUMN_DELETED_AT, System.currentTimeMillis());
+        dbA.update(ExpenseDbHelper.TABLE_EXPENSE, deleted, ExpenseDbHelper.COLUMN_ID + " = ?",
+                new String[]{ String.valueOf(idA) });
+
+        assertEquals(1, deviceA.sync(null).pushed);
+        List<SyncChange> onServer = serverRows();
+        assertEquals(1, onServer.size());
+        assertTrue(onServer.get(0).deleted);
+        assertNull(onServer.get(0).expense);
+
+        assertEquals(1, deviceB.sync(null).applied);
+        assertTrue(titles(dbB).isEmpty());
+    }
+
+    @Test
+    public void laterSyncsPushOnlyChangedRows() throws IOException {
+        int rows = 2 * SyncEngine.BATCH_SIZE + 100;
+        dbA.beginTransaction();
+        try {
+            for (int i = 0; i < rows; i++) {
+                insertExpense(dbA, "expense " + i, 1 + i % 50, null);
+            }
+            dbA.setTransactionSuccessful();
+        } finally {
+            dbA.endTransaction();
+        }
+        assertEquals(rows, deviceA.sync(null).pushed);
+
+        // Two edits of one row collapse into its latest version
+        setTitle(dbA, idOf(dbA, "expense 7"), "expense 7 edited", later);
+        setTitle(dbA, idOf(dbA, "expense 7 edited"), "expense 7 edited twice", later + 1);
+        setTitle(dbA, idOf(dbA, "expense 500"), "expense 500 edited", later);
+        assertEquals(2, deviceA.sync(null).pushed);
+        assertEquals(0, deviceA.sync(null).pushed);
+
+        SyncEngine.Result b = deviceB.sync(null);
+        assertEquals(rows, b.applied);
+        assertEquals(rows, titles(dbB).size());
+        assertTrue(titles(dbB).contains("expense 7 edited twice"));
+    }
+
+    private void syncAll() throws IOException {
+        deviceA.sync(null);
+        deviceB.sync(null);
+    }
+
+    private List<SyncChange> serverRows() throws IOException {
+        return SyncBatchCodec.decode(server.pull(0, Integer.MAX_VALUE).batch);
+    }
+
+    private static void setDeviceId(SQLiteDatabase db, long device) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_STATE_KEY, ExpenseDbHelper.SYNC_KEY_DEVICE_ID);
+        values.put(ExpenseDbHelper.COLUMN_STATE_VALUE, device);
+        db.insertWithOnConflict(ExpenseDbHelper.TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static long insertExpense(SQLiteDatabase db, String title, double amount, String note) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_TITLE, title);
+        values.put(ExpenseDbHelper.COLUMN_AMOUNT, amount);
+        values.put(ExpenseDbHelper.COLUMN_CATEGORY, CATEGORY);
+        values.put(ExpenseDbHelper.COLUMN_NOTE, note);
+        values.put(ExpenseDbHelper.COLUMN_DATE, "2025-12-06");
+        values.put(ExpenseDbHelper.COLUMN_TIME, "12:00:00");
+        return db.insert(ExpenseDbHelper.TABLE_EXPENSE, null, values);
+    }
+
+    /**
+     * Edit a title as if it happened at changedAt on that device's clock
+     */
+    private static void setTitle(SQLiteDatabase db, long id, String title, long changedAt) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_TITLE, title);
+        db.update(ExpenseDbHelper.TABLE_EXPENSE, values, ExpenseDbHelper.COLUMN_ID + " = ?",
+                new String[]{ String.valueOf(id) });
+        stampLastChange(db, changedAt);
+    }
+
+    private static void stampLastChange(SQLiteDatabase db, long changedAt) {
+        db.execSQL("UPDATE " + ExpenseDbHelper.TABLE_CHANGE_LOG + " SET " +
+                ExpenseDbHelper.COLUMN_LOG_CHANGED_AT + " = ? " +
+                "WHERE " + ExpenseDbHelper.COLUMN_LOG_SEQ + " = (" +
+                "SELECT MAX(" + ExpenseDbHelper.COLUMN_LOG_SEQ + ") FROM " + ExpenseDbHelper.TABLE_CHANGE_LOG + ")",
+                new Object[]{ changedAt });
+    }
+
+    private static long idOf(SQLiteDatabase db, String title) {
+        Cursor cursor = db.rawQuery("SELECT " + ExpenseDbHelper.COLUMN_ID + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_TITLE + " = ?", new String[]{ title });
+        try {
+            assertTrue("No expense " + title, cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<String> titles(SQLiteDatabase db) {
+        List<String> titles = new ArrayList<>();
+        for (String row : rows(db, "SELECT " + ExpenseDbHelper.COLUMN_TITLE + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.EXPENSE_LIVE)) {
+            titles.add(row);
+        }
+        return titles;
+    }
+
+    private static String expenseSql() {
+        return "SELECT " + ExpenseDbHelper.COLUMN_TITLE + ", " + ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                ExpenseDbHelper.COLUMN_CATEGORY + ", " + ExpenseDbHelper.COLUMN_NOTE + ", " +
+                ExpenseDbHelper.COLUMN_DATE + ", " + ExpenseDbHelper.COLUMN_TIME + " " +
+                "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " ORDER BY " + ExpenseDbHelper.COLUMN_TITLE;
+    }
+
+    /**
+     * Every row of a query, its columns joined with '|'
+     */
+    private static List<String> rows(SQLiteDatabase db, String sql) {
+        List<String> rows = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 0; i < cursor.getColumnNames().length; i++) {
+                    if (i > 0) row.append('|');
+                    row.append(cursor.isNull(i) ? "null" : cursor.getString(i));
+                }
+                rows.add(row.toString());
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+}
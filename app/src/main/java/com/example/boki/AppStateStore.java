@@ -0,0 +1,371 @@
+package com.example.boki;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import com.example.boki.data.local.BudgetRepository;
+import com.example.boki.data.local.DashboardRepository;
+import com.example.boki.data.local.DashboardSnapshotFile;
+import com.example.boki.data.local.EpochDays;
+import com.example.boki.data.local.ExpenseRepository;
+import com.example.boki.data.local.SpendingIndex;
+import com.example.boki.models.Budget;
+import com.example.boki.models.DashboardSnapshot;
+import com.example.boki.models.ExpenseRow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide state of the tabs: the active budget with its cycle snapshot, the
+ * snapshots of recently shown ranges and the pages of operation rows loaded so far.
+ *
+ * It outlives fragments, so a tab opened again reads its state synchronously and
+ * runs no query. Every entry is stamped with the write counters it was read under
+ * (SpendingIndex and BudgetRepository versions) and the day; any expense or budget
+ * write, or midnight, makes it stale and the next load reads it again.
+ *
+ * Each cycle snapshot read is also persisted (DashboardSnapshotFile), so the next
+ * cold start can show the last balance before the database is open. Every expense
+ * or budget write triggers such a read, which also updates the home screen widget.
+ */
+public final class AppStateStore {
+
+    /**
+     * Receives state on the main thread
+     */
+    public interface Callback<T> {
+        void onState(T state);
+    }
+
+    private static final int SNAPSHOT_CACHE_SIZE = 8;
+    // Operation rows read per page
+    private static final int OPERATION_PAGE_SIZE = 100;
+
+    private static AppStateStore instance;
+
+    private final Context appContext;
+    private final DashboardRepository dashboardRepository;
+    private final ExpenseRepository expenseRepository;
+    private final DashboardSnapshotFile snapshotFile;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final LruCache<String, Entry<DashboardSnapshot>> snapshots = new LruCache<>(SNAPSHOT_CACHE_SIZE);
+    private volatile Entry<DashboardSnapshot> cycleSnapshot;
+    private volatile Entry<OperationRows> operationRows;
+
+    // The previous run's cycle snapshot, until this process reads its own
+    private DashboardSnapshot persistedCycleSnapshot;
+    private boolean persistedRead;
+    private volatile boolean cycleLoaded;
+    // A read after a write is queued; the writes of a burst share it
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+    // Bumped by invalidate(), for writes that move neither version
+    private volatile long generation = 0;
+
+    /**
+     * The state a value was read from
+     */
+    private final class Stamp {
+        final long expenseVersion = SpendingIndex.getInstance().getVersion();
+        final long budgetVersion = BudgetRepository.getVersion();
+        final long generation = AppStateStore.this.generation;
+        final int day = EpochDays.today();
+
+        boolean isCurrent() {
+            return expenseVersion == SpendingIndex.getInstance().getVersion()
+                    && budgetVersion == BudgetRepository.getVersion()
+                    && generation == AppStateStore.this.generation
+                    && day == EpochDays.today();
+        }
+    }
+
+    /**
+     * Operation rows of the pages loaded so far, most recent first
+     */
+    private static final class OperationRows {
+        final List<ExpenseRow> rows;
+        final boolean complete;     // The last row is the oldest expense
+
+        OperationRows(List<ExpenseRow> rows, boolean complete) {
+            this.rows = rows;
+            this.complete = complete;
+        }
+    }
+
+    private static final class Entry<T> {
+        final T value;
+        final Stamp stamp;
+
+        Entry(T value, Stamp stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+    }
+
+    private AppStateStore(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.dashboardRepository = new DashboardRepository(appContext);
+        this.expenseRepository = new ExpenseRepository(appContext);
+        this.snapshotFile = new DashboardSnapshotFile(appContext);
+
+        // Keep the persisted snapshot and the widget current after every write
+        SpendingIndex.getInstance().addChangeListener(new SpendingIndex.ChangeListener() {
+            @Override
+            public void onAmountChanged(int day, long minorUnits) {
+                onDataChanged();
+            }
+
+            @Override
+            public void onReset() {
+                onDataChanged();
+            }
+        });
+        BudgetRepository.addChangeListener(this::onDataChanged);
+    }
+
+    /**
+     * Shared store, created by BokiApplication
+     */
+    public static synchronized AppStateStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppStateStore(context);
+        }
+        return instance;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Synchronous reads (no database access)
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * @return Snapshot of the active budget's cycle, or null if not loaded or stale
+     */
+    public DashboardSnapshot peekCycleSnapshot() {
+        return currentValue(cycleSnapshot);
+    }
+
+    /**
+     * @return Active budget, or null if there is none or the cycle snapshot is not loaded or stale
+     */
+    public Budget peekActiveBudget() {
+        DashboardSnapshot snapshot = peekCycleSnapshot();
+        return snapshot != null ? snapshot.getBudget() : null;
+    }
+
+    /**
+     * Last cycle snapshot of the previous run, for the first frame of a cold start.
+     * Reads a file of a few hundred bytes the first time; the database is not touched.
+     *
+     * @return The persisted snapshot, or null if there is none or this process has
+     * already loaded the cycle snapshot from the database
+     */
+    public synchronized DashboardSnapshot peekPersistedCycleSnapshot() {
+        if (cycleLoaded) return null;
+        if (!persistedRead) {
+            persistedRead = true;
+            persistedCycleSnapshot = snapshotFile.read();
+        }
+        return persistedCycleSnapshot;
+    }
+
+    /**
+     * @return Snapshot of the range, or null if not loaded or stale
+     */
+    public DashboardSnapshot peekSnapshot(String startIso, String endIso) {
+        return currentValue(snapshots.get(rangeKey(startIso, endIso)));
+    }
+
+    /**
+     * @return Operation rows of the pages loaded so far, most recent first, or null if
+     * not loaded or stale
+     */
+    public List<ExpenseRow> peekOperationRows() {
+        OperationRows current = currentValue(operationRows);
+        return current != null ? current.rows : null;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Loads: current state is delivered at once, stale state is read off the UI thread
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Snapshot of the active budget's current cycle
+     */
+    public void loadCycleSnapshot(Callback<DashboardSnapshot> callback) {
+        DashboardSnapshot current = peekCycleSnapshot();
+        if (current != null) {
+            callback.onState(current);
+            return;
+        }
+
+        executor.execute(() -> {
+            DashboardSnapshot snapshot = readCycleSnapshot();
+            mainHandler.post(() -> callback.onState(snapshot));
+            persist(snapshot);
+        });
+    }
+
+    /**
+     * Snapshot of a range; the last SNAPSHOT_CACHE_SIZE ranges are kept
+     *
+     * @param startIso yyyy-MM-dd (inclusive)
+     * @param endIso   yyyy-MM-dd (inclusive)
+     */
+    public void loadSnapshot(String startIso, String endIso, Callback<DashboardSnapshot> callback) {
+        DashboardSnapshot current = peekSnapshot(startIso, endIso);
+        if (current != null) {
+            callback.onState(current);
+            return;
+        }
+
+        executor.execute(() -> {
+            Stamp stamp = new Stamp();
+            DashboardSnapshot snapshot = dashboardRepository.getSnapshot(startIso, endIso);
+            snapshots.put(rangeKey(startIso, endIso), new Entry<>(snapshot, stamp));
+            mainHandler.post(() -> callback.onState(snapshot));
+        });
+    }
+
+    /**
+     * Operation rows loaded so far, most recent first; the first page if none are.
+     * Stale rows are read again, as many pages as were loaded, so the list keeps its
+     * length and scroll position across a write.
+     */
+    public void loadOperationRows(Callback<List<ExpenseRow>> callback) {
+        List<ExpenseRow> current = peekOperationRows();
+        if (current != null) {
+            callback.onState(current);
+            return;
+        }
+
+        executor.execute(() -> {
+            Entry<OperationRows> entry = operationRows;
+            OperationRows loaded = currentValue(entry);
+            if (loaded == null) {
+                loaded = readOperationRows(null, Math.max(1, loadedPages(entry)) * OPERATION_PAGE_SIZE);
+            }
+            List<ExpenseRow> rows = loaded.rows;
+            mainHandler.post(() -> callback.onState(rows));
+        });
+    }
+
+    /**
+     * The loaded operation rows followed by the next page, for a list scrolled near its
+     * end. Delivers the rows unchanged once the oldest expense is loaded.
+     */
+    public void loadMoreOperationRows(Callback<List<ExpenseRow>> callback) {
+        executor.execute(() -> {
+            Entry<OperationRows> entry = operationRows;
+            OperationRows loaded = currentValue(entry);
+            if (loaded == null) {
+                loaded = readOperationRows(null, (loadedPages(entry) + 1) * OPERATION_PAGE_SIZE);
+            } else if (!loaded.complete) {
+                loaded = readOperationRows(entry, OPERATION_PAGE_SIZE);
+            }
+            List<ExpenseRow> rows = loaded.rows;
+            mainHandler.post(() -> callback.onState(rows));
+        });
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Write events
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Mark everything stale after a write that moves neither the SpendingIndex nor the
+     * budget version (e.g. a migration rewriting times)
+     */
+    public synchronized void invalidate() {
+        generation++;
+    }
+
+    /**
+     * Drop the cached rows and ranges, e.g. when the system is low on memory
+     */
+    public void trim() {
+        operationRows = null;
+        snapshots.evictAll();
+    }
+
+    /**
+     * Called by writers (see SpendingIndex and BudgetRepository) while they may still
+     * hold the index: only queues the read, which waits for the write to commit
+     */
+    private void onDataChanged() {
+        if (!refreshQueued.compareAndSet(false, true)) return;
+        executor.execute(() -> {
+            refreshQueued.set(false);
+            persist(readCycleSnapshot());
+        });
+    }
+
+    /**
+     * Runs on the executor
+     */
+    private DashboardSnapshot readCycleSnapshot() {
+        // Stamped before reading, so a write during the read leaves the entry stale
+        Stamp stamp = new Stamp();
+        DashboardSnapshot snapshot = dashboardRepository.getCycleSnapshot();
+        cycleSnapshot = new Entry<>(snapshot, stamp);
+        cycleLoaded = true;
+        return snapshot;
+    }
+
+    /**
+     * Runs on the executor
+     *
+     * @param before Current rows to continue after, or null to read from the most recent
+     * @param limit  Rows to read
+     */
+    private OperationRows readOperationRows(Entry<OperationRows> before, int limit) {
+        // A page appended to current rows keeps their (older) stamp: a write since then
+        // makes the whole list stale
+        Stamp stamp = before != null ? before.stamp : new Stamp();
+        List<ExpenseRow> previous = before != null ? before.value.rows : Collections.<ExpenseRow>emptyList();
+        ExpenseRow last = previous.isEmpty() ? null : previous.get(previous.size() - 1);
+        List<ExpenseRow> page = expenseRepository.getExpenseRows(last, limit);
+
+        List<ExpenseRow> rows = page;
+        if (!previous.isEmpty()) {
+            rows = new ArrayList<>(previous.size() + page.size());
+            rows.addAll(previous);
+            rows.addAll(page);
+        }
+        OperationRows loaded = new OperationRows(Collections.unmodifiableList(rows), page.size() < limit);
+        operationRows = new Entry<>(loaded, stamp);
+        return loaded;
+    }
+
+    /**
+     * For the next cold start and the widget; neither is touched when nothing changed
+     */
+    private void persist(DashboardSnapshot snapshot) {
+        if (snapshotFile.write(snapshot)) {
+            BalanceWidgetProvider.update(appContext, snapshot);
+        }
+    }
+
+    /**
+     * @return Pages of operation rows held by the entry, stale or not
+     */
+    private static int loadedPages(Entry<OperationRows> entry) {
+        return entry != null ? (entry.value.rows.size() + OPERATION_PAGE_SIZE - 1) / OPERATION_PAGE_SIZE : 0;
+    }
+
+    private static <T> T currentValue(Entry<T> entry) {
+        return entry != null && entry.stamp.isCurrent() ? entry.value : null;
+    }
+
+    private static String rangeKey(String startIso, String endIso) {
+        return startIso + "|" + endIso;
+    }
+}
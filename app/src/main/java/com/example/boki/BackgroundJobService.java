@@ -0,0 +1,92 @@
+package com.example.boki;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.util.Log;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Base of the app's scheduled jobs: runs runJob() on a worker thread, cancels it
+ * when the system stops the job and asks for a retry if it fails.
+ */
+abstract class BackgroundJobService extends JobService {
+
+    // Job IDs, one per service; JobScheduler identifies pending jobs by them
+    static final int PURGE_DELETED_JOB_ID = 1001;
+    static final int MAINTENANCE_JOB_ID = 1002;
+    static final int RECURRING_EXPENSE_JOB_ID = 1003;
+
+    private final String tag;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private CancellationSignal signal;
+
+    /**
+     * @param tag Log tag of the job
+     */
+    BackgroundJobService(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Schedule a job unless one with its ID is already pending
+     *
+     * @param context Any context
+     * @param job     The job, with one of the IDs above
+     */
+    static void schedule(Context context, JobInfo.Builder job) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        JobInfo info = job.build();
+        if (scheduler == null || scheduler.getPendingJob(info.getId()) != null) {
+            return;
+        }
+        scheduler.schedule(info);
+    }
+
+    /**
+     * Do the job's work. Called on a worker thread.
+     *
+     * @param signal Cancelled when the system stops the job; check it between steps
+     * @throws OperationCanceledException if the signal was cancelled (the job is retried)
+     */
+    protected abstract void runJob(CancellationSignal signal);
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        CancellationSignal jobSignal = new CancellationSignal();
+        signal = jobSignal;
+        executor.execute(() -> {
+            try {
+                runJob(jobSignal);
+                jobFinished(params, false);
+            } catch (OperationCanceledException e) {
+                // onStopJob already asked for a reschedule
+            } catch (Exception e) {
+                Log.e(tag, "Job failed", e);
+                jobFinished(params, true);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The job's conditions no longer hold; stop at the next check and retry later
+        if (signal != null) {
+            signal.cancel();
+        }
+        return true;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        executor.shutdown();
+    }
+}
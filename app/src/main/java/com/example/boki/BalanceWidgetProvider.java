@@ -0,0 +1,80 @@
+package com.example.boki;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.widget.RemoteViews;
+
+import com.example.boki.data.local.DashboardSnapshotFile;
+import com.example.boki.models.DashboardSnapshot;
+
+import java.util.Locale;
+
+/**
+ * Home screen widget: remaining balance, spent today and how much of the budget is used.
+ *
+ * It renders only the snapshot persisted by AppStateStore after every write, so a
+ * widget refresh never opens the database or sums anything. The periodic update
+ * (see balance_widget_info.xml) only re-reads that file, e.g. to reset "today" after midnight.
+ */
+public class BalanceWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        DashboardSnapshot snapshot = new DashboardSnapshotFile(context).read();
+        appWidgetManager.updateAppWidget(appWidgetIds, buildViews(context, snapshot));
+    }
+
+    /**
+     * Push a freshly read snapshot to every placed widget (no-op without widgets)
+     */
+    static void update(Context context, DashboardSnapshot snapshot) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, BalanceWidgetProvider.class));
+        if (ids.length == 0) return;
+        manager.updateAppWidget(ids, buildViews(context, snapshot));
+    }
+
+    /**
+     * @param snapshot Cycle snapshot, or null before the app has written one
+     */
+    private static RemoteViews buildViews(Context context, DashboardSnapshot snapshot) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_balance);
+
+        if (snapshot == null) {
+            views.setTextViewText(R.id.widget_balance, "—");
+            views.setTextViewText(R.id.widget_spent_today, "افتح التطبيق لتحديث الرصيد");
+            views.setProgressBar(R.id.widget_budget_progress, 100, 0, false);
+        } else {
+            double remaining = snapshot.getRemaining();
+            views.setTextViewText(R.id.widget_balance, String.format(Locale.getDefault(), "%.2f", Math.abs(remaining)));
+            views.setTextViewText(R.id.widget_spent_today,
+                    String.format(Locale.getDefault(), "مصروف اليوم: %.2f", snapshot.getSpentToday()));
+
+            // Same colors as the Home balance
+            int color = R.color.BOKI_TextPrimary;
+            int used = 0;
+            if (snapshot.hasBudget()) {
+                double amount = snapshot.getBudget().getAmount();
+                if (remaining < 0) {
+                    color = android.R.color.holo_red_dark;
+                } else if (remaining < amount * 0.2) {
+                    color = android.R.color.holo_orange_dark;
+                }
+                used = amount > 0 ? (int) Math.min(100, Math.round(snapshot.getSpent() / amount * 100)) : 100;
+            }
+            views.setTextColor(R.id.widget_balance, context.getColor(color));
+            views.setProgressBar(R.id.widget_budget_progress, 100, used, false);
+        }
+
+        // Tapping the widget opens the app
+        Intent intent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        views.setOnClickPendingIntent(R.id.widget_root, pendingIntent);
+        return views;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.boki;
+
+import android.app.Application;
+
+/**
+ * Application class: owns the state that outlives activities and fragments.
+ */
+public class BokiApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Tabs read their state from here instead of requerying on every switch
+        StartupTrace.section("appState", () -> AppStateStore.getInstance(this));
+        // Checks every expense write against the budget thresholds
+        BudgetAlerts.getInstance(this);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        // In the background the cached rows are only worth keeping while memory is plentiful
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            AppStateStore.getInstance(this).trim();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.boki;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+
+import com.example.boki.data.local.BudgetRepository;
+import com.example.boki.data.local.DashboardRepository;
+import com.example.boki.data.local.EpochDays;
+import com.example.boki.data.local.SpendingIndex;
+import com.example.boki.models.Budget;
+import com.example.boki.models.DashboardSnapshot;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Notifies when the active budget's cycle spending reaches a threshold (50, 80 and
+ * 100% unless configured otherwise for the budget), checked on every expense write.
+ *
+ * The cycle spending is read once, on the first write after launch and again after a
+ * budget write, a wholesale change (restore, clear) or when a new cycle starts. From
+ * then on each write's amount, as reported by SpendingIndex, is added to it in O(1);
+ * nothing is polled or rescanned. Each threshold notifies once per cycle: the ones
+ * already notified are kept per budget together with the cycle start.
+ */
+public final class BudgetAlerts {
+
+    private static final String TAG = "BudgetAlerts";
+    private static final int[] DEFAULT_THRESHOLDS = { 50, 80, 100 };
+    private static final int MAX_THRESHOLDS = 31; // One bit each in the notified mask
+
+    private static final String PREFS_NAME = "budget_alerts";
+    private static final String KEY_THRESHOLDS = "thresholds_"; // + budget id: "50,80,100"
+    private static final String KEY_NOTIFIED = "notified_";     // + budget id: "<cycle start>|<mask>"
+    private static final String CHANNEL_ID = "budget_alerts";
+    private static final String NOTIFICATION_TAG = "budget_alert";
+
+    private static BudgetAlerts instance;
+
+    private final Context appContext;
+    private final DashboardRepository dashboardRepository;
+    private final SharedPreferences prefs;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    // Running state of the active budget's cycle, guarded by this
+    private boolean primed;
+    private boolean primeQueued;
+    private Budget budget;              // null without an active budget
+    private String cycleStart;
+    private int cycleStartDay;
+    private int cycleEndDay;
+    private long amountMinor;           // Amounts in minor units, as in SpendingIndex
+    private long spentMinor;
+    private int[] thresholds;           // Ascending percentages
+    private int notifiedMask;           // Bit i: thresholds[i] was notified this cycle
+
+    private BudgetAlerts(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.dashboardRepository = new DashboardRepository(appContext);
+        this.prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        SpendingIndex.getInstance().addChangeListener(new SpendingIndex.ChangeListener() {
+            @Override
+            public void onAmountChanged(int day, long minorUnits) {
+                onSpend(day, minorUnits);
+            }
+
+            @Override
+            public void onReset() {
+                reprime();
+            }
+        });
+        BudgetRepository.addChangeListener(this::reprime);
+    }
+
+    /**
+     * Shared instance, created by BokiApplication so no write goes unchecked
+     */
+    public static synchronized BudgetAlerts getInstance(Context context) {
+        if (instance == null) {
+            instance = new BudgetAlerts(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return Threshold percentages of a budget, ascending
+     */
+    public int[] getThresholds(long budgetId) {
+        String stored = prefs.getString(KEY_THRESHOLDS + budgetId, null);
+        if (stored == null || stored.isEmpty()) {
+            return DEFAULT_THRESHOLDS.clone();
+        }
+        String[] parts = stored.split(",");
+        int[] percents = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            percents[i] = Integer.parseInt(parts[i]);
+        }
+        return percents;
+    }
+
+    /**
+     * Configure the thresholds of a budget. Thresholds already passed in the current
+     * cycle notify with the next write.
+     *
+     * @param percents Percentages of the budget amount, e.g. { 50, 80, 100 }
+     * @throws IllegalArgumentException if a percentage is not positive or there are too many
+     */
+    public void setThresholds(long budgetId, int[] percents) {
+        int[] sorted = Arrays.stream(percents).distinct().sorted().toArray();
+        if (sorted.length > MAX_THRESHOLDS || (sorted.length > 0 && sorted[0] <= 0)) {
+            throw new IllegalArgumentException("Invalid thresholds: " + Arrays.toString(percents));
+        }
+        StringBuilder stored = new StringBuilder();
+        for (int percent : sorted) {
+            if (stored.length() > 0) stored.append(',');
+            stored.append(percent);
+        }
+        // The notified mask is by position, so it starts over with the new thresholds
+        prefs.edit()
+                .putString(KEY_THRESHOLDS + budgetId, stored.toString())
+                .remove(KEY_NOTIFIED + budgetId)
+                .apply();
+        reprime();
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Write events: called by writers while they hold the SpendingIndex, so only O(1)
+    // work happens here and everything else is handed to the executor
+    // ---------------------------------------------------------------------------------
+
+    private synchronized void onSpend(int day, long minorUnits) {
+        if (!primed) {
+            // The read waits for this write to commit, so it counts it
+            queuePrime();
+            return;
+        }
+        if (budget == null) return;
+        if (EpochDays.today() > cycleEndDay) {
+            // A new cycle started since the read
+            reprime();
+            return;
+        }
+        if (day == EpochDays.INVALID || day < cycleStartDay || day > cycleEndDay) return;
+
+        spentMinor += minorUnits;
+        checkThresholds();
+    }
+
+    private synchronized void reprime() {
+        primed = false;
+        queuePrime();
+    }
+
+    private void queuePrime() {
+        if (primeQueued) return;
+        primeQueued = true;
+        executor.execute(this::prime);
+    }
+
+    /**
+     * Read the active budget and its cycle spending. Runs on the executor.
+     */
+    private void prime() {
+        synchronized (this) {
+            // Requests from here on queue another read
+            primeQueued = false;
+        }
+        SpendingIndex spendingIndex = SpendingIndex.getInstance();
+        // Writers hold the index while they write and report; holding it from the read
+        // to the state swap counts every write exactly once, in the read or as a delta
+        synchronized (spendingIndex) {
+            DashboardSnapshot snapshot = dashboardRepository.getCycleSnapshot();
+            synchronized (this) {
+                primed = true;
+                budget = snapshot.getBudget();
+                if (budget == null) return;
+
+                cycleStart = snapshot.getCycleStart();
+                cycleStartDay = EpochDays.fromIso(cycleStart);
+                cycleEndDay = EpochDays.fromIso(snapshot.getCycleEnd());
+                amountMinor = Math.round(budget.getAmount() * 100.0);
+                spentMinor = Math.round(snapshot.getSpent() * 100.0);
+                thresholds = getThresholds(budget.getId());
+                notifiedMask = readNotifiedMask(budget.getId(), cycleStart);
+                // Thresholds passed while not counting (e.g. just configured) notify now
+                checkThresholds();
+            }
+        }
+    }
+
+    /**
+     * Mark the thresholds the spending reached and notify the highest new one
+     */
+    private void checkThresholds() {
+        if (amountMinor <= 0) return;
+        int reached = -1;
+        for (int i = 0; i < thresholds.length; i++) {
+            if ((notifiedMask & (1 << i)) == 0 && spentMinor * 100 >= amountMinor * thresholds[i]) {
+                notifiedMask |= 1 << i;
+                reached = i;
+            }
+        }
+        if (reached < 0) return;
+
+        Budget alerted = budget;
+        int percent = thresholds[reached];
+        String notified = cycleStart + "|" + notifiedMask;
+        executor.execute(() -> {
+            prefs.edit().putString(KEY_NOTIFIED + alerted.getId(), notified).apply();
+            showNotification(alerted, percent);
+        });
+    }
+
+    /**
+     * @return Thresholds already notified in this cycle
+     */
+    private int readNotifiedMask(long budgetId, String cycleStart) {
+        String stored = prefs.getString(KEY_NOTIFIED + budgetId, null);
+        if (stored == null) return 0;
+        int separator = stored.indexOf('|');
+        // Notified in an earlier cycle: every threshold may notify again
+        if (separator < 0 || !stored.substring(0, separator).equals(cycleStart)) return 0;
+        return Integer.parseInt(stored.substring(separator + 1));
+    }
+
+    private void showNotification(Budget budget, int percent) {
+        NotificationManagerCompat manager = NotificationManagerCompat.from(appContext);
+        if (!manager.areNotificationsEnabled()) return;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "تنبيهات الميزانية",
+                    NotificationManager.IMPORTANCE_DEFAULT);
+            appContext.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+        }
+
+        String text = percent >= 100
+                ? String.format(Locale.getDefault(), "استهلكت %d%% من ميزانية %s", percent, budget.getName())
+                : String.format(Locale.getDefault(), "وصل صرفك إلى %d%% من ميزانية %s", percent, budget.getName());
+        Intent intent = new Intent(appContext, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(appContext, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        Notification notification = new NotificationCompat.Builder(appContext, CHANNEL_ID)
+                .setSmallIcon(R.drawable.wallet)
+                .setContentTitle("تنبيه الميزانية")
+                .setContentText(text)
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true)
+                .build();
+        try {
+            // One notification per budget, replaced by the next threshold
+            manager.notify(NOTIFICATION_TAG, (int) budget.getId(), notification);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Notification permission revoked", e);
+        }
+    }
+}
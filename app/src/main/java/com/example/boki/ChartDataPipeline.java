@@ -0,0 +1,168 @@
+package com.example.boki;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import androidx.core.content.ContextCompat;
+
+import com.example.boki.data.local.ExpenseRepository;
+import com.example.boki.data.local.SpendingIndex;
+import com.example.boki.models.ExpenseSeries;
+import com.github.mikephil.charting.data.BarData;
+import com.github.mikephil.charting.data.BarDataSet;
+import com.github.mikephil.charting.data.BarEntry;
+import com.github.mikephil.charting.data.ChartData;
+import com.github.mikephil.charting.data.Entry;
+import com.github.mikephil.charting.data.LineData;
+import com.github.mikephil.charting.data.LineDataSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds MPAndroidChart data off the UI thread.
+ *
+ * Series come from ExpenseRepository.getSeries, long series are downsampled with
+ * LTTB to the chart's pixel width, and the finished BarData/LineData is cached per
+ * (range, granularity, width) so flipping between periods skips the rebuild.
+ * Cache entries are tagged with the SpendingIndex version and dropped once any
+ * expense is written.
+ */
+public final class ChartDataPipeline {
+
+    /**
+     * Receives built chart data on the main thread
+     */
+    public interface Callback<T extends ChartData<?>> {
+        void onChartData(T data);
+    }
+
+    private static final int CACHE_SIZE = 24;
+
+    private static ChartDataPipeline instance;
+
+    private final ExpenseRepository expenseRepository;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, CachedData> cache = new LruCache<>(CACHE_SIZE);
+    private final int barColor;
+    private final int lineColor;
+
+    private static final class CachedData {
+        final long version;
+        final ChartData<?> data;
+
+        CachedData(long version, ChartData<?> data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    private ChartDataPipeline(Context context) {
+        Context appContext = context.getApplicationContext();
+        this.expenseRepository = new ExpenseRepository(appContext);
+        this.barColor = ContextCompat.getColor(appContext, R.color.BOKI_MainPurple);
+        this.lineColor = ContextCompat.getColor(appContext, R.color.BOKI_lightBlue);
+    }
+
+    /**
+     * Shared pipeline so the cache survives fragments being recreated
+     */
+    public static synchronized ChartDataPipeline getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChartDataPipeline(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Build (or reuse) bar chart data for a range
+     *
+     * @param startIso  yyyy-MM-dd (inclusive)
+     * @param endIso    yyyy-MM-dd (inclusive)
+     * @param bucket    Granularity of the bars
+     * @param maxPoints Chart width in pixels; longer series are downsampled to this
+     * @param callback  Receives the data on the main thread
+     */
+    public void loadBarData(String startIso, String endIso, ExpenseSeries.Bucket bucket,
+                            int maxPoints, Callback<BarData> callback) {
+        load("bar", startIso, endIso, bucket, maxPoints, callback);
+    }
+
+    /**
+     * Build (or reuse) line chart data for a range
+     *
+     * @see #loadBarData
+     */
+    public void loadLineData(String startIso, String endIso, ExpenseSeries.Bucket bucket,
+                             int maxPoints, Callback<LineData> callback) {
+        load("line", startIso, endIso, bucket, maxPoints, callback);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ChartData<?>> void load(String kind, String startIso, String endIso,
+                                               ExpenseSeries.Bucket bucket, int maxPoints,
+                                               Callback<T> callback) {
+        String key = String.format(Locale.US, "%s|%s|%s|%s|%d", kind, startIso, endIso, bucket, maxPoints);
+
+        // Fast path: cached and still current, no thread hop needed
+        CachedData cached = cache.get(key);
+        if (cached != null && cached.version == SpendingIndex.getInstance().getVersion()) {
+            callback.onChartData((T) cached.data);
+            return;
+        }
+
+        executor.execute(() -> {
+            long version = SpendingIndex.getInstance().getVersion();
+            ExpenseSeries series = expenseRepository.getSeries(startIso, endIso, bucket, false);
+
+            float[] xs = new float[series.size()];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = i;
+            }
+            float[] ys = series.getTotals();
+            int[] kept = Lttb.select(xs, ys, Math.max(maxPoints, 3));
+
+            ChartData<?> data = kind.equals("bar")
+                    ? buildBarData(xs, ys, kept)
+                    : buildLineData(xs, ys, kept);
+            cache.put(key, new CachedData(version, data));
+
+            mainHandler.post(() -> callback.onChartData((T) data));
+        });
+    }
+
+    private BarData buildBarData(float[] xs, float[] ys, int[] kept) {
+        List<BarEntry> entries = new ArrayList<>(kept.length);
+        for (int index : kept) {
+            entries.add(new BarEntry(xs[index], ys[index]));
+        }
+        BarDataSet dataSet = new BarDataSet(entries, "");
+        dataSet.setColor(barColor);
+        dataSet.setDrawValues(false);
+
+        BarData data = new BarData(dataSet);
+        // Keep a small gap between bars even when points were dropped
+        float spacing = kept.length > 1 ? (xs[xs.length - 1] - xs[0]) / (kept.length - 1) : 1f;
+        data.setBarWidth(spacing * 0.7f);
+        return data;
+    }
+
+    private LineData buildLineData(float[] xs, float[] ys, int[] kept) {
+        List<Entry> entries = new ArrayList<>(kept.length);
+        for (int index : kept) {
+            entries.add(new Entry(xs[index], ys[index]));
+        }
+        LineDataSet dataSet = new LineDataSet(entries, "");
+        dataSet.setColor(lineColor);
+        dataSet.setDrawCircles(false);
+        dataSet.setDrawValues(false);
+        dataSet.setLineWidth(2f);
+        return new LineData(dataSet);
+    }
+}
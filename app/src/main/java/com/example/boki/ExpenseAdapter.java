@@ -8,7 +8,9 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
-import com.example.boki.models.Expense;
+import com.example.boki.data.local.EpochDays;
+import com.example.boki.data.local.ExpenseCategories;
+import com.example.boki.models.ExpenseRow;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -16,20 +18,22 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.TimeZone;
 
 /**
- * Adapter to display a list of Expense objects in a RecyclerView.
+ * Adapter to display a list of ExpenseRow objects in a RecyclerView.
+ * Rows carry no note; the full expense is loaded when one is opened.
  */
 public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseViewHolder> {
 
     public interface OnExpenseActionListener {
-        void onExpenseClick(Expense expense);
-        void onExpenseLongClick(Expense expense);
+        void onExpenseClick(ExpenseRow expense);
+        void onExpenseLongClick(ExpenseRow expense);
     }
 
     // Note 1: The list is initialized here but kept private.
     // It's better to manage the data internally and provide a public method to update it.
-    private List<Expense> expenses = new ArrayList<>();
+    private List<ExpenseRow> expenses = new ArrayList<>();
     private OnExpenseActionListener listener;
 
     public void setOnExpenseActionListener(OnExpenseActionListener listener) {
@@ -56,12 +60,12 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
 
     /**
      * Note 4: This method connects your data to the ViewHolder.
-     * It's more efficient to get the current Expense object once.
+     * It's more efficient to get the current ExpenseRow object once.
      */
     @Override
     public void onBindViewHolder(@NonNull ExpenseViewHolder holder, int position) {
         // Get the current expense item once to avoid multiple lookups.
-        Expense currentExpense = expenses.get(position);
+        ExpenseRow currentExpense = expenses.get(position);
         // Call the 'bind' method in the ViewHolder to set the data.
         holder.bind(currentExpense);
         holder.itemView.setOnClickListener(v -> {
@@ -89,7 +93,9 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
      * It allows your Fragment or Activity to update the list of expenses in the adapter.
      * 'notifyDataSetChanged()' tells the RecyclerView to refresh itself with the new data.
      */
-    public void setExpenses(List<Expense> newExpenses) {
+    public void setExpenses(List<ExpenseRow> newExpenses) {
+        // Same rows again (unchanged store state): keep the list and its scroll position as is
+        if (newExpenses == this.expenses) return;
         this.expenses = newExpenses;
         notifyDataSetChanged(); // Refresh the list
     }
@@ -129,56 +135,50 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
             }
         }
 
-        // Convert DB date (yyyy-MM-dd) -> Arabic UI date (dd MMM yyyy)
-        private String formatDateForUi(String dbDate) {
-            if (dbDate == null) return "";
-            try {
-                SimpleDateFormat dbFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
-                SimpleDateFormat uiFormat = new SimpleDateFormat("dd MMM yyyy", new Locale("ar"));
-                Date parsed = dbFormat.parse(dbDate);
-                return (parsed != null) ? uiFormat.format(parsed) : dbDate;
-            } catch (ParseException e) {
-                // Fallback for old formats like "6-12-2025"
-                return dbDate;
-            }
+        // Convert epoch day -> Arabic UI date (dd MMM yyyy); UTC so the day never shifts
+        private String formatDateForUi(int day) {
+            SimpleDateFormat uiFormat = new SimpleDateFormat("dd MMM yyyy", new Locale("ar"));
+            uiFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return uiFormat.format(new Date(day * 86_400_000L));
         }
 
         /**
-         * Note 6: This new 'bind' method takes an Expense object and sets the view's content.
+         * Note 6: This new 'bind' method takes an ExpenseRow object and sets the view's content.
          * This makes the onBindViewHolder method cleaner and organizes the code better.
          */
-        public void bind(Expense expense) {
+        public void bind(ExpenseRow expense) {
             operationtitle.setText(expense.getTitle());
             amount.setText(String.format(Locale.getDefault(), "%.2f", expense.getAmount()));
-            date.setText(formatDateForUi(expense.getDate()));
+            // A legacy date not yet repaired is shown as stored rather than as 1970
+            date.setText(expense.getDay() != EpochDays.INVALID
+                    ? formatDateForUi(expense.getDay()) : expense.getRawDate());
             time.setText(formatTimeForUi(expense.getTime()));
 
             // Get the context from the itemView, which is needed to access resources (colors).
             Context context = itemView.getContext();
             int colorResId;
-            String category = expense.getCategory();
 
-            // Use a switch statement to determine the color based on the category string.
-            switch (category) {
-                case "مطاعم":
+            // Use a switch statement to determine the color based on the category id.
+            switch (expense.getCategoryId()) {
+                case ExpenseCategories.FOOD:
                     colorResId = R.color.BOKI_Pink;
                     break;
-                case "العائلة":
+                case ExpenseCategories.FAMILY:
                     colorResId = R.color.BOKI_Blue;
                     break;
-                case "صحة وعناية":
+                case ExpenseCategories.HEALTH:
                     colorResId = R.color.BOKI_LightRead;
                     break;
-                case "مواصلات":
+                case ExpenseCategories.TRANSPORT:
                     colorResId = R.color.BOKI_lightPurple;
                     break;
-                case "اتصالات":
+                case ExpenseCategories.COMMUNICATION:
                     colorResId = R.color.BOKI_lightBlue;
                     break;
-                case "تعليم":
+                case ExpenseCategories.EDUCATION:
                     colorResId = R.color.BOKI_Green;
                     break;
-                case "ترفية":
+                case ExpenseCategories.ENTERTAINMENT:
                     colorResId = R.color.BOKI_Orange;
                     break;
                 default: // This will handle "Other" or any unrecognized category
@@ -11,6 +11,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import com.example.boki.data.local.EpochDays;
 import com.example.boki.data.local.ExpenseRepository;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -19,9 +20,10 @@ import androidx.recyclerview.widget.ConcatAdapter;
 import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.example.boki.databinding.FragmentExpensesBinding;
+import com.example.boki.models.DashboardSnapshot;
+import com.example.boki.models.ExpenseSeries;
+import com.github.mikephil.charting.charts.BarChart;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
@@ -38,9 +40,11 @@ public class ExpensesFragment extends Fragment {
     private final Calendar anchorCal = Calendar.getInstance();
 
     private ExpenseRepository expenseRepository;
+    private AppStateStore stateStore;
     private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
     private final DecimalFormat amountFormat = new DecimalFormat("0.##");
     private ExpenseCategoryAdapter categoryAdapter;
+    private ChartDataPipeline chartPipeline;
 
     // (Optional but recommended) Your adapters for the RecyclerView solution
 //    private ExpenseCategoryAdapter expenseAdapter;
@@ -74,12 +78,20 @@ public class ExpensesFragment extends Fragment {
         // If you are using the RecyclerView solution, you should put this logic inside the HeaderAdapter.
         resetAnchorToToday();
         expenseRepository = new ExpenseRepository(requireContext());
+        stateStore = AppStateStore.getInstance(requireContext());
+        chartPipeline = ChartDataPipeline.getInstance(requireContext());
         setupCategoryRecycler();
+        setupChart();
         setupButtonClickListeners();
         updateRangeAndTotalUI();
+    }
 
-
-        // Listen for "expense_saved" events from Add Expense screen/dialog
+    /**
+     * Listen for "expense_saved" events from Add Expense screen/dialog.
+     * One listener per key: the tabs are kept alive, so the visible tab takes the keys
+     * over each time it resumes; hidden tabs refresh when they come back instead.
+     */
+    private void listenForExpenseChanges() {
         getParentFragmentManager().setFragmentResultListener(
                 "expense_refresh",
                 getViewLifecycleOwner(),
@@ -90,7 +102,6 @@ public class ExpensesFragment extends Fragment {
                 getViewLifecycleOwner(),
                 (requestKey, result) -> refreshUiAfterExpenseChange()
         );
-
     }
 
     private void setupCategoryRecycler() {
@@ -106,6 +117,66 @@ public class ExpensesFragment extends Fragment {
         binding.expensesCategoriesRecycler.setAdapter(categoryAdapter);
     }
 
+    private void setupChart() {
+        if (binding == null) return;
+
+        BarChart chart = binding.expensesBarChart;
+        int textColor = ContextCompat.getColor(requireContext(), R.color.BOKI_TextSecondary);
+
+        chart.getDescription().setEnabled(false);
+        chart.getLegend().setEnabled(false);
+        chart.getAxisRight().setEnabled(false);
+        chart.getAxisLeft().setTextColor(textColor);
+        chart.getAxisLeft().setAxisMinimum(0f);
+        chart.getXAxis().setTextColor(textColor);
+        chart.getXAxis().setDrawGridLines(false);
+        chart.setNoDataTextColor(textColor);
+        chart.setScaleEnabled(false);
+    }
+
+    /**
+     * Ask the chart pipeline for the bars of the current range.
+     * Built off the UI thread and cached, so switching periods back and forth is instant.
+     */
+    private void updateChart(String startIso, String endIso) {
+        if (binding == null || chartPipeline == null) return;
+
+        // One point per pixel at most; before the first layout fall back to the screen width
+        int width = binding.expensesBarChart.getWidth();
+        if (width <= 0) {
+            width = getResources().getDisplayMetrics().widthPixels;
+        }
+
+        chartPipeline.loadBarData(startIso, endIso, ExpenseSeries.Bucket.DAY, width, data -> {
+            if (binding == null) return;
+            binding.expensesBarChart.setData(data);
+            binding.expensesBarChart.invalidate();
+        });
+    }
+
+    /**
+     * Reload the yearly heatmap: one packed per-day array, quantized off the UI thread.
+     * The view then draws from the cached levels without touching the database.
+     */
+    private void updateHeatmap() {
+        if (binding == null) return;
+
+        dbExecutor.execute(() -> {
+            if (expenseRepository == null) return;
+
+            int today = EpochDays.today();
+            long[] dailyTotals = expenseRepository.getDailyTotals(EpochDays.toIso(today), SpendingHeatmapView.DAYS);
+            byte[] levels = SpendingHeatmapView.quantize(dailyTotals);
+            int firstDay = today - (SpendingHeatmapView.DAYS - 1);
+
+            requireActivity().runOnUiThread(() -> {
+                if (binding != null) {
+                    binding.expensesHeatmap.setLevels(levels, firstDay);
+                }
+            });
+        });
+    }
+
     private void setupButtonClickListeners() {
         // Define colors correctly within a lifecycle method where context is available.
         int selectedBgColor = ContextCompat.getColor(requireContext(), R.color.BOKI_MidPurple);
@@ -256,44 +327,26 @@ public class ExpensesFragment extends Fragment {
         final String startIso = formatIso(range.start);
         final String endIso = formatIso(range.end);
 
-        // 3) Query DB off the UI thread
-        dbExecutor.execute(() -> {
-            double total = 0.0;
-            List<com.example.boki.models.ExpenseCategorySummary> raw = new ArrayList<>();
-            if (expenseRepository != null) {
-                total = expenseRepository.getTotalAmountBetween(startIso, endIso);
-                raw = expenseRepository.getCategoryTotalsBetween(startIso, endIso);
-            }
-            final double finalTotal = total;
-
-            // Build list with calculated percentages (Top-to-bottom already sorted DESC by SQL)
-            List<com.example.boki.models.ExpenseCategorySummary> withPercent = new ArrayList<>();
-            if (raw != null) {
-                for (com.example.boki.models.ExpenseCategorySummary item : raw) {
-                    double pct = 0.0;
-                    if (finalTotal > 0) {
-                        pct = (item.getTotalAmount() / finalTotal) * 100.0;
-                    }
-                    withPercent.add(new com.example.boki.models.ExpenseCategorySummary(
-                            item.getCategory(),
-                            item.getTotalAmount(),
-                            pct
-                    ));
-                }
-            }
-
-            final List<com.example.boki.models.ExpenseCategorySummary> finalList = withPercent;
+        // Daily view charts the 30 days leading up to the selected day; other views chart their own range
+        if (currentTimeView == TimeView.DAILY) {
+            Calendar chartStart = (Calendar) anchorCal.clone();
+            chartStart.add(Calendar.DAY_OF_MONTH, -29);
+            updateChart(formatIso(chartStart.getTime()), endIso);
+        } else {
+            updateChart(startIso, endIso);
+        }
 
-            requireActivity().runOnUiThread(() -> {
-                if (binding != null) {
-                    // رقم فقط (بدون عملة)
-                    binding.amountText.setText(amountFormat.format(finalTotal));
+        // 3) Total and categories from one snapshot; queried off the UI thread only if stale
+        stateStore.loadSnapshot(startIso, endIso, snapshot -> {
+            if (binding != null) {
+                // رقم فقط (بدون عملة)
+                binding.amountText.setText(amountFormat.format(snapshot.getTotal()));
 
-                    if (categoryAdapter != null) {
-                        categoryAdapter.submitList(finalList);
-                    }
+                if (categoryAdapter != null) {
+                    // Already sorted DESC with percentages
+                    categoryAdapter.submitList(snapshot.getCategories());
                 }
-            });
+            }
         });
     }
 
@@ -303,6 +356,7 @@ public class ExpensesFragment extends Fragment {
     private void refreshUiAfterExpenseChange() {
         // Update totals/date range
         updateRangeAndTotalUI();
+        updateHeatmap();
 
         // If you have a RecyclerView/Adapter for expenses, refresh it here.
         // Example (when you add your adapter):
@@ -407,6 +461,7 @@ public class ExpensesFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
+        listenForExpenseChanges();
         // Safety refresh when coming back to this tab
         refreshUiAfterExpenseChange();
     }
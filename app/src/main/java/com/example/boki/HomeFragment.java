@@ -3,7 +3,6 @@ package com.example.boki;
 import android.os.Bundle;
 
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
 import android.view.LayoutInflater;
@@ -11,8 +10,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import com.example.boki.data.local.BudgetRepository;
-import com.example.boki.models.Budget;
+import com.example.boki.models.DashboardSnapshot;
 
 import java.util.Locale;
 
@@ -22,7 +20,7 @@ import java.util.Locale;
  */
 public class HomeFragment extends Fragment {
 
-    private BudgetRepository budgetRepository;
+    private AppStateStore stateStore;
     private TextView remainingBalanceTextView;
 
     public HomeFragment() {
@@ -35,8 +33,8 @@ public class HomeFragment extends Fragment {
         // Inflate the layout for this fragment
         View view = inflater.inflate(R.layout.fragment_home, container, false);
         
-        // Initialize repository
-        budgetRepository = new BudgetRepository(requireContext());
+        // Shared state: the cycle snapshot survives tab switches
+        stateStore = AppStateStore.getInstance(requireContext());
         
         // Find the TextView that shows the remaining balance
         remainingBalanceTextView = view.findViewById(R.id.textView);
@@ -44,66 +42,68 @@ public class HomeFragment extends Fragment {
         return view;
     }
     
-    @Override
-    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
-        super.onViewCreated(view, savedInstanceState);
-        
-        // Load and display remaining balance
-        updateRemainingBalance();
-    }
-    
     @Override
     public void onResume() {
         super.onResume();
-        // Refresh balance when fragment becomes visible
+        // Refresh balance when fragment becomes visible. This is also the first load:
+        // loading in onViewCreated() too would read the cycle twice on a cold start
         updateRemainingBalance();
     }
     
     /**
      * US21: Update the remaining balance display
-     * Shows the remaining balance from the active budget
+     * Shows the remaining balance of the active budget; no query unless something was written
      */
     private void updateRemainingBalance() {
-        try {
-            Budget activeBudget = budgetRepository.getActiveBudget();
+        // Cold start: show the balance persisted by the last run at once; the load below
+        // reconciles it with the database
+        if (stateStore.peekCycleSnapshot() == null) {
+            DashboardSnapshot persisted = stateStore.peekPersistedCycleSnapshot();
+            if (persisted != null) showRemainingBalance(persisted);
+        }
+        stateStore.loadCycleSnapshot(this::showRemainingBalance);
+    }
+    
+    /**
+     * @param snapshot Snapshot of the active budget's cycle
+     */
+    private void showRemainingBalance(DashboardSnapshot snapshot) {
+        if (remainingBalanceTextView == null || !isAdded()) return;
+        
+        if (snapshot.hasBudget()) {
+            double remainingBalance = snapshot.getRemaining();
+            
+            // Format the balance to 2 decimal places - always show absolute value
+            String formattedBalance = String.format(Locale.getDefault(), "%.2f", Math.abs(remainingBalance));
+            remainingBalanceTextView.setText(formattedBalance);
             
-            if (activeBudget != null) {
-                double remainingBalance = budgetRepository.getRemainingBalance(activeBudget);
-                
-                // Format the balance to 2 decimal places - always show absolute value
-                String formattedBalance = String.format(Locale.getDefault(), "%.2f", Math.abs(remainingBalance));
-                remainingBalanceTextView.setText(formattedBalance);
-                
-                // Optional: Change text color based on remaining balance
-                if (remainingBalance < 0) {
-                    // Over budget - show in red
-                    remainingBalanceTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
-                } else if (remainingBalance < activeBudget.getAmount() * 0.2) {
-                    // Less than 20% remaining - show warning color
-                    remainingBalanceTextView.setTextColor(getResources().getColor(android.R.color.holo_orange_dark));
-                } else {
-                    // Sufficient balance - normal color
-                    remainingBalanceTextView.setTextColor(getResources().getColor(R.color.BOKI_TextPrimary));
-                }
+            // Optional: Change text color based on remaining balance
+            if (remainingBalance < 0) {
+                // Over budget - show in red
+                remainingBalanceTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
+            } else if (remainingBalance < snapshot.getBudget().getAmount() * 0.2) {
+                // Less than 20% remaining - show warning color
+                remainingBalanceTextView.setTextColor(getResources().getColor(android.R.color.holo_orange_dark));
             } else {
-                // No active budget
-                remainingBalanceTextView.setText("0.00");
+                // Sufficient balance - normal color
                 remainingBalanceTextView.setTextColor(getResources().getColor(R.color.BOKI_TextPrimary));
             }
-        } catch (Exception e) {
-            // Handle any errors gracefully
+        } else {
+            // No active budget
             remainingBalanceTextView.setText("0.00");
             remainingBalanceTextView.setTextColor(getResources().getColor(R.color.BOKI_TextPrimary));
         }
+
+        // Time to balance: the launch is complete once the first balance is on screen
+        if (StartupTrace.milestone(StartupTrace.BALANCE_SHOWN)) {
+            requireActivity().reportFullyDrawn();
+        }
     }
     
     @Override
     public void onDestroyView() {
         super.onDestroyView();
         
-        // Close repository connection
-        if (budgetRepository != null) {
-            budgetRepository.close();
-        }
+        remainingBalanceTextView = null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package com.example.boki;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling.
+ * Picks the points that keep the visual shape of a long series, so a chart
+ * never has to draw more points than it has pixels.
+ */
+final class Lttb {
+
+    private Lttb() {
+        // Utility class
+    }
+
+    /**
+     * Select which points to keep
+     *
+     * @param xs        Ascending x values
+     * @param ys        y values, parallel to xs
+     * @param threshold Maximum number of points to keep
+     * @return Ascending indices of the kept points (all indices if no downsampling is needed)
+     */
+    static int[] select(float[] xs, float[] ys, int threshold) {
+        int n = xs.length;
+        if (threshold >= n || threshold < 3) {
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        int[] kept = new int[threshold];
+        int k = 0;
+
+        // Always keep the first point
+        int a = 0;
+        kept[k++] = a;
+
+        // Every bucket except the first and last holds this many points
+        double every = (double) (n - 2) / (threshold - 2);
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket is the third vertex of the triangle
+            int avgStart = (int) Math.floor((i + 1) * every) + 1;
+            int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgStart; j < avgEnd; j++) {
+                avgX += xs[j];
+                avgY += ys[j];
+            }
+            int avgLength = avgEnd - avgStart;
+            avgX /= avgLength;
+            avgY /= avgLength;
+
+            // Pick the point in this bucket forming the largest triangle with a and the average
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double ax = xs[a];
+            double ay = ys[a];
+            double maxArea = -1;
+            int next = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (ys[j] - ay) - (ax - xs[j]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+
+            kept[k++] = next;
+            a = next;
+        }
+
+        // Always keep the last point
+        kept[k] = n - 1;
+        return kept;
+    }
+}
@@ -1,15 +1,22 @@
 // I have removed the conflict markers and kept the correct imports.
 package com.example.boki;
 
+import android.Manifest;
 import android.app.DatePickerDialog;
 import android.app.Dialog;
 import android.app.TimePickerDialog;
 import android.content.DialogInterface;
+import android.content.pm.PackageManager;
 import android.graphics.drawable.ColorDrawable;
 import android.icu.util.LocaleData;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.util.Log;
+import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.DatePicker;
 import android.widget.TimePicker;
 import android.widget.Toast;
@@ -19,12 +26,15 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
 
 import com.example.boki.databinding.ActivityMainBinding;
 import com.example.boki.databinding.AddoperationsDialogBoxBinding;
 
 // These imports were missing from one of the versions
 import com.example.boki.data.local.ExpenseRepository;
+import com.example.boki.data.local.MigrationRunner;
+import com.example.boki.data.local.RecurringExpenseRepository;
 import com.example.boki.databinding.CategorySelectionDialogBinding;
 import com.example.boki.models.Expense;
 import com.google.android.material.button.MaterialButton;
@@ -34,6 +44,8 @@ import java.time.LocalDateTime;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Main Activity
@@ -48,6 +60,11 @@ public class MainActivity extends AppCompatActivity {
 
     // Added the repository from the HEAD branch, as it's needed for the database.
     private ExpenseRepository expenseRepository;
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+    // Set when migrations finish while the activity cannot commit fragments
+    private boolean homePending;
+    private static final String TAB_TAG_PREFIX = "tab_";
+    private static final int REQUEST_NOTIFICATIONS = 1;
 
     //inslize the dialog objct
      Dialog addoperations_dialog,category_dialog ;
@@ -55,43 +72,25 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        bindingMain = ActivityMainBinding.inflate(getLayoutInflater());
-        setContentView(bindingMain.getRoot());
+        // Startup runs in stages, each traced by StartupTrace: the first frame gets only
+        // the main layout, navigation and Home; Home then loads its balance through
+        // AppStateStore; everything else waits until the first frame is drawn
+        StartupTrace.section("inflateMain", () -> {
+            bindingMain = ActivityMainBinding.inflate(getLayoutInflater());
+            setContentView(bindingMain.getRoot());
+        });
 
         // Initialize the repository. This is important for saving data.
         expenseRepository = new ExpenseRepository(this);
 
-        // -- DIALOG BOX SETUP --
-        //1- ADD OPERATION DIALOG
-        addoperations_dialog = new Dialog(MainActivity.this);
-        dialogBinding = AddoperationsDialogBoxBinding.inflate(getLayoutInflater());
-        addoperations_dialog.setContentView(dialogBinding.getRoot());
-
-        if (addoperations_dialog.getWindow() != null) {
-            addoperations_dialog.getWindow().setLayout(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-            // Use ColorDrawable for transparency to let the custom background show its corners.
-            addoperations_dialog.getWindow().setBackgroundDrawable(new ColorDrawable(android.graphics.Color.TRANSPARENT));
-        }
-        addoperations_dialog.setCancelable(false);
-
-        //2- CATEGORY DIALOG
-        category_dialog = new Dialog(MainActivity.this);
-        categoryBinding = CategorySelectionDialogBinding.inflate(getLayoutInflater());
-        category_dialog.setContentView(categoryBinding.getRoot());
-
-        if (category_dialog.getWindow() != null) {
-            category_dialog.getWindow().setLayout(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-            category_dialog.getWindow().setBackgroundDrawable(new ColorDrawable(android.graphics.Color.TRANSPARENT));
-        }
-        category_dialog.setCancelable(false);
-
-
-
-
-        // -- LISTENERS SETUP --
+        // Upgrade the database off the UI thread first; the screens wait behind a progress dialog if needed
+        boolean upToDate = MigrationRunner.isUpToDate(this);
+        runMigrations(!upToDate);
 
         // FAB listener to show the dialog
         bindingMain.fab.setOnClickListener(v -> {
+            // Inflated after the first frame, or here if the FAB is tapped before that
+            ensureAddOperationDialog();
             // Show the dialog
             addoperations_dialog.show();
             //set the date and time to curent date and time
@@ -113,6 +112,127 @@ public class MainActivity extends AppCompatActivity {
 
         });
 
+        // --- BOTTOM NAVIGATION SETUP ---
+        StartupTrace.section("navigation", () -> {
+            bindingMain.bnvBottom.getMenu().getItem(2).setEnabled(false);
+            bindingMain.bnvBottom.setSelectedItemId(R.id.home);
+            if (upToDate) {
+                showTab(R.id.home);
+            }
+
+            bindingMain.bnvBottom.setOnItemSelectedListener(item -> {
+                showTab(item.getItemId());
+                return true;
+            });
+        });
+
+        runAfterFirstFrame(this::startDeferredWork);
+    }
+
+    /**
+     * Run an action on the UI thread once the first frame has been drawn
+     */
+    private void runAfterFirstFrame(Runnable action) {
+        View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                // Posted while the frame is being drawn, so it runs right after it
+                decorView.post(() -> {
+                    StartupTrace.milestone(StartupTrace.FIRST_FRAME);
+                    action.run();
+                });
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Last startup stage: what the first frame and the balance do not need
+     */
+    private void startDeferredWork() {
+        if (isFinishing() || isDestroyed()) return;
+
+        StartupTrace.section("deferredUi", () -> {
+            ensureAddOperationDialog();
+            // Deleted expenses are only marked; the idle-time job removes them for good
+            PurgeDeletedJobService.schedule(this);
+            // Statistics, vacuum and integrity checks while idle and charging
+            MaintenanceJobService.schedule(this);
+            // Daily catch-up of recurring expenses on days the app is not opened
+            RecurringExpenseJobService.schedule(this);
+            // Budget alerts are notifications, which need the runtime permission since Android 13
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                    && checkSelfPermission(Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
+                requestPermissions(new String[]{ Manifest.permission.POST_NOTIFICATIONS }, REQUEST_NOTIFICATIONS);
+            }
+        });
+
+        // Write the recurring expenses that became due, after the migrations and before the
+        // index is built so it includes them
+        RecurringExpenseRepository recurringRepository = new RecurringExpenseRepository(getApplicationContext());
+        dbExecutor.execute(() -> {
+            try {
+                int[] written = { 0 };
+                StartupTrace.section("recurringExpenses", () -> written[0] = recurringRepository.materializeDue());
+                if (written[0] > 0) {
+                    runOnUiThread(this::notifyRecurringExpensesWritten);
+                }
+            } catch (Exception e) {
+                Log.e("MainActivity", "Recurring expenses failed", e);
+            } finally {
+                recurringRepository.close();
+            }
+        });
+
+        // Warm up the database by building the range-total index (after the migrations,
+        // on the same executor); queries fall back to SQL until it is ready
+        dbExecutor.execute(() -> StartupTrace.section("spendingIndex", () -> expenseRepository.buildSpendingIndex()));
+        // Then prime the first page of the Operations tab, so its first visit runs no query
+        AppStateStore stateStore = AppStateStore.getInstance(getApplicationContext());
+        dbExecutor.execute(() -> stateStore.loadOperationRows(rows -> { }));
+    }
+
+    /**
+     * Tell the open screens that expenses were added, as the add operation dialog does
+     */
+    private void notifyRecurringExpensesWritten() {
+        Bundle result = new Bundle();
+        result.putBoolean("expense_added", true);
+        getSupportFragmentManager().setFragmentResult("expense_refresh", result);
+    }
+
+    /**
+     * Inflate the add operation and category dialogs and wire their listeners, once
+     */
+    private void ensureAddOperationDialog() {
+        if (addoperations_dialog != null) return;
+
+        // -- DIALOG BOX SETUP --
+        //1- ADD OPERATION DIALOG
+        addoperations_dialog = new Dialog(MainActivity.this);
+        dialogBinding = AddoperationsDialogBoxBinding.inflate(getLayoutInflater());
+        addoperations_dialog.setContentView(dialogBinding.getRoot());
+
+        if (addoperations_dialog.getWindow() != null) {
+            addoperations_dialog.getWindow().setLayout(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+            // Use ColorDrawable for transparency to let the custom background show its corners.
+            addoperations_dialog.getWindow().setBackgroundDrawable(new ColorDrawable(android.graphics.Color.TRANSPARENT));
+        }
+        addoperations_dialog.setCancelable(false);
+
+        //2- CATEGORY DIALOG
+        category_dialog = new Dialog(MainActivity.this);
+        categoryBinding = CategorySelectionDialogBinding.inflate(getLayoutInflater());
+        category_dialog.setContentView(categoryBinding.getRoot());
+
+        if (category_dialog.getWindow() != null) {
+            category_dialog.getWindow().setLayout(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+            category_dialog.getWindow().setBackgroundDrawable(new ColorDrawable(android.graphics.Color.TRANSPARENT));
+        }
+        category_dialog.setCancelable(false);
+
         //Open category dialog
         dialogBinding.categoryBtn.setOnClickListener(v -> {
             category_dialog.show();
@@ -295,31 +415,13 @@ public class MainActivity extends AppCompatActivity {
         // Date and Time Picker listeners
         dialogBinding.datePickerBtn.setOnClickListener(v -> openDatePickerDialog());
         dialogBinding.timePickerBtn.setOnClickListener(v -> openTimePickerDialog());
-
-        // --- BOTTOM NAVIGATION SETUP ---
-        bindingMain.bnvBottom.getMenu().getItem(2).setEnabled(false);
-        bindingMain.bnvBottom.setSelectedItemId(R.id.home);
-        replacFragment(new HomeFragment());
-
-        bindingMain.bnvBottom.setOnItemSelectedListener(item -> {
-            int itemId = item.getItemId();
-            if (itemId == R.id.home) {
-                replacFragment(new HomeFragment());
-            } else if (itemId == R.id.budget) {
-                replacFragment(new BudgetFragment());
-            } else if (itemId == R.id.operations) {
-                replacFragment(new OperationsFragment());
-            } else if (itemId == R.id.expenses) {
-                replacFragment(new ExpensesFragment());
-            }
-            return true;
-        });
     }
 
     // This onDestroy method is important for closing the database connection.
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        dbExecutor.shutdown();
         if (expenseRepository != null) {
             expenseRepository.close();
         }
@@ -327,12 +429,106 @@ public class MainActivity extends AppCompatActivity {
 
 
 
-    // Method to replace fragments
-    private void replacFragment(Fragment fragment) {
+    /**
+     * Run schema migrations and backfills on the database executor.
+     * Cancelling only postpones them: the next launch resumes where they stopped.
+     *
+     * @param showProgress Block the screens behind a progress dialog until done
+     */
+    private void runMigrations(boolean showProgress) {
+        CancellationSignal signal = new CancellationSignal();
+        TaskProgressDialog progressDialog = showProgress
+                ? new TaskProgressDialog(this, "تحديث البيانات", signal) : null;
+        if (progressDialog != null) {
+            progressDialog.show();
+        }
+
+        MigrationRunner runner = new MigrationRunner(getApplicationContext());
+        dbExecutor.execute(() -> {
+            try {
+                runner.run((done, total) -> {
+                    if (progressDialog != null) progressDialog.setProgress(done, total);
+                }, signal);
+            } catch (OperationCanceledException e) {
+                Log.i("MainActivity", "Migration postponed");
+            } catch (Exception e) {
+                Log.e("MainActivity", "Migration failed", e);
+            } finally {
+                runner.close();
+            }
+            // Backfills may rewrite rows without moving the SpendingIndex (e.g. times)
+            AppStateStore.getInstance(getApplicationContext()).invalidate();
+
+            if (progressDialog != null) {
+                progressDialog.dismiss();
+                runOnUiThread(() -> {
+                    homePending = true;
+                    showPendingHome();
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showPendingHome();
+    }
+
+    private void showPendingHome() {
+        if (homePending && !isDestroyed() && !getSupportFragmentManager().isStateSaved()) {
+            homePending = false;
+            showTab(R.id.home);
+        }
+    }
+
+    /**
+     * Show a top-level tab. The four tabs are created once and then only shown or
+     * hidden, so their views, adapters and scroll positions survive switches.
+     * Hidden tabs are capped at STARTED: they pause, and onResume() runs again
+     * (and refreshes from AppStateStore) when they come back.
+     */
+    private void showTab(int itemId) {
+        String tag = tabTag(itemId);
+        if (tag == null) return;
+
         FragmentManager fragmentManager = getSupportFragmentManager();
-        FragmentTransaction fragmentTransaction = fragmentManager.beginTransaction();
-        fragmentTransaction.replace(R.id.frame_layout, fragment);
-        fragmentTransaction.commit();
+        Fragment target = fragmentManager.findFragmentByTag(tag);
+        FragmentTransaction transaction = fragmentManager.beginTransaction().setReorderingAllowed(true);
+        for (Fragment fragment : fragmentManager.getFragments()) {
+            String fragmentTag = fragment.getTag();
+            if (fragment != target && fragmentTag != null && fragmentTag.startsWith(TAB_TAG_PREFIX)
+                    && !fragment.isHidden()) {
+                transaction.hide(fragment);
+                transaction.setMaxLifecycle(fragment, Lifecycle.State.STARTED);
+            }
+        }
+        if (target == null) {
+            target = newTab(itemId);
+            transaction.add(R.id.frame_layout, target, tag);
+        } else {
+            transaction.show(target);
+        }
+        transaction.setMaxLifecycle(target, Lifecycle.State.RESUMED);
+        transaction.commit();
+    }
+
+    /**
+     * @return Fragment tag of a bottom navigation item, or null if it is not a tab
+     */
+    static String tabTag(int itemId) {
+        if (itemId == R.id.home) return TAB_TAG_PREFIX + "home";
+        if (itemId == R.id.budget) return TAB_TAG_PREFIX + "budget";
+        if (itemId == R.id.operations) return TAB_TAG_PREFIX + "operations";
+        if (itemId == R.id.expenses) return TAB_TAG_PREFIX + "expenses";
+        return null;
+    }
+
+    private static Fragment newTab(int itemId) {
+        if (itemId == R.id.budget) return new BudgetFragment();
+        if (itemId == R.id.operations) return new OperationsFragment();
+        if (itemId == R.id.expenses) return new ExpensesFragment();
+        return new HomeFragment();
     }
 
     // Method to open DatePickerDialog
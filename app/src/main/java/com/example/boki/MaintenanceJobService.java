@@ -0,0 +1,46 @@
+package com.example.boki;
+
+import android.app.job.JobInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+
+import com.example.boki.data.local.DatabaseMaintenance;
+
+/**
+ * Runs DatabaseMaintenance (statistics, incremental vacuum, integrity check) while
+ * the device is idle and charging, so the file rewrite on the first run and the
+ * weekly quick_check never compete with the user or the battery.
+ */
+public class MaintenanceJobService extends BackgroundJobService {
+
+    private static final String TAG = "MaintenanceJob";
+
+    private static final long MAINTENANCE_INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    public MaintenanceJobService() {
+        super(TAG);
+    }
+
+    /**
+     * Schedule the daily maintenance unless it is already pending
+     *
+     * @param context Any context
+     */
+    public static void schedule(Context context) {
+        schedule(context, new JobInfo.Builder(MAINTENANCE_JOB_ID, new ComponentName(context, MaintenanceJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(MAINTENANCE_INTERVAL_MS));
+    }
+
+    @Override
+    protected void runJob(CancellationSignal signal) {
+        DatabaseMaintenance maintenance = new DatabaseMaintenance(getApplicationContext());
+        try {
+            maintenance.run(signal);
+        } finally {
+            maintenance.close();
+        }
+    }
+}
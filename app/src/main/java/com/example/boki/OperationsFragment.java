@@ -4,12 +4,22 @@ import android.app.AlertDialog;
 import android.app.DatePickerDialog;
 import android.app.Dialog;
 import android.app.TimePickerDialog;
+import android.content.Context;
+import android.database.Cursor;
 import android.graphics.drawable.ColorDrawable;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -17,17 +27,30 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Toast;
+import com.example.boki.data.local.ExpenseBackup;
+import com.example.boki.data.local.ExpenseCsvExporter;
+import com.example.boki.data.local.ExpenseCsvImporter;
 import com.example.boki.data.local.ExpenseRepository;
 import com.example.boki.models.Expense;
+import com.example.boki.models.ExpenseRow;
 import com.example.boki.databinding.CategorySelectionDialogBinding;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.snackbar.Snackbar;
 
 
 /**
@@ -40,6 +63,51 @@ public class OperationsFragment extends Fragment {
     private RecyclerView recyclerView;
     private ExpenseAdapter expenseAdapter;
     private ExpenseRepository expenseRepository;
+    private AppStateStore stateStore;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // Rows from the end of the list at which the next page is read
+    private static final int LOAD_MORE_THRESHOLD = 20;
+    private boolean loadingMore;
+
+    // Let the user pick where the CSV export is written (Storage Access Framework)
+    private final ActivityResultLauncher<String> exportCsvLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("text/csv"), uri -> {
+                if (uri != null) {
+                    exportCsv(uri);
+                }
+            });
+
+    // Let the user pick a CSV file or bank statement to import
+    private final ActivityResultLauncher<String[]> importCsvLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+                if (uri != null) {
+                    importCsv(uri);
+                }
+            });
+
+    // Destination of a full binary backup
+    private final ActivityResultLauncher<String> backupLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("application/octet-stream"), uri -> {
+                if (uri != null) {
+                    backup(uri, false);
+                }
+            });
+
+    // Destination of an incremental backup (changes since the previous backup)
+    private final ActivityResultLauncher<String> incrementalBackupLauncher =
+            registerForActivityResult(new ActivityResultContracts.CreateDocument("application/octet-stream"), uri -> {
+                if (uri != null) {
+                    backup(uri, true);
+                }
+            });
+
+    // Backup files to restore from: one full backup plus any of its increments
+    private final ActivityResultLauncher<String[]> restoreLauncher =
+            registerForActivityResult(new ActivityResultContracts.OpenMultipleDocuments(), uris -> {
+                if (uris != null && !uris.isEmpty()) {
+                    confirmRestore(uris);
+                }
+            });
 
     public OperationsFragment() {
         // Required empty public constructor.
@@ -52,17 +120,18 @@ public class OperationsFragment extends Fragment {
         // Initialize your repository and adapter here.
         // The adapter now uses an empty constructor.
         expenseRepository = new ExpenseRepository(requireContext());
+        stateStore = AppStateStore.getInstance(requireContext());
         expenseAdapter = new ExpenseAdapter();
         // Item click (and/or action) listener from adapter
         expenseAdapter.setOnExpenseActionListener(new ExpenseAdapter.OnExpenseActionListener() {
             @Override
-            public void onExpenseClick(Expense expense) {
-                openDeleteOrEditDialog(expense);
+            public void onExpenseClick(ExpenseRow expense) {
+                openDeleteOrEditDialog(expense.getId());
             }
 
             @Override
-            public void onExpenseLongClick(Expense expense) {
-                openDeleteOrEditDialog(expense);
+            public void onExpenseLongClick(ExpenseRow expense) {
+                openDeleteOrEditDialog(expense.getId());
             }
         });
     }
@@ -82,8 +151,50 @@ public class OperationsFragment extends Fragment {
         recyclerView = view.findViewById(R.id.expenses_recycler_view);
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         recyclerView.setAdapter(expenseAdapter); // Set the adapter on the RecyclerView.
+        // Operations are read a page at a time; read the next one as the list nears its end
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                if (dy <= 0 || loadingMore) return;
+                LinearLayoutManager layoutManager = (LinearLayoutManager) view.getLayoutManager();
+                if (layoutManager != null && layoutManager.findLastVisibleItemPosition()
+                        >= expenseAdapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+                    loadMoreExpenses();
+                }
+            }
+        });
+
+        Button exportBtn = view.findViewById(R.id.export_csv_btn);
+        exportBtn.setOnClickListener(v -> exportCsvLauncher.launch("boki-expenses.csv"));
+
+        Button backupBtn = view.findViewById(R.id.backup_btn);
+        backupBtn.setOnClickListener(v -> new AlertDialog.Builder(requireContext())
+                .setItems(new String[]{ "نسخة احتياطية كاملة", "نسخة بالتغييرات فقط", "استعادة نسخة احتياطية" }, (d, which) -> {
+                    if (which == 0) {
+                        backupLauncher.launch("boki-backup.boki");
+                    } else if (which == 1) {
+                        if (new ExpenseBackup(requireContext()).hasBase()) {
+                            incrementalBackupLauncher.launch("boki-backup-changes.boki");
+                        } else {
+                            Toast.makeText(getContext(), "أنشئ نسخة احتياطية كاملة أولاً", Toast.LENGTH_SHORT).show();
+                        }
+                    } else {
+                        restoreLauncher.launch(new String[]{ "*/*" });
+                    }
+                })
+                .show());
+
+        Button importBtn = view.findViewById(R.id.import_csv_btn);
+        importBtn.setOnClickListener(v -> importCsvLauncher.launch(
+                new String[]{ "text/csv", "text/comma-separated-values", "text/plain", "application/vnd.ms-excel" }));
 
-        //refresh the data
+    }
+
+    /**
+     * Refresh the data on "expense_refresh". The tabs are kept alive and a key has one
+     * listener, so the visible tab takes it over on every resume.
+     */
+    private void listenForExpenseChanges() {
         getParentFragmentManager().setFragmentResultListener(
                 "expense_refresh",
                 getViewLifecycleOwner(),
@@ -101,6 +212,7 @@ public class OperationsFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
+        listenForExpenseChanges();
         // Note 5: onResume is a good place to load data.
         // It's called every time the fragment becomes visible to the user,
         // so the list will refresh if new data was added.
@@ -109,15 +221,248 @@ public class OperationsFragment extends Fragment {
 
     private void loadAndDisplayData() {
         // Note 6: This is the correct way to load and display data.
-        // Fetch the list from the repository.
-        List<Expense> allExpenses = expenseRepository.getAllExpenses();
-
-        if (allExpenses.isEmpty()) {
-            Toast.makeText(getContext(), "No Expenses Found", Toast.LENGTH_SHORT).show();
-        } else {
-            // Use the adapter's 'setExpenses' method to update the RecyclerView.
-            expenseAdapter.setExpenses(allExpenses);
+        // Rows come from the shared store; the database is only read after a write.
+        stateStore.loadOperationRows(allExpenses -> {
+            if (!isAdded()) return;
+            if (allExpenses.isEmpty()) {
+                Toast.makeText(getContext(), "لا توجد عمليات", Toast.LENGTH_SHORT).show();
+            } else {
+                // Use the adapter's 'setExpenses' method to update the RecyclerView.
+                expenseAdapter.setExpenses(allExpenses);
+            }
+        });
+    }
+
+    /**
+     * Stream every expense to the chosen file on a background thread.
+     * Shows progress and can be cancelled; memory stays flat regardless of row count.
+     */
+    private void exportCsv(Uri uri) {
+        CancellationSignal signal = new CancellationSignal();
+        TaskProgressDialog progressDialog = new TaskProgressDialog(requireActivity(), "تصدير العمليات", signal);
+        progressDialog.show();
+
+        Context appContext = requireContext().getApplicationContext();
+        ioExecutor.execute(() -> {
+            ExpenseCsvExporter exporter = new ExpenseCsvExporter(appContext);
+            String message;
+            try (OutputStream out = appContext.getContentResolver().openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open " + uri);
+                int rows = exporter.export(out, progressDialog::setProgress, signal);
+                message = "تم تصدير " + rows + " عملية";
+            } catch (OperationCanceledException e) {
+                message = "تم إلغاء التصدير";
+            } catch (IOException e) {
+                message = "فشل التصدير: " + e.getMessage();
+            } catch (Exception e) {
+                Log.e("OperationsFragment", "Export failed", e);
+                message = "فشل التصدير";
+            } finally {
+                exporter.close();
+                // The dialog cannot be dismissed by hand, so it must close on every path
+                progressDialog.dismiss();
+            }
+
+            final String finalMessage = message;
+            if (getActivity() != null) {
+                getActivity().runOnUiThread(() ->
+                        Toast.makeText(appContext, finalMessage, Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+
+    /**
+     * Import a CSV file on a background thread in batches, skipping rows that already exist.
+     * Cancelling keeps the batches written so far; picking the same file again resumes.
+     */
+    private void importCsv(Uri uri) {
+        CancellationSignal signal = new CancellationSignal();
+        TaskProgressDialog progressDialog = new TaskProgressDialog(requireActivity(), "استيراد العمليات", signal);
+        progressDialog.show();
+
+        Context appContext = requireContext().getApplicationContext();
+        ioExecutor.execute(() -> {
+            ExpenseCsvImporter importer = new ExpenseCsvImporter(appContext);
+            String message;
+            boolean changed = false;
+            try (InputStream in = appContext.getContentResolver().openInputStream(uri)) {
+                if (in == null) throw new IOException("Cannot open " + uri);
+                // A provider query, slow for cloud documents, so it stays off the UI thread
+                long size = queryFileSize(appContext, uri);
+                String sourceKey = uri + "#" + size;
+                ExpenseCsvImporter.Result result = importer.importCsv(in, sourceKey, size,
+                        (rows, bytes, total) -> {
+                            String label = rows + " سطر";
+                            if (total > 0) {
+                                progressDialog.setProgress((int) (bytes * 1000 / total), 1000, label);
+                            } else {
+                                progressDialog.setProgress(0, 0, label);
+                            }
+                        },
+                        signal);
+                changed = result.imported > 0;
+                message = "تم استيراد " + result.imported + " عملية" +
+                        (result.duplicates > 0 ? "، مكررة: " + result.duplicates : "") +
+                        (result.invalid > 0 ? "، غير صالحة: " + result.invalid : "") +
+                        (result.credits > 0 ? "، مبالغ واردة: " + result.credits : "");
+            } catch (OperationCanceledException e) {
+                changed = true;
+                message = "تم إيقاف الاستيراد، اختر الملف نفسه للمتابعة";
+            } catch (IOException e) {
+                message = "فشل الاستيراد: " + e.getMessage();
+            } catch (Exception e) {
+                Log.e("OperationsFragment", "Import failed", e);
+                // Batches committed before the failure are kept
+                changed = true;
+                message = "فشل الاستيراد";
+            } finally {
+                importer.close();
+                progressDialog.dismiss();
+            }
+
+            final String finalMessage = message;
+            final boolean refresh = changed;
+            if (getActivity() != null) {
+                getActivity().runOnUiThread(() -> {
+                    Toast.makeText(appContext, finalMessage, Toast.LENGTH_LONG).show();
+                    if (refresh && isAdded()) {
+                        loadExpenses();
+                        Bundle result = new Bundle();
+                        result.putBoolean("expense_added", true);
+                        getParentFragmentManager().setFragmentResult("expense_refresh", result);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Write a binary backup (expenses, budgets, categories) on a background thread
+     *
+     * @param incremental true to write only the changes since the previous backup
+     */
+    private void backup(Uri uri, boolean incremental) {
+        CancellationSignal signal = new CancellationSignal();
+        TaskProgressDialog progressDialog = new TaskProgressDialog(requireActivity(), "نسخة احتياطية", signal);
+        progressDialog.show();
+
+        Context appContext = requireContext().getApplicationContext();
+        ioExecutor.execute(() -> {
+            ExpenseBackup expenseBackup = new ExpenseBackup(appContext);
+            String message;
+            try (OutputStream out = appContext.getContentResolver().openOutputStream(uri)) {
+                if (out == null) throw new IOException("Cannot open " + uri);
+                if (incremental) {
+                    int rows = expenseBackup.backupIncremental(out, progressDialog::setProgress, signal);
+                    message = "تم حفظ " + rows + " تغيير";
+                } else {
+                    int rows = expenseBackup.backup(out, progressDialog::setProgress, signal);
+                    message = "تم حفظ نسخة احتياطية من " + rows + " عملية";
+                }
+            } catch (OperationCanceledException e) {
+                message = "تم إلغاء النسخ الاحتياطي";
+            } catch (IOException e) {
+                message = "فشل النسخ الاحتياطي: " + e.getMessage();
+            } catch (Exception e) {
+                Log.e("OperationsFragment", "Backup failed", e);
+                message = "فشل النسخ الاحتياطي";
+            } finally {
+                expenseBackup.close();
+                progressDialog.dismiss();
+            }
+
+            final String finalMessage = message;
+            if (getActivity() != null) {
+                getActivity().runOnUiThread(() ->
+                        Toast.makeText(appContext, finalMessage, Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+
+    // Restore replaces everything, so ask first
+    private void confirmRestore(List<Uri> uris) {
+        new AlertDialog.Builder(requireContext())
+                .setMessage("سيتم استبدال جميع العمليات والميزانيات بمحتوى النسخة الاحتياطية. هل تريد المتابعة؟")
+                .setPositiveButton("استعادة", (d, which) -> restore(uris))
+                .setNegativeButton("إلغاء", null)
+                .show();
+    }
+
+    /**
+     * Restore a full backup plus its increments on a background thread. The files are
+     * verified first and restored in one transaction, so a bad file or a cancel leaves
+     * the data as it was.
+     */
+    private void restore(List<Uri> uris) {
+        CancellationSignal signal = new CancellationSignal();
+        TaskProgressDialog progressDialog = new TaskProgressDialog(requireActivity(), "استعادة النسخة", signal);
+        progressDialog.show();
+
+        Context appContext = requireContext().getApplicationContext();
+        ioExecutor.execute(() -> {
+            ExpenseBackup expenseBackup = new ExpenseBackup(appContext);
+            String message;
+            boolean restored = false;
+            List<ParcelFileDescriptor> descriptors = new ArrayList<>();
+            List<FileChannel> channels = new ArrayList<>();
+            try {
+                for (Uri uri : uris) {
+                    ParcelFileDescriptor pfd = appContext.getContentResolver().openFileDescriptor(uri, "r");
+                    if (pfd == null) throw new IOException("Cannot open " + uri);
+                    descriptors.add(pfd);
+                    channels.add(new FileInputStream(pfd.getFileDescriptor()).getChannel());
+                }
+                int rows = expenseBackup.restore(channels, progressDialog::setProgress, signal);
+                message = "تمت استعادة " + rows + " عملية";
+                restored = true;
+            } catch (OperationCanceledException e) {
+                message = "تم إلغاء الاستعادة";
+            } catch (IOException e) {
+                message = "فشلت الاستعادة: " + e.getMessage();
+            } catch (Exception e) {
+                // Restore runs in one transaction, so the data is as it was
+                Log.e("OperationsFragment", "Restore failed", e);
+                message = "فشلت الاستعادة";
+            } finally {
+                for (ParcelFileDescriptor pfd : descriptors) {
+                    try {
+                        pfd.close();
+                    } catch (IOException ignored) {
+                        // Nothing useful to do
+                    }
+                }
+                expenseBackup.close();
+                progressDialog.dismiss();
+            }
+
+            final String finalMessage = message;
+            final boolean refresh = restored;
+            if (getActivity() != null) {
+                getActivity().runOnUiThread(() -> {
+                    Toast.makeText(appContext, finalMessage, Toast.LENGTH_LONG).show();
+                    if (refresh && isAdded()) {
+                        loadExpenses();
+                        Bundle result = new Bundle();
+                        result.putBoolean("expense_updated", true);
+                        getParentFragmentManager().setFragmentResult("expense_refresh", result);
+                    }
+                });
+            }
+        });
+    }
+
+    // Size of a picked document in bytes, or -1 if the provider doesn't report it
+    private static long queryFileSize(Context context, Uri uri) {
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(uri, new String[]{ OpenableColumns.SIZE }, null, null, null);
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } finally {
+            if (cursor != null) cursor.close();
         }
+        return -1;
     }
 
     // Convert DB time (HH:mm:ss) -> UI time (h:mm a)
@@ -194,7 +539,15 @@ public class OperationsFragment extends Fragment {
     }
 
 
-    private void openDeleteOrEditDialog(Expense expense) {
+    private void openDeleteOrEditDialog(long expenseId) {
+        // List rows carry no note; load the full expense only now
+        Expense expense = expenseRepository.getExpenseById(expenseId);
+        if (expense == null) {
+            // Deleted meanwhile (e.g. by sync)
+            loadExpenses();
+            return;
+        }
+
         // Dialog shows expense info; trash icon deletes; save just closes (edit wiring later).
         Dialog dialog = new Dialog(requireContext());
         View dialogView = LayoutInflater.from(requireContext())
@@ -333,7 +686,7 @@ public class OperationsFragment extends Fragment {
                     String newCategory = categoryBtn.getText().toString().trim();
 
                     if (newTitle.isEmpty()) {
-                        Toast.makeText(getContext(), "Please Enter Operation Name", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(getContext(), "الرجاء إدخال اسم العملية", Toast.LENGTH_SHORT).show();
                         return;
                     }
 
@@ -341,7 +694,7 @@ public class OperationsFragment extends Fragment {
                     try {
                         newAmount = Double.parseDouble(amountStr);
                     } catch (Exception e) {
-                        Toast.makeText(getContext(), "Please enter a valid number for the amount", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(getContext(), "المبلغ غير صحيح", Toast.LENGTH_SHORT).show();
                         return;
                     }
 
@@ -356,7 +709,14 @@ public class OperationsFragment extends Fragment {
                             newTime
                     );
 
-                    int rows = expenseRepository.updateExpense(updatedExpense);
+                    int rows;
+                    try {
+                        rows = expenseRepository.updateExpense(updatedExpense);
+                    } catch (IllegalArgumentException e) {
+                        // Date or time not in the stored format
+                        Toast.makeText(getContext(), "صيغة التاريخ أو الوقت غير صحيحة", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
 
                     if (rows > 0) {
                         loadExpenses();
@@ -366,10 +726,10 @@ public class OperationsFragment extends Fragment {
                         result.putLong("expense_updated_id", expense.getId());
                         getParentFragmentManager().setFragmentResult("expense_refresh", result);
 
-                        Toast.makeText(getContext(), "Updated", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(getContext(), "تم تحديث العملية", Toast.LENGTH_SHORT).show();
                         dialog.dismiss();
                     } else {
-                        Toast.makeText(getContext(), "Update failed", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(getContext(), "فشل في تحديث العملية", Toast.LENGTH_SHORT).show();
                     }
                 });
             }
@@ -407,9 +767,12 @@ public class OperationsFragment extends Fragment {
                         result.putLong("expense_deleted_id", expense.getId());
                         getParentFragmentManager().setFragmentResult("expense_refresh", result);
 
-                        Toast.makeText(getContext(), "Deleted", Toast.LENGTH_SHORT).show();
+                        // The row is only marked deleted until the purge job runs, so it can come back
+                        Snackbar.make(requireView(), "تم حذف العملية", Snackbar.LENGTH_LONG)
+                                .setAction("تراجع", u -> undoDelete(expense.getId()))
+                                .show();
                     } else {
-                        Toast.makeText(getContext(), "Delete failed", Toast.LENGTH_SHORT).show();
+                        Toast.makeText(getContext(), "فشل في حذف العملية", Toast.LENGTH_SHORT).show();
                     }
                 });
 
@@ -420,9 +783,24 @@ public class OperationsFragment extends Fragment {
     }
 
 
+    /**
+     * Bring back an expense deleted from the dialog (Snackbar undo action)
+     */
+    private void undoDelete(long expenseId) {
+        if (!isAdded() || !expenseRepository.restoreExpense(expenseId)) {
+            return;
+        }
+        loadExpenses();
+
+        Bundle result = new Bundle();
+        result.putBoolean("expense_added", true);
+        getParentFragmentManager().setFragmentResult("expense_refresh", result);
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+        ioExecutor.shutdown();
         // Note 7: It's good practice to close the database connection
         // when the fragment is destroyed to prevent memory leaks.
         if (expenseRepository != null) {
@@ -431,7 +809,20 @@ public class OperationsFragment extends Fragment {
     }
 
     private void loadExpenses() {
-        List<Expense> list = expenseRepository.getAllExpenses();
-        expenseAdapter.setExpenses(list);
+        stateStore.loadOperationRows(list -> {
+            if (isAdded()) {
+                expenseAdapter.setExpenses(list);
+            }
+        });
+    }
+
+    private void loadMoreExpenses() {
+        loadingMore = true;
+        stateStore.loadMoreOperationRows(list -> {
+            loadingMore = false;
+            if (isAdded()) {
+                expenseAdapter.setExpenses(list);
+            }
+        });
     }
 }
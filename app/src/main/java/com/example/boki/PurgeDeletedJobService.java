@@ -0,0 +1,57 @@
+package com.example.boki;
+
+import android.app.job.JobInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.example.boki.data.local.ExpenseArchive;
+import com.example.boki.data.local.ExpenseRepository;
+
+/**
+ * Removes soft-deleted expenses for good while the device is idle.
+ * Deletes only mark rows (so they can be undone); this job reclaims the space in
+ * small batches so it never holds the database for long. It then moves expenses
+ * older than the archive horizon out of the hot table (see ExpenseArchive).
+ */
+public class PurgeDeletedJobService extends BackgroundJobService {
+
+    private static final String TAG = "PurgeDeletedJob";
+
+    // Rows stay restorable at least this long
+    private static final long GRACE_PERIOD_MS = 24L * 60 * 60 * 1000;
+    private static final long PURGE_INTERVAL_MS = 24L * 60 * 60 * 1000;
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    public PurgeDeletedJobService() {
+        super(TAG);
+    }
+
+    /**
+     * Schedule the daily idle-time purge unless it is already pending
+     *
+     * @param context Any context
+     */
+    public static void schedule(Context context) {
+        schedule(context, new JobInfo.Builder(PURGE_DELETED_JOB_ID, new ComponentName(context, PurgeDeletedJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setPeriodic(PURGE_INTERVAL_MS));
+    }
+
+    @Override
+    protected void runJob(CancellationSignal signal) {
+        ExpenseRepository repository = new ExpenseRepository(getApplicationContext());
+        ExpenseArchive archive = new ExpenseArchive(getApplicationContext());
+        try {
+            long cutoff = System.currentTimeMillis() - GRACE_PERIOD_MS;
+            int purged = repository.purgeDeletedExpenses(cutoff, PURGE_BATCH_SIZE, signal);
+            Log.d(TAG, "Purged " + purged + " deleted expenses");
+            int archived = archive.archiveOldExpenses(signal);
+            Log.d(TAG, "Archived " + archived + " old expenses");
+        } finally {
+            repository.close();
+            archive.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.boki;
+
+import android.app.job.JobInfo;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.example.boki.data.local.RecurringExpenseRepository;
+
+/**
+ * Daily wake-up that writes the recurring expenses that became due (see
+ * RecurringExpenseRepository.materializeDue()). The app also runs it at startup, so
+ * the job only matters on days the app is not opened; a missed day is caught up by
+ * whichever run comes next.
+ */
+public class RecurringExpenseJobService extends BackgroundJobService {
+
+    private static final String TAG = "RecurringExpenseJob";
+
+    private static final long INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    public RecurringExpenseJobService() {
+        super(TAG);
+    }
+
+    /**
+     * Schedule the daily run unless it is already pending
+     *
+     * @param context Any context
+     */
+    public static void schedule(Context context) {
+        schedule(context, new JobInfo.Builder(RECURRING_EXPENSE_JOB_ID, new ComponentName(context, RecurringExpenseJobService.class))
+                .setPeriodic(INTERVAL_MS));
+    }
+
+    @Override
+    protected void runJob(CancellationSignal signal) {
+        // One short transaction, so the signal is not checked; a cut-off run is caught up next time
+        RecurringExpenseRepository repository = new RecurringExpenseRepository(getApplicationContext());
+        try {
+            int written = repository.materializeDue();
+            Log.d(TAG, "Wrote " + written + " recurring expenses");
+        } finally {
+            repository.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.boki;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.example.boki.data.local.EpochDays;
+
+import java.util.Arrays;
+
+/**
+ * GitHub-style calendar heatmap of daily spend.
+ * One column per week (Sunday on top), one cell per day, most recent week at the end.
+ *
+ * The view only holds a packed byte[] of color levels computed off-thread by
+ * {@link #quantize(long[])}; onDraw reuses one RectF and a fixed set of Paints,
+ * so drawing never allocates or touches the database.
+ */
+public class SpendingHeatmapView extends View {
+
+    public static final int DAYS = 366;
+    private static final int ROWS = 7;
+    private static final int LEVELS = 5;          // 0 = nothing spent, 4 = heaviest
+    private static final float GAP_RATIO = 0.18f; // Gap between cells relative to cell size
+
+    private final Paint[] levelPaints = new Paint[LEVELS];
+    private final RectF cell = new RectF();
+
+    private byte[] levels = new byte[DAYS];
+    private int firstDay = EpochDays.today() - (DAYS - 1); // Epoch day of levels[0]
+    private int columns = columnsFor(firstDay);
+
+    public SpendingHeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public SpendingHeatmapView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+
+        int empty = ContextCompat.getColor(context, R.color.BOKI_TextPrimary_More_Transparent);
+        int purple = ContextCompat.getColor(context, R.color.BOKI_MainPurple) & 0x00FFFFFF;
+        int[] colors = {
+                empty,
+                0x40000000 | purple,
+                0x80000000 | purple,
+                0xC0000000 | purple,
+                0xFF000000 | purple
+        };
+        for (int i = 0; i < LEVELS; i++) {
+            levelPaints[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+            levelPaints[i].setColor(colors[i]);
+        }
+    }
+
+    /**
+     * Show new levels. Called on the UI thread with the result of quantize().
+     *
+     * @param levels   Color level per day, length DAYS
+     * @param firstDay Epoch day of levels[0]
+     */
+    public void setLevels(byte[] levels, int firstDay) {
+        this.levels = levels;
+        this.firstDay = firstDay;
+        this.columns = columnsFor(firstDay);
+        requestLayout();
+        invalidate();
+    }
+
+    /**
+     * Map per-day totals to color levels using quartiles of the non-zero days.
+     * Run this off the UI thread.
+     *
+     * @param totals Per-day totals in minor units, length DAYS
+     * @return Level 0-4 per day
+     */
+    public static byte[] quantize(long[] totals) {
+        byte[] out = new byte[totals.length];
+
+        int nonZero = 0;
+        for (long total : totals) {
+            if (total > 0) nonZero++;
+        }
+        if (nonZero == 0) return out;
+
+        long[] sorted = new long[nonZero];
+        int k = 0;
+        for (long total : totals) {
+            if (total > 0) sorted[k++] = total;
+        }
+        Arrays.sort(sorted);
+        long q1 = sorted[(nonZero - 1) / 4];
+        long q2 = sorted[(nonZero - 1) / 2];
+        long q3 = sorted[(nonZero - 1) * 3 / 4];
+
+        for (int i = 0; i < totals.length; i++) {
+            long total = totals[i];
+            if (total <= 0) out[i] = 0;
+            else if (total <= q1) out[i] = 1;
+            else if (total <= q2) out[i] = 2;
+            else if (total <= q3) out[i] = 3;
+            else out[i] = 4;
+        }
+        return out;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        float cellSize = (width - getPaddingLeft() - getPaddingRight()) / (float) columns;
+        int height = (int) Math.ceil(cellSize * ROWS) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+
+        float cellSize = (getWidth() - getPaddingLeft() - getPaddingRight()) / (float) columns;
+        float gap = cellSize * GAP_RATIO;
+        float radius = cellSize * 0.2f;
+        boolean rtl = getLayoutDirection() == LAYOUT_DIRECTION_RTL;
+
+        // Row of levels[0] inside its week (0 = Sunday)
+        int firstRow = EpochDays.dayOfWeek(firstDay) - 1;
+
+        for (int i = 0; i < levels.length; i++) {
+            int slot = firstRow + i;
+            int column = slot / ROWS;
+            int row = slot % ROWS;
+            if (rtl) {
+                column = columns - 1 - column;
+            }
+
+            float left = getPaddingLeft() + column * cellSize;
+            float top = getPaddingTop() + row * cellSize;
+            cell.set(left, top, left + cellSize - gap, top + cellSize - gap);
+            canvas.drawRoundRect(cell, radius, radius, levelPaints[levels[i]]);
+        }
+    }
+
+    private static int columnsFor(int firstDay) {
+        int firstRow = EpochDays.dayOfWeek(firstDay) - 1;
+        return (firstRow + DAYS + ROWS - 1) / ROWS;
+    }
+}
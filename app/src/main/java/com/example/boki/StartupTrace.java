@@ -0,0 +1,58 @@
+package com.example.boki;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Cold start instrumentation. Stages run inside named systrace sections (visible in
+ * Perfetto / Android Studio traces) and their durations are logged under the
+ * "Startup" tag, as are milestones measured from process start: the first frame
+ * and the first Home balance (time to balance, also reported as fully drawn).
+ */
+final class StartupTrace {
+
+    private static final String TAG = "Startup";
+    private static final String PREFIX = "BOKI:";
+
+    static final String FIRST_FRAME = "first_frame";
+    static final String BALANCE_SHOWN = "balance_shown";
+
+    // Milestones already reached; only the first of each per process counts
+    private static final Set<String> reached = new HashSet<>();
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Run one stage inside a named section and log how long it took
+     */
+    static void section(String name, Runnable stage) {
+        Trace.beginSection(PREFIX + name);
+        long start = SystemClock.uptimeMillis();
+        try {
+            stage.run();
+        } finally {
+            Trace.endSection();
+            Log.i(TAG, name + " took " + (SystemClock.uptimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Record a milestone of this process's start
+     *
+     * @return true the first time the milestone is reached
+     */
+    static synchronized boolean milestone(String name) {
+        if (!reached.add(name)) {
+            return false;
+        }
+        long sinceStart = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+        Log.i(TAG, name + " at " + sinceStart + " ms after process start");
+        return true;
+    }
+}
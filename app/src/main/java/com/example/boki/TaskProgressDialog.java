@@ -0,0 +1,90 @@
+package com.example.boki;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.graphics.drawable.ColorDrawable;
+import android.os.CancellationSignal;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import com.google.android.material.progressindicator.LinearProgressIndicator;
+
+import java.util.Locale;
+
+/**
+ * Progress dialog for long-running background tasks (export, import, backup).
+ * Progress can be posted from any thread; the cancel button cancels the given signal.
+ */
+public class TaskProgressDialog {
+
+    private final Activity activity;
+    private final Dialog dialog;
+    private final LinearProgressIndicator indicator;
+    private final TextView progressText;
+
+    public TaskProgressDialog(Activity activity, String title, CancellationSignal signal) {
+        this.activity = activity;
+
+        dialog = new Dialog(activity);
+        View dialogView = LayoutInflater.from(activity).inflate(R.layout.progress_dialog, null, false);
+        dialog.setContentView(dialogView);
+
+        if (dialog.getWindow() != null) {
+            dialog.getWindow().setLayout(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+            dialog.getWindow().setBackgroundDrawable(new ColorDrawable(android.graphics.Color.TRANSPARENT));
+        }
+        dialog.setCancelable(false);
+
+        TextView titleText = dialogView.findViewById(R.id.progress_title);
+        titleText.setText(title);
+        indicator = dialogView.findViewById(R.id.progress_indicator);
+        progressText = dialogView.findViewById(R.id.progress_text);
+
+        Button cancelBtn = dialogView.findViewById(R.id.cancel_dialog_btn);
+        cancelBtn.setOnClickListener(v -> {
+            signal.cancel();
+            cancelBtn.setEnabled(false);
+        });
+    }
+
+    public void show() {
+        dialog.show();
+    }
+
+    /**
+     * Update the progress bar and counter (safe to call from a background thread)
+     */
+    public void setProgress(int done, int total) {
+        setProgress(done, total, String.format(Locale.getDefault(), "%d / %d", done, total));
+    }
+
+    /**
+     * Update the progress bar with a custom counter text (safe to call from a background thread)
+     *
+     * @param total Bar maximum; 0 keeps the bar indeterminate
+     */
+    public void setProgress(int done, int total, String label) {
+        activity.runOnUiThread(() -> {
+            if (total > 0) {
+                indicator.setIndeterminate(false);
+                indicator.setMax(total);
+                indicator.setProgressCompat(done, true);
+            }
+            progressText.setText(label);
+        });
+    }
+
+    /**
+     * Close the dialog (safe to call from a background thread)
+     */
+    public void dismiss() {
+        activity.runOnUiThread(() -> {
+            if (dialog.isShowing()) {
+                dialog.dismiss();
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.boki.data.local;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Row-by-row part of a schema migration, run by MigrationRunner in chunks.
+ *
+ * Rows are walked in key order (usually the row ID). Each chunk commits together
+ * with the key it reached in migration_progress, so a killed or cancelled run
+ * resumes where it stopped and a chunk is never applied twice.
+ */
+abstract class Backfill {
+
+    /**
+     * Outcome of one chunk
+     */
+    static final class Chunk {
+        final long lastKey;     // Key of the last row processed
+        final int rows;         // Rows processed (0 when the backfill is done)
+
+        Chunk(long lastKey, int rows) {
+            this.lastKey = lastKey;
+            this.rows = rows;
+        }
+    }
+
+    final String name;
+
+    /**
+     * @param name Unique key in migration_progress; never rename a shipped backfill
+     */
+    Backfill(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Rows still to process, for progress reporting
+     *
+     * @param afterKey Last key already processed (0 at the start)
+     */
+    abstract int countRemaining(SQLiteDatabase db, long afterKey);
+
+    /**
+     * Process the next rows. Called inside the runner's transaction.
+     *
+     * @param afterKey Last key already processed (0 at the start)
+     * @param limit    Maximum rows to process
+     * @return Chunk reached; fewer than limit rows means the backfill is done
+     */
+    abstract Chunk runChunk(SQLiteDatabase db, long afterKey, int limit);
+
+    /**
+     * State beyond the key that must survive a resume (e.g. summary counters),
+     * committed with each chunk
+     *
+     * @return Encoded state, or null if there is none
+     */
+    String saveState() {
+        return null;
+    }
+
+    /**
+     * Called before the first chunk of a run with what saveState() last committed
+     *
+     * @param state Encoded state, or null at the start or if there is none
+     */
+    void restoreState(String state) {
+    }
+
+    /**
+     * Called once after the last chunk committed (e.g. to rebuild caches)
+     */
+    void onFinished(SQLiteDatabase db) {
+    }
+}
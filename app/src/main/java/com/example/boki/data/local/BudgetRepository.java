@@ -6,7 +6,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.example.boki.models.Budget;
-import com.example.boki.models.Expense;
+import com.example.boki.models.ExpenseRow;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -15,6 +15,8 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Repository class for managing Budget data operations.
@@ -23,6 +25,32 @@ import java.util.Locale;
  */
 public class BudgetRepository {
     
+    private static final RowMapper<Budget> BUDGET_MAPPER = new RowMapper<Budget>(
+            ExpenseDbHelper.COLUMN_BUDGET_ID,
+            ExpenseDbHelper.COLUMN_BUDGET_NAME,
+            ExpenseDbHelper.COLUMN_BUDGET_AMOUNT,
+            ExpenseDbHelper.COLUMN_BUDGET_START_DATE,
+            ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE,
+            ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE,
+            ExpenseDbHelper.COLUMN_BUDGET_ACTIVE) {
+        @Override
+        Budget map(Cursor cursor, int[] at) {
+            return new Budget(
+                cursor.getLong(at[0]),
+                cursor.getString(at[1]),
+                cursor.getDouble(at[2]),
+                cursor.getString(at[3]),
+                cursor.getString(at[4]),
+                cursor.getInt(at[5]),
+                cursor.getInt(at[6]) == 1
+            );
+        }
+    };
+    
+    // Bumped after every budget write, used as a cache key (see getVersion)
+    private static final AtomicLong VERSION = new AtomicLong();
+    private static final List<Runnable> CHANGE_LISTENERS = new CopyOnWriteArrayList<>();
+    
     private ExpenseDbHelper dbHelper;
     private SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
     
@@ -31,7 +59,31 @@ public class BudgetRepository {
      * @param context Application context
      */
     public BudgetRepository(Context context) {
-        this.dbHelper = new ExpenseDbHelper(context);
+        this.dbHelper = ExpenseDbHelper.getInstance(context);
+    }
+    
+    /**
+     * @return Counter that changes whenever any budget is written
+     */
+    public static long getVersion() {
+        return VERSION.get();
+    }
+    
+    /**
+     * Record a budget write made outside this class (sync, restore)
+     */
+    public static void notifyChanged() {
+        VERSION.incrementAndGet();
+        for (Runnable listener : CHANGE_LISTENERS) {
+            listener.run();
+        }
+    }
+    
+    /**
+     * @param listener Run after every budget write, on the writer's thread
+     */
+    public static void addChangeListener(Runnable listener) {
+        CHANGE_LISTENERS.add(listener);
     }
     
     /**
@@ -73,6 +125,7 @@ public class BudgetRepository {
             return newRowId;
         } finally {
             db.endTransaction();
+            notifyChanged();
         }
     }
     
@@ -121,6 +174,7 @@ public class BudgetRepository {
             return rowsAffected;
         } finally {
             db.endTransaction();
+            notifyChanged();
         }
     }
     
@@ -171,6 +225,7 @@ public class BudgetRepository {
             return rowsDeleted > 0;
         } finally {
             db.endTransaction();
+            notifyChanged();
         }
     }
     
@@ -180,27 +235,25 @@ public class BudgetRepository {
      * @return The active budget, or null if none exists
      */
     public Budget getActiveBudget() {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        return readActiveBudget(dbHelper.getReadableDatabase());
+    }
+    
+    /**
+     * Read the active budget with the given connection (lets callers include it in their transaction)
+     * 
+     * @return The active budget, or null if none exists
+     */
+    static Budget readActiveBudget(SQLiteDatabase db) {
         Cursor cursor = null;
         Budget budget = null;
         
         try {
-            String[] projection = {
-                ExpenseDbHelper.COLUMN_BUDGET_ID,
-                ExpenseDbHelper.COLUMN_BUDGET_NAME,
-                ExpenseDbHelper.COLUMN_BUDGET_AMOUNT,
-                ExpenseDbHelper.COLUMN_BUDGET_START_DATE,
-                ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE,
-                ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE,
-                ExpenseDbHelper.COLUMN_BUDGET_ACTIVE
-            };
-            
             String selection = ExpenseDbHelper.COLUMN_BUDGET_ACTIVE + " = ?";
             String[] selectionArgs = { "1" };
             
             cursor = db.query(
                 ExpenseDbHelper.TABLE_BUDGET,
-                projection,
+                BUDGET_MAPPER.columns(),
                 selection,
                 selectionArgs,
                 null,
@@ -208,9 +261,7 @@ public class BudgetRepository {
                 null
             );
             
-            if (cursor.moveToFirst()) {
-                budget = cursorToBudget(cursor);
-            }
+            budget = BUDGET_MAPPER.mapFirst(cursor);
             
         } finally {
             if (cursor != null) {
@@ -227,24 +278,14 @@ public class BudgetRepository {
      * @return List of all budgets
      */
     public List<Budget> getAllBudgets() {
-        List<Budget> budgets = new ArrayList<>();
+        List<Budget> budgets;
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = null;
         
         try {
-            String[] projection = {
-                ExpenseDbHelper.COLUMN_BUDGET_ID,
-                ExpenseDbHelper.COLUMN_BUDGET_NAME,
-                ExpenseDbHelper.COLUMN_BUDGET_AMOUNT,
-                ExpenseDbHelper.COLUMN_BUDGET_START_DATE,
-                ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE,
-                ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE,
-                ExpenseDbHelper.COLUMN_BUDGET_ACTIVE
-            };
-            
             cursor = db.query(
                 ExpenseDbHelper.TABLE_BUDGET,
-                projection,
+                BUDGET_MAPPER.columns(),
                 null,
                 null,
                 null,
@@ -252,10 +293,7 @@ public class BudgetRepository {
                 ExpenseDbHelper.COLUMN_BUDGET_ID + " DESC"
             );
             
-            while (cursor.moveToNext()) {
-                Budget budget = cursorToBudget(cursor);
-                budgets.add(budget);
-            }
+            budgets = BUDGET_MAPPER.mapAll(cursor);
             
         } finally {
             if (cursor != null) {
@@ -271,9 +309,9 @@ public class BudgetRepository {
      * Calculates the cycle period based on budget settings
      * 
      * @param budget The budget to get expenses for
-     * @return List of expenses within the current cycle
+     * @return List rows of the expenses within the current cycle
      */
-    public List<Expense> getExpensesInCurrentCycle(Budget budget) {
+    public List<ExpenseRow> getExpensesInCurrentCycle(Budget budget) {
         if (budget == null) {
             return new ArrayList<>();
         }
@@ -286,47 +324,41 @@ public class BudgetRepository {
     }
     
     /**
-     * Get expenses between two dates (inclusive)
+     * Get expenses between two dates (inclusive), as list rows without notes
      * 
      * @param startDate Start date in YYYY-MM-DD format
      * @param endDate End date in YYYY-MM-DD format
-     * @return List of expenses in the date range
+     * @return List rows of the expenses in the date range, most recent first
      */
-    public List<Expense> getExpensesBetweenDates(String startDate, String endDate) {
-        List<Expense> expenses = new ArrayList<>();
+    public List<ExpenseRow> getExpensesBetweenDates(String startDate, String endDate) {
+        List<ExpenseRow> expenses;
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = null;
         
         try {
-            String[] projection = {
-                ExpenseDbHelper.COLUMN_ID,
-                ExpenseDbHelper.COLUMN_TITLE,
-                ExpenseDbHelper.COLUMN_AMOUNT,
-                ExpenseDbHelper.COLUMN_CATEGORY,
-                ExpenseDbHelper.COLUMN_NOTE,
-                ExpenseDbHelper.COLUMN_DATE,
-                ExpenseDbHelper.COLUMN_TIME
-            };
-            
             String selection = ExpenseDbHelper.COLUMN_DATE + " >= ? AND " + 
                               ExpenseDbHelper.COLUMN_DATE + " <= ?";
             String[] selectionArgs = { startDate, endDate };
             
-            cursor = db.query(
-                ExpenseDbHelper.TABLE_EXPENSE,
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                ExpenseDbHelper.COLUMN_DATE + " DESC"
-            );
-            
-            while (cursor.moveToNext()) {
-                Expense expense = cursorToExpense(cursor);
-                expenses.add(expense);
+            if (ExpenseArchive.reachesArchive(db, startDate)) {
+                // Old cycle: read the archive as well
+                cursor = db.rawQuery(
+                    ExpenseArchive.selectRows(ExpenseRepository.ROW_MAPPER.projection(), selection) +
+                        "ORDER BY " + ExpenseDbHelper.COLUMN_DATE + " DESC",
+                    ExpenseArchive.twice(selectionArgs)
+                );
+            } else {
+                cursor = db.rawQuery(
+                    "SELECT " + ExpenseRepository.ROW_MAPPER.projection() + " " +
+                        "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                        "WHERE " + selection + " AND " + ExpenseDbHelper.EXPENSE_LIVE + " " +
+                        "ORDER BY " + ExpenseDbHelper.COLUMN_DATE + " DESC",
+                    selectionArgs
+                );
             }
             
+            expenses = ExpenseRepository.ROW_MAPPER.mapAll(cursor);
+            
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -338,6 +370,7 @@ public class BudgetRepository {
     
     /**
      * US20, US21: Calculate total expenses in current budget cycle
+     * Summed by SQLite (with the daily rollup for archived days), no rows are loaded
      * 
      * @param budget The budget to calculate for
      * @return Total amount of expenses in current cycle
@@ -347,14 +380,21 @@ public class BudgetRepository {
             return 0.0;
         }
         
-        List<Expense> expenses = getExpensesInCurrentCycle(budget);
-        double total = 0.0;
+        String[] cycleDates = getCurrentCycleDates(budget);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        List<String> args = new ArrayList<>();
+        String sql = "SELECT COALESCE(SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + "), 0) " +
+                "FROM " + ExpenseArchive.amountsBetween(db, cycleDates[0], cycleDates[1], args);
         
-        for (Expense expense : expenses) {
-            total += expense.getAmount();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
+            return cursor.moveToFirst() ? cursor.getDouble(0) : 0.0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
         }
-        
-        return total;
     }
     
     /**
@@ -401,6 +441,14 @@ public class BudgetRepository {
      * @return String array [startDate, endDate] in YYYY-MM-DD format
      */
     public String[] getCurrentCycleDates(Budget budget) {
+        return cycleDatesOf(budget);
+    }
+    
+    /**
+     * Current cycle of a budget, see getCurrentCycleDates()
+     */
+    static String[] cycleDatesOf(Budget budget) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.getDefault());
         try {
             Date startDate = dateFormat.parse(budget.getStartDate());
             Calendar cal = Calendar.getInstance();
@@ -471,58 +519,6 @@ public class BudgetRepository {
         db.update(ExpenseDbHelper.TABLE_BUDGET, values, null, null);
     }
     
-    /**
-     * Helper method to convert Cursor to Budget object
-     * 
-     * @param cursor The cursor positioned at a valid row
-     * @return Budget object created from cursor data
-     */
-    private Budget cursorToBudget(Cursor cursor) {
-        int idIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_BUDGET_ID);
-        int nameIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_BUDGET_NAME);
-        int amountIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_BUDGET_AMOUNT);
-        int startDateIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_BUDGET_START_DATE);
-        int cycleTypeIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE);
-        int cycleValueIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE);
-        int activeIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_BUDGET_ACTIVE);
-        
-        long id = cursor.getLong(idIndex);
-        String name = cursor.getString(nameIndex);
-        double amount = cursor.getDouble(amountIndex);
-        String startDate = cursor.getString(startDateIndex);
-        String cycleType = cursor.getString(cycleTypeIndex);
-        int cycleValue = cursor.getInt(cycleValueIndex);
-        boolean active = cursor.getInt(activeIndex) == 1;
-        
-        return new Budget(id, name, amount, startDate, cycleType, cycleValue, active);
-    }
-    
-    /**
-     * Helper method to convert Cursor to Expense object
-     * 
-     * @param cursor The cursor positioned at a valid row
-     * @return Expense object created from cursor data
-     */
-    private Expense cursorToExpense(Cursor cursor) {
-        int idIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_ID);
-        int titleIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_TITLE);
-        int amountIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_AMOUNT);
-        int categoryIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_CATEGORY);
-        int noteIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_NOTE);
-        int dateIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_DATE);
-        int timeIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_TIME);
-        
-        long id = cursor.getLong(idIndex);
-        String title = cursor.getString(titleIndex);
-        double amount = cursor.getDouble(amountIndex);
-        String category = cursor.getString(categoryIndex);
-        String note = cursor.getString(noteIndex);
-        String date = cursor.getString(dateIndex);
-        String time = cursor.getString(timeIndex);
-        
-        return new Expense(id, title, amount, category, note, date, time);
-    }
-    
     /**
      * Close the database helper
      * Call this when the repository is no longer needed
@@ -0,0 +1,125 @@
+package com.example.boki.data.local;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming RFC 4180 reader: one record at a time, quoted fields may contain
+ * delimiters, doubled quotes and line breaks. A leading BOM is skipped and the
+ * delimiter (comma, semicolon or tab) is detected from the first line, since
+ * bank exports use all three.
+ */
+final class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final BufferedReader reader;
+    private final char delimiter;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> record = new ArrayList<>();
+    private int recordNumber;
+
+    CsvReader(Reader source) throws IOException {
+        this.reader = new BufferedReader(source, BUFFER_SIZE);
+        reader.mark(BUFFER_SIZE);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        this.delimiter = detectDelimiter();
+    }
+
+    private char detectDelimiter() throws IOException {
+        reader.mark(BUFFER_SIZE);
+        int commas = 0;
+        int semicolons = 0;
+        int tabs = 0;
+        boolean quoted = false;
+        int c;
+        // Stay inside the mark so reset() always works, even for a huge first line
+        for (int i = 0; i < BUFFER_SIZE - 1 && (c = reader.read()) != -1; i++) {
+            if (c == '"') quoted = !quoted;
+            else if (quoted) continue;
+            else if (c == '\n' || c == '\r') break;
+            else if (c == ',') commas++;
+            else if (c == ';') semicolons++;
+            else if (c == '\t') tabs++;
+        }
+        reader.reset();
+
+        if (semicolons > commas && semicolons >= tabs) return ';';
+        if (tabs > commas) return '\t';
+        return ',';
+    }
+
+    /**
+     * Read the next record
+     *
+     * @return The fields of the record, or null at end of input. The array is new per call.
+     */
+    String[] readRecord() throws IOException {
+        record.clear();
+        field.setLength(0);
+
+        int c = reader.read();
+        // Skip blank lines between records
+        while (c == '\r' || c == '\n') {
+            c = reader.read();
+        }
+        if (c == -1) return null;
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field in record " + (recordNumber + 1));
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        reader.reset();
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == delimiter) {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') reader.reset();
+                }
+                break;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+
+        record.add(field.toString());
+        recordNumber++;
+        return record.toArray(new String[0]);
+    }
+
+    /**
+     * Number of records returned so far (the header counts as one)
+     */
+    int getRecordNumber() {
+        return recordNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
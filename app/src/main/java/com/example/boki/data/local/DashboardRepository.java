@@ -0,0 +1,205 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.boki.models.Budget;
+import com.example.boki.models.DashboardSnapshot;
+import com.example.boki.models.ExpenseCategorySummary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the figures of the Home and Expenses screens as one DashboardSnapshot.
+ *
+ * The active budget and the totals are read inside one transaction while holding
+ * the SpendingIndex monitor (which expense writers hold across their write), so
+ * the range, its categories and the cycle spending always describe the same state.
+ * Totals come from the SpendingIndex when it is ready; otherwise one grouped query
+ * yields the category totals of the range and, alongside, the cycle spending.
+ * Today's spending is read the same way.
+ */
+public class DashboardRepository {
+
+    private final ExpenseDbHelper dbHelper;
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public DashboardRepository(Context context) {
+        this.dbHelper = ExpenseDbHelper.getInstance(context);
+    }
+
+    /**
+     * Snapshot of a date range and the active budget. Run this off the UI thread.
+     *
+     * @param startIso Range start, yyyy-MM-dd (inclusive)
+     * @param endIso   Range end, yyyy-MM-dd (inclusive)
+     */
+    public DashboardSnapshot getSnapshot(String startIso, String endIso) {
+        return readSnapshot(startIso, endIso);
+    }
+
+    /**
+     * Snapshot whose range is the active budget's current cycle (today without a budget).
+     * Run this off the UI thread.
+     */
+    public DashboardSnapshot getCycleSnapshot() {
+        return readSnapshot(null, null);
+    }
+
+    /**
+     * @param startIso Range start, or null for the cycle
+     * @param endIso   Range end, or null for the cycle
+     */
+    private DashboardSnapshot readSnapshot(String startIso, String endIso) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        synchronized (spendingIndex) {
+            db.beginTransactionNonExclusive();
+            try {
+                Budget budget = BudgetRepository.readActiveBudget(db);
+                String[] cycle = budget != null ? BudgetRepository.cycleDatesOf(budget) : null;
+                int todayDay = EpochDays.today();
+                String today = EpochDays.toIso(todayDay);
+                if (startIso == null || endIso == null) {
+                    startIso = cycle != null ? cycle[0] : today;
+                    endIso = cycle != null ? cycle[1] : today;
+                }
+
+                List<ExpenseCategorySummary> categories;
+                double spent;
+                double spentToday;
+                int startDay = EpochDays.fromIso(startIso);
+                int endDay = EpochDays.fromIso(endIso);
+                int cycleStartDay = cycle != null ? EpochDays.fromIso(cycle[0]) : 0;
+                int cycleEndDay = cycle != null ? EpochDays.fromIso(cycle[1]) : 0;
+                if (spendingIndex.isReady() && startDay != EpochDays.INVALID && endDay != EpochDays.INVALID
+                        && cycleStartDay != EpochDays.INVALID && cycleEndDay != EpochDays.INVALID) {
+                    categories = spendingIndex.categoryTotalsBetween(startDay, endDay);
+                    spent = cycle != null ? spendingIndex.totalBetween(cycleStartDay, cycleEndDay) : 0.0;
+                    spentToday = spendingIndex.totalBetween(todayDay, todayDay);
+                } else {
+                    double[] cycleTotal = { 0.0 };
+                    categories = queryTotals(db, startIso, endIso, cycle, cycleTotal);
+                    spent = cycleTotal[0];
+                    spentToday = sumBetween(db, today, today);
+                }
+                db.setTransactionSuccessful();
+
+                double total = 0.0;
+                for (ExpenseCategorySummary item : categories) {
+                    total += item.getTotalAmount();
+                }
+                return new DashboardSnapshot(startIso, endIso, total, withPercentages(categories, total),
+                        budget, cycle != null ? cycle[0] : null, cycle != null ? cycle[1] : null, spent, spentToday);
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    /**
+     * Category totals of the range, sorted DESC by total, and the cycle spending.
+     * When the windows overlap both come from one grouped scan of their union;
+     * otherwise the cycle is summed by a second statement.
+     *
+     * @param cycle      Cycle window, or null without a budget
+     * @param cycleTotal Receives the cycle spending
+     */
+    private static List<ExpenseCategorySummary> queryTotals(SQLiteDatabase db, String startIso, String endIso,
+                                                            String[] cycle, double[] cycleTotal) {
+        boolean together = cycle != null && cycle[0].compareTo(endIso) <= 0 && startIso.compareTo(cycle[1]) <= 0;
+        String inRange = "CASE WHEN " + ExpenseDbHelper.COLUMN_DATE + " >= ? AND " +
+                ExpenseDbHelper.COLUMN_DATE + " <= ? THEN " + ExpenseDbHelper.COLUMN_AMOUNT + " ELSE 0 END";
+
+        List<String> args = new ArrayList<>();
+        String source;
+        String cycleColumn;
+        if (together) {
+            args.add(startIso);
+            args.add(endIso);
+            args.add(cycle[0]);
+            args.add(cycle[1]);
+            source = ExpenseArchive.amountsBetween(db, min(startIso, cycle[0]), max(endIso, cycle[1]), args);
+            cycleColumn = "SUM(" + inRange + ")";
+        } else {
+            source = ExpenseArchive.amountsBetween(db, startIso, endIso, args);
+            cycleColumn = "0";
+        }
+        String sql =
+                "SELECT " + ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                        (together ? "SUM(" + inRange + ")" : "SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + ")") + " AS total, " +
+                        cycleColumn + " " +
+                        "FROM " + source + " " +
+                        "GROUP BY " + ExpenseDbHelper.COLUMN_CATEGORY + " " +
+                        "ORDER BY total DESC";
+
+        List<ExpenseCategorySummary> categories = new ArrayList<>();
+        double spent = 0.0;
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
+            while (cursor.moveToNext()) {
+                double total = cursor.getDouble(1);
+                spent += cursor.getDouble(2);
+                // Categories spent on only outside the range are left out, as in the index
+                if (total != 0) {
+                    categories.add(new ExpenseCategorySummary(cursor.getString(0), total, 0.0));
+                }
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        if (cycle != null && !together) {
+            spent = sumBetween(db, cycle[0], cycle[1]);
+        }
+        cycleTotal[0] = spent;
+        return categories;
+    }
+
+    private static double sumBetween(SQLiteDatabase db, String startIso, String endIso) {
+        List<String> args = new ArrayList<>();
+        String sql = "SELECT COALESCE(SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + "), 0) " +
+                "FROM " + ExpenseArchive.amountsBetween(db, startIso, endIso, args);
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
+            return cursor.moveToFirst() ? cursor.getDouble(0) : 0.0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Share of the total per category, e.g. 33.92 for 33.92%
+     */
+    private static List<ExpenseCategorySummary> withPercentages(List<ExpenseCategorySummary> categories,
+                                                               double total) {
+        List<ExpenseCategorySummary> result = new ArrayList<>(categories.size());
+        for (ExpenseCategorySummary item : categories) {
+            double percentage = total > 0 ? item.getTotalAmount() / total * 100.0 : 0.0;
+            result.add(new ExpenseCategorySummary(item.getCategory(), item.getTotalAmount(), percentage));
+        }
+        return result;
+    }
+
+    private static String min(String a, String b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static String max(String a, String b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    /**
+     * Close the database helper
+     */
+    public void close() {
+        dbHelper.close();
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.boki.models.Budget;
+import com.example.boki.models.DashboardSnapshot;
+import com.example.boki.models.ExpenseCategorySummary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The last cycle snapshot read from the database, kept in a small file so a cold
+ * start can show the balance before SQLite is even opened. The database stays the
+ * source of truth: the file is only a head start that the next read replaces.
+ *
+ * Layout (big-endian): magic, u16 format version, u16 schema version, i64 written-at
+ * millis (the version stamp), i32 epoch day written, then the range, its total, the
+ * cycle and today's spending, the budget with its cycle window (if any) and the top
+ * MAX_CATEGORIES categories. Files of another format or schema version are ignored.
+ *
+ * It is rewritten after every expense or budget write, so the home screen widget
+ * renders from it without opening the database.
+ */
+public final class DashboardSnapshotFile {
+
+    private static final String TAG = "DashboardSnapshotFile";
+    private static final String FILE_NAME = "dashboard_snapshot.bin";
+    private static final int MAGIC = 0x424F4B44; // "BOKD"
+    private static final int VERSION = 2; // v2: today's spending
+    private static final int MAX_CATEGORIES = 5;
+
+    private final File file;
+    // Body of the last write, so an unchanged snapshot is not written again
+    private byte[] lastBody;
+    private int lastDay;
+
+    /**
+     * @param context Application context
+     */
+    public DashboardSnapshotFile(Context context) {
+        // Not backed up: it is rebuilt from the database on every launch
+        this.file = new File(context.getNoBackupFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Read the persisted snapshot. The file is a few hundred bytes.
+     *
+     * @return The snapshot, or null if there is none, it is unreadable or its cycle has ended
+     */
+    public DashboardSnapshot read() {
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION
+                    || in.readUnsignedShort() != ExpenseDbHelper.DATABASE_VERSION) {
+                return null;
+            }
+            in.readLong(); // Written at
+            int writtenDay = in.readInt();
+            DashboardSnapshot snapshot = readBody(in);
+
+            // A finished cycle's balance would be wrong, not just late
+            if (snapshot.hasBudget() && EpochDays.fromIso(snapshot.getCycleEnd()) < EpochDays.today()) {
+                return null;
+            }
+            // Nothing was written since an earlier day, so nothing was spent today
+            return writtenDay < EpochDays.today() ? withoutToday(snapshot) : snapshot;
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring unreadable snapshot file", e);
+            return null;
+        }
+    }
+
+    /**
+     * Persist a snapshot read from the database; a no-op if it did not change.
+     * Run this off the UI thread.
+     *
+     * @return true if the file was rewritten
+     */
+    public synchronized boolean write(DashboardSnapshot snapshot) {
+        byte[] body;
+        try {
+            body = encodeBody(snapshot);
+        } catch (IOException e) {
+            return false; // Not thrown by in-memory streams
+        }
+        if (Arrays.equals(body, lastBody) && lastDay == EpochDays.today()) return false;
+
+        // Written beside the file and renamed over it, so a reader never sees half a file
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(ExpenseDbHelper.DATABASE_VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(EpochDays.today());
+            out.write(body);
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write the snapshot file", e);
+            temp.delete();
+            return false;
+        }
+        if (temp.renameTo(file)) {
+            lastBody = body;
+            lastDay = EpochDays.today();
+            return true;
+        }
+        temp.delete();
+        return false;
+    }
+
+    private static byte[] encodeBody(DashboardSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(snapshot.getStartDate());
+        out.writeUTF(snapshot.getEndDate());
+        out.writeDouble(snapshot.getTotal());
+        out.writeDouble(snapshot.getSpent());
+        out.writeDouble(snapshot.getSpentToday());
+
+        Budget budget = snapshot.getBudget();
+        out.writeBoolean(budget != null);
+        if (budget != null) {
+            out.writeLong(budget.getId());
+            out.writeUTF(budget.getName());
+            out.writeDouble(budget.getAmount());
+            out.writeUTF(budget.getStartDate());
+            out.writeUTF(budget.getCycleType());
+            out.writeInt(budget.getCycleValue());
+            out.writeUTF(snapshot.getCycleStart());
+            out.writeUTF(snapshot.getCycleEnd());
+        }
+
+        List<ExpenseCategorySummary> categories = snapshot.getCategories();
+        int count = Math.min(categories.size(), MAX_CATEGORIES);
+        out.writeByte(count);
+        for (int i = 0; i < count; i++) {
+            ExpenseCategorySummary item = categories.get(i);
+            out.writeUTF(item.getCategory());
+            out.writeDouble(item.getTotalAmount());
+            out.writeDouble(item.getPercentage());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static DashboardSnapshot readBody(DataInputStream in) throws IOException {
+        String startDate = in.readUTF();
+        String endDate = in.readUTF();
+        double total = in.readDouble();
+        double spent = in.readDouble();
+        double spentToday = in.readDouble();
+
+        Budget budget = null;
+        String cycleStart = null;
+        String cycleEnd = null;
+        if (in.readBoolean()) {
+            long id = in.readLong();
+            String name = in.readUTF();
+            double amount = in.readDouble();
+            String budgetStart = in.readUTF();
+            String cycleType = in.readUTF();
+            int cycleValue = in.readInt();
+            budget = new Budget(id, name, amount, budgetStart, cycleType, cycleValue, true);
+            cycleStart = in.readUTF();
+            cycleEnd = in.readUTF();
+        }
+
+        int count = in.readUnsignedByte();
+        List<ExpenseCategorySummary> categories = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            categories.add(new ExpenseCategorySummary(in.readUTF(), in.readDouble(), in.readDouble()));
+        }
+        return new DashboardSnapshot(startDate, endDate, total, categories, budget, cycleStart, cycleEnd, spent, spentToday);
+    }
+
+    /**
+     * A snapshot written on an earlier day: nothing spent today and, without a budget
+     * (whose range is today), an empty range
+     */
+    private static DashboardSnapshot withoutToday(DashboardSnapshot snapshot) {
+        if (snapshot.hasBudget()) {
+            return new DashboardSnapshot(snapshot.getStartDate(), snapshot.getEndDate(), snapshot.getTotal(),
+                    snapshot.getCategories(), snapshot.getBudget(), snapshot.getCycleStart(),
+                    snapshot.getCycleEnd(), snapshot.getSpent(), 0.0);
+        }
+        String today = EpochDays.toIso(EpochDays.today());
+        return new DashboardSnapshot(today, today, 0.0, new ArrayList<>(), null, null, null, 0.0, 0.0);
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Housekeeping for expenses.db, meant for idle/charging windows.
+ *
+ * Refreshes the planner statistics (PRAGMA optimize, or ANALYZE before SQLite 3.18),
+ * returns free pages left by deletes, archiving and purges to the file system with
+ * incremental vacuum in short slices, and runs a quick_check once a week. Each run
+ * is recorded in maintenance_stats.
+ *
+ * Incremental vacuum needs auto_vacuum=INCREMENTAL. New databases are created with it
+ * (ExpenseDbHelper.onConfigure); an older one only takes it after a full VACUUM, which
+ * rewrites the whole file in one step that cannot be cancelled. That conversion is
+ * therefore left alone until at least a quarter of the file is free pages, where the
+ * rewrite pays for itself; below that, SQLite reuses the free pages for new rows.
+ */
+public class DatabaseMaintenance {
+
+    private static final String TAG = "DatabaseMaintenance";
+
+    // Pages returned per slice; other writers wait at most one slice
+    private static final int VACUUM_PAGES_PER_SLICE = 256;
+    // Stop vacuuming after this long; the next run continues
+    private static final long VACUUM_BUDGET_MS = 5_000;
+    private static final long QUICK_CHECK_INTERVAL_MS = 7L * 24 * 60 * 60 * 1000;
+    private static final int STATS_KEPT = 100;
+
+    // Free pages (share of the file, and count) that justify converting an older database
+    private static final double CONVERT_FREE_FRACTION = 0.25;
+    private static final long CONVERT_MIN_FREE_PAGES = 2_560;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private final ExpenseDbHelper dbHelper;
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public DatabaseMaintenance(Context context) {
+        this.dbHelper = ExpenseDbHelper.getInstance(context);
+    }
+
+    /**
+     * Run every maintenance step. Run this off the UI thread, outside any transaction.
+     *
+     * @param signal Cancellation signal, may be null; checked between steps and slices
+     * @return Pages returned to the file system
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public int run(CancellationSignal signal) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long start = SystemClock.elapsedRealtime();
+
+        optimize(db);
+        throwIfCanceled(signal);
+
+        int freed = 0;
+        if (pragmaLong(db, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+            freed = incrementalVacuum(db, signal);
+        } else if (worthConverting(db)) {
+            // One-time conversion; VACUUM also drops every free page
+            freed = (int) pragmaLong(db, "PRAGMA freelist_count");
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        }
+        throwIfCanceled(signal);
+
+        String integrity = null;
+        if (System.currentTimeMillis() - lastQuickCheck(db) >= QUICK_CHECK_INTERVAL_MS) {
+            integrity = quickCheck(db);
+            if (!"ok".equals(integrity)) {
+                Log.e(TAG, "quick_check: " + integrity);
+            }
+        }
+
+        long fileBytes = pragmaLong(db, "PRAGMA page_count") * pragmaLong(db, "PRAGMA page_size");
+        long freelist = pragmaLong(db, "PRAGMA freelist_count");
+        long duration = SystemClock.elapsedRealtime() - start;
+        recordRun(db, duration, fileBytes, freelist, freed, integrity);
+        Log.i(TAG, "Maintenance took " + duration + " ms: " + fileBytes + " bytes, " +
+                freed + " pages freed, " + freelist + " free pages left");
+        return freed;
+    }
+
+    /**
+     * Refresh the statistics the query planner uses. PRAGMA optimize only analyzes
+     * tables whose statistics are stale, but needs SQLite 3.18 (Android 8.1).
+     */
+    private static void optimize(SQLiteDatabase db) {
+        if (sqliteAtLeast(db, 3, 18)) {
+            pragmaLong(db, "PRAGMA optimize");
+        } else {
+            db.execSQL("ANALYZE");
+        }
+    }
+
+    /**
+     * Free pages slice by slice until none are left, the budget runs out or the job is cancelled
+     *
+     * @return Pages freed
+     */
+    private static int incrementalVacuum(SQLiteDatabase db, CancellationSignal signal) {
+        long deadline = SystemClock.elapsedRealtime() + VACUUM_BUDGET_MS;
+        int freed = 0;
+        long free = pragmaLong(db, "PRAGMA freelist_count");
+        while (free > 0 && SystemClock.elapsedRealtime() < deadline) {
+            throwIfCanceled(signal);
+            // Run through a cursor: each step of incremental_vacuum frees one page, and
+            // filling the cursor window steps the statement to the end
+            pragmaLong(db, "PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_SLICE + ")");
+            long left = pragmaLong(db, "PRAGMA freelist_count");
+            if (left >= free) break;
+            freed += (int) (free - left);
+            free = left;
+        }
+        return freed;
+    }
+
+    /**
+     * @return true if enough of the file is free pages to justify the full VACUUM
+     */
+    private static boolean worthConverting(SQLiteDatabase db) {
+        long free = pragmaLong(db, "PRAGMA freelist_count");
+        return free >= CONVERT_MIN_FREE_PAGES
+                && free >= pragmaLong(db, "PRAGMA page_count") * CONVERT_FREE_FRACTION;
+    }
+
+    /**
+     * quick_check stopped at the first problem, so a damaged file cannot make it unbounded
+     *
+     * @return "ok", or the first problem found
+     */
+    private static String quickCheck(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA quick_check(1)", null);
+            return cursor.moveToFirst() ? cursor.getString(0) : "ok";
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static long lastQuickCheck(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT MAX(" + ExpenseDbHelper.COLUMN_STATS_RAN_AT + ") " +
+                    "FROM " + ExpenseDbHelper.TABLE_MAINTENANCE_STATS + " " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_STATS_INTEGRITY + " IS NOT NULL", null);
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static void recordRun(SQLiteDatabase db, long duration, long fileBytes, long freelist,
+                                  int freed, String integrity) {
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT INTO " + ExpenseDbHelper.TABLE_MAINTENANCE_STATS + " (" +
+                            ExpenseDbHelper.COLUMN_STATS_RAN_AT + ", " +
+                            ExpenseDbHelper.COLUMN_STATS_DURATION_MS + ", " +
+                            ExpenseDbHelper.COLUMN_STATS_FILE_BYTES + ", " +
+                            ExpenseDbHelper.COLUMN_STATS_FREELIST_PAGES + ", " +
+                            ExpenseDbHelper.COLUMN_STATS_PAGES_FREED + ", " +
+                            ExpenseDbHelper.COLUMN_STATS_INTEGRITY + ") VALUES (?, ?, ?, ?, ?, ?)",
+                    new Object[]{ System.currentTimeMillis(), duration, fileBytes, freelist, freed, integrity });
+            // Keep a bounded history
+            db.execSQL("DELETE FROM " + ExpenseDbHelper.TABLE_MAINTENANCE_STATS + " " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_STATS_ID + " <= " +
+                    "(SELECT MAX(" + ExpenseDbHelper.COLUMN_STATS_ID + ") FROM " +
+                    ExpenseDbHelper.TABLE_MAINTENANCE_STATS + ") - " + STATS_KEPT);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static boolean sqliteAtLeast(SQLiteDatabase db, int major, int minor) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT sqlite_version()", null);
+            if (!cursor.moveToFirst()) return false;
+            String[] parts = cursor.getString(0).split("\\.");
+            int foundMajor = Integer.parseInt(parts[0]);
+            int foundMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return foundMajor > major || (foundMajor == major && foundMinor >= minor);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Run a pragma through a cursor (execSQL rejects statements that return rows)
+     *
+     * @return First column of the first row, or 0 if it returns none
+     */
+    private static long pragmaLong(SQLiteDatabase db, String pragma) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(pragma, null);
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    /**
+     * Close the database helper
+     */
+    public void close() {
+        dbHelper.close();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.boki.data.local;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/**
+ * Conversions between ISO dates (yyyy-MM-dd) and epoch days (days since 1970-01-01).
+ * Pure integer arithmetic: no Calendar/SimpleDateFormat allocation per call,
+ * and no dependency on java.time (which needs API 26, our minSdk is 24).
+ */
+public final class EpochDays {
+
+    // Returned by fromIso() when the string is not a canonical yyyy-MM-dd date
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    private EpochDays() {
+        // Utility class
+    }
+
+    /**
+     * Parse a canonical ISO date into an epoch day
+     *
+     * @param iso Date in yyyy-MM-dd format
+     * @return Epoch day, or INVALID if the string is not canonical
+     */
+    public static int fromIso(String iso) {
+        if (iso == null || iso.length() != 10 || iso.charAt(4) != '-' || iso.charAt(7) != '-') {
+            return INVALID;
+        }
+        int year = parseDigits(iso, 0, 4);
+        int month = parseDigits(iso, 5, 7);
+        int day = parseDigits(iso, 8, 10);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        return fromCivil(year, month, day);
+    }
+
+    /**
+     * Format an epoch day as yyyy-MM-dd
+     *
+     * @param epochDay Days since 1970-01-01
+     * @return ISO date string
+     */
+    public static String toIso(int epochDay) {
+        int[] ymd = toCivil(epochDay);
+        return String.format(Locale.US, "%04d-%02d-%02d", ymd[0], ymd[1], ymd[2]);
+    }
+
+    /**
+     * Epoch day for a civil date (proleptic Gregorian calendar)
+     *
+     * @param year  Full year, e.g. 2025
+     * @param month 1-12
+     * @param day   1-31
+     * @return Days since 1970-01-01
+     */
+    public static int fromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Civil date for an epoch day
+     *
+     * @param epochDay Days since 1970-01-01
+     * @return int array [year, month (1-12), day (1-31)]
+     */
+    public static int[] toCivil(int epochDay) {
+        int z = epochDay + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp + (mp < 10 ? 3 : -9);
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return new int[] { year, month, day };
+    }
+
+    /**
+     * Epoch day of today in the device time zone
+     */
+    public static int today() {
+        return fromCalendar(Calendar.getInstance());
+    }
+
+    /**
+     * Epoch day of the calendar's local date
+     */
+    public static int fromCalendar(Calendar cal) {
+        return fromCivil(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
+    }
+
+    /**
+     * Day of week using Calendar constants (1=Sunday, 7=Saturday)
+     */
+    public static int dayOfWeek(int epochDay) {
+        // 1970-01-01 was a Thursday
+        return Math.floorMod(epochDay + 4, 7) + Calendar.SUNDAY;
+    }
+
+    /**
+     * Number of days in the given month
+     */
+    public static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static int parseDigits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
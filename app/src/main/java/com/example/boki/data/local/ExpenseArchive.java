@@ -0,0 +1,291 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import java.util.List;
+
+/**
+ * Hot/cold partitioning of the expense table.
+ *
+ * Live expenses dated before the horizon are moved, in batches and keeping their IDs,
+ * to expense_archive. Triggers keep expense_daily_rollup equal to the per-day,
+ * per-category totals of the archive, so range totals over old days read a few
+ * rollup rows instead of every archived expense. The hot table, its indexes and
+ * its cache footprint then only grow with recent data.
+ *
+ * Archived rows are never edited in place: unarchive() moves a row back before any
+ * update or delete, so the archive needs no change log triggers of its own.
+ * Routing uses the newest archived date: ranges after it only read the hot table.
+ */
+public class ExpenseArchive {
+
+    public static final int DEFAULT_HORIZON_DAYS = 90;
+
+    // Rows per transaction; also stays under SQLite's 999 bound parameters
+    private static final int ARCHIVE_BATCH_SIZE = 500;
+
+    private static final String PREFS_NAME = "expense_archive";
+    private static final String KEY_HORIZON_DAYS = "horizon_days";
+
+    // Same order in both tables, so rows can be copied with INSERT ... SELECT
+    static final String ROW_COLUMNS =
+            ExpenseDbHelper.COLUMN_ID + ", " +
+            ExpenseDbHelper.COLUMN_TITLE + ", " +
+            ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+            ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+            ExpenseDbHelper.COLUMN_NOTE + ", " +
+            ExpenseDbHelper.COLUMN_DATE + ", " +
+            ExpenseDbHelper.COLUMN_TIME;
+
+    private final ExpenseDbHelper dbHelper;
+    private final SharedPreferences settings;
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public ExpenseArchive(Context context) {
+        this.dbHelper = ExpenseDbHelper.getInstance(context);
+        this.settings = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return Days of expenses kept in the hot table
+     */
+    public int getHorizonDays() {
+        return settings.getInt(KEY_HORIZON_DAYS, DEFAULT_HORIZON_DAYS);
+    }
+
+    /**
+     * @param days Days of expenses to keep in the hot table (at least 1)
+     */
+    public void setHorizonDays(int days) {
+        settings.edit().putInt(KEY_HORIZON_DAYS, Math.max(1, days)).apply();
+    }
+
+    /**
+     * Move live expenses older than the horizon to the archive, one transaction per
+     * batch. Totals do not change, so the SpendingIndex is untouched; its monitor is
+     * only held per batch. Run this off the UI thread.
+     *
+     * @param signal Cancellation signal, may be null; checked between batches
+     * @return Number of rows moved
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public int archiveOldExpenses(CancellationSignal signal) {
+        String cutoff = EpochDays.toIso(EpochDays.today() - getHorizonDays());
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String selectIds =
+                "SELECT " + ExpenseDbHelper.COLUMN_ID + " " +
+                "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_DATE + " < ? " +
+                "AND " + ExpenseDbHelper.EXPENSE_LIVE + " " +
+                "LIMIT " + ARCHIVE_BATCH_SIZE;
+
+        int moved = 0;
+        int rowsInBatch;
+        do {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+
+            // Edits unarchive and update under the monitor, so a batch never moves a row mid-edit
+            synchronized (spendingIndex) {
+                db.beginTransaction();
+                try {
+                    String[] ids = readIds(db, selectIds, cutoff);
+                    rowsInBatch = ids.length;
+                    if (rowsInBatch > 0) {
+                        String in = placeholders(rowsInBatch);
+                        // Copy first: the change log trigger ignores deletes of rows already in the archive
+                        db.execSQL("INSERT INTO " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE + " (" + ROW_COLUMNS + ") " +
+                                "SELECT " + ROW_COLUMNS + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                                "WHERE " + ExpenseDbHelper.COLUMN_ID + " IN (" + in + ")", ids);
+                        db.execSQL("DELETE FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                                "WHERE " + ExpenseDbHelper.COLUMN_ID + " IN (" + in + ")", ids);
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            moved += rowsInBatch;
+        } while (rowsInBatch == ARCHIVE_BATCH_SIZE);
+        return moved;
+    }
+
+    /**
+     * Move an archived expense back to the hot table so it can be edited or deleted.
+     * Logged as an insert of the expense, so backups and sync pick it up.
+     *
+     * @param db Writable database, ideally inside the caller's transaction
+     * @param id Expense ID
+     * @return true if the row was archived and has been moved back
+     */
+    public static boolean unarchive(SQLiteDatabase db, long id) {
+        String[] args = { String.valueOf(id) };
+        db.beginTransaction();
+        try {
+            db.execSQL("INSERT OR IGNORE INTO " + ExpenseDbHelper.TABLE_EXPENSE + " (" + ROW_COLUMNS + ") " +
+                    "SELECT " + ROW_COLUMNS + " FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE + " " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_ID + " = ?", args);
+            int removed = db.delete(ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE,
+                    ExpenseDbHelper.COLUMN_ID + " = ?", args);
+            db.setTransactionSuccessful();
+            return removed > 0;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Newest date in the archive; ranges starting after it never need the cold tables
+     *
+     * @return yyyy-MM-dd, or null if nothing is archived
+     */
+    static String lastArchivedDate(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT MAX(" + ExpenseDbHelper.COLUMN_DATE + ") " +
+                    "FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, null);
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getString(0) : null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * @return true if [startIso, ...] reaches archived days (both tables must be read)
+     */
+    static boolean reachesArchive(SQLiteDatabase db, String startIso) {
+        String lastArchived = lastArchivedDate(db);
+        return lastArchived != null && startIso.compareTo(lastArchived) <= 0;
+    }
+
+    /**
+     * Parenthesized row source of (date, category, amount) covering [startIso, endIso],
+     * for aggregates: live hot rows, plus the rollup when the range reaches the archive.
+     * The hot side is still read for old days, since expenses entered late with an old
+     * date stay there until the next archive run; its date index keeps that cheap.
+     *
+     * @param args Receives the bound arguments, in order
+     */
+    static String amountsBetween(SQLiteDatabase db, String startIso, String endIso, List<String> args) {
+        String hot =
+                "SELECT " + ExpenseDbHelper.COLUMN_DATE + ", " +
+                        ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                        ExpenseDbHelper.COLUMN_AMOUNT + " " +
+                "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_DATE + " >= ? " +
+                "AND " + ExpenseDbHelper.COLUMN_DATE + " <= ? " +
+                "AND " + ExpenseDbHelper.EXPENSE_LIVE;
+        args.add(startIso);
+        args.add(endIso);
+        if (!reachesArchive(db, startIso)) {
+            return "(" + hot + ")";
+        }
+
+        args.add(startIso);
+        args.add(endIso);
+        return "(" + hot + " UNION ALL " +
+                "SELECT " + ExpenseDbHelper.COLUMN_DATE + ", " +
+                        ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                        ExpenseDbHelper.COLUMN_ROLLUP_TOTAL + " AS " + ExpenseDbHelper.COLUMN_AMOUNT + " " +
+                "FROM " + ExpenseDbHelper.TABLE_EXPENSE_ROLLUP + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_DATE + " >= ? " +
+                "AND " + ExpenseDbHelper.COLUMN_DATE + " <= ?)";
+    }
+
+    /**
+     * SELECT over live expense rows in both tables. The condition is applied to each
+     * side, so its arguments must be bound twice (see twice()).
+     *
+     * @param columns Columns to select (present in both tables)
+     * @param where   Condition on those columns, or null for every row
+     */
+    static String selectRows(String columns, String where) {
+        return "SELECT " + columns + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.EXPENSE_LIVE + (where != null ? " AND " + where : "") + " " +
+                "UNION ALL " +
+                "SELECT " + columns + " FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE +
+                (where != null ? " WHERE " + where : "") + " ";
+    }
+
+    /**
+     * selectRows() limited to the first rows in an order. Each side is ordered and
+     * limited before the two are merged, so a page reads at most limit rows from each
+     * table along its date index instead of sorting both tables.
+     *
+     * @param orderBy ORDER BY terms on the selected columns
+     * @param limit   Maximum number of rows
+     */
+    static String selectFirstRows(String columns, String where, String orderBy, int limit) {
+        String first = "ORDER BY " + orderBy + " LIMIT " + limit;
+        return "SELECT * FROM (SELECT " + columns + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.EXPENSE_LIVE + (where != null ? " AND " + where : "") + " " + first + ") " +
+                "UNION ALL " +
+                "SELECT * FROM (SELECT " + columns + " FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE +
+                (where != null ? " WHERE " + where : "") + " " + first + ") " +
+                first;
+    }
+
+    /**
+     * Arguments for selectRows(): the given ones, repeated for the archive side
+     */
+    static String[] twice(String... args) {
+        String[] both = new String[args.length * 2];
+        System.arraycopy(args, 0, both, 0, args.length);
+        System.arraycopy(args, 0, both, args.length, args.length);
+        return both;
+    }
+
+    /**
+     * Number of live expenses, hot and archived
+     */
+    static int countExpenses(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT (SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                    "WHERE " + ExpenseDbHelper.EXPENSE_LIVE + ") + " +
+                    "(SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE + ")", null);
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static String[] readIds(SQLiteDatabase db, String sql, String cutoff) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, new String[]{ cutoff });
+            String[] ids = new String[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                ids[i++] = cursor.getString(0);
+            }
+            return ids;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder in = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            in.append(i == 0 ? "?" : ", ?");
+        }
+        return in.toString();
+    }
+
+    /**
+     * Close the database helper
+     */
+    public void close() {
+        dbHelper.close();
+    }
+}
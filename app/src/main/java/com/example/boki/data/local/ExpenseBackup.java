@@ -0,0 +1,1368 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
+
+import com.example.boki.models.Expense;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary backups of the whole database (full) or of what changed since the
+ * previous backup (incremental), and restore from a full backup plus its increments.
+ *
+ * File layout (big-endian):
+ *   header  : magic "BOKI", u16 format version, u16 schema version, i64 created-at millis
+ *   blocks  : u8 type, u32 payload length, payload, u32 CRC32 of type + payload
+ *   end     : a single 0 byte
+ *
+ * Every payload is columnar: varint row count, varint column count, one varint byte
+ * length per column, then the columns back to back. Integers are varints (zigzag for
+ * signed values); expense IDs and days are stored as deltas from the previous row and
+ * amounts as minor units, so a typical expense takes well under 30 bytes. Expense
+ * blocks hold up to ROWS_PER_BLOCK rows each so backup memory stays bounded.
+ * The category block comes after the expenses because its dictionary is filled
+ * while they are written.
+ *
+ * Rows the compact columns cannot hold exactly (legacy date/time text, amounts with
+ * more than two decimals) go to an exceptions column with their raw values, so a
+ * backup is always lossless.
+ *
+ * The first block is a manifest: kind (full/incremental), the id of the chain's base
+ * backup and the change_log sequence range it covers. An incremental backup holds the
+ * current version of every row logged since the last backup plus a block of deleted
+ * IDs. Taking a full backup starts a new chain and compacts the log it covers.
+ *
+ * Recurring rules and their occurrence claims are not in the change log; every file
+ * carries a snapshot of both, and a restore takes the one from the newest file, so
+ * next_due and the claims match the restored expenses.
+ */
+public class ExpenseBackup {
+
+    /**
+     * Receives progress (called on the working thread)
+     */
+    public interface ProgressListener {
+        void onProgress(int rowsDone, int totalRows);
+    }
+
+    static final int MAGIC = 0x424F4B49; // "BOKI"
+    static final int FORMAT_VERSION = 3;  // v2: manifest and incremental backups; v3: recurring rules
+
+    private static final int BLOCK_END = 0;
+    private static final int BLOCK_MANIFEST = 'M';
+    private static final int BLOCK_EXPENSES = 'E';
+    private static final int BLOCK_CATEGORIES = 'C';
+    private static final int BLOCK_BUDGETS = 'B';
+    private static final int BLOCK_DELETES = 'D';
+    private static final int BLOCK_RECURRING = 'R';
+    private static final int BLOCK_OCCURRENCES = 'O';
+
+    private static final int KIND_FULL = 0;
+    private static final int KIND_INCREMENTAL = 1;
+
+    // Table codes in the deletes block
+    private static final int TABLE_CODE_EXPENSE = 0;
+    private static final int TABLE_CODE_BUDGET = 1;
+
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 8;
+    private static final int ROWS_PER_BLOCK = 65536;
+    private static final int READ_CHUNK_SIZE = 2000;
+    // Stays under SQLite's 999 bound-parameter limit
+    private static final int ID_CHUNK_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Backup chain state: which base the next increment builds on and where it starts
+    private static final String PREFS_NAME = "expense_backup";
+    private static final String KEY_BASE_ID = "base_id";
+    private static final String KEY_LAST_SEQ = "last_seq";
+
+    // Expense block columns
+    private static final int EXP_IDS = 0;
+    private static final int EXP_DAYS = 1;
+    private static final int EXP_SECONDS = 2;
+    private static final int EXP_AMOUNTS = 3;
+    private static final int EXP_CATEGORIES = 4;
+    private static final int EXP_TITLES = 5;
+    private static final int EXP_NOTES = 6;
+    private static final int EXP_EXCEPTIONS = 7;
+    private static final int EXP_COLUMNS = 8;
+
+    // Budget block columns
+    private static final int BUD_IDS = 0;
+    private static final int BUD_NAMES = 1;
+    private static final int BUD_AMOUNTS = 2;
+    private static final int BUD_START_DATES = 3;
+    private static final int BUD_CYCLE_TYPES = 4;
+    private static final int BUD_CYCLE_VALUES = 5;
+    private static final int BUD_ACTIVE = 6;
+    private static final int BUD_COLUMNS = 7;
+
+    // Recurring rule block columns
+    private static final int REC_IDS = 0;
+    private static final int REC_TITLES = 1;
+    private static final int REC_AMOUNTS = 2;
+    private static final int REC_CATEGORIES = 3;
+    private static final int REC_NOTES = 4;
+    private static final int REC_TIMES = 5;
+    private static final int REC_INTERVALS = 6;
+    private static final int REC_DAYS = 7;
+    private static final int REC_START_DATES = 8;
+    private static final int REC_END_DATES = 9;
+    private static final int REC_NEXT_DUE = 10;
+    private static final int REC_ACTIVE = 11;
+    private static final int REC_COLUMNS = 12;
+
+    // Read from the hot table and the archive through ExpenseArchive.selectRows()
+    private static final String EXPENSE_COLUMNS =
+            ExpenseDbHelper.COLUMN_ID + ", " +
+                    ExpenseDbHelper.COLUMN_DATE + ", " +
+                    ExpenseDbHelper.COLUMN_TIME + ", " +
+                    ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                    ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                    ExpenseDbHelper.COLUMN_TITLE + ", " +
+                    ExpenseDbHelper.COLUMN_NOTE;
+
+    private static final String BUDGET_SELECT =
+            "SELECT " + ExpenseDbHelper.COLUMN_BUDGET_ID + ", " +
+                    ExpenseDbHelper.COLUMN_BUDGET_NAME + ", " +
+                    ExpenseDbHelper.COLUMN_BUDGET_AMOUNT + ", " +
+                    ExpenseDbHelper.COLUMN_BUDGET_START_DATE + ", " +
+                    ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE + ", " +
+                    ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE + ", " +
+                    ExpenseDbHelper.COLUMN_BUDGET_ACTIVE + " " +
+                    "FROM " + ExpenseDbHelper.TABLE_BUDGET + " ";
+
+    private static final String[] RECURRING_COLUMNS = {
+            ExpenseDbHelper.COLUMN_RECURRING_ID,
+            ExpenseDbHelper.COLUMN_RECURRING_TITLE,
+            ExpenseDbHelper.COLUMN_RECURRING_AMOUNT,
+            ExpenseDbHelper.COLUMN_RECURRING_CATEGORY,
+            ExpenseDbHelper.COLUMN_RECURRING_NOTE,
+            ExpenseDbHelper.COLUMN_RECURRING_TIME,
+            ExpenseDbHelper.COLUMN_RECURRING_INTERVAL,
+            ExpenseDbHelper.COLUMN_RECURRING_DAY,
+            ExpenseDbHelper.COLUMN_RECURRING_START_DATE,
+            ExpenseDbHelper.COLUMN_RECURRING_END_DATE,
+            ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE,
+            ExpenseDbHelper.COLUMN_RECURRING_ACTIVE
+    };
+
+    private final ExpenseDbHelper dbHelper;
+    private final SharedPreferences chainState;
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public ExpenseBackup(Context context) {
+        this(context, ExpenseDbHelper.getInstance(context));
+    }
+
+    /**
+     * @param context  Application context
+     * @param dbHelper Database to back up (a scratch database in tests); a database
+     *                 other than the app's keeps its backup chain apart
+     */
+    public ExpenseBackup(Context context, ExpenseDbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        String name = dbHelper.getDatabaseName();
+        this.chainState = context.getSharedPreferences(ExpenseDbHelper.DATABASE_NAME.equals(name)
+                ? PREFS_NAME : PREFS_NAME + "_" + name, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if a full backup was taken, so an incremental one can build on it
+     */
+    public boolean hasBase() {
+        return chainState.getLong(KEY_BASE_ID, 0) != 0;
+    }
+
+    /**
+     * @return Last change_log sequence the backup chain covers; Long.MAX_VALUE without a
+     *         chain, since then no future increment needs the log
+     */
+    public long getBackedUpSeq() {
+        return hasBase() ? chainState.getLong(KEY_LAST_SEQ, 0) : Long.MAX_VALUE;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Backup
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Write a full backup and start a new chain. Run this off the UI thread.
+     * Once the file is complete, change_log entries it covers are deleted.
+     *
+     * @param out      Destination stream (closed by this method)
+     * @param listener Progress callback, may be null
+     * @param signal   Cancellation signal, may be null
+     * @return Number of expenses written
+     * @throws IOException if writing fails
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public int backup(OutputStream out, ProgressListener listener, CancellationSignal signal) throws IOException {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        // Changes logged after this point may or may not be in the file; the next
+        // increment starts here and replays them, which is harmless
+        long baseSeq = maxLogSeq(db);
+        long baseId = newBaseId();
+        int totalRows = ExpenseArchive.countExpenses(db);
+        int written = 0;
+
+        try (DataOutputStream data = openOutput(out, db)) {
+            BlockWriter blocks = new BlockWriter(data);
+            writeManifest(blocks, KIND_FULL, baseId, 0, baseSeq);
+            writeRecurring(db, blocks);
+
+            ExpenseEncoder expenses = new ExpenseEncoder(blocks);
+            String sql = ExpenseArchive.selectRows(EXPENSE_COLUMNS, ExpenseDbHelper.COLUMN_ID + " > ?") +
+                    "ORDER BY " + ExpenseDbHelper.COLUMN_ID + " " +
+                    "LIMIT " + READ_CHUNK_SIZE;
+            long lastId = 0;
+            int rowsInChunk;
+            do {
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+
+                rowsInChunk = 0;
+                Cursor cursor = null;
+                try {
+                    cursor = db.rawQuery(sql, ExpenseArchive.twice(String.valueOf(lastId)));
+                    while (cursor.moveToNext()) {
+                        lastId = expenses.add(cursor);
+                        rowsInChunk++;
+                    }
+                } finally {
+                    if (cursor != null) cursor.close();
+                }
+
+                written += rowsInChunk;
+                if (listener != null) {
+                    listener.onProgress(written, totalRows);
+                }
+            } while (rowsInChunk == READ_CHUNK_SIZE);
+            expenses.finish();
+
+            BudgetEncoder budgets = new BudgetEncoder();
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery(BUDGET_SELECT + "ORDER BY " + ExpenseDbHelper.COLUMN_BUDGET_ID, null);
+                while (cursor.moveToNext()) {
+                    budgets.add(cursor);
+                }
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+            budgets.write(blocks);
+
+            data.writeByte(BLOCK_END);
+        }
+
+        saveChainState(baseId, baseSeq);
+        // Keep entries sync has not pushed yet
+        SQLiteDatabase writable = dbHelper.getWritableDatabase();
+        long bound = Math.min(baseSeq, pushedSeq(writable));
+        writable.delete(ExpenseDbHelper.TABLE_CHANGE_LOG,
+                ExpenseDbHelper.COLUMN_LOG_SEQ + " <= ?", new String[]{ String.valueOf(bound) });
+        return written;
+    }
+
+    /**
+     * Write only what changed since the last backup (full or incremental). Run this off the UI thread.
+     *
+     * @param out      Destination stream (closed by this method)
+     * @param listener Progress callback, may be null
+     * @param signal   Cancellation signal, may be null
+     * @return Number of changed rows written (updated and deleted, expenses and budgets)
+     * @throws IllegalStateException if there is no full backup to build on (see hasBase)
+     * @throws IOException if writing fails
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public int backupIncremental(OutputStream out, ProgressListener listener, CancellationSignal signal) throws IOException {
+        if (!hasBase()) {
+            throw new IllegalStateException("Take a full backup first");
+        }
+        long baseId = chainState.getLong(KEY_BASE_ID, 0);
+        long fromSeq = chainState.getLong(KEY_LAST_SEQ, 0);
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        long toSeq = maxLogSeq(db);
+        long[] expenseIds = changedRowIds(db, ExpenseDbHelper.TABLE_EXPENSE, fromSeq, toSeq);
+        long[] budgetIds = changedRowIds(db, ExpenseDbHelper.TABLE_BUDGET, fromSeq, toSeq);
+        int totalRows = expenseIds.length + budgetIds.length;
+
+        try (DataOutputStream data = openOutput(out, db)) {
+            BlockWriter blocks = new BlockWriter(data);
+            writeManifest(blocks, KIND_INCREMENTAL, baseId, fromSeq, toSeq);
+            writeRecurring(db, blocks);
+
+            DeleteEncoder deletes = new DeleteEncoder();
+            ExpenseEncoder expenses = new ExpenseEncoder(blocks);
+            BudgetEncoder budgets = new BudgetEncoder();
+
+            for (int from = 0; from < expenseIds.length; from += ID_CHUNK_SIZE) {
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+                int to = Math.min(from + ID_CHUNK_SIZE, expenseIds.length);
+                queryByIds(db, true, expenseIds, from, to, expenses::add,
+                        TABLE_CODE_EXPENSE, deletes);
+                if (listener != null) {
+                    listener.onProgress(to, totalRows);
+                }
+            }
+            expenses.finish();
+
+            for (int from = 0; from < budgetIds.length; from += ID_CHUNK_SIZE) {
+                int to = Math.min(from + ID_CHUNK_SIZE, budgetIds.length);
+                queryByIds(db, false, budgetIds, from, to, budgets::add,
+                        TABLE_CODE_BUDGET, deletes);
+            }
+            budgets.write(blocks);
+            deletes.write(blocks);
+
+            data.writeByte(BLOCK_END);
+        }
+
+        saveChainState(baseId, toSeq);
+        if (listener != null) {
+            listener.onProgress(totalRows, totalRows);
+        }
+        return totalRows;
+    }
+
+    private interface RowSink {
+        long add(Cursor cursor) throws IOException;
+    }
+
+    /**
+     * Stream the rows whose IDs are ids[from..to) (sorted) to the sink; IDs that no
+     * longer exist (or are soft-deleted expenses) are recorded as deletions.
+     *
+     * @param expenseRows true for expenses (hot and archived), false for budgets
+     */
+    private static void queryByIds(SQLiteDatabase db, boolean expenseRows, long[] ids, int from, int to,
+                                   RowSink sink, int tableCode, DeleteEncoder deletes) throws IOException {
+        StringBuilder in = new StringBuilder(ExpenseDbHelper.COLUMN_ID).append(" IN (");
+        String[] args = new String[to - from];
+        for (int i = from; i < to; i++) {
+            in.append(i == from ? "?" : ", ?");
+            args[i - from] = String.valueOf(ids[i]);
+        }
+        in.append(")");
+
+        String sql;
+        if (expenseRows) {
+            sql = ExpenseArchive.selectRows(EXPENSE_COLUMNS, in.toString()) + "ORDER BY " + ExpenseDbHelper.COLUMN_ID;
+            args = ExpenseArchive.twice(args);
+        } else {
+            sql = BUDGET_SELECT + "WHERE " + in + " ORDER BY " + ExpenseDbHelper.COLUMN_ID;
+        }
+
+        int next = from;
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, args);
+            while (cursor.moveToNext()) {
+                long id = sink.add(cursor);
+                while (next < to && ids[next] < id) {
+                    deletes.add(tableCode, ids[next++]);
+                }
+                if (next < to && ids[next] == id) next++;
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        while (next < to) {
+            deletes.add(tableCode, ids[next++]);
+        }
+    }
+
+    /**
+     * Distinct, sorted row IDs of a table logged in (fromSeq, toSeq]
+     */
+    private static long[] changedRowIds(SQLiteDatabase db, String table, long fromSeq, long toSeq) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(
+                    "SELECT DISTINCT " + ExpenseDbHelper.COLUMN_LOG_ROW_ID + " " +
+                            "FROM " + ExpenseDbHelper.TABLE_CHANGE_LOG + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_LOG_TABLE + " = ? " +
+                            "AND " + ExpenseDbHelper.COLUMN_LOG_SEQ + " > ? " +
+                            "AND " + ExpenseDbHelper.COLUMN_LOG_SEQ + " <= ? " +
+                            "ORDER BY " + ExpenseDbHelper.COLUMN_LOG_ROW_ID,
+                    new String[]{ table, String.valueOf(fromSeq), String.valueOf(toSeq) });
+            long[] ids = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext()) {
+                ids[i++] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static long maxLogSeq(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT COALESCE(MAX(" + ExpenseDbHelper.COLUMN_LOG_SEQ + "), 0) " +
+                    "FROM " + ExpenseDbHelper.TABLE_CHANGE_LOG, null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Last change_log sequence sync has pushed, Long.MAX_VALUE if sync never ran
+     */
+    private static long pushedSeq(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + ExpenseDbHelper.COLUMN_STATE_VALUE + " " +
+                            "FROM " + ExpenseDbHelper.TABLE_SYNC_STATE + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_STATE_KEY + " = ?",
+                    new String[]{ ExpenseDbHelper.SYNC_KEY_PUSHED_SEQ });
+            return cursor.moveToFirst() ? cursor.getLong(0) : Long.MAX_VALUE;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static DataOutputStream openOutput(OutputStream out, SQLiteDatabase db) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        data.writeShort(db.getVersion());
+        data.writeLong(System.currentTimeMillis());
+        return data;
+    }
+
+    /**
+     * Snapshot of the recurring rules and their occurrence claims: both are small and
+     * not in the change log, so every file carries all of them. Taken before the
+     * expenses, so an occurrence written meanwhile is at worst written again, never lost.
+     */
+    private static void writeRecurring(SQLiteDatabase db, BlockWriter blocks) throws IOException {
+        Column[] rules = newColumns(REC_COLUMNS);
+        int ruleRows = 0;
+        Cursor cursor = null;
+        try {
+            cursor = db.query(ExpenseDbHelper.TABLE_RECURRING, RECURRING_COLUMNS, null, null, null, null,
+                    ExpenseDbHelper.COLUMN_RECURRING_ID);
+            long previousId = 0;
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(REC_IDS);
+                rules[REC_IDS].putZigZag(id - previousId);
+                rules[REC_TITLES].putString(cursor.getString(REC_TITLES));
+                rules[REC_AMOUNTS].putFixed64(Double.doubleToLongBits(cursor.getDouble(REC_AMOUNTS)));
+                rules[REC_CATEGORIES].putString(cursor.getString(REC_CATEGORIES));
+                rules[REC_NOTES].putNullableString(cursor.isNull(REC_NOTES) ? null : cursor.getString(REC_NOTES));
+                rules[REC_TIMES].putString(cursor.getString(REC_TIMES));
+                rules[REC_INTERVALS].putString(cursor.getString(REC_INTERVALS));
+                rules[REC_DAYS].putVarint(cursor.getInt(REC_DAYS));
+                rules[REC_START_DATES].putString(cursor.getString(REC_START_DATES));
+                rules[REC_END_DATES].putNullableString(cursor.isNull(REC_END_DATES) ? null : cursor.getString(REC_END_DATES));
+                rules[REC_NEXT_DUE].putString(cursor.getString(REC_NEXT_DUE));
+                rules[REC_ACTIVE].putVarint(cursor.getInt(REC_ACTIVE));
+                previousId = id;
+                ruleRows++;
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        blocks.write(BLOCK_RECURRING, ruleRows, rules);
+
+        Column ruleIds = new Column();
+        Column dates = new Column();
+        int occurrenceRows = 0;
+        cursor = null;
+        try {
+            cursor = db.query(ExpenseDbHelper.TABLE_RECURRING_OCCURRENCE,
+                    new String[]{ ExpenseDbHelper.COLUMN_OCCURRENCE_RULE_ID, ExpenseDbHelper.COLUMN_OCCURRENCE_DATE },
+                    null, null, null, null,
+                    ExpenseDbHelper.COLUMN_OCCURRENCE_RULE_ID + ", " + ExpenseDbHelper.COLUMN_OCCURRENCE_DATE);
+            long previousRuleId = 0;
+            while (cursor.moveToNext()) {
+                long ruleId = cursor.getLong(0);
+                ruleIds.putZigZag(ruleId - previousRuleId);
+                dates.putString(cursor.getString(1));
+                previousRuleId = ruleId;
+                occurrenceRows++;
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        blocks.write(BLOCK_OCCURRENCES, occurrenceRows, ruleIds, dates);
+    }
+
+    private static void writeManifest(BlockWriter blocks, int kind, long baseId, long fromSeq, long toSeq)
+            throws IOException {
+        Column manifest = new Column();
+        manifest.putVarint(kind);
+        manifest.putFixed64(baseId);
+        manifest.putVarint(fromSeq);
+        manifest.putVarint(toSeq);
+        blocks.write(BLOCK_MANIFEST, 1, manifest);
+    }
+
+    private static long newBaseId() {
+        long id = UUID.randomUUID().getMostSignificantBits();
+        return id != 0 ? id : 1;
+    }
+
+    private void saveChainState(long baseId, long lastSeq) {
+        chainState.edit()
+                .putLong(KEY_BASE_ID, baseId)
+                .putLong(KEY_LAST_SEQ, lastSeq)
+                .commit();
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Restore
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Replace all expenses, budgets and recurring rules with a full backup plus any of its increments.
+     * Run this off the UI thread.
+     *
+     * The files may be given in any order; they are memory-mapped, every checksum is
+     * verified and the chain is checked (one base, increments contiguous) before anything
+     * is written. The restore itself is one transaction, so a bad file, a failure or a
+     * cancellation leaves the current data untouched. Afterwards the next backup must be
+     * a full one, since this device's change log does not continue the restored chain.
+     *
+     * @param channels Channels of the backup files (not closed by this method)
+     * @param listener Progress callback, may be null
+     * @param signal   Cancellation signal, may be null
+     * @return Number of expense rows applied
+     * @throws IOException if the files are not valid backups or do not form a chain
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public int restore(List<FileChannel> channels, ProgressListener listener, CancellationSignal signal)
+            throws IOException {
+        // Pass 1: verify every file and put the chain in order
+        List<BackupFile> chain = new ArrayList<>();
+        for (FileChannel channel : channels) {
+            chain.add(BackupFile.open(channel));
+        }
+        Collections.sort(chain, (a, b) -> a.kind != b.kind
+                ? Integer.compare(a.kind, b.kind)
+                : Long.compare(a.fromSeq, b.fromSeq));
+        if (chain.isEmpty() || chain.get(0).kind != KIND_FULL) {
+            throw new IOException("No full backup selected");
+        }
+        int totalRows = 0;
+        for (int i = 0; i < chain.size(); i++) {
+            BackupFile file = chain.get(i);
+            if (i > 0) {
+                BackupFile previous = chain.get(i - 1);
+                if (file.kind != KIND_INCREMENTAL || file.baseId != previous.baseId
+                        || file.fromSeq != previous.toSeq) {
+                    throw new IOException("Backup files do not form one chain");
+                }
+            }
+            totalRows += file.expenseRows;
+        }
+        BackupFile recurring = null;
+        for (BackupFile file : chain) {
+            if (file.hasRecurring) recurring = file;
+        }
+
+        // Pass 2: replace the data in one transaction
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ExpenseBatchInserter inserter = ExpenseBatchInserter.forRestore(db);
+        int restored = 0;
+
+        synchronized (spendingIndex) {
+            db.beginTransaction();
+            try {
+                // The restored rows are not local changes; don't log a million of them
+                ExpenseDbHelper.dropChangeLogTriggers(db);
+                db.delete(ExpenseDbHelper.TABLE_EXPENSE, null, null);
+                db.delete(ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, null, null);
+                db.delete(ExpenseDbHelper.TABLE_EXPENSE_ROLLUP, null, null);
+                db.delete(ExpenseDbHelper.TABLE_BUDGET, null, null);
+
+                List<Expense> batch = new ArrayList<>(ExpenseBatchInserter.DEFAULT_BATCH_SIZE);
+                for (BackupFile file : chain) {
+                    BlockReader blocks = file.blocks();
+                    while (blocks.next()) {
+                        if (blocks.type == BLOCK_EXPENSES) {
+                            restored = restoreExpenses(blocks, file.categories, inserter, batch,
+                                    restored, totalRows, listener, signal);
+                        } else if (blocks.type == BLOCK_BUDGETS) {
+                            restoreBudgets(db, blocks);
+                        } else if (blocks.type == BLOCK_DELETES) {
+                            applyDeletes(db, blocks);
+                        }
+                    }
+                }
+
+                if (recurring != null) {
+                    restoreRecurring(db, recurring);
+                } else {
+                    // Older files have no rules: occurrences after the backup must be written again
+                    Calendar created = Calendar.getInstance();
+                    created.setTimeInMillis(chain.get(chain.size() - 1).createdAt);
+                    RecurringExpenseRepository.rewindAfter(db, EpochDays.fromCalendar(created));
+                }
+
+                db.delete(ExpenseDbHelper.TABLE_CHANGE_LOG, null, null);
+                ExpenseDbHelper.createChangeLogTriggers(db);
+                // The log is gone: sync re-pushes every row and pulls everything again.
+                // sync_row is kept so restored rows keep their uids.
+                db.delete(ExpenseDbHelper.TABLE_SYNC_STATE,
+                        ExpenseDbHelper.COLUMN_STATE_KEY + " != ?",
+                        new String[]{ ExpenseDbHelper.SYNC_KEY_DEVICE_ID });
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                inserter.close();
+            }
+
+            // Restore bypassed the index, rebuild it from the committed data
+            spendingIndex.rebuild(db);
+        }
+        BudgetRepository.notifyChanged();
+
+        chainState.edit().clear().commit();
+        return restored;
+    }
+
+    private static int restoreExpenses(BlockReader block, String[] categories, ExpenseBatchInserter inserter,
+                                       List<Expense> batch, int restored, int totalRows,
+                                       ProgressListener listener, CancellationSignal signal) throws IOException {
+        ColumnReader ids = block.column(EXP_IDS);
+        ColumnReader days = block.column(EXP_DAYS);
+        ColumnReader seconds = block.column(EXP_SECONDS);
+        ColumnReader amounts = block.column(EXP_AMOUNTS);
+        ColumnReader categoryIndexes = block.column(EXP_CATEGORIES);
+        ColumnReader titles = block.column(EXP_TITLES);
+        ColumnReader notes = block.column(EXP_NOTES);
+        ColumnReader exceptions = block.column(EXP_EXCEPTIONS);
+
+        long id = 0;
+        int day = 0;
+        int nextException = exceptions.hasMore() ? (int) exceptions.varint() : -1;
+
+        for (int row = 0; row < block.rowCount; row++) {
+            id += ids.zigZag();
+            day += (int) days.zigZag();
+            int second = (int) seconds.varint();
+            long minor = amounts.zigZag();
+
+            String date;
+            String time;
+            double amount;
+            if (row == nextException) {
+                date = exceptions.string();
+                time = exceptions.string();
+                amount = Double.longBitsToDouble(exceptions.fixed64());
+                nextException = exceptions.hasMore() ? row + (int) exceptions.varint() : -1;
+            } else {
+                date = EpochDays.toIso(day);
+                time = formatSeconds(second);
+                amount = SpendingIndex.fromMinorUnits(minor);
+            }
+
+            int categoryIndex = (int) categoryIndexes.varint();
+            if (categoryIndex >= categories.length) {
+                throw new IOException("Backup is corrupted (unknown category)");
+            }
+
+            batch.add(new Expense(id, titles.string(), amount, categories[categoryIndex],
+                    notes.nullableString(), date, time));
+
+            if (batch.size() == ExpenseBatchInserter.DEFAULT_BATCH_SIZE || row == block.rowCount - 1) {
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+                restored += inserter.insertBatch(batch);
+                batch.clear();
+                if (listener != null) {
+                    listener.onProgress(restored, totalRows);
+                }
+            }
+        }
+        return restored;
+    }
+
+    private static void restoreBudgets(SQLiteDatabase db, BlockReader block) throws IOException {
+        ColumnReader ids = block.column(BUD_IDS);
+        ColumnReader names = block.column(BUD_NAMES);
+        ColumnReader amounts = block.column(BUD_AMOUNTS);
+        ColumnReader startDates = block.column(BUD_START_DATES);
+        ColumnReader cycleTypes = block.column(BUD_CYCLE_TYPES);
+        ColumnReader cycleValues = block.column(BUD_CYCLE_VALUES);
+        ColumnReader active = block.column(BUD_ACTIVE);
+
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT OR REPLACE INTO " + ExpenseDbHelper.TABLE_BUDGET + " (" +
+                        ExpenseDbHelper.COLUMN_BUDGET_ID + ", " +
+                        ExpenseDbHelper.COLUMN_BUDGET_NAME + ", " +
+                        ExpenseDbHelper.COLUMN_BUDGET_AMOUNT + ", " +
+                        ExpenseDbHelper.COLUMN_BUDGET_START_DATE + ", " +
+                        ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE + ", " +
+                        ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE + ", " +
+                        ExpenseDbHelper.COLUMN_BUDGET_ACTIVE + ") " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)");
+        try {
+            long id = 0;
+            for (int row = 0; row < block.rowCount; row++) {
+                id += ids.zigZag();
+                insert.bindLong(1, id);
+                insert.bindString(2, names.string());
+                insert.bindDouble(3, Double.longBitsToDouble(amounts.fixed64()));
+                insert.bindString(4, startDates.string());
+                insert.bindString(5, cycleTypes.string());
+                insert.bindLong(6, cycleValues.zigZag());
+                insert.bindLong(7, active.varint());
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Replace the recurring rules and their occurrence claims with the file's snapshot
+     */
+    private static void restoreRecurring(SQLiteDatabase db, BackupFile file) throws IOException {
+        db.delete(ExpenseDbHelper.TABLE_RECURRING_OCCURRENCE, null, null);
+        db.delete(ExpenseDbHelper.TABLE_RECURRING, null, null);
+
+        SQLiteStatement insertRule = db.compileStatement(
+                "INSERT INTO " + ExpenseDbHelper.TABLE_RECURRING + " (" +
+                        TextUtils.join(", ", RECURRING_COLUMNS) + ") " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement insertOccurrence = db.compileStatement(
+                "INSERT INTO " + ExpenseDbHelper.TABLE_RECURRING_OCCURRENCE + " (" +
+                        ExpenseDbHelper.COLUMN_OCCURRENCE_RULE_ID + ", " +
+                        ExpenseDbHelper.COLUMN_OCCURRENCE_DATE + ") VALUES (?, ?)");
+        try {
+            BlockReader blocks = file.blocks();
+            while (blocks.next()) {
+                if (blocks.type == BLOCK_RECURRING) {
+                    ColumnReader[] columns = new ColumnReader[REC_COLUMNS];
+                    for (int i = 0; i < REC_COLUMNS; i++) {
+                        columns[i] = blocks.column(i);
+                    }
+                    long id = 0;
+                    for (int row = 0; row < blocks.rowCount; row++) {
+                        insertRule.clearBindings();
+                        id += columns[REC_IDS].zigZag();
+                        insertRule.bindLong(1 + REC_IDS, id);
+                        insertRule.bindString(1 + REC_TITLES, columns[REC_TITLES].string());
+                        insertRule.bindDouble(1 + REC_AMOUNTS, Double.longBitsToDouble(columns[REC_AMOUNTS].fixed64()));
+                        insertRule.bindString(1 + REC_CATEGORIES, columns[REC_CATEGORIES].string());
+                        bindNullable(insertRule, 1 + REC_NOTES, columns[REC_NOTES].nullableString());
+                        insertRule.bindString(1 + REC_TIMES, columns[REC_TIMES].string());
+                        insertRule.bindString(1 + REC_INTERVALS, columns[REC_INTERVALS].string());
+                        insertRule.bindLong(1 + REC_DAYS, columns[REC_DAYS].varint());
+                        insertRule.bindString(1 + REC_START_DATES, columns[REC_START_DATES].string());
+                        bindNullable(insertRule, 1 + REC_END_DATES, columns[REC_END_DATES].nullableString());
+                        insertRule.bindString(1 + REC_NEXT_DUE, columns[REC_NEXT_DUE].string());
+                        insertRule.bindLong(1 + REC_ACTIVE, columns[REC_ACTIVE].varint());
+                        insertRule.executeInsert();
+                    }
+                } else if (blocks.type == BLOCK_OCCURRENCES) {
+                    ColumnReader ruleIds = blocks.column(0);
+                    ColumnReader dates = blocks.column(1);
+                    long ruleId = 0;
+                    for (int row = 0; row < blocks.rowCount; row++) {
+                        ruleId += ruleIds.zigZag();
+                        insertOccurrence.bindLong(1, ruleId);
+                        insertOccurrence.bindString(2, dates.string());
+                        insertOccurrence.executeInsert();
+                    }
+                }
+            }
+        } finally {
+            insertRule.close();
+            insertOccurrence.close();
+        }
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static void applyDeletes(SQLiteDatabase db, BlockReader block) throws IOException {
+        ColumnReader tables = block.column(0);
+        ColumnReader ids = block.column(1);
+
+        SQLiteStatement deleteExpense = db.compileStatement("DELETE FROM " + ExpenseDbHelper.TABLE_EXPENSE +
+                " WHERE " + ExpenseDbHelper.COLUMN_ID + " = ?");
+        SQLiteStatement deleteBudget = db.compileStatement("DELETE FROM " + ExpenseDbHelper.TABLE_BUDGET +
+                " WHERE " + ExpenseDbHelper.COLUMN_BUDGET_ID + " = ?");
+        try {
+            long id = 0;
+            for (int row = 0; row < block.rowCount; row++) {
+                SQLiteStatement delete = tables.varint() == TABLE_CODE_BUDGET ? deleteBudget : deleteExpense;
+                id += ids.zigZag();
+                delete.bindLong(1, id);
+                delete.executeUpdateDelete();
+            }
+        } finally {
+            deleteExpense.close();
+            deleteBudget.close();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Encoders
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Encodes expense rows (cursor in EXPENSE_COLUMNS order, ascending id) into blocks
+     * of up to ROWS_PER_BLOCK rows, collecting the category dictionary on the way.
+     */
+    private static final class ExpenseEncoder {
+        private final BlockWriter blocks;
+        private final Column[] columns = newColumns(EXP_COLUMNS);
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> categories = new ArrayList<>();
+        private int rowsInBlock;
+        private long previousId;
+        private int previousDay;
+        private int previousException;
+
+        ExpenseEncoder(BlockWriter blocks) {
+            this.blocks = blocks;
+        }
+
+        /**
+         * @return The row's ID
+         */
+        long add(Cursor cursor) throws IOException {
+            long id = cursor.getLong(0);
+            String date = cursor.getString(1);
+            String time = cursor.getString(2);
+            double amount = cursor.getDouble(3);
+            String category = cursor.getString(4);
+
+            int day = EpochDays.fromIso(date);
+            int seconds = secondsOfDay(time);
+            long minor = SpendingIndex.toMinorUnits(amount);
+            boolean exact = day != EpochDays.INVALID && seconds >= 0
+                    && SpendingIndex.fromMinorUnits(minor) == amount;
+
+            columns[EXP_IDS].putZigZag(id - previousId);
+            if (exact) {
+                columns[EXP_DAYS].putZigZag(day - previousDay);
+                columns[EXP_SECONDS].putVarint(seconds);
+                columns[EXP_AMOUNTS].putZigZag(minor);
+                previousDay = day;
+            } else {
+                columns[EXP_DAYS].putZigZag(0);
+                columns[EXP_SECONDS].putVarint(0);
+                columns[EXP_AMOUNTS].putZigZag(0);
+                columns[EXP_EXCEPTIONS].putVarint(rowsInBlock - previousException);
+                columns[EXP_EXCEPTIONS].putString(date);
+                columns[EXP_EXCEPTIONS].putString(time);
+                columns[EXP_EXCEPTIONS].putFixed64(Double.doubleToLongBits(amount));
+                previousException = rowsInBlock;
+            }
+
+            Integer categoryIndex = dictionary.get(category);
+            if (categoryIndex == null) {
+                categoryIndex = categories.size();
+                dictionary.put(category, categoryIndex);
+                categories.add(category);
+            }
+            columns[EXP_CATEGORIES].putVarint(categoryIndex);
+            columns[EXP_TITLES].putString(cursor.getString(5));
+            columns[EXP_NOTES].putNullableString(cursor.isNull(6) ? null : cursor.getString(6));
+
+            previousId = id;
+            if (++rowsInBlock == ROWS_PER_BLOCK) {
+                flush();
+            }
+            return id;
+        }
+
+        private void flush() throws IOException {
+            blocks.write(BLOCK_EXPENSES, rowsInBlock, columns);
+            resetColumns(columns);
+            // Deltas restart in every block so blocks decode independently
+            rowsInBlock = 0;
+            previousId = 0;
+            previousDay = 0;
+            previousException = 0;
+        }
+
+        /**
+         * Write the last partial block and the category dictionary
+         */
+        void finish() throws IOException {
+            if (rowsInBlock > 0) {
+                flush();
+            }
+            Column names = new Column();
+            for (String category : categories) {
+                names.putString(category);
+            }
+            blocks.write(BLOCK_CATEGORIES, categories.size(), names);
+        }
+    }
+
+    /**
+     * Encodes budget rows (cursor in BUDGET_SELECT order, ascending id) into one block
+     */
+    private static final class BudgetEncoder {
+        private final Column[] columns = newColumns(BUD_COLUMNS);
+        private int rows;
+        private long previousId;
+
+        long add(Cursor cursor) {
+            long id = cursor.getLong(0);
+            columns[BUD_IDS].putZigZag(id - previousId);
+            columns[BUD_NAMES].putString(cursor.getString(1));
+            columns[BUD_AMOUNTS].putFixed64(Double.doubleToLongBits(cursor.getDouble(2)));
+            columns[BUD_START_DATES].putString(cursor.getString(3));
+            columns[BUD_CYCLE_TYPES].putString(cursor.getString(4));
+            columns[BUD_CYCLE_VALUES].putZigZag(cursor.getLong(5));
+            columns[BUD_ACTIVE].putVarint(cursor.getInt(6));
+            previousId = id;
+            rows++;
+            return id;
+        }
+
+        void write(BlockWriter blocks) throws IOException {
+            blocks.write(BLOCK_BUDGETS, rows, columns);
+        }
+    }
+
+    /**
+     * Encodes deleted (table, id) pairs into one block
+     */
+    private static final class DeleteEncoder {
+        private final Column tables = new Column();
+        private final Column ids = new Column();
+        private int rows;
+        private long previousId;
+
+        void add(int tableCode, long id) {
+            tables.putVarint(tableCode);
+            ids.putZigZag(id - previousId);
+            previousId = id;
+            rows++;
+        }
+
+        void write(BlockWriter blocks) throws IOException {
+            blocks.write(BLOCK_DELETES, rows, tables, ids);
+        }
+    }
+
+    /**
+     * One mapped, verified backup file
+     */
+    private static final class BackupFile {
+        final ByteBuffer data;
+        int kind = KIND_FULL;  // Format v1 files have no manifest and are always full
+        long baseId;
+        long fromSeq;
+        long toSeq;
+        String[] categories = new String[0];
+        int expenseRows;
+        long createdAt;
+        boolean hasRecurring;   // Format v3 and later
+
+        private BackupFile(ByteBuffer data) {
+            this.data = data;
+        }
+
+        static BackupFile open(FileChannel channel) throws IOException {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 1) {
+                throw new IOException("Not a BOKI backup");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (mapped.getInt() != MAGIC) {
+                throw new IOException("Not a BOKI backup");
+            }
+            int formatVersion = mapped.getShort() & 0xFFFF;
+            if (formatVersion > FORMAT_VERSION) {
+                throw new IOException("Backup was made by a newer version of the app");
+            }
+
+            BackupFile file = new BackupFile(mapped);
+            file.createdAt = mapped.getLong(8);
+            BlockReader blocks = file.blocks();
+            while (blocks.next()) {
+                if (blocks.type == BLOCK_MANIFEST) {
+                    ColumnReader manifest = blocks.column(0);
+                    file.kind = (int) manifest.varint();
+                    file.baseId = manifest.fixed64();
+                    file.fromSeq = manifest.varint();
+                    file.toSeq = manifest.varint();
+                } else if (blocks.type == BLOCK_EXPENSES) {
+                    file.expenseRows += blocks.rowCount;
+                } else if (blocks.type == BLOCK_RECURRING) {
+                    file.hasRecurring = true;
+                } else if (blocks.type == BLOCK_CATEGORIES) {
+                    ColumnReader names = blocks.column(0);
+                    file.categories = new String[blocks.rowCount];
+                    for (int i = 0; i < file.categories.length; i++) {
+                        file.categories[i] = names.string();
+                    }
+                }
+            }
+            return file;
+        }
+
+        /**
+         * Fresh reader positioned at the first block
+         */
+        BlockReader blocks() {
+            ByteBuffer view = data.duplicate();
+            view.position(HEADER_SIZE);
+            return new BlockReader(view);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Seconds since midnight for a canonical HH:mm:ss time, or -1 for anything else
+     */
+    static int secondsOfDay(String time) {
+        if (time == null || time.length() != 8 || time.charAt(2) != ':' || time.charAt(5) != ':') {
+            return -1;
+        }
+        int hours = twoDigits(time, 0);
+        int minutes = twoDigits(time, 3);
+        int seconds = twoDigits(time, 6);
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+            return -1;
+        }
+        return hours * 3600 + minutes * 60 + seconds;
+    }
+
+    private static int twoDigits(String s, int at) {
+        char a = s.charAt(at);
+        char b = s.charAt(at + 1);
+        if (a < '0' || a > '9' || b < '0' || b > '9') return -1;
+        return (a - '0') * 10 + (b - '0');
+    }
+
+    static String formatSeconds(int seconds) {
+        int hours = seconds / 3600;
+        int minutes = seconds / 60 % 60;
+        int secs = seconds % 60;
+        return new String(new char[]{
+                (char) ('0' + hours / 10), (char) ('0' + hours % 10), ':',
+                (char) ('0' + minutes / 10), (char) ('0' + minutes % 10), ':',
+                (char) ('0' + secs / 10), (char) ('0' + secs % 10)
+        });
+    }
+
+    private static Column[] newColumns(int count) {
+        Column[] columns = new Column[count];
+        for (int i = 0; i < count; i++) {
+            columns[i] = new Column();
+        }
+        return columns;
+    }
+
+    private static void resetColumns(Column[] columns) {
+        for (Column column : columns) {
+            column.reset();
+        }
+    }
+
+    /**
+     * Close the database helper
+     * Call this when the backup is no longer needed
+     */
+    public void close() {
+        if (dbHelper != null) {
+            dbHelper.close();
+        }
+    }
+
+    /**
+     * Growable byte buffer for one column, with varint encoders
+     */
+    static final class Column {
+        byte[] bytes = new byte[1024];
+        int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void putVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void putZigZag(long value) {
+            putVarint((value << 1) ^ (value >> 63));
+        }
+
+        void putFixed64(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void putString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        // Length is stored plus one so that 0 can mean null
+        void putNullableString(String value) {
+            if (value == null) {
+                putVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(utf8.length + 1L);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+    }
+
+    /**
+     * Frames columns into a checksummed block
+     */
+    private static final class BlockWriter {
+        private final DataOutputStream out;
+        private final Column header = new Column();
+        private final CRC32 crc = new CRC32();
+
+        BlockWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void write(int type, int rowCount, Column... columns) throws IOException {
+            header.reset();
+            header.putVarint(rowCount);
+            header.putVarint(columns.length);
+            long length = 0;
+            for (Column column : columns) {
+                header.putVarint(column.size);
+                length += column.size;
+            }
+            length += header.size;
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Backup block too large");
+            }
+
+            crc.reset();
+            crc.update(type);
+            crc.update(header.bytes, 0, header.size);
+            out.writeByte(type);
+            out.writeInt((int) length);
+            out.write(header.bytes, 0, header.size);
+            for (Column column : columns) {
+                crc.update(column.bytes, 0, column.size);
+                out.write(column.bytes, 0, column.size);
+            }
+            out.writeInt((int) crc.getValue());
+        }
+    }
+
+    /**
+     * Walks the blocks of a mapped file, verifying each checksum.
+     * A block's payload is copied into one reusable array (CRC32 only takes
+     * ByteBuffers from API 26), so the file itself is never fully loaded into the heap.
+     */
+    private static final class BlockReader {
+        private final ByteBuffer file;
+        private final CRC32 crc = new CRC32();
+        private byte[] payload = new byte[64 * 1024];
+        private int[] columnStarts = new int[0];
+        private int[] columnEnds = new int[0];
+        private int blockNumber;
+
+        int type;
+        int rowCount;
+
+        BlockReader(ByteBuffer file) {
+            this.file = file;
+        }
+
+        /**
+         * Advance to the next block
+         *
+         * @return false at the end marker
+         */
+        boolean next() throws IOException {
+            if (!file.hasRemaining()) {
+                throw new IOException("Backup is truncated");
+            }
+            type = file.get() & 0xFF;
+            if (type == BLOCK_END) {
+                return false;
+            }
+            blockNumber++;
+
+            if (file.remaining() < 4) {
+                throw new IOException("Backup is truncated");
+            }
+            int length = file.getInt();
+            if (length < 0 || file.remaining() < (long) length + 4) {
+                throw new IOException("Backup is truncated");
+            }
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            file.get(payload, 0, length);
+            int expected = file.getInt();
+
+            crc.reset();
+            crc.update(type);
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Backup is corrupted (block " + blockNumber + ")");
+            }
+
+            ColumnReader header = new ColumnReader(payload, 0, length);
+            rowCount = (int) header.varint();
+            int columns = (int) header.varint();
+            columnStarts = new int[columns];
+            columnEnds = new int[columns];
+            for (int i = 0; i < columns; i++) {
+                columnEnds[i] = (int) header.varint();
+            }
+            int position = header.position;
+            for (int i = 0; i < columns; i++) {
+                columnStarts[i] = position;
+                position += columnEnds[i];
+                columnEnds[i] = position;
+            }
+            if (position != length) {
+                throw new IOException("Backup is corrupted (block " + blockNumber + ")");
+            }
+            return true;
+        }
+
+        /**
+         * Reader over one column of the current block; missing columns read as empty
+         */
+        ColumnReader column(int index) {
+            if (index >= columnStarts.length) {
+                return new ColumnReader(payload, 0, 0);
+            }
+            return new ColumnReader(payload, columnStarts[index], columnEnds[index]);
+        }
+    }
+
+    /**
+     * Sequential decoder over a byte range
+     */
+    static final class ColumnReader {
+        private final byte[] bytes;
+        private final int end;
+        int position;
+
+        ColumnReader(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.position = start;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        long varint() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= end) {
+                    throw new IOException("Backup is corrupted (column overrun)");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Backup is corrupted (bad varint)");
+        }
+
+        long zigZag() throws IOException {
+            long raw = varint();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        long fixed64() throws IOException {
+            if (end - position < 8) {
+                throw new IOException("Backup is corrupted (column overrun)");
+            }
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        String string() throws IOException {
+            return text((int) varint());
+        }
+
+        String nullableString() throws IOException {
+            int length = (int) varint();
+            return length == 0 ? null : text(length - 1);
+        }
+
+        private String text(int length) throws IOException {
+            if (length < 0 || end - position < length) {
+                throw new IOException("Backup is corrupted (column overrun)");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.boki.data.local;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.boki.models.Expense;
+
+import java.util.List;
+
+/**
+ * Fast write path for bulk inserts (import, restore).
+ *
+ * One precompiled INSERT is re-bound for every row and each batch runs in a single
+ * transaction, so SQLite syncs the journal once per batch instead of once per row.
+ * The SpendingIndex is locked across the transaction and updated after it commits,
+ * the same way ExpenseRepository does for single writes.
+ */
+public class ExpenseBatchInserter {
+
+    // Rows per transaction; large enough to amortize the commit, small enough to keep the lock short
+    public static final int DEFAULT_BATCH_SIZE = 2000;
+
+    private final SQLiteDatabase db;
+    private final SQLiteStatement insertStatement;
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+    // Restore mode: rows keep their original IDs and the caller rebuilds the SpendingIndex
+    private final boolean keepIds;
+
+    /**
+     * @param db Writable database; the statement stays compiled until close()
+     */
+    public ExpenseBatchInserter(SQLiteDatabase db) {
+        this(db, false);
+    }
+
+    private ExpenseBatchInserter(SQLiteDatabase db, boolean keepIds) {
+        this.db = db;
+        this.keepIds = keepIds;
+        this.insertStatement = db.compileStatement(
+                (keepIds ? "INSERT OR REPLACE INTO " : "INSERT INTO ") + ExpenseDbHelper.TABLE_EXPENSE + " (" +
+                        ExpenseDbHelper.COLUMN_TITLE + ", " +
+                        ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                        ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                        ExpenseDbHelper.COLUMN_NOTE + ", " +
+                        ExpenseDbHelper.COLUMN_DATE + ", " +
+                        ExpenseDbHelper.COLUMN_TIME +
+                        (keepIds ? ", " + ExpenseDbHelper.COLUMN_ID + ") VALUES (?, ?, ?, ?, ?, ?, ?)"
+                                 : ") VALUES (?, ?, ?, ?, ?, ?)"));
+    }
+
+    /**
+     * Inserter for restoring a backup: expenses keep their IDs (replacing a row with the
+     * same ID, as incremental backups carry updated rows) and the SpendingIndex is left
+     * alone, the caller rebuilds it once after the whole restore commits.
+     *
+     * @param db Writable database
+     */
+    static ExpenseBatchInserter forRestore(SQLiteDatabase db) {
+        return new ExpenseBatchInserter(db, true);
+    }
+
+    /**
+     * Insert a batch in one transaction. Either every row is written or none is.
+     * Saved expenses get their new row IDs; in restore mode the given IDs are kept.
+     *
+     * @param batch Expenses to insert
+     * @return Number of rows inserted
+     */
+    public int insertBatch(List<Expense> batch) {
+        if (batch.isEmpty()) return 0;
+
+        synchronized (spendingIndex) {
+            db.beginTransaction();
+            try {
+                for (Expense expense : batch) {
+                    insertStatement.clearBindings();
+                    insertStatement.bindString(1, expense.getTitle());
+                    insertStatement.bindDouble(2, expense.getAmount());
+                    insertStatement.bindString(3, expense.getCategory());
+                    if (expense.getNote() != null) {
+                        insertStatement.bindString(4, expense.getNote());
+                    } else {
+                        insertStatement.bindNull(4);
+                    }
+                    insertStatement.bindString(5, expense.getDate());
+                    insertStatement.bindString(6, expense.getTime());
+                    if (keepIds) {
+                        insertStatement.bindLong(7, expense.getId());
+                        insertStatement.executeInsert();
+                    } else {
+                        expense.setId(insertStatement.executeInsert());
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (!keepIds) {
+                for (Expense expense : batch) {
+                    spendingIndex.add(expense.getDate(), expense.getCategory(), expense.getAmount());
+                }
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * Release the compiled statement
+     */
+    public void close() {
+        insertStatement.close();
+    }
+}
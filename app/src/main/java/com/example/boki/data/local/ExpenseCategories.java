@@ -0,0 +1,108 @@
+package com.example.boki.data.local;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The fixed category table: the names shown in the category picker, a stable
+ * numeric id for each, and aliases used to map imported text (English bank
+ * exports, spelling variants) onto those names.
+ */
+public final class ExpenseCategories {
+
+    public static final int FOOD = 1;
+    public static final int FAMILY = 2;
+    public static final int HEALTH = 3;
+    public static final int TRANSPORT = 4;
+    public static final int COMMUNICATION = 5;
+    public static final int EDUCATION = 6;
+    public static final int ENTERTAINMENT = 7;
+    public static final int OTHER = 8;
+
+    // Indexed by id; must match the button texts in category_selection_dialog.xml
+    private static final String[] NAMES = {
+        null,
+        "مطاعم",
+        "العائلة",
+        "صحة وعناية",
+        "مواصلات",
+        "اتصالات",
+        "تعليم",
+        "ترفية",
+        "أخرى"
+    };
+
+    private static final Map<String, Integer> ALIASES = new HashMap<>();
+
+    static {
+        for (int id = FOOD; id <= OTHER; id++) {
+            ALIASES.put(normalize(NAMES[id]), id);
+        }
+        alias(FOOD, "food", "restaurant", "restaurants", "dining", "cafe", "coffee", "groceries", "مطعم", "طعام", "أكل");
+        alias(FAMILY, "family", "home", "household", "عائلة", "الأسرة", "البيت");
+        alias(HEALTH, "health", "medical", "pharmacy", "care", "صحة", "صيدلية");
+        alias(TRANSPORT, "transport", "transportation", "fuel", "gas", "taxi", "uber", "careem", "بنزين", "وقود");
+        alias(COMMUNICATION, "communication", "communications", "telecom", "phone", "mobile", "internet", "جوال", "انترنت");
+        alias(EDUCATION, "education", "school", "tuition", "books", "courses", "دراسة");
+        alias(ENTERTAINMENT, "entertainment", "leisure", "fun", "ترفيه", "الترفيه");
+        alias(OTHER, "other", "others", "misc", "miscellaneous", "اخرى", "اخري");
+    }
+
+    private ExpenseCategories() {
+        // Utility class
+    }
+
+    private static void alias(int id, String... names) {
+        for (String name : names) {
+            ALIASES.put(normalize(name), id);
+        }
+    }
+
+    /**
+     * Display name for a category id
+     *
+     * @param id One of the category constants
+     * @return The name stored in the expense table ("أخرى" for unknown ids)
+     */
+    public static String nameOf(int id) {
+        return id >= FOOD && id <= OTHER ? NAMES[id] : NAMES[OTHER];
+    }
+
+    /**
+     * Map free text (a stored name, an alias, or an imported value) to a category id
+     *
+     * @param text Category text, may be null
+     * @return The matching id, or OTHER if nothing matches
+     */
+    public static int idOf(String text) {
+        if (text == null) return OTHER;
+        Integer id = ALIASES.get(normalize(text));
+        return id != null ? id : OTHER;
+    }
+
+    /**
+     * SQL expression giving the id of a stored category name, OTHER for anything else
+     * (the same answer as idOf() for stored names, evaluated by SQLite)
+     *
+     * @param column Category column or expression
+     */
+    static String sqlIdOf(String column) {
+        StringBuilder sql = new StringBuilder("CASE ").append(column);
+        for (int id = FOOD; id < OTHER; id++) {
+            sql.append(" WHEN '").append(NAMES[id]).append("' THEN ").append(id);
+        }
+        return sql.append(" ELSE ").append(OTHER).append(" END").toString();
+    }
+
+    /**
+     * Map free text straight to the canonical stored name
+     */
+    public static String resolve(String text) {
+        return nameOf(idOf(text));
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+}
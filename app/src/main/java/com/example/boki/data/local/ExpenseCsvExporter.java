@@ -0,0 +1,179 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams the expense table to CSV with constant memory.
+ *
+ * Rows are read in fixed-size chunks using keyset pagination on the primary key
+ * (WHERE id > lastId LIMIT n), so no cursor ever holds more than one chunk and
+ * heap usage stays flat regardless of table size. Output is UTF-8 with a BOM so
+ * spreadsheet tools show Arabic text correctly.
+ */
+public class ExpenseCsvExporter {
+
+    /**
+     * Receives progress after every chunk (called on the exporting thread)
+     */
+    public interface ProgressListener {
+        void onProgress(int rowsWritten, int totalRows);
+    }
+
+    // Rows per query; small enough to fit one CursorWindow
+    private static final int CHUNK_SIZE = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] HEADER = {
+        ExpenseDbHelper.COLUMN_ID,
+        ExpenseDbHelper.COLUMN_DATE,
+        ExpenseDbHelper.COLUMN_TIME,
+        ExpenseDbHelper.COLUMN_TITLE,
+        ExpenseDbHelper.COLUMN_CATEGORY,
+        ExpenseDbHelper.COLUMN_AMOUNT,
+        ExpenseDbHelper.COLUMN_NOTE
+    };
+
+    private final ExpenseDbHelper dbHelper;
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public ExpenseCsvExporter(Context context) {
+        this.dbHelper = ExpenseDbHelper.getInstance(context);
+    }
+
+    /**
+     * Write every expense as CSV. Run this off the UI thread.
+     *
+     * @param out      Destination stream (closed by this method)
+     * @param listener Progress callback, may be null
+     * @param signal   Cancellation signal, may be null
+     * @return Number of rows written
+     * @throws IOException if writing fails
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public int export(OutputStream out, ProgressListener listener, CancellationSignal signal) throws IOException {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        int totalRows = countRows(db);
+        int written = 0;
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            // Byte order mark so Excel/Sheets detect UTF-8 (Arabic titles and categories)
+            writer.write('\uFEFF');
+            writeRow(writer, HEADER);
+
+            // Hot and archived rows, merged in id order
+            String sql = ExpenseArchive.selectRows(
+                            ExpenseDbHelper.COLUMN_ID + ", " +
+                            ExpenseDbHelper.COLUMN_DATE + ", " +
+                            ExpenseDbHelper.COLUMN_TIME + ", " +
+                            ExpenseDbHelper.COLUMN_TITLE + ", " +
+                            ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                            ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                            ExpenseDbHelper.COLUMN_NOTE,
+                            ExpenseDbHelper.COLUMN_ID + " > ?") +
+                            "ORDER BY " + ExpenseDbHelper.COLUMN_ID + " " +
+                            "LIMIT " + CHUNK_SIZE;
+
+            String[] fields = new String[HEADER.length];
+            long lastId = 0;
+            int rowsInChunk;
+
+            do {
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+
+                rowsInChunk = 0;
+                Cursor cursor = null;
+                try {
+                    cursor = db.rawQuery(sql, ExpenseArchive.twice(String.valueOf(lastId)));
+                    while (cursor.moveToNext()) {
+                        lastId = cursor.getLong(0);
+                        fields[0] = String.valueOf(lastId);
+                        fields[1] = cursor.getString(1);
+                        fields[2] = cursor.getString(2);
+                        fields[3] = cursor.getString(3);
+                        fields[4] = cursor.getString(4);
+                        // Plain notation, never "1.0E7"
+                        fields[5] = BigDecimal.valueOf(cursor.getDouble(5)).toPlainString();
+                        fields[6] = cursor.isNull(6) ? "" : cursor.getString(6);
+                        writeRow(writer, fields);
+                        rowsInChunk++;
+                    }
+                } finally {
+                    if (cursor != null) cursor.close();
+                }
+
+                written += rowsInChunk;
+                if (listener != null) {
+                    listener.onProgress(written, totalRows);
+                }
+            } while (rowsInChunk == CHUNK_SIZE);
+        }
+
+        return written;
+    }
+
+    private int countRows(SQLiteDatabase db) {
+        return ExpenseArchive.countExpenses(db);
+    }
+
+    /**
+     * Write one RFC 4180 row: fields with commas, quotes or line breaks are quoted
+     */
+    private static void writeRow(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (needsQuoting(field)) {
+                writer.write('"');
+                for (int c = 0; c < field.length(); c++) {
+                    char ch = field.charAt(c);
+                    if (ch == '"') {
+                        writer.write('"');
+                    }
+                    writer.write(ch);
+                }
+                writer.write('"');
+            } else {
+                writer.write(field);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private static boolean needsQuoting(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char ch = field.charAt(i);
+            if (ch == ',' || ch == '"' || ch == '\n' || ch == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Close the database helper
+     * Call this when the exporter is no longer needed
+     */
+    public void close() {
+        if (dbHelper != null) {
+            dbHelper.close();
+        }
+    }
+}
@@ -0,0 +1,691 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import com.example.boki.models.Expense;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Imports expenses from CSV files (our own export, spreadsheets, bank statements).
+ *
+ * The pipeline has four stages, all streaming so memory does not grow with the file:
+ * 1. CsvReader parses one record at a time;
+ * 2. date, time and amount are validated and normalized (several common formats accepted),
+ *    and money coming in (deposits, salary, refunds) is told apart from money spent;
+ * 3. the category text is mapped through ExpenseCategories;
+ * 4. rows are written in batches by ExpenseBatchInserter, one transaction per batch.
+ *
+ * Rows already in the database are skipped using a hash index over
+ * (date, amount, normalized title). After every committed batch the number of
+ * consumed records is saved, so an interrupted import of the same file resumes
+ * where it stopped; rows of a batch that committed just before a crash are caught
+ * by the dedupe on the next run.
+ */
+public class ExpenseCsvImporter {
+
+    /**
+     * Receives progress while importing (called on the importing thread)
+     */
+    public interface ProgressListener {
+        void onProgress(int rowsRead, long bytesRead, long totalBytes);
+    }
+
+    /**
+     * Outcome of one import run
+     */
+    public static final class Result {
+        public final int imported;     // Rows written to the database
+        public final int duplicates;   // Rows skipped because they already exist
+        public final int invalid;      // Rows skipped because date/amount could not be parsed
+        public final int credits;      // Rows skipped because they are money in, not spending
+        public final int resumedFrom;  // Rows skipped because a previous run already imported them
+
+        Result(int imported, int duplicates, int invalid, int credits, int resumedFrom) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.invalid = invalid;
+            this.credits = credits;
+            this.resumedFrom = resumedFrom;
+        }
+    }
+
+    private static final String PREFS_NAME = "expense_import";
+    private static final String KEY_SOURCE = "source";
+    private static final String KEY_RECORDS = "records";
+
+    private static final String DEFAULT_TITLE = "عملية مستوردة";
+    private static final String DEFAULT_TIME = "00:00:00";
+
+    // Report progress at least this often even when a batch is not full yet
+    private static final int PROGRESS_EVERY = 500;
+    private static final int HASH_CHUNK_SIZE = 1000;
+    // Records read ahead to learn which sign a single amount column uses for spending
+    static final int SIGN_SAMPLE = 1000;
+
+    // Logical columns, in the order of the indices returned by mapColumns()
+    private static final int COL_DATE = 0;
+    private static final int COL_TIME = 1;
+    private static final int COL_TITLE = 2;
+    private static final int COL_CATEGORY = 3;
+    private static final int COL_AMOUNT = 4;    // Signed: spending and money in share the column
+    private static final int COL_NOTE = 5;
+    private static final int COL_DEBIT = 6;     // Money out only
+    private static final int COL_CREDIT = 7;    // Money in only
+    private static final int COLUMN_COUNT = 8;
+
+    private static final Map<String, Integer> HEADER_ALIASES = new HashMap<>();
+
+    static {
+        headers(COL_DATE, ExpenseDbHelper.COLUMN_DATE, "transaction date", "posting date", "value date",
+                "التاريخ", "تاريخ العملية");
+        headers(COL_TIME, ExpenseDbHelper.COLUMN_TIME, "transaction time", "الوقت");
+        headers(COL_TITLE, ExpenseDbHelper.COLUMN_TITLE, "description", "details", "name", "merchant",
+                "narrative", "payee", "الوصف", "البيان", "الاسم", "العنوان", "التفاصيل");
+        headers(COL_CATEGORY, ExpenseDbHelper.COLUMN_CATEGORY, "type", "التصنيف", "الفئة");
+        headers(COL_AMOUNT, ExpenseDbHelper.COLUMN_AMOUNT, "value", "transaction amount", "المبلغ", "القيمة");
+        headers(COL_NOTE, ExpenseDbHelper.COLUMN_NOTE, "notes", "memo", "reference", "ملاحظة", "ملاحظات");
+        headers(COL_DEBIT, "debit", "debit amount", "withdrawal", "withdrawals", "paid out", "مدين", "سحب");
+        headers(COL_CREDIT, "credit", "credit amount", "deposit", "deposits", "paid in", "دائن", "إيداع");
+    }
+
+    private final ExpenseDbHelper dbHelper;
+    private final SharedPreferences checkpoint;
+    private final int batchSize;
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public ExpenseCsvImporter(Context context) {
+        this(context, ExpenseBatchInserter.DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param context   Application context
+     * @param batchSize Rows per transaction
+     */
+    public ExpenseCsvImporter(Context context, int batchSize) {
+        this.dbHelper = ExpenseDbHelper.getInstance(context);
+        this.checkpoint = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.batchSize = batchSize;
+    }
+
+    private static void headers(int column, String... names) {
+        for (String name : names) {
+            HEADER_ALIASES.put(name.toLowerCase(Locale.ROOT), column);
+        }
+    }
+
+    /**
+     * Import a CSV file. The first record must be a header. Run this off the UI thread.
+     *
+     * @param in         Source stream (closed by this method)
+     * @param sourceKey  Identifies the file (e.g. its Uri and size) so an interrupted run can resume
+     * @param totalBytes Size of the file for progress, or -1 if unknown
+     * @param listener   Progress callback, may be null
+     * @param signal     Cancellation signal, may be null
+     * @return Counts of imported and skipped rows
+     * @throws IOException if reading fails or the file has no date/amount column
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     *         (rows of committed batches stay imported and the checkpoint is kept)
+     */
+    public Result importCsv(InputStream in, String sourceKey, long totalBytes,
+                            ProgressListener listener, CancellationSignal signal) throws IOException {
+        CountingInputStream counter = new CountingInputStream(in);
+        CsvReader csv = new CsvReader(new InputStreamReader(counter, StandardCharsets.UTF_8));
+        ExpenseBatchInserter inserter = null;
+
+        try {
+            String[] header = csv.readRecord();
+            if (header == null) {
+                return new Result(0, 0, 0, 0, 0);
+            }
+            int[] columns = mapColumns(header);
+            if (columns[COL_DATE] < 0 || spentColumn(columns) < 0) {
+                throw new IOException("CSV header has no date or amount column");
+            }
+
+            // Sampled from the start of the file, so a resumed run decides the same way
+            Deque<String[]> lookahead = new ArrayDeque<>();
+            int spentSign = columns[COL_DEBIT] < 0 && columns[COL_CREDIT] < 0
+                    ? readSpentSign(csv, columns[COL_AMOUNT], lookahead)
+                    : -1;
+
+            int resumeFrom = sourceKey.equals(checkpoint.getString(KEY_SOURCE, null))
+                    ? checkpoint.getInt(KEY_RECORDS, 0)
+                    : 0;
+
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            LongHashSet existing = loadExistingHashes(db);
+            inserter = new ExpenseBatchInserter(db);
+
+            List<Expense> batch = new ArrayList<>(batchSize);
+            int imported = 0;
+            int duplicates = 0;
+            int invalid = 0;
+            int credits = 0;
+            int records = 0;
+
+            String[] record;
+            while ((record = lookahead.isEmpty() ? csv.readRecord() : lookahead.poll()) != null) {
+                records++;
+                if (records <= resumeFrom) continue;
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+
+                double amount = signedAmount(record, columns);
+                // NaN compares false, so an unusable amount falls through to invalid
+                boolean received = amount * spentSign < 0;
+                Expense expense = Double.isNaN(amount) || received
+                        ? null
+                        : parseRow(record, columns, Math.abs(amount));
+                if (received) {
+                    credits++;
+                } else if (expense == null) {
+                    invalid++;
+                } else if (existing.contains(rowHash(expense.getDate(),
+                        SpendingIndex.toMinorUnits(expense.getAmount()), expense.getTitle()))) {
+                    duplicates++;
+                } else {
+                    batch.add(expense);
+                }
+
+                if (batch.size() >= batchSize) {
+                    imported += inserter.insertBatch(batch);
+                    batch.clear();
+                    saveCheckpoint(sourceKey, records);
+                }
+                if (listener != null && records % PROGRESS_EVERY == 0) {
+                    listener.onProgress(records, counter.count, totalBytes);
+                }
+            }
+
+            imported += inserter.insertBatch(batch);
+            checkpoint.edit().clear().commit();
+            if (listener != null) {
+                listener.onProgress(records, counter.count, totalBytes);
+            }
+            return new Result(imported, duplicates, invalid, credits, resumeFrom);
+        } finally {
+            if (inserter != null) inserter.close();
+            csv.close();
+        }
+    }
+
+    // commit() rather than apply(): we are already off the UI thread and the
+    // checkpoint must be on disk before the next batch starts
+    private void saveCheckpoint(String sourceKey, int records) {
+        checkpoint.edit()
+                .putString(KEY_SOURCE, sourceKey)
+                .putInt(KEY_RECORDS, records)
+                .commit();
+    }
+
+    /**
+     * Index of each logical column in the file, or -1 if the file does not have it
+     */
+    private static int[] mapColumns(String[] header) {
+        int[] columns = new int[COLUMN_COUNT];
+        Arrays.fill(columns, -1);
+        for (int i = 0; i < header.length; i++) {
+            Integer column = HEADER_ALIASES.get(header[i].trim().toLowerCase(Locale.ROOT));
+            if (column != null && columns[column] < 0) {
+                columns[column] = i;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Column holding the money spent: the debit column of a debit/credit pair, else the amount
+     */
+    private static int spentColumn(int[] columns) {
+        return columns[COL_DEBIT] >= 0 ? columns[COL_DEBIT] : columns[COL_AMOUNT];
+    }
+
+    /**
+     * Read records ahead (kept in lookahead for the import) to learn which sign the
+     * amount column uses for money spent. Statements list many more debits than
+     * credits, so the more common sign is spending: "-45" beside a "+3000" salary,
+     * or "45" beside a "(3000.00)" deposit. Files of expenses only (our own export,
+     * spreadsheets) have no negatives and import as they are.
+     *
+     * @return -1 if negative amounts are spending (also on a tie, the usual statement
+     *         convention), 1 if positive amounts are
+     */
+    static int readSpentSign(CsvReader csv, int amountColumn, Deque<String[]> lookahead) throws IOException {
+        int negative = 0;
+        int positive = 0;
+        String[] record;
+        while (lookahead.size() < SIGN_SAMPLE && (record = csv.readRecord()) != null) {
+            lookahead.add(record);
+            double amount = parseAmount(field(record, amountColumn));
+            if (amount < 0) negative++;
+            else if (amount > 0) positive++;
+        }
+        return negative > 0 && negative >= positive ? -1 : 1;
+    }
+
+    /**
+     * Amount of a record, negative for money out when debit and credit have their own columns
+     *
+     * @return Signed amount, or NaN if no side has a usable number
+     */
+    private static double signedAmount(String[] record, int[] columns) {
+        if (columns[COL_DEBIT] < 0 && columns[COL_CREDIT] < 0) {
+            return parseAmount(field(record, columns[COL_AMOUNT]));
+        }
+        // The side tells the direction; some banks also print debits with a minus
+        double spent = parseAmount(field(record, spentColumn(columns)));
+        if (!Double.isNaN(spent)) return -Math.abs(spent);
+        double received = parseAmount(field(record, columns[COL_CREDIT]));
+        return Double.isNaN(received) ? Double.NaN : Math.abs(received);
+    }
+
+    /**
+     * Hash of every existing row, read in keyset-paged chunks
+     */
+    private static LongHashSet loadExistingHashes(SQLiteDatabase db) {
+        LongHashSet hashes = new LongHashSet();
+        String sql = ExpenseArchive.selectRows(
+                        ExpenseDbHelper.COLUMN_ID + ", " +
+                        ExpenseDbHelper.COLUMN_DATE + ", " +
+                        ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                        ExpenseDbHelper.COLUMN_TITLE,
+                        ExpenseDbHelper.COLUMN_ID + " > ?") +
+                        "ORDER BY " + ExpenseDbHelper.COLUMN_ID + " " +
+                        "LIMIT " + HASH_CHUNK_SIZE;
+
+        long lastId = 0;
+        int rowsInChunk;
+        do {
+            rowsInChunk = 0;
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery(sql, ExpenseArchive.twice(String.valueOf(lastId)));
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(0);
+                    hashes.add(rowHash(cursor.getString(1),
+                            SpendingIndex.toMinorUnits(cursor.getDouble(2)), cursor.getString(3)));
+                    rowsInChunk++;
+                }
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+        } while (rowsInChunk == HASH_CHUNK_SIZE);
+
+        return hashes;
+    }
+
+    /**
+     * Validate one record and build the expense
+     *
+     * @param amount Positive amount spent, see signedAmount()
+     * @return The expense, or null if the date or time is not usable
+     */
+    private static Expense parseRow(String[] record, int[] columns, double amount) {
+        String rawDate = field(record, columns[COL_DATE]);
+        String rawTime = field(record, columns[COL_TIME]);
+
+        // "2024-03-01 14:30" in a single column
+        int split = indexOfDateTimeSeparator(rawDate);
+        if (split > 0) {
+            if (rawTime.isEmpty()) rawTime = rawDate.substring(split + 1);
+            rawDate = rawDate.substring(0, split);
+        }
+
+        String date = parseDate(rawDate);
+        String time = parseTime(rawTime);
+        if (date == null || time == null) {
+            return null;
+        }
+
+        String category = ExpenseCategories.resolve(field(record, columns[COL_CATEGORY]));
+        String title = field(record, columns[COL_TITLE]);
+        if (title.isEmpty()) title = DEFAULT_TITLE;
+        String note = field(record, columns[COL_NOTE]);
+
+        return new Expense(title, amount, category, note.isEmpty() ? null : note, date, time);
+    }
+
+    private static String field(String[] record, int index) {
+        return index >= 0 && index < record.length ? record[index].trim() : "";
+    }
+
+    private static int indexOfDateTimeSeparator(String raw) {
+        int space = raw.indexOf(' ');
+        if (space > 0) return space;
+        return raw.indexOf('T');
+    }
+
+    /**
+     * Accepts yyyy-MM-dd, yyyy/MM/dd and day-first dd/MM/yyyy, dd-MM-yyyy, dd.MM.yy
+     *
+     * @return Canonical yyyy-MM-dd, or null if not a valid date
+     */
+    static String parseDate(String raw) {
+        String s = normalizeDigits(raw);
+        int[] parts = new int[3];
+        int[] lengths = new int[3];
+        int part = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                if (lengths[part] >= 4) return null;
+                parts[part] = parts[part] * 10 + (ch - '0');
+                lengths[part]++;
+            } else if ((ch == '-' || ch == '/' || ch == '.') && part < 2 && lengths[part] > 0) {
+                part++;
+            } else {
+                return null;
+            }
+        }
+        if (part != 2 || lengths[2] == 0 || lengths[1] > 2) return null;
+
+        int year;
+        int month;
+        int day;
+        if (lengths[0] == 4 && lengths[2] <= 2) {
+            year = parts[0];
+            month = parts[1];
+            day = parts[2];
+        } else if (lengths[0] <= 2 && (lengths[2] == 4 || lengths[2] == 2)) {
+            day = parts[0];
+            month = parts[1];
+            year = lengths[2] == 2 ? 2000 + parts[2] : parts[2];
+        } else {
+            return null;
+        }
+        if (month < 1 || month > 12 || day < 1 || day > EpochDays.daysInMonth(year, month)) {
+            return null;
+        }
+
+        char[] out = new char[10];
+        writeDigits(out, 0, year, 4);
+        out[4] = '-';
+        writeDigits(out, 5, month, 2);
+        out[7] = '-';
+        writeDigits(out, 8, day, 2);
+        return new String(out);
+    }
+
+    /**
+     * Accepts HH:mm:ss, HH:mm and h:mm AM/PM (also ص/م); an empty value means midnight
+     *
+     * @return Canonical HH:mm:ss, or null if not a valid time
+     */
+    static String parseTime(String raw) {
+        String s = normalizeDigits(raw).trim();
+        if (s.isEmpty()) return DEFAULT_TIME;
+
+        int meridiem = 0; // 0 = 24h, 1 = AM, 2 = PM
+        String lower = s.toLowerCase(Locale.ROOT);
+        if (lower.endsWith("am") || lower.endsWith("ص")) {
+            meridiem = 1;
+        } else if (lower.endsWith("pm") || lower.endsWith("م")) {
+            meridiem = 2;
+        }
+        if (meridiem != 0) {
+            s = s.substring(0, lower.endsWith("m") ? s.length() - 2 : s.length() - 1).trim();
+        }
+
+        int[] parts = new int[3];
+        int part = 0;
+        int digits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                if (++digits > 2) return null;
+                parts[part] = parts[part] * 10 + (ch - '0');
+            } else if (ch == ':' && part < 2 && digits > 0) {
+                part++;
+                digits = 0;
+            } else {
+                return null;
+            }
+        }
+        if (part == 0 || digits == 0) return null;
+
+        int hour = parts[0];
+        if (meridiem != 0) {
+            if (hour < 1 || hour > 12) return null;
+            hour = hour % 12 + (meridiem == 2 ? 12 : 0);
+        }
+        if (hour > 23 || parts[1] > 59 || parts[2] > 59) return null;
+
+        char[] out = new char[8];
+        writeDigits(out, 0, hour, 2);
+        out[2] = ':';
+        writeDigits(out, 3, parts[1], 2);
+        out[5] = ':';
+        writeDigits(out, 6, parts[2], 2);
+        return new String(out);
+    }
+
+    /**
+     * Accepts "1,234.50", "1.234,50", "(45.00)", "-45", "45-", "+45", "45 SAR", Arabic-Indic digits.
+     * A minus sign (leading or trailing) or accounting parentheses make the amount negative.
+     *
+     * @return The signed amount, or NaN if there is no usable non-zero number
+     */
+    static double parseAmount(String raw) {
+        String s = normalizeDigits(raw).replace('٫', '.').replace("٬", "");
+        StringBuilder number = new StringBuilder(s.length());
+        int lastDot = -1;
+        int lastComma = -1;
+        boolean negative = false;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                number.append(ch);
+            } else if (ch == '.') {
+                lastDot = number.length();
+                number.append(ch);
+            } else if (ch == ',') {
+                lastComma = number.length();
+                number.append(ch);
+            } else if (ch == '-' || ch == '\u2212' || ch == '(') {
+                negative = true;
+            }
+            // Currency text and other characters are ignored
+        }
+
+        // The separator that comes last is the decimal one, unless a lone comma is a thousands separator
+        char decimal;
+        if (lastDot >= 0 && lastComma >= 0) {
+            decimal = lastDot > lastComma ? '.' : ',';
+        } else if (lastComma >= 0) {
+            int decimals = number.length() - lastComma - 1;
+            boolean single = number.indexOf(",") == lastComma;
+            decimal = single && decimals > 0 && decimals <= 2 ? ',' : '.';
+        } else {
+            decimal = '.';
+        }
+
+        StringBuilder plain = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            char ch = number.charAt(i);
+            if (ch == decimal) {
+                plain.append('.');
+            } else if (ch != '.' && ch != ',') {
+                plain.append(ch);
+            }
+        }
+
+        try {
+            double amount = Double.parseDouble(plain.toString());
+            if (amount <= 0 || Double.isInfinite(amount)) return Double.NaN;
+            return negative ? -amount : amount;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Replace Arabic-Indic and Persian digits with ASCII digits
+     */
+    private static String normalizeDigits(String s) {
+        char[] chars = null;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            char ascii = 0;
+            if (ch >= '٠' && ch <= '٩') ascii = (char) ('0' + (ch - '٠'));
+            else if (ch >= '۰' && ch <= '۹') ascii = (char) ('0' + (ch - '۰'));
+            if (ascii != 0) {
+                if (chars == null) chars = s.toCharArray();
+                chars[i] = ascii;
+            }
+        }
+        return chars == null ? s : new String(chars);
+    }
+
+    private static void writeDigits(char[] out, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over date, amount and the title with case and repeated spaces ignored
+     */
+    static long rowHash(String date, long amountMinor, String title) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < date.length(); i++) {
+            hash = (hash ^ date.charAt(i)) * 0x100000001b3L;
+        }
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash = (hash ^ ((amountMinor >>> shift) & 0xFF)) * 0x100000001b3L;
+        }
+        boolean pendingSpace = false;
+        boolean started = false;
+        for (int i = 0; title != null && i < title.length(); i++) {
+            char ch = title.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                pendingSpace = started;
+                continue;
+            }
+            if (pendingSpace) {
+                hash = (hash ^ ' ') * 0x100000001b3L;
+                pendingSpace = false;
+            }
+            hash = (hash ^ Character.toLowerCase(ch)) * 0x100000001b3L;
+            started = true;
+        }
+        return hash;
+    }
+
+    /**
+     * Close the database helper
+     * Call this when the importer is no longer needed
+     */
+    public void close() {
+        if (dbHelper != null) {
+            dbHelper.close();
+        }
+    }
+
+    /**
+     * Counts bytes consumed, for progress against the file size
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Open-addressing set of longs; avoids boxing one Long per existing row
+     */
+    private static final class LongHashSet {
+        private long[] slots = new long[1 << 10];
+        private boolean hasZero;
+        private int size;
+
+        void add(long value) {
+            if (value == 0) {
+                hasZero = true;
+                return;
+            }
+            if ((size + 1) * 2 > slots.length) {
+                grow();
+            }
+            if (insert(slots, value)) size++;
+        }
+
+        boolean contains(long value) {
+            if (value == 0) return hasZero;
+            int mask = slots.length - 1;
+            int i = mix(value) & mask;
+            while (slots[i] != 0) {
+                if (slots[i] == value) return true;
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        private void grow() {
+            long[] bigger = new long[slots.length * 2];
+            for (long value : slots) {
+                if (value != 0) insert(bigger, value);
+            }
+            slots = bigger;
+        }
+
+        private static boolean insert(long[] table, long value) {
+            int mask = table.length - 1;
+            int i = mix(value) & mask;
+            while (table[i] != 0) {
+                if (table[i] == value) return false;
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+            return true;
+        }
+
+        private static int mix(long value) {
+            return (int) (value ^ (value >>> 32));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.boki.data.local;
+
+import com.example.boki.models.Expense;
+
+/**
+ * The stored date and time formats: yyyy-MM-dd and HH:mm:ss.
+ *
+ * Only these sort correctly as text, so only they work with ORDER BY date DESC and
+ * the date range seeks on the date index. Writes are checked here; older rows in
+ * other formats are rewritten once by LegacyDateTimeRepair.
+ */
+public final class ExpenseDateTimes {
+
+    private ExpenseDateTimes() {
+        // Utility class
+    }
+
+    /**
+     * @return true if the date is a valid yyyy-MM-dd date
+     */
+    public static boolean isCanonicalDate(String date) {
+        return EpochDays.fromIso(date) != EpochDays.INVALID;
+    }
+
+    /**
+     * @return true if the time is a valid HH:mm:ss time (24-hour)
+     */
+    public static boolean isCanonicalTime(String time) {
+        if (time == null || time.length() != 8 || time.charAt(2) != ':' || time.charAt(5) != ':') {
+            return false;
+        }
+        return twoDigits(time, 0) <= 23 && twoDigits(time, 3) <= 59 && twoDigits(time, 6) <= 59;
+    }
+
+    /**
+     * Canonical form of a date written in another format ("6-12-2025" is day-first)
+     *
+     * @return yyyy-MM-dd, or null if the value is not a recognizable date
+     */
+    public static String normalizeDate(String raw) {
+        return raw == null ? null : ExpenseCsvImporter.parseDate(raw.trim());
+    }
+
+    /**
+     * Canonical form of a time written in another format, e.g. "7:05 PM"
+     *
+     * @return HH:mm:ss, or null if the value is not a recognizable time
+     */
+    public static String normalizeTime(String raw) {
+        return raw == null ? null : ExpenseCsvImporter.parseTime(raw);
+    }
+
+    /**
+     * Write-time check for the repository
+     *
+     * @throws IllegalArgumentException if the date or time is not canonical
+     */
+    static void requireCanonical(Expense expense) {
+        if (!isCanonicalDate(expense.getDate())) {
+            throw new IllegalArgumentException("Date must be yyyy-MM-dd: " + expense.getDate());
+        }
+        if (!isCanonicalTime(expense.getTime())) {
+            throw new IllegalArgumentException("Time must be HH:mm:ss: " + expense.getTime());
+        }
+    }
+
+    // Value of two ASCII digits, or 99 if either is not a digit
+    private static int twoDigits(String s, int offset) {
+        char tens = s.charAt(offset);
+        char ones = s.charAt(offset + 1);
+        if (tens < '0' || tens > '9' || ones < '0' || ones > '9') {
+            return 99;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+}
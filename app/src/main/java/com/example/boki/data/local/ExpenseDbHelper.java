@@ -1,8 +1,15 @@
 package com.example.boki.data.local;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * SQLiteOpenHelper subclass for managing the Expense database.
@@ -10,13 +17,24 @@ import android.database.sqlite.SQLiteOpenHelper;
  */
 public class ExpenseDbHelper extends SQLiteOpenHelper {
     
+    private static final String TAG = "ExpenseDbHelper";
+    
     // Database Configuration
-    private static final String DATABASE_NAME = "expenses.db";
-    private static final int DATABASE_VERSION = 2; // Updated for budget table
+    static final String DATABASE_NAME = "expenses.db";
+    static final int DATABASE_VERSION = 11; // v11: backfill state in migration_progress (must match the last step in MIGRATIONS)
     
     // Table Names
     public static final String TABLE_EXPENSE = "expense";
     public static final String TABLE_BUDGET = "budget";
+    public static final String TABLE_CHANGE_LOG = "change_log";
+    public static final String TABLE_SYNC_ROW = "sync_row";
+    public static final String TABLE_SYNC_STATE = "sync_state";
+    public static final String TABLE_EXPENSE_ARCHIVE = "expense_archive";
+    public static final String TABLE_EXPENSE_ROLLUP = "expense_daily_rollup";
+    public static final String TABLE_MIGRATION_PROGRESS = "migration_progress";
+    public static final String TABLE_MAINTENANCE_STATS = "maintenance_stats";
+    public static final String TABLE_RECURRING = "recurring_expense";
+    public static final String TABLE_RECURRING_OCCURRENCE = "recurring_occurrence";
     
     // Expense Column Names
     public static final String COLUMN_ID = "id";
@@ -26,6 +44,10 @@ public class ExpenseDbHelper extends SQLiteOpenHelper {
     public static final String COLUMN_NOTE = "note";
     public static final String COLUMN_DATE = "date";
     public static final String COLUMN_TIME = "time";
+    public static final String COLUMN_DELETED_AT = "deleted_at"; // Epoch millis, NULL while the expense is live
+    
+    // Filter every read of the expense table goes through; matches the partial indexes below
+    public static final String EXPENSE_LIVE = COLUMN_DELETED_AT + " IS NULL";
     
     // Budget Column Names
     public static final String COLUMN_BUDGET_ID = "id";
@@ -36,8 +58,81 @@ public class ExpenseDbHelper extends SQLiteOpenHelper {
     public static final String COLUMN_BUDGET_CYCLE_VALUE = "cycle_value";
     public static final String COLUMN_BUDGET_ACTIVE = "active";
     
-    // Index name for performance optimization
-    private static final String INDEX_DATE = "idx_expense_date";
+    // Change log Column Names
+    public static final String COLUMN_LOG_SEQ = "seq";
+    public static final String COLUMN_LOG_TABLE = "table_name";
+    public static final String COLUMN_LOG_OP = "op";
+    public static final String COLUMN_LOG_ROW_ID = "row_id";
+    public static final String COLUMN_LOG_CHANGED_AT = "changed_at";
+    public static final String COLUMN_LOG_ORIGIN = "origin";
+    
+    // Change log origins: local edits are pushed by sync, remote ones are not echoed back
+    public static final int ORIGIN_LOCAL = 0;
+    public static final int ORIGIN_REMOTE = 1;
+    
+    // Sync row Column Names (maps a local row to its household-wide uid)
+    public static final String COLUMN_SYNC_UID = "uid";
+    public static final String COLUMN_SYNC_TABLE = "table_name";
+    public static final String COLUMN_SYNC_ROW_ID = "row_id";
+    public static final String COLUMN_SYNC_UPDATED_AT = "updated_at";
+    public static final String COLUMN_SYNC_DEVICE = "device";
+    public static final String COLUMN_SYNC_DELETED = "deleted";
+    
+    // Sync state Column Names (key/value cursors)
+    public static final String COLUMN_STATE_KEY = "key";
+    public static final String COLUMN_STATE_VALUE = "value";
+    public static final String SYNC_KEY_DEVICE_ID = "device_id";
+    public static final String SYNC_KEY_PUSHED_SEQ = "pushed_seq";
+    public static final String SYNC_KEY_PULLED_SEQ = "pulled_seq";
+    
+    // Daily rollup Column Names (one row per archived day and category; date/category as in expense)
+    public static final String COLUMN_ROLLUP_TOTAL = "total";
+    public static final String COLUMN_ROLLUP_COUNT = "row_count";
+    
+    // Migration progress Column Names (one row per backfill, see MigrationRunner)
+    public static final String COLUMN_MIGRATION_NAME = "name";
+    public static final String COLUMN_MIGRATION_LAST_KEY = "last_key";
+    public static final String COLUMN_MIGRATION_ROWS_DONE = "rows_done";
+    public static final String COLUMN_MIGRATION_FINISHED_AT = "finished_at"; // Epoch millis, NULL while pending
+    public static final String COLUMN_MIGRATION_STATE = "state"; // Backfill's own counters, see Backfill.saveState()
+    
+    // Maintenance stats Column Names (one row per DatabaseMaintenance run)
+    public static final String COLUMN_STATS_ID = "id";
+    public static final String COLUMN_STATS_RAN_AT = "ran_at";
+    public static final String COLUMN_STATS_DURATION_MS = "duration_ms";
+    public static final String COLUMN_STATS_FILE_BYTES = "file_bytes";             // After the run
+    public static final String COLUMN_STATS_FREELIST_PAGES = "freelist_pages";     // After the run
+    public static final String COLUMN_STATS_PAGES_FREED = "pages_freed";
+    public static final String COLUMN_STATS_INTEGRITY = "integrity";               // quick_check result, NULL if skipped
+    
+    // Recurring expense Column Names (one row per rule, see RecurringExpenseRepository)
+    public static final String COLUMN_RECURRING_ID = "id";
+    public static final String COLUMN_RECURRING_TITLE = "title";
+    public static final String COLUMN_RECURRING_AMOUNT = "amount";
+    public static final String COLUMN_RECURRING_CATEGORY = "category";
+    public static final String COLUMN_RECURRING_NOTE = "note";
+    public static final String COLUMN_RECURRING_TIME = "time";
+    public static final String COLUMN_RECURRING_INTERVAL = "interval";
+    public static final String COLUMN_RECURRING_DAY = "day";
+    public static final String COLUMN_RECURRING_START_DATE = "start_date";
+    public static final String COLUMN_RECURRING_END_DATE = "end_date";           // NULL to recur forever
+    public static final String COLUMN_RECURRING_NEXT_DUE = "next_due";           // First occurrence not yet materialized
+    public static final String COLUMN_RECURRING_ACTIVE = "active";
+    
+    // Recurring occurrence Column Names (one row per materialized occurrence: its stable ID)
+    public static final String COLUMN_OCCURRENCE_RULE_ID = "rule_id";
+    public static final String COLUMN_OCCURRENCE_DATE = "date";
+    
+    // Change log operations
+    public static final String OP_INSERT = "I";
+    public static final String OP_UPDATE = "U";
+    public static final String OP_DELETE = "D";
+    
+    // Index names for performance optimization
+    private static final String INDEX_DATE = "idx_expense_date"; // v1-v4, replaced by INDEX_LIVE_DATE
+    private static final String INDEX_LIVE_DATE = "idx_expense_live_date";
+    private static final String INDEX_DELETED = "idx_expense_deleted";
+    private static final String INDEX_ARCHIVE_DATE = "idx_expense_archive_date";
     
     // SQL Statement: Create expense table
     private static final String SQL_CREATE_TABLE = 
@@ -48,13 +143,20 @@ public class ExpenseDbHelper extends SQLiteOpenHelper {
             COLUMN_CATEGORY + " TEXT NOT NULL, " +
             COLUMN_NOTE + " TEXT, " +
             COLUMN_DATE + " TEXT NOT NULL, " +
-            COLUMN_TIME + " TEXT NOT NULL" +
+            COLUMN_TIME + " TEXT NOT NULL, " +
+            COLUMN_DELETED_AT + " INTEGER" +
         ");";
     
-    // SQL Statement: Create index on date column for fast ORDER BY queries (US10)
+    // SQL Statement: Create index on date column for fast ORDER BY queries (US10).
+    // Partial: only live rows, so deleted rows waiting for the purge cost reads nothing.
     private static final String SQL_CREATE_INDEX = 
-        "CREATE INDEX " + INDEX_DATE + " ON " + TABLE_EXPENSE + 
-        " (" + COLUMN_DATE + " DESC);";
+        "CREATE INDEX " + INDEX_LIVE_DATE + " ON " + TABLE_EXPENSE + 
+        " (" + COLUMN_DATE + " DESC) WHERE " + EXPENSE_LIVE + ";";
+    
+    // SQL Statement: Index the (few) deleted rows for the purge job
+    private static final String SQL_CREATE_DELETED_INDEX = 
+        "CREATE INDEX " + INDEX_DELETED + " ON " + TABLE_EXPENSE + 
+        " (" + COLUMN_DELETED_AT + ") WHERE " + COLUMN_DELETED_AT + " IS NOT NULL;";
     
     // SQL Statement: Create budget table
     private static final String SQL_CREATE_BUDGET_TABLE = 
@@ -68,19 +170,324 @@ public class ExpenseDbHelper extends SQLiteOpenHelper {
             COLUMN_BUDGET_ACTIVE + " INTEGER NOT NULL DEFAULT 0" +
         ");";
     
-    // SQL Statement: Drop tables (used in upgrades)
-    private static final String SQL_DROP_TABLE = 
-        "DROP TABLE IF EXISTS " + TABLE_EXPENSE + ";";
+    // SQL Statement: Create the append-only change log (filled by triggers, read by incremental backup)
+    private static final String SQL_CREATE_CHANGE_LOG_TABLE = 
+        "CREATE TABLE " + TABLE_CHANGE_LOG + " (" +
+            COLUMN_LOG_SEQ + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            COLUMN_LOG_TABLE + " TEXT NOT NULL, " +
+            COLUMN_LOG_OP + " TEXT NOT NULL, " +
+            COLUMN_LOG_ROW_ID + " INTEGER NOT NULL, " +
+            COLUMN_LOG_CHANGED_AT + " INTEGER NOT NULL, " +
+            COLUMN_LOG_ORIGIN + " INTEGER NOT NULL DEFAULT " + ORIGIN_LOCAL +
+        ");";
+    
+    // SQL Statement: Create sync row mapping (row_id is NULL for tombstones never seen locally)
+    private static final String SQL_CREATE_SYNC_ROW_TABLE = 
+        "CREATE TABLE " + TABLE_SYNC_ROW + " (" +
+            COLUMN_SYNC_UID + " TEXT PRIMARY KEY, " +
+            COLUMN_SYNC_TABLE + " TEXT NOT NULL, " +
+            COLUMN_SYNC_ROW_ID + " INTEGER, " +
+            COLUMN_SYNC_UPDATED_AT + " INTEGER NOT NULL, " +
+            COLUMN_SYNC_DEVICE + " INTEGER NOT NULL, " +
+            COLUMN_SYNC_DELETED + " INTEGER NOT NULL DEFAULT 0" +
+        ");";
+    
+    private static final String SQL_CREATE_SYNC_ROW_INDEX = 
+        "CREATE UNIQUE INDEX idx_sync_row_local ON " + TABLE_SYNC_ROW + 
+        " (" + COLUMN_SYNC_TABLE + ", " + COLUMN_SYNC_ROW_ID + ");";
     
-    private static final String SQL_DROP_BUDGET_TABLE = 
-        "DROP TABLE IF EXISTS " + TABLE_BUDGET + ";";
+    // SQL Statement: Create sync state (device id, push/pull cursors)
+    private static final String SQL_CREATE_SYNC_STATE_TABLE = 
+        "CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+            COLUMN_STATE_KEY + " TEXT PRIMARY KEY, " +
+            COLUMN_STATE_VALUE + " INTEGER NOT NULL" +
+        ");";
+    
+    // SQL Statement: Create the cold table for old expenses (same columns and IDs; rows are always live)
+    private static final String SQL_CREATE_ARCHIVE_TABLE = 
+        "CREATE TABLE " + TABLE_EXPENSE_ARCHIVE + " (" +
+            COLUMN_ID + " INTEGER PRIMARY KEY, " +
+            COLUMN_TITLE + " TEXT NOT NULL, " +
+            COLUMN_AMOUNT + " REAL NOT NULL, " +
+            COLUMN_CATEGORY + " TEXT NOT NULL, " +
+            COLUMN_NOTE + " TEXT, " +
+            COLUMN_DATE + " TEXT NOT NULL, " +
+            COLUMN_TIME + " TEXT NOT NULL" +
+        ");";
+    
+    private static final String SQL_CREATE_ARCHIVE_INDEX = 
+        "CREATE INDEX " + INDEX_ARCHIVE_DATE + " ON " + TABLE_EXPENSE_ARCHIVE + 
+        " (" + COLUMN_DATE + " DESC);";
+    
+    // SQL Statement: Create the daily rollup of the archive (kept exact by the triggers below)
+    private static final String SQL_CREATE_ROLLUP_TABLE = 
+        "CREATE TABLE " + TABLE_EXPENSE_ROLLUP + " (" +
+            COLUMN_DATE + " TEXT NOT NULL, " +
+            COLUMN_CATEGORY + " TEXT NOT NULL, " +
+            COLUMN_ROLLUP_TOTAL + " REAL NOT NULL, " +
+            COLUMN_ROLLUP_COUNT + " INTEGER NOT NULL, " +
+            "PRIMARY KEY (" + COLUMN_DATE + ", " + COLUMN_CATEGORY + ")" +
+        ") WITHOUT ROWID;";
+    
+    // Rows entering the archive add to their day's rollup (no UPSERT before SQLite 3.24)
+    private static final String SQL_CREATE_ROLLUP_INSERT_TRIGGER = 
+        "CREATE TRIGGER IF NOT EXISTS trg_" + TABLE_EXPENSE_ARCHIVE + "_insert_rollup " +
+        "AFTER INSERT ON " + TABLE_EXPENSE_ARCHIVE + " " +
+        "BEGIN " +
+            "INSERT OR IGNORE INTO " + TABLE_EXPENSE_ROLLUP + " VALUES (NEW." + COLUMN_DATE + ", NEW." + COLUMN_CATEGORY + ", 0, 0); " +
+            "UPDATE " + TABLE_EXPENSE_ROLLUP + " SET " +
+                COLUMN_ROLLUP_TOTAL + " = " + COLUMN_ROLLUP_TOTAL + " + NEW." + COLUMN_AMOUNT + ", " +
+                COLUMN_ROLLUP_COUNT + " = " + COLUMN_ROLLUP_COUNT + " + 1 " +
+            "WHERE " + COLUMN_DATE + " = NEW." + COLUMN_DATE + " AND " + COLUMN_CATEGORY + " = NEW." + COLUMN_CATEGORY + "; " +
+        "END;";
+    
+    // Rows leaving the archive (unarchived for an edit) subtract again; empty days disappear
+    private static final String SQL_CREATE_ROLLUP_DELETE_TRIGGER = 
+        "CREATE TRIGGER IF NOT EXISTS trg_" + TABLE_EXPENSE_ARCHIVE + "_delete_rollup " +
+        "AFTER DELETE ON " + TABLE_EXPENSE_ARCHIVE + " " +
+        "BEGIN " +
+            "UPDATE " + TABLE_EXPENSE_ROLLUP + " SET " +
+                COLUMN_ROLLUP_TOTAL + " = " + COLUMN_ROLLUP_TOTAL + " - OLD." + COLUMN_AMOUNT + ", " +
+                COLUMN_ROLLUP_COUNT + " = " + COLUMN_ROLLUP_COUNT + " - 1 " +
+            "WHERE " + COLUMN_DATE + " = OLD." + COLUMN_DATE + " AND " + COLUMN_CATEGORY + " = OLD." + COLUMN_CATEGORY + "; " +
+            "DELETE FROM " + TABLE_EXPENSE_ROLLUP + " " +
+            "WHERE " + COLUMN_DATE + " = OLD." + COLUMN_DATE + " AND " + COLUMN_CATEGORY + " = OLD." + COLUMN_CATEGORY + " " +
+            "AND " + COLUMN_ROLLUP_COUNT + " <= 0; " +
+        "END;";
+    
+    // SQL Statement: Create the backfill bookkeeping (last_key advances with each committed chunk)
+    private static final String SQL_CREATE_MIGRATION_PROGRESS_TABLE = 
+        "CREATE TABLE " + TABLE_MIGRATION_PROGRESS + " (" +
+            COLUMN_MIGRATION_NAME + " TEXT PRIMARY KEY, " +
+            COLUMN_MIGRATION_LAST_KEY + " INTEGER NOT NULL DEFAULT 0, " +
+            COLUMN_MIGRATION_ROWS_DONE + " INTEGER NOT NULL DEFAULT 0, " +
+            COLUMN_MIGRATION_FINISHED_AT + " INTEGER, " +
+            COLUMN_MIGRATION_STATE + " TEXT" +
+        ");";
+    
+    // SQL Statement: Create the maintenance history
+    private static final String SQL_CREATE_MAINTENANCE_STATS_TABLE = 
+        "CREATE TABLE " + TABLE_MAINTENANCE_STATS + " (" +
+            COLUMN_STATS_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            COLUMN_STATS_RAN_AT + " INTEGER NOT NULL, " +
+            COLUMN_STATS_DURATION_MS + " INTEGER NOT NULL, " +
+            COLUMN_STATS_FILE_BYTES + " INTEGER NOT NULL, " +
+            COLUMN_STATS_FREELIST_PAGES + " INTEGER NOT NULL, " +
+            COLUMN_STATS_PAGES_FREED + " INTEGER NOT NULL, " +
+            COLUMN_STATS_INTEGRITY + " TEXT" +
+        ");";
+    
+    // SQL Statement: Create the recurring expense rules
+    private static final String SQL_CREATE_RECURRING_TABLE = 
+        "CREATE TABLE " + TABLE_RECURRING + " (" +
+            COLUMN_RECURRING_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+            COLUMN_RECURRING_TITLE + " TEXT NOT NULL, " +
+            COLUMN_RECURRING_AMOUNT + " REAL NOT NULL, " +
+            COLUMN_RECURRING_CATEGORY + " TEXT NOT NULL, " +
+            COLUMN_RECURRING_NOTE + " TEXT, " +
+            COLUMN_RECURRING_TIME + " TEXT NOT NULL, " +
+            COLUMN_RECURRING_INTERVAL + " TEXT NOT NULL, " +
+            COLUMN_RECURRING_DAY + " INTEGER NOT NULL, " +
+            COLUMN_RECURRING_START_DATE + " TEXT NOT NULL, " +
+            COLUMN_RECURRING_END_DATE + " TEXT, " +
+            COLUMN_RECURRING_NEXT_DUE + " TEXT NOT NULL, " +
+            COLUMN_RECURRING_ACTIVE + " INTEGER NOT NULL DEFAULT 1" +
+        ");";
+    
+    // SQL Statement: Create the materialized occurrences; (rule, date) is the stable ID that
+    // keeps an occurrence from being inserted twice
+    private static final String SQL_CREATE_RECURRING_OCCURRENCE_TABLE = 
+        "CREATE TABLE " + TABLE_RECURRING_OCCURRENCE + " (" +
+            COLUMN_OCCURRENCE_RULE_ID + " INTEGER NOT NULL, " +
+            COLUMN_OCCURRENCE_DATE + " TEXT NOT NULL, " +
+            "PRIMARY KEY (" + COLUMN_OCCURRENCE_RULE_ID + ", " + COLUMN_OCCURRENCE_DATE + ")" +
+        ") WITHOUT ROWID;";
+    
+    // Unix time in milliseconds, evaluated inside the triggers
+    private static final String SQL_NOW_MILLIS = 
+        "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    
+    /**
+     * Schema steps in version order, one per DATABASE_VERSION bump. Shipped steps are
+     * never edited; a change to the schema is always a new step at the end.
+     */
+    static final SchemaMigration[] MIGRATIONS = {
+        // v2: Add budget table without dropping expense table (preserve user data)
+        new SchemaMigration(2) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                db.execSQL(SQL_CREATE_BUDGET_TABLE);
+            }
+        },
+        // v3: Add change log (existing rows are covered by the next full backup)
+        new SchemaMigration(3) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                db.execSQL(SQL_CREATE_CHANGE_LOG_TABLE);
+                // The triggers as v3 shipped them; createChangeLogTriggers needs the v6 archive table
+                String[][] events = { { "INSERT", OP_INSERT, "NEW" }, { "UPDATE", OP_UPDATE, "NEW" }, { "DELETE", OP_DELETE, "OLD" } };
+                for (String table : new String[]{ TABLE_EXPENSE, TABLE_BUDGET }) {
+                    for (String[] event : events) {
+                        db.execSQL("CREATE TRIGGER IF NOT EXISTS trg_" + table + "_" + event[0].toLowerCase(Locale.ROOT) + "_log " +
+                            "AFTER " + event[0] + " ON " + table + " " +
+                            "BEGIN " +
+                                "INSERT INTO " + TABLE_CHANGE_LOG + " (" +
+                                    COLUMN_LOG_TABLE + ", " + COLUMN_LOG_OP + ", " +
+                                    COLUMN_LOG_ROW_ID + ", " + COLUMN_LOG_CHANGED_AT + ") " +
+                                "VALUES ('" + table + "', '" + event[1] + "', " + event[2] + "." + COLUMN_ID + ", " +
+                                    "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)); " +
+                            "END;");
+                    }
+                }
+            }
+        },
+        // v4: Add sync tables (v3 change logs lack the origin column)
+        new SchemaMigration(4) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                if (oldVersion == 3) {
+                    db.execSQL("ALTER TABLE " + TABLE_CHANGE_LOG + " ADD COLUMN " + 
+                        COLUMN_LOG_ORIGIN + " INTEGER NOT NULL DEFAULT " + ORIGIN_LOCAL + ";");
+                }
+                db.execSQL(SQL_CREATE_SYNC_ROW_TABLE);
+                db.execSQL(SQL_CREATE_SYNC_ROW_INDEX);
+                db.execSQL(SQL_CREATE_SYNC_STATE_TABLE);
+            }
+        },
+        // v5: Soft delete (deleted_at + partial indexes)
+        new SchemaMigration(5) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                db.execSQL("ALTER TABLE " + TABLE_EXPENSE + " ADD COLUMN " + COLUMN_DELETED_AT + " INTEGER;");
+                db.execSQL("DROP INDEX IF EXISTS " + INDEX_DATE + ";");
+                db.execSQL(SQL_CREATE_INDEX);
+                db.execSQL(SQL_CREATE_DELETED_INDEX);
+            }
+        },
+        // v6: Archive tables; the expense delete trigger learns to skip archived rows
+        new SchemaMigration(6) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                createArchiveTables(db);
+                dropChangeLogTriggers(db);
+                createChangeLogTriggers(db);
+            }
+        },
+        // v7: Backfill bookkeeping for MigrationRunner
+        new SchemaMigration(7) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                // The table as v7 shipped it; v11 adds the state column
+                db.execSQL("CREATE TABLE " + TABLE_MIGRATION_PROGRESS + " (" +
+                    COLUMN_MIGRATION_NAME + " TEXT PRIMARY KEY, " +
+                    COLUMN_MIGRATION_LAST_KEY + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_MIGRATION_ROWS_DONE + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_MIGRATION_FINISHED_AT + " INTEGER" +
+                ");");
+            }
+        },
+        // v8: Rewrite legacy dates ("6-12-2025") and times ("7:05 PM") as yyyy-MM-dd / HH:mm:ss
+        new SchemaMigration(8) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                // No schema change; the rows are rewritten by the backfill
+            }
+
+            @Override
+            Backfill backfill() {
+                return new LegacyDateTimeRepair();
+            }
+        },
+        // v9: History of DatabaseMaintenance runs
+        new SchemaMigration(9) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                db.execSQL(SQL_CREATE_MAINTENANCE_STATS_TABLE);
+            }
+        },
+        // v10: Recurring expense rules and their materialized occurrences
+        new SchemaMigration(10) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                db.execSQL(SQL_CREATE_RECURRING_TABLE);
+                db.execSQL(SQL_CREATE_RECURRING_OCCURRENCE_TABLE);
+            }
+        },
+        // v11: Backfill state survives a resume
+        new SchemaMigration(11) {
+            @Override
+            void up(SQLiteDatabase db, int oldVersion) {
+                db.execSQL("ALTER TABLE " + TABLE_MIGRATION_PROGRESS + " ADD COLUMN " + 
+                    COLUMN_MIGRATION_STATE + " TEXT;");
+            }
+        }
+    };
+    
+    private static ExpenseDbHelper instance;
+    
+    // The process-wide helper of getInstance(); close() leaves it open
+    private final boolean shared;
     
     /**
      * Constructor - creates or opens the database
      * @param context Application context
      */
     public ExpenseDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+    
+    /**
+     * Open a database other than the app's, e.g. a second device's in sync tests
+     * @param context Application context
+     * @param databaseName File name under the app's database directory
+     */
+    public ExpenseDbHelper(Context context, String databaseName) {
+        this(context, databaseName, false);
+    }
+    
+    private ExpenseDbHelper(Context context, String databaseName, boolean shared) {
+        super(context, databaseName, null, DATABASE_VERSION);
+        this.shared = shared;
+    }
+    
+    /**
+     * The app's database, shared by every component of the process. All writers then
+     * go through one connection and wait for each other instead of failing with
+     * SQLITE_BUSY, while WAL lets readers run during a write. It stays open for the
+     * life of the process: close() on it does nothing.
+     * 
+     * @param context Any context
+     */
+    public static synchronized ExpenseDbHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new ExpenseDbHelper(context.getApplicationContext(), DATABASE_NAME, true);
+        }
+        return instance;
+    }
+    
+    /**
+     * Called when the connection is opened, before onCreate/onUpgrade.
+     * 
+     * @param db The database instance
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Only takes effect while the file has no tables, i.e. before onCreate. Existing
+        // databases keep their mode; DatabaseMaintenance decides whether to convert them.
+        // Must come before WAL, which writes the file header and fixes the mode
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        // Readers see the last commit while a writer (restore, purge, maintenance) works
+        db.enableWriteAheadLogging();
+    }
+    
+    /**
+     * Close the database, unless this is the shared helper of getInstance()
+     */
+    @Override
+    public synchronized void close() {
+        if (!shared) {
+            super.close();
+        }
     }
     
     /**
@@ -97,17 +504,39 @@ public class ExpenseDbHelper extends SQLiteOpenHelper {
         // Create index on date column for performance (US10 - Fast Data Loading)
         // This dramatically improves ORDER BY date DESC performance
         db.execSQL(SQL_CREATE_INDEX);
+        db.execSQL(SQL_CREATE_DELETED_INDEX);
         
         // Create the budget table (US18-US22)
         db.execSQL(SQL_CREATE_BUDGET_TABLE);
+        
+        // Change log for incremental backups and sync
+        db.execSQL(SQL_CREATE_CHANGE_LOG_TABLE);
+        createChangeLogTriggers(db);
+        
+        // Sync bookkeeping
+        db.execSQL(SQL_CREATE_SYNC_ROW_TABLE);
+        db.execSQL(SQL_CREATE_SYNC_ROW_INDEX);
+        db.execSQL(SQL_CREATE_SYNC_STATE_TABLE);
+        
+        // Cold storage for old expenses
+        createArchiveTables(db);
+        
+        // A new database has nothing to backfill; the table only records future steps
+        db.execSQL(SQL_CREATE_MIGRATION_PROGRESS_TABLE);
+        db.execSQL(SQL_CREATE_MAINTENANCE_STATS_TABLE);
+        
+        // Recurring expenses (rent, subscriptions, bills)
+        db.execSQL(SQL_CREATE_RECURRING_TABLE);
+        db.execSQL(SQL_CREATE_RECURRING_OCCURRENCE_TABLE);
     }
     
     /**
      * Called when the database needs to be upgraded.
      * This happens when DATABASE_VERSION is increased.
      *
-     * Current Strategy (v1): Simple drop and recreate
-     * Future Strategy: Use ALTER TABLE to preserve data during schema changes
+     * Runs the schema steps after oldVersion, in order, inside one transaction.
+     * Backfills they declare are only registered here; MigrationRunner runs them
+     * in chunks afterwards, off the UI thread.
      * 
      * @param db The database instance
      * @param oldVersion The old database version
@@ -115,29 +544,83 @@ public class ExpenseDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Upgrade from version 1 to 2: Add budget table
-        if (oldVersion < 2) {
-            // Add budget table without dropping expense table (preserve user data)
-            db.execSQL(SQL_CREATE_BUDGET_TABLE);
+        for (SchemaMigration migration : MIGRATIONS) {
+            if (migration.version <= oldVersion || migration.version > newVersion) {
+                continue;
+            }
+            migration.up(db, oldVersion);
+            Backfill backfill = migration.backfill();
+            if (backfill != null) {
+                db.execSQL("INSERT OR IGNORE INTO " + TABLE_MIGRATION_PROGRESS + " (" + 
+                    COLUMN_MIGRATION_NAME + ") VALUES (?)", new Object[]{ backfill.name });
+            }
         }
-        
-        // For future upgrades, use similar pattern to preserve data
-        // if (oldVersion < 3) {
-        //     db.execSQL("ALTER TABLE ...");
-        // }
-        
-        // Future upgrade examples:
-        // if (oldVersion < 2) {
-        //     db.execSQL("ALTER TABLE expense ADD COLUMN attachment TEXT;");
-        // }
-        // if (oldVersion < 3) {
-        //     db.execSQL("CREATE TABLE category (...);");
-        // }
+    }
+    
+    private static void createArchiveTables(SQLiteDatabase db) {
+        db.execSQL(SQL_CREATE_ARCHIVE_TABLE);
+        db.execSQL(SQL_CREATE_ARCHIVE_INDEX);
+        db.execSQL(SQL_CREATE_ROLLUP_TABLE);
+        db.execSQL(SQL_CREATE_ROLLUP_INSERT_TRIGGER);
+        db.execSQL(SQL_CREATE_ROLLUP_DELETE_TRIGGER);
+    }
+    
+    /**
+     * Create the triggers that append every insert/update/delete on expense and budget
+     * to the change log. Restore drops them while it bulk-loads and recreates them after.
+     *
+     * @param db The database instance
+     */
+    static void createChangeLogTriggers(SQLiteDatabase db) {
+        String[] tables = { TABLE_EXPENSE, TABLE_BUDGET };
+        for (String table : tables) {
+            db.execSQL(changeLogTrigger(table, "INSERT", OP_INSERT, "NEW", null));
+            db.execSQL(changeLogTrigger(table, "UPDATE", OP_UPDATE, "NEW", null));
+        }
+        db.execSQL(changeLogTrigger(TABLE_BUDGET, "DELETE", OP_DELETE, "OLD", null));
+        // Moving a row to the archive copies it first, so that delete is not a real one
+        db.execSQL(changeLogTrigger(TABLE_EXPENSE, "DELETE", OP_DELETE, "OLD",
+            "NOT EXISTS (SELECT 1 FROM " + TABLE_EXPENSE_ARCHIVE + " WHERE " + COLUMN_ID + " = OLD." + COLUMN_ID + ")"));
+    }
+    
+    /**
+     * Drop the change log triggers (see createChangeLogTriggers)
+     *
+     * @param db The database instance
+     */
+    static void dropChangeLogTriggers(SQLiteDatabase db) {
+        String[] tables = { TABLE_EXPENSE, TABLE_BUDGET };
+        String[] events = { "INSERT", "UPDATE", "DELETE" };
+        for (String table : tables) {
+            for (String event : events) {
+                db.execSQL("DROP TRIGGER IF EXISTS " + triggerName(table, event) + ";");
+            }
+        }
+    }
+    
+    private static String triggerName(String table, String event) {
+        return "trg_" + table + "_" + event.toLowerCase(Locale.ROOT) + "_log";
+    }
+    
+    private static String changeLogTrigger(String table, String event, String op, String row, String when) {
+        return "CREATE TRIGGER IF NOT EXISTS " + triggerName(table, event) + " " +
+            "AFTER " + event + " ON " + table + " " +
+            (when != null ? "WHEN " + when + " " : "") +
+            "BEGIN " +
+                "INSERT INTO " + TABLE_CHANGE_LOG + " (" +
+                    COLUMN_LOG_TABLE + ", " + COLUMN_LOG_OP + ", " +
+                    COLUMN_LOG_ROW_ID + ", " + COLUMN_LOG_CHANGED_AT + ") " +
+                "VALUES ('" + table + "', '" + op + "', " + row + "." + COLUMN_ID + ", " + SQL_NOW_MILLIS + "); " +
+            "END;";
     }
     
     /**
      * Called when the database needs to be downgraded.
-     * This happens when DATABASE_VERSION is decreased.
+     * This happens when an older build opens a database written by a newer one.
+     *
+     * This build cannot know what the newer steps changed, so the schema is rebuilt
+     * as this version creates it and every row is copied back through the columns
+     * both schemas share. Rollups are recomputed by their triggers on the way in.
      * 
      * @param db The database instance
      * @param oldVersion The old database version
@@ -145,7 +628,65 @@ public class ExpenseDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // For now, treat downgrade same as upgrade (drop and recreate)
-        onUpgrade(db, oldVersion, newVersion);
+        Log.w(TAG, "Downgrading database from v" + oldVersion + " to v" + newVersion);
+        
+        // Drop the newer triggers and indexes; the tables are kept aside under a new name
+        for (String[] object : schemaObjects(db, "'trigger', 'index'")) {
+            db.execSQL("DROP " + object[0].toUpperCase(Locale.ROOT) + " IF EXISTS \"" + object[1] + "\";");
+        }
+        List<String> tables = new ArrayList<>();
+        for (String[] object : schemaObjects(db, "'table'")) {
+            tables.add(object[1]);
+            db.execSQL("ALTER TABLE \"" + object[1] + "\" RENAME TO \"" + object[1] + "_downgrade\";");
+        }
+        
+        onCreate(db);
+        dropChangeLogTriggers(db);
+        for (String table : tables) {
+            String old = table + "_downgrade";
+            List<String> shared = tableColumns(db, table);
+            shared.retainAll(tableColumns(db, old));
+            if (!shared.isEmpty() && !table.equals(TABLE_EXPENSE_ROLLUP)) {
+                String columns = "\"" + TextUtils.join("\", \"", shared) + "\"";
+                db.execSQL("INSERT INTO \"" + table + "\" (" + columns + ") SELECT " + columns + " FROM \"" + old + "\";");
+            }
+            db.execSQL("DROP TABLE \"" + old + "\";");
+        }
+        createChangeLogTriggers(db);
+    }
+    
+    /**
+     * @param types Quoted sqlite_master types, comma separated
+     * @return (type, name) of each user-defined schema object of those types
+     */
+    private static List<String[]> schemaObjects(SQLiteDatabase db, String types) {
+        List<String[]> objects = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT type, name FROM sqlite_master " +
+                "WHERE type IN (" + types + ") AND name NOT LIKE 'sqlite_%' " +
+                "AND name != 'android_metadata'", null);
+            while (cursor.moveToNext()) {
+                objects.add(new String[]{ cursor.getString(0), cursor.getString(1) });
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return objects;
+    }
+    
+    private static List<String> tableColumns(SQLiteDatabase db, String table) {
+        List<String> columns = new ArrayList<>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("PRAGMA table_info(\"" + table + "\")", null);
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                columns.add(cursor.getString(nameIndex));
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return columns;
     }
 }
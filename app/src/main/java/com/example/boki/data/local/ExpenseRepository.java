@@ -4,9 +4,13 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 
 import com.example.boki.models.Expense;
 import com.example.boki.models.ExpenseCategorySummary;
+import com.example.boki.models.ExpenseRow;
+import com.example.boki.models.ExpenseSeries;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
@@ -18,14 +22,113 @@ import java.util.Map;
  */
 public class ExpenseRepository {
     
+    /**
+     * Receives the expenses of forEachInRange(), one call per row. The values are read
+     * straight from the cursor, so visiting allocates nothing per row.
+     */
+    public interface RowVisitor {
+        /**
+         * @param id         Expense ID
+         * @param day        Epoch day (days since 1970-01-01)
+         * @param amount     Expense amount
+         * @param categoryId ExpenseCategories id
+         */
+        void visit(long id, int day, double amount, int categoryId);
+    }
+    
     private ExpenseDbHelper dbHelper;
     
+    // Computed columns: the date as an epoch day and the category as its id
+    private static final String SQL_DAY =
+        "CAST(julianday(" + ExpenseDbHelper.COLUMN_DATE + ") - 2440587.5 AS INTEGER) AS day";
+    private static final String SQL_CATEGORY_ID =
+        ExpenseCategories.sqlIdOf(ExpenseDbHelper.COLUMN_CATEGORY) + " AS category_id";
+    
+    // Full expenses
+    static final RowMapper<Expense> EXPENSE_MAPPER = new RowMapper<Expense>(
+            ExpenseDbHelper.COLUMN_ID,
+            ExpenseDbHelper.COLUMN_TITLE,
+            ExpenseDbHelper.COLUMN_AMOUNT,
+            ExpenseDbHelper.COLUMN_CATEGORY,
+            ExpenseDbHelper.COLUMN_NOTE,
+            ExpenseDbHelper.COLUMN_DATE,
+            ExpenseDbHelper.COLUMN_TIME) {
+        @Override
+        Expense map(Cursor cursor, int[] at) {
+            return new Expense(
+                cursor.getLong(at[0]),
+                cursor.getString(at[1]),
+                cursor.getDouble(at[2]),
+                cursor.getString(at[3]),
+                cursor.getString(at[4]),
+                cursor.getString(at[5]),
+                cursor.getString(at[6])
+            );
+        }
+    };
+    
+    // List rows: no note, category as its id, date as epoch day. The stored date is
+    // selected too: lists sort on it (it is indexed), and a legacy date that SQLite
+    // cannot read leaves day NULL, so the row shows the stored text instead.
+    static final RowMapper<ExpenseRow> ROW_MAPPER = new RowMapper<ExpenseRow>(
+            ExpenseDbHelper.COLUMN_ID,
+            ExpenseDbHelper.COLUMN_TITLE,
+            ExpenseDbHelper.COLUMN_AMOUNT,
+            SQL_CATEGORY_ID,
+            SQL_DAY,
+            ExpenseDbHelper.COLUMN_TIME,
+            ExpenseDbHelper.COLUMN_DATE) {
+        @Override
+        ExpenseRow map(Cursor cursor, int[] at) {
+            boolean dated = !cursor.isNull(at[4]);
+            return new ExpenseRow(
+                cursor.getLong(at[0]),
+                cursor.getString(at[1]),
+                cursor.getDouble(at[2]),
+                cursor.getInt(at[3]),
+                dated ? cursor.getInt(at[4]) : EpochDays.INVALID,
+                cursor.getString(at[5]),
+                dated ? null : cursor.getString(at[6])
+            );
+        }
+    };
+    
+    // forEachInRange() columns, in RowVisitor order
+    private static final String VISIT_PROJECTION =
+        ExpenseDbHelper.COLUMN_ID + ", " +
+        SQL_DAY + ", " +
+        ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+        SQL_CATEGORY_ID;
+    
+    // Shared prefix-sum index; writers lock it across the SQL write and the index update
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+    
     /**
      * Constructor - initializes the database helper
      * @param context Application context
      */
     public ExpenseRepository(Context context) {
-        this.dbHelper = new ExpenseDbHelper(context);
+        this(ExpenseDbHelper.getInstance(context));
+    }
+    
+    /**
+     * @param dbHelper Database holding the expenses (a scratch database in tests)
+     */
+    public ExpenseRepository(ExpenseDbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+    
+    /**
+     * Build the shared SpendingIndex from the database if it isn't built yet.
+     * Call once at startup from a background thread; until it finishes,
+     * range totals fall back to SQL.
+     */
+    public void buildSpendingIndex() {
+        synchronized (spendingIndex) {
+            if (!spendingIndex.isReady()) {
+                spendingIndex.rebuild(dbHelper.getReadableDatabase());
+            }
+        }
     }
     
     /**
@@ -33,8 +136,10 @@ public class ExpenseRepository {
      * 
      * @param expense The expense to insert (ID will be ignored)
      * @return The row ID of the newly inserted expense, or -1 if error
+     * @throws IllegalArgumentException if the date is not yyyy-MM-dd or the time not HH:mm:ss
      */
     public long insertExpense(Expense expense) {
+        ExpenseDateTimes.requireCanonical(expense);
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         // ContentValues for safe insertion (prevents SQL injection)
@@ -46,15 +151,18 @@ public class ExpenseRepository {
         values.put(ExpenseDbHelper.COLUMN_DATE, expense.getDate());
         values.put(ExpenseDbHelper.COLUMN_TIME, expense.getTime());
         
-        // Insert and get the new row ID
-        long newRowId = db.insert(ExpenseDbHelper.TABLE_EXPENSE, null, values);
-        
-        // Update the expense object with the new ID
-        if (newRowId != -1) {
-            expense.setId(newRowId);
+        synchronized (spendingIndex) {
+            // Insert and get the new row ID
+            long newRowId = db.insert(ExpenseDbHelper.TABLE_EXPENSE, null, values);
+            
+            // Update the expense object with the new ID and the range index
+            if (newRowId != -1) {
+                expense.setId(newRowId);
+                spendingIndex.add(expense.getDate(), expense.getCategory(), expense.getAmount());
+            }
+            
+            return newRowId;
         }
-        
-        return newRowId;
     }
     
     /**
@@ -64,43 +172,24 @@ public class ExpenseRepository {
      * @return List of all expenses, ordered by most recent first
      */
     public List<Expense> getAllExpenses() {
-        List<Expense> expenses = new ArrayList<>();
+        List<Expense> expenses;
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = null;
         
         try {
-            // Define columns to retrieve (best practice)
-            String[] projection = {
-                ExpenseDbHelper.COLUMN_ID,
-                ExpenseDbHelper.COLUMN_TITLE,
-                ExpenseDbHelper.COLUMN_AMOUNT,
-                ExpenseDbHelper.COLUMN_CATEGORY,
-                ExpenseDbHelper.COLUMN_NOTE,
-                ExpenseDbHelper.COLUMN_DATE,
-                ExpenseDbHelper.COLUMN_TIME
-            };
-            
             // ORDER BY date DESC, time DESC for most recent first (US10)
-            // The index on date column makes this very fast
+            // Both tables are read (archived rows too); each side is served by its date index
             String sortOrder = ExpenseDbHelper.COLUMN_DATE + " DESC, " + 
                               ExpenseDbHelper.COLUMN_TIME + " DESC";
             
             // Execute query
-            cursor = db.query(
-                ExpenseDbHelper.TABLE_EXPENSE,  // Table name
-                projection,                      // Columns to return
-                null,                           // WHERE clause (null = all rows)
-                null,                           // WHERE clause arguments
-                null,                           // GROUP BY
-                null,                           // HAVING
-                sortOrder                       // ORDER BY
+            cursor = db.rawQuery(
+                ExpenseArchive.selectRows(EXPENSE_MAPPER.projection(), null) + "ORDER BY " + sortOrder,
+                null
             );
             
-            // Iterate through cursor and build expense list
-            while (cursor.moveToNext()) {
-                Expense expense = cursorToExpense(cursor);
-                expenses.add(expense);
-            }
+            // Build the expense list (column positions resolved once)
+            expenses = EXPENSE_MAPPER.mapAll(cursor);
             
         } finally {
             // CRITICAL: Always close cursor to prevent memory leaks
@@ -112,6 +201,50 @@ public class ExpenseRepository {
         return expenses;
     }
     
+    /**
+     * Retrieve one page of list rows, most recent first (date, time, then ID).
+     * Lighter than getAllExpenses(): no note and no category string, so many more
+     * rows fit in each CursorWindow. Load the full expense with getExpenseById().
+     * 
+     * Keyset paging: a page starts right after the last row of the previous one, so
+     * it is a range read of the date index however far the list has been scrolled.
+     * 
+     * @param after Last row of the previous page, or null for the first page
+     * @param limit Maximum number of rows
+     * @return List rows, ordered by most recent first
+     */
+    public List<ExpenseRow> getExpenseRows(ExpenseRow after, int limit) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+        
+        String where = null;
+        String[] args = null;
+        if (after != null) {
+            // The leading date bound lets each table start its index scan at the last page's day
+            String date = after.getRawDate() != null ? after.getRawDate() : EpochDays.toIso(after.getDay());
+            where = ExpenseDbHelper.COLUMN_DATE + " <= ? AND (" +
+                    ExpenseDbHelper.COLUMN_DATE + " < ? OR (" + ExpenseDbHelper.COLUMN_DATE + " = ? AND (" +
+                    ExpenseDbHelper.COLUMN_TIME + " < ? OR (" + ExpenseDbHelper.COLUMN_TIME + " = ? AND " +
+                    ExpenseDbHelper.COLUMN_ID + " < ?))))";
+            args = ExpenseArchive.twice(date, date, date, after.getTime(), after.getTime(),
+                    String.valueOf(after.getId()));
+        }
+        
+        try {
+            cursor = db.rawQuery(
+                ExpenseArchive.selectFirstRows(ROW_MAPPER.projection(), where,
+                    ExpenseDbHelper.COLUMN_DATE + " DESC, " + ExpenseDbHelper.COLUMN_TIME + " DESC, " +
+                        ExpenseDbHelper.COLUMN_ID + " DESC", limit),
+                args
+            );
+            return ROW_MAPPER.mapAll(cursor);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+    
     /**
      * Retrieve a single expense by ID
      * 
@@ -124,18 +257,10 @@ public class ExpenseRepository {
         Expense expense = null;
         
         try {
-            String[] projection = {
-                ExpenseDbHelper.COLUMN_ID,
-                ExpenseDbHelper.COLUMN_TITLE,
-                ExpenseDbHelper.COLUMN_AMOUNT,
-                ExpenseDbHelper.COLUMN_CATEGORY,
-                ExpenseDbHelper.COLUMN_NOTE,
-                ExpenseDbHelper.COLUMN_DATE,
-                ExpenseDbHelper.COLUMN_TIME
-            };
+            String[] projection = EXPENSE_MAPPER.columns();
             
             // Parameterized query to prevent SQL injection
-            String selection = ExpenseDbHelper.COLUMN_ID + " = ?";
+            String selection = ExpenseDbHelper.COLUMN_ID + " = ? AND " + ExpenseDbHelper.EXPENSE_LIVE;
             String[] selectionArgs = { String.valueOf(id) };
             
             cursor = db.query(
@@ -149,8 +274,20 @@ public class ExpenseRepository {
             );
             
             // If found, convert to Expense object
-            if (cursor.moveToFirst()) {
-                expense = cursorToExpense(cursor);
+            expense = EXPENSE_MAPPER.mapFirst(cursor);
+            if (expense == null) {
+                // Old expenses live in the archive
+                cursor.close();
+                cursor = db.query(
+                    ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE,
+                    projection,
+                    ExpenseDbHelper.COLUMN_ID + " = ?",
+                    selectionArgs,
+                    null,
+                    null,
+                    null
+                );
+                expense = EXPENSE_MAPPER.mapFirst(cursor);
             }
             
         } finally {
@@ -167,8 +304,10 @@ public class ExpenseRepository {
      * 
      * @param expense The expense to update (must have valid ID)
      * @return Number of rows affected (should be 1 if successful)
+     * @throws IllegalArgumentException if the date is not yyyy-MM-dd or the time not HH:mm:ss
      */
     public int updateExpense(Expense expense) {
+        ExpenseDateTimes.requireCanonical(expense);
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
         // ContentValues with new data
@@ -180,23 +319,44 @@ public class ExpenseRepository {
         values.put(ExpenseDbHelper.COLUMN_DATE, expense.getDate());
         values.put(ExpenseDbHelper.COLUMN_TIME, expense.getTime());
         
-        // WHERE clause with parameterized query (prevents SQL injection)
-        String whereClause = ExpenseDbHelper.COLUMN_ID + " = ?";
+        // WHERE clause with parameterized query (prevents SQL injection); deleted rows stay deleted
+        String whereClause = ExpenseDbHelper.COLUMN_ID + " = ? AND " + ExpenseDbHelper.EXPENSE_LIVE;
         String[] whereArgs = { String.valueOf(expense.getId()) };
         
-        // Perform update
-        int rowsAffected = db.update(
-            ExpenseDbHelper.TABLE_EXPENSE,
-            values,
-            whereClause,
-            whereArgs
-        );
-        
-        return rowsAffected;
+        synchronized (spendingIndex) {
+            // One transaction, so the archive job cannot move the row between these steps
+            db.beginTransaction();
+            try {
+                // Archived rows are edited in the hot table
+                ExpenseArchive.unarchive(db, expense.getId());
+                
+                // Old values are needed to move the amount out of its previous day/category
+                Expense previous = getExpenseById(expense.getId());
+                
+                // Perform update
+                int rowsAffected = db.update(
+                    ExpenseDbHelper.TABLE_EXPENSE,
+                    values,
+                    whereClause,
+                    whereArgs
+                );
+                db.setTransactionSuccessful();
+                
+                if (rowsAffected > 0 && previous != null) {
+                    spendingIndex.remove(previous.getDate(), previous.getCategory(), previous.getAmount());
+                    spendingIndex.add(expense.getDate(), expense.getCategory(), expense.getAmount());
+                }
+                
+                return rowsAffected;
+            } finally {
+                db.endTransaction();
+            }
+        }
     }
     
     /**
-     * Delete an expense from the database
+     * Delete an expense. The row is only marked deleted (deleted_at) so the delete can
+     * be undone with restoreExpense(); PurgeDeletedJobService removes it for good later.
      * 
      * @param id The expense ID to delete
      * @return true if deletion was successful, false otherwise
@@ -204,75 +364,170 @@ public class ExpenseRepository {
     public boolean deleteExpense(long id) {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
         
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_DELETED_AT, System.currentTimeMillis());
+        
         // WHERE clause with parameterized query
-        String whereClause = ExpenseDbHelper.COLUMN_ID + " = ?";
+        String whereClause = ExpenseDbHelper.COLUMN_ID + " = ? AND " + ExpenseDbHelper.EXPENSE_LIVE;
         String[] whereArgs = { String.valueOf(id) };
         
-        // Perform delete
-        int rowsDeleted = db.delete(
-            ExpenseDbHelper.TABLE_EXPENSE,
-            whereClause,
-            whereArgs
-        );
+        synchronized (spendingIndex) {
+            // One transaction, as in updateExpense()
+            db.beginTransaction();
+            try {
+                ExpenseArchive.unarchive(db, id);
+                Expense previous = getExpenseById(id);
+                
+                // Perform soft delete
+                int rowsDeleted = db.update(
+                    ExpenseDbHelper.TABLE_EXPENSE,
+                    values,
+                    whereClause,
+                    whereArgs
+                );
+                db.setTransactionSuccessful();
+                
+                if (rowsDeleted > 0 && previous != null) {
+                    spendingIndex.remove(previous.getDate(), previous.getCategory(), previous.getAmount());
+                }
+                
+                return rowsDeleted > 0;
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+    
+    /**
+     * Undo deleteExpense() for an expense that has not been purged yet
+     * 
+     * @param id The expense ID to bring back
+     * @return true if the expense is live again
+     */
+    public boolean restoreExpense(long id) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        
+        ContentValues values = new ContentValues();
+        values.putNull(ExpenseDbHelper.COLUMN_DELETED_AT);
         
-        return rowsDeleted > 0;
+        String whereClause = ExpenseDbHelper.COLUMN_ID + " = ? AND " + 
+                             ExpenseDbHelper.COLUMN_DELETED_AT + " IS NOT NULL";
+        String[] whereArgs = { String.valueOf(id) };
+        
+        synchronized (spendingIndex) {
+            int rowsRestored = db.update(ExpenseDbHelper.TABLE_EXPENSE, values, whereClause, whereArgs);
+            Expense restored = rowsRestored > 0 ? getExpenseById(id) : null;
+            
+            if (restored != null) {
+                spendingIndex.add(restored.getDate(), restored.getCategory(), restored.getAmount());
+            }
+            
+            return restored != null;
+        }
     }
     
     /**
-     * Delete all expenses from the database
+     * Delete all expenses from the database (soft delete, one statement)
      * Useful for testing and clearing data
      * 
      * @return Number of rows deleted
      */
     public int deleteAllExpenses() {
         SQLiteDatabase db = dbHelper.getWritableDatabase();
-        return db.delete(ExpenseDbHelper.TABLE_EXPENSE, null, null);
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_DELETED_AT, System.currentTimeMillis());
+        synchronized (spendingIndex) {
+            db.beginTransaction();
+            int rowsDeleted;
+            try {
+                // Archived rows cannot be marked; bring them back first (one statement each way)
+                db.execSQL("INSERT INTO " + ExpenseDbHelper.TABLE_EXPENSE + " (" + ExpenseArchive.ROW_COLUMNS + ") " +
+                        "SELECT " + ExpenseArchive.ROW_COLUMNS + " FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE);
+                db.delete(ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, null, null);
+                rowsDeleted = db.update(ExpenseDbHelper.TABLE_EXPENSE, values, ExpenseDbHelper.EXPENSE_LIVE, null);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            spendingIndex.clear();
+            return rowsDeleted;
+        }
     }
     
     /**
-     * Get the total count of expenses in the database
+     * Physically remove deleted expenses, a batch per statement so no single
+     * transaction holds the database for long. Run this off the UI thread.
      * 
-     * @return Total number of expenses
+     * @param deletedBefore Only rows deleted before this time (epoch millis) are removed
+     * @param batchSize Rows per DELETE
+     * @param signal Cancellation signal, may be null; checked between batches
+     * @return Number of rows removed
      */
-    public int getExpenseCount() {
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        Cursor cursor = null;
-        int count = 0;
+    public int purgeDeletedExpenses(long deletedBefore, int batchSize, CancellationSignal signal) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String sql = "DELETE FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_ID + " IN (" +
+                    "SELECT " + ExpenseDbHelper.COLUMN_ID + " " +
+                    "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_DELETED_AT + " IS NOT NULL " +
+                    "AND " + ExpenseDbHelper.COLUMN_DELETED_AT + " < ? " +
+                    "LIMIT " + batchSize + ")";
         
+        SQLiteStatement statement = db.compileStatement(sql);
+        int purged = 0;
         try {
-            cursor = db.rawQuery("SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE, null);
-            if (cursor.moveToFirst()) {
-                count = cursor.getInt(0);
-            }
+            int rowsInBatch;
+            do {
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+                statement.bindLong(1, deletedBefore);
+                rowsInBatch = statement.executeUpdateDelete();
+                purged += rowsInBatch;
+            } while (rowsInBatch == batchSize);
         } finally {
-            if (cursor != null) {
-                cursor.close();
-            }
+            statement.close();
         }
-        
-        return count;
+        return purged;
+    }
+    
+    /**
+     * Get the total count of expenses in the database
+     * 
+     * @return Total number of expenses
+     */
+    public int getExpenseCount() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        // Hot and archived rows
+        return ExpenseArchive.countExpenses(db);
     }
 
     /**
      * Get total expense amount between two dates (inclusive).
+     * Answered from the SpendingIndex in O(log days) once it is built.
      *
      * @param startIso yyyy-MM-dd (inclusive)
      * @param endIso   yyyy-MM-dd (inclusive)
      * @return total amount (0.0 if no rows)
      */
     public double getTotalAmountBetween(String startIso, String endIso) {
+        int startDay = EpochDays.fromIso(startIso);
+        int endDay = EpochDays.fromIso(endIso);
+        if (startDay != EpochDays.INVALID && endDay != EpochDays.INVALID && spendingIndex.isReady()) {
+            return spendingIndex.totalBetween(startDay, endDay);
+        }
+        
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = null;
         double total = 0.0;
 
+        List<String> args = new ArrayList<>();
         String sql =
                 "SELECT COALESCE(SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + "), 0) " +
-                        "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
-                        "WHERE " + ExpenseDbHelper.COLUMN_DATE + " >= ? " +
-                        "AND " + ExpenseDbHelper.COLUMN_DATE + " <= ?";
+                        "FROM " + ExpenseArchive.amountsBetween(db, startIso, endIso, args);
 
         try {
-            cursor = db.rawQuery(sql, new String[]{ startIso, endIso });
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
             if (cursor.moveToFirst()) {
                 total = cursor.getDouble(0);
             }
@@ -291,22 +546,27 @@ public class ExpenseRepository {
      * @return list of ExpenseCategorySummary (percentage calculated later in UI)
      */
     public List<ExpenseCategorySummary> getCategoryTotalsBetween(String startIso, String endIso) {
+        int startDay = EpochDays.fromIso(startIso);
+        int endDay = EpochDays.fromIso(endIso);
+        if (startDay != EpochDays.INVALID && endDay != EpochDays.INVALID && spendingIndex.isReady()) {
+            return spendingIndex.categoryTotalsBetween(startDay, endDay);
+        }
+        
         SQLiteDatabase db = dbHelper.getReadableDatabase();
         Cursor cursor = null;
 
         List<ExpenseCategorySummary> results = new ArrayList<>();
 
+        List<String> args = new ArrayList<>();
         String sql =
                 "SELECT " + ExpenseDbHelper.COLUMN_CATEGORY + ", " +
                         "SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + ") AS total " +
-                        "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
-                        "WHERE " + ExpenseDbHelper.COLUMN_DATE + " >= ? " +
-                        "AND " + ExpenseDbHelper.COLUMN_DATE + " <= ? " +
+                        "FROM " + ExpenseArchive.amountsBetween(db, startIso, endIso, args) + " " +
                         "GROUP BY " + ExpenseDbHelper.COLUMN_CATEGORY + " " +
                         "ORDER BY total DESC";
 
         try {
-            cursor = db.rawQuery(sql, new String[]{ startIso, endIso });
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
             while (cursor.moveToNext()) {
                 String category = cursor.getString(0);
                 double total = cursor.getDouble(1);
@@ -322,34 +582,280 @@ public class ExpenseRepository {
     }
 
     /**
-    
+     * Get total amount of one category between two dates (inclusive).
+     *
+     * @param category Category name
+     * @param startIso yyyy-MM-dd (inclusive)
+     * @param endIso   yyyy-MM-dd (inclusive)
+     * @return total amount (0.0 if no rows)
+     */
+    public double getCategoryTotalBetween(String category, String startIso, String endIso) {
+        int startDay = EpochDays.fromIso(startIso);
+        int endDay = EpochDays.fromIso(endIso);
+        if (startDay != EpochDays.INVALID && endDay != EpochDays.INVALID && spendingIndex.isReady()) {
+            return spendingIndex.categoryTotalBetween(category, startDay, endDay);
+        }
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+        double total = 0.0;
+
+        List<String> args = new ArrayList<>();
+        String sql =
+                "SELECT COALESCE(SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + "), 0) " +
+                        "FROM " + ExpenseArchive.amountsBetween(db, startIso, endIso, args) + " " +
+                        "WHERE " + ExpenseDbHelper.COLUMN_CATEGORY + " = ?";
+        args.add(category);
+
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
+            if (cursor.moveToFirst()) {
+                total = cursor.getDouble(0);
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return total;
+    }
+
     /**
-     * Helper method to convert Cursor to Expense object
-     * 
-     * @param cursor The cursor positioned at a valid row
-     * @return Expense object created from cursor data
+     * Get zero-filled, time-bucketed totals for a date range, ready for chart entries.
+     * Served from the SpendingIndex when it is built, otherwise from a single
+     * grouped query; never one query per bucket.
+     *
+     * @param startIso   yyyy-MM-dd (inclusive)
+     * @param endIso     yyyy-MM-dd (inclusive)
+     * @param bucket     DAY, WEEK (Sunday-based) or MONTH
+     * @param byCategory true to also return per-category totals per bucket
+     * @return The series, or an empty series if the range is invalid
      */
-    private Expense cursorToExpense(Cursor cursor) {
-        // Get column indices
-        int idIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_ID);
-        int titleIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_TITLE);
-        int amountIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_AMOUNT);
-        int categoryIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_CATEGORY);
-        int noteIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_NOTE);
-        int dateIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_DATE);
-        int timeIndex = cursor.getColumnIndex(ExpenseDbHelper.COLUMN_TIME);
-        
-        // Extract data from cursor
-        long id = cursor.getLong(idIndex);
-        String title = cursor.getString(titleIndex);
-        double amount = cursor.getDouble(amountIndex);
-        String category = cursor.getString(categoryIndex);
-        String note = cursor.getString(noteIndex);
-        String date = cursor.getString(dateIndex);
-        String time = cursor.getString(timeIndex);
-        
-        // Create and return Expense object
-        return new Expense(id, title, amount, category, note, date, time);
+    public ExpenseSeries getSeries(String startIso, String endIso, ExpenseSeries.Bucket bucket, boolean byCategory) {
+        int startDay = EpochDays.fromIso(startIso);
+        int endDay = EpochDays.fromIso(endIso);
+        if (startDay == EpochDays.INVALID || endDay == EpochDays.INVALID || endDay < startDay) {
+            return new ExpenseSeries(bucket, new int[0], new float[0], new String[0], new float[0][]);
+        }
+
+        int[] bucketStarts = bucketStartDays(startDay, endDay, bucket);
+        // The first bucket is clipped to the requested range
+        int[] clippedStarts = bucketStarts.clone();
+        clippedStarts[0] = startDay;
+
+        if (spendingIndex.isReady()) {
+            float[] totals = spendingIndex.bucketTotals(clippedStarts, endDay, null);
+            List<String> categoryNames = new ArrayList<>();
+            List<float[]> categoryTotals = new ArrayList<>();
+            for (String category : byCategory ? spendingIndex.categories() : new String[0]) {
+                float[] series = spendingIndex.bucketTotals(clippedStarts, endDay, category);
+                // Only categories spent in the range, as the GROUP BY below returns them
+                if (hasNonZero(series)) {
+                    categoryNames.add(category);
+                    categoryTotals.add(series);
+                }
+            }
+            return new ExpenseSeries(bucket, bucketStarts, totals,
+                    categoryNames.toArray(new String[0]),
+                    categoryTotals.toArray(new float[0][]));
+        }
+
+        float[] totals = new float[bucketStarts.length];
+        List<String> categoryNames = new ArrayList<>();
+        List<float[]> categoryTotals = new ArrayList<>();
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+
+        String groupBy = byCategory
+                ? ExpenseDbHelper.COLUMN_DATE + ", " + ExpenseDbHelper.COLUMN_CATEGORY
+                : ExpenseDbHelper.COLUMN_DATE;
+        List<String> args = new ArrayList<>();
+        String sql =
+                "SELECT " + ExpenseDbHelper.COLUMN_DATE + ", " +
+                        "SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + ")" +
+                        (byCategory ? ", " + ExpenseDbHelper.COLUMN_CATEGORY + " " : " ") +
+                        "FROM " + ExpenseArchive.amountsBetween(db, startIso, endIso, args) + " " +
+                        "GROUP BY " + groupBy;
+
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
+            while (cursor.moveToNext()) {
+                int day = EpochDays.fromIso(cursor.getString(0));
+                if (day == EpochDays.INVALID) continue;
+
+                int index = bucketIndexOf(day, bucketStarts);
+                float amount = (float) cursor.getDouble(1);
+                totals[index] += amount;
+
+                if (byCategory) {
+                    String category = cursor.getString(2);
+                    int c = categoryNames.indexOf(category);
+                    if (c < 0) {
+                        c = categoryNames.size();
+                        categoryNames.add(category);
+                        categoryTotals.add(new float[bucketStarts.length]);
+                    }
+                    categoryTotals.get(c)[index] += amount;
+                }
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return new ExpenseSeries(bucket, bucketStarts, totals,
+                categoryNames.toArray(new String[0]),
+                categoryTotals.toArray(new float[0][]));
+    }
+
+    /**
+     * Get per-day totals for the days ending at endIso, packed into one array.
+     * Served from the SpendingIndex when it is built, otherwise from a single grouped query.
+     *
+     * @param endIso yyyy-MM-dd, the last day (stored at the last slot)
+     * @param days   Number of days to return, e.g. 366 for a yearly heatmap
+     * @return Totals in minor units (halalas); slot 0 is endIso minus (days - 1)
+     */
+    public long[] getDailyTotals(String endIso, int days) {
+        long[] totals = new long[days];
+        int endDay = EpochDays.fromIso(endIso);
+        if (endDay == EpochDays.INVALID) {
+            return totals;
+        }
+        int startDay = endDay - (days - 1);
+
+        if (spendingIndex.isReady()) {
+            spendingIndex.dailyTotals(startDay, totals);
+            return totals;
+        }
+
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+
+        List<String> args = new ArrayList<>();
+        String sql =
+                "SELECT " + ExpenseDbHelper.COLUMN_DATE + ", " +
+                        "SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + ") " +
+                        "FROM " + ExpenseArchive.amountsBetween(db, EpochDays.toIso(startDay), endIso, args) + " " +
+                        "GROUP BY " + ExpenseDbHelper.COLUMN_DATE;
+
+        try {
+            cursor = db.rawQuery(sql, args.toArray(new String[0]));
+            while (cursor.moveToNext()) {
+                int day = EpochDays.fromIso(cursor.getString(0));
+                if (day == EpochDays.INVALID) continue;
+                totals[day - startDay] += SpendingIndex.toMinorUnits(cursor.getDouble(1));
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        return totals;
+    }
+
+    /**
+     * Stream the expenses of a day range to a visitor, for aggregations SQL cannot
+     * express. Rows come in no particular order; nothing is allocated per row and
+     * the columns are read by position. Run long ranges off the UI thread.
+     *
+     * @param startDay First epoch day (inclusive)
+     * @param endDay   Last epoch day (inclusive)
+     * @param visitor  Called once per live expense in the range
+     * @return Number of expenses visited
+     */
+    public int forEachInRange(int startDay, int endDay, RowVisitor visitor) {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        String startIso = EpochDays.toIso(startDay);
+        String selection = ExpenseDbHelper.COLUMN_DATE + " >= ? AND " +
+                ExpenseDbHelper.COLUMN_DATE + " <= ?";
+        String[] args = { startIso, EpochDays.toIso(endDay) };
+
+        String sql;
+        if (ExpenseArchive.reachesArchive(db, startIso)) {
+            sql = ExpenseArchive.selectRows(VISIT_PROJECTION, selection);
+            args = ExpenseArchive.twice(args);
+        } else {
+            sql = "SELECT " + VISIT_PROJECTION + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                    "WHERE " + selection + " AND " + ExpenseDbHelper.EXPENSE_LIVE;
+        }
+
+        Cursor cursor = null;
+        int visited = 0;
+        try {
+            cursor = db.rawQuery(sql, args);
+            while (cursor.moveToNext()) {
+                visitor.visit(cursor.getLong(0), cursor.getInt(1), cursor.getDouble(2), cursor.getInt(3));
+                visited++;
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        return visited;
+    }
+
+    /**
+     * Start day of every bucket that overlaps [startDay, endDay].
+     * The first entry is the natural start of the first bucket (may precede startDay).
+     */
+    private static int[] bucketStartDays(int startDay, int endDay, ExpenseSeries.Bucket bucket) {
+        switch (bucket) {
+            case WEEK: {
+                int first = startDay - (EpochDays.dayOfWeek(startDay) - java.util.Calendar.SUNDAY);
+                int count = (endDay - first) / 7 + 1;
+                int[] starts = new int[count];
+                for (int i = 0; i < count; i++) {
+                    starts[i] = first + i * 7;
+                }
+                return starts;
+            }
+            case MONTH: {
+                int[] from = EpochDays.toCivil(startDay);
+                int[] to = EpochDays.toCivil(endDay);
+                int count = (to[0] * 12 + to[1]) - (from[0] * 12 + from[1]) + 1;
+                int[] starts = new int[count];
+                int year = from[0];
+                int month = from[1];
+                for (int i = 0; i < count; i++) {
+                    starts[i] = EpochDays.fromCivil(year, month, 1);
+                    if (++month > 12) {
+                        month = 1;
+                        year++;
+                    }
+                }
+                return starts;
+            }
+            case DAY:
+            default: {
+                int[] starts = new int[endDay - startDay + 1];
+                for (int i = 0; i < starts.length; i++) {
+                    starts[i] = startDay + i;
+                }
+                return starts;
+            }
+        }
+    }
+
+    /**
+     * Index of the last bucket starting on or before the day (binary search)
+     */
+    private static int bucketIndexOf(int day, int[] bucketStarts) {
+        int low = 0;
+        int high = bucketStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (bucketStarts[mid] <= day) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static boolean hasNonZero(float[] values) {
+        for (float value : values) {
+            if (value != 0) return true;
+        }
+        return false;
     }
     
     /**
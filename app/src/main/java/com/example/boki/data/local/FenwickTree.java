@@ -0,0 +1,97 @@
+package com.example.boki.data.local;
+
+/**
+ * Binary indexed (Fenwick) tree over long values.
+ * Point updates and prefix/range sums both run in O(log n).
+ * Positions are 0-based; the internal array is 1-based.
+ */
+final class FenwickTree {
+
+    private final long[] tree;
+
+    FenwickTree(int size) {
+        this.tree = new long[size + 1];
+    }
+
+    /**
+     * Build a tree from point values in O(n)
+     *
+     * @param values Point values, position i at values[i]
+     * @return Tree holding the same point values
+     */
+    static FenwickTree fromValues(long[] values) {
+        FenwickTree fenwick = new FenwickTree(values.length);
+        long[] t = fenwick.tree;
+        System.arraycopy(values, 0, t, 1, values.length);
+        for (int i = 1; i < t.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < t.length) {
+                t[parent] += t[i];
+            }
+        }
+        return fenwick;
+    }
+
+    int size() {
+        return tree.length - 1;
+    }
+
+    /**
+     * Add delta to the value at position
+     */
+    void add(int position, long delta) {
+        for (int i = position + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Sum of positions [0, position], clamped to the tree bounds
+     */
+    long prefixSum(int position) {
+        if (position < 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = Math.min(position + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Sum of positions [from, to] (inclusive)
+     */
+    long rangeSum(int from, int to) {
+        if (to < from) {
+            return 0;
+        }
+        return prefixSum(to) - prefixSum(from - 1);
+    }
+
+    /**
+     * Recover the point values in O(n) by undoing the linear build
+     */
+    long[] toValues() {
+        long[] t = tree.clone();
+        for (int i = t.length - 1; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent < t.length) {
+                t[parent] -= t[i];
+            }
+        }
+        long[] values = new long[size()];
+        System.arraycopy(t, 1, values, 0, values.length);
+        return values;
+    }
+
+    /**
+     * Copy into a tree of newSize with every position moved right by shift
+     */
+    FenwickTree resized(int newSize, int shift) {
+        long[] values = toValues();
+        long[] moved = new long[newSize];
+        System.arraycopy(values, 0, moved, shift, Math.min(values.length, newSize - shift));
+        return fromValues(moved);
+    }
+}
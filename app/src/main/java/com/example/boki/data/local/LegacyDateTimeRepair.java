@@ -0,0 +1,161 @@
+package com.example.boki.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Backfill that rewrites dates and times stored by early versions ("6-12-2025",
+ * "7:05 PM") in the canonical formats of ExpenseDateTimes.
+ *
+ * Such rows sort wrongly under date DESC and never match date range scans, so they
+ * were missing from every total. Both tables are walked in ID order; archived rows
+ * are moved back to the hot table before the update, since the rollup only follows
+ * inserts and deletes. Every change is logged, with a summary at the end; values
+ * that cannot be parsed are left as they are and reported. The summary counters
+ * are committed with each chunk, so it still covers every row after a resume.
+ */
+final class LegacyDateTimeRepair extends Backfill {
+
+    private static final String TAG = "LegacyDateTimeRepair";
+    // Unrepairable rows logged one by one; onFinished() reports the total
+    private static final int UNREPAIRABLE_LOGGED = 20;
+
+    // Counts over the whole backfill; a resumed run starts from the committed ones
+    int datesFixed;
+    int timesFixed;
+    int unrepairable;
+
+    LegacyDateTimeRepair() {
+        super("normalize_legacy_date_time");
+    }
+
+    @Override
+    int countRemaining(SQLiteDatabase db, long afterKey) {
+        String after = String.valueOf(afterKey);
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " +
+                            "(SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ?) + " +
+                            "(SELECT COUNT(*) FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ?)",
+                    new String[]{ after, after });
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    @Override
+    Chunk runChunk(SQLiteDatabase db, long afterKey, int limit) {
+        // Deleted rows too: they can still be restored
+        String columns = ExpenseDbHelper.COLUMN_ID + ", " +
+                ExpenseDbHelper.COLUMN_DATE + ", " +
+                ExpenseDbHelper.COLUMN_TIME;
+        String after = String.valueOf(afterKey);
+        List<String[]> fixes = new ArrayList<>();
+        List<Long> archived = new ArrayList<>();
+        long lastKey = afterKey;
+        int rows = 0;
+
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + columns + ", 0 FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ? " +
+                            "UNION ALL " +
+                            "SELECT " + columns + ", 1 FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ? " +
+                            "ORDER BY " + ExpenseDbHelper.COLUMN_ID + " LIMIT " + limit,
+                    new String[]{ after, after });
+            while (cursor.moveToNext()) {
+                rows++;
+                lastKey = cursor.getLong(0);
+                String date = cursor.getString(1);
+                String time = cursor.getString(2);
+                boolean dateOk = ExpenseDateTimes.isCanonicalDate(date);
+                boolean timeOk = ExpenseDateTimes.isCanonicalTime(time);
+                if (dateOk && timeOk) continue;
+
+                String fixedDate = dateOk ? date : ExpenseDateTimes.normalizeDate(date);
+                String fixedTime = timeOk ? time : ExpenseDateTimes.normalizeTime(time);
+                if (fixedDate == null || fixedTime == null) {
+                    // Fix what can be fixed, keep the rest
+                    unrepairable++;
+                    if (unrepairable <= UNREPAIRABLE_LOGGED) {
+                        Log.w(TAG, "Expense " + lastKey + " left as is: " + date + " " + time);
+                    }
+                    if (fixedDate == null) fixedDate = date;
+                    if (fixedTime == null) fixedTime = time;
+                }
+                if (fixedDate.equals(date) && fixedTime.equals(time)) continue;
+
+                if (!fixedDate.equals(date)) datesFixed++;
+                if (!fixedTime.equals(time)) timesFixed++;
+                fixes.add(new String[]{ fixedDate, fixedTime, String.valueOf(lastKey) });
+                if (cursor.getInt(3) == 1) archived.add(lastKey);
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        for (long id : archived) {
+            ExpenseArchive.unarchive(db, id);
+        }
+        if (!fixes.isEmpty()) {
+            SQLiteStatement update = db.compileStatement("UPDATE " + ExpenseDbHelper.TABLE_EXPENSE + " SET " +
+                    ExpenseDbHelper.COLUMN_DATE + " = ?, " +
+                    ExpenseDbHelper.COLUMN_TIME + " = ? " +
+                    "WHERE " + ExpenseDbHelper.COLUMN_ID + " = ?");
+            try {
+                for (String[] fix : fixes) {
+                    update.bindAllArgsAsStrings(fix);
+                    update.executeUpdateDelete();
+                }
+            } finally {
+                update.close();
+            }
+        }
+        return new Chunk(lastKey, rows);
+    }
+
+    @Override
+    String saveState() {
+        return datesFixed + "," + timesFixed + "," + unrepairable;
+    }
+
+    @Override
+    void restoreState(String state) {
+        datesFixed = 0;
+        timesFixed = 0;
+        unrepairable = 0;
+        if (state == null) return;
+        String[] counts = state.split(",");
+        try {
+            datesFixed = Integer.parseInt(counts[0]);
+            timesFixed = Integer.parseInt(counts[1]);
+            unrepairable = Integer.parseInt(counts[2]);
+        } catch (RuntimeException e) {
+            // Only the summary depends on them
+            Log.w(TAG, "Ignoring saved counts: " + state);
+        }
+    }
+
+    @Override
+    void onFinished(SQLiteDatabase db) {
+        Log.i(TAG, "Normalized " + datesFixed + " dates and " + timesFixed + " times; " +
+                unrepairable + " rows left unrepaired");
+
+        // Repaired dates now count toward range totals
+        SpendingIndex spendingIndex = SpendingIndex.getInstance();
+        synchronized (spendingIndex) {
+            if (datesFixed > 0 && spendingIndex.isReady()) {
+                spendingIndex.rebuild(db);
+            }
+        }
+    }
+}
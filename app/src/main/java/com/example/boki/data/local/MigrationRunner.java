@@ -0,0 +1,192 @@
+package com.example.boki.data.local;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the expense database up to date off the UI thread.
+ *
+ * Opening the database runs the pending SchemaMigration steps (DDL only, one short
+ * transaction). The backfills those steps declared then run here in chunks of
+ * CHUNK_ROWS rows: each chunk commits together with its progress row in
+ * migration_progress, so the UI can show real progress, other writers only wait
+ * for one chunk at a time, and a killed or cancelled run resumes where it stopped.
+ */
+public class MigrationRunner {
+
+    /**
+     * Receives progress after every chunk (called on the migrating thread)
+     */
+    public interface ProgressListener {
+        void onProgress(int rowsDone, int totalRows);
+    }
+
+    // Rows per transaction; keeps each lock short while amortizing the commit
+    static final int CHUNK_ROWS = 1000;
+
+    private static final String PREFS_NAME = "migrations";
+    private static final String KEY_COMPLETED_VERSION = "completed_version";
+
+    private final ExpenseDbHelper dbHelper;
+    private final SharedPreferences settings;
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public MigrationRunner(Context context) {
+        this.dbHelper = ExpenseDbHelper.getInstance(context);
+        this.settings = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Cheap check for the UI thread (reads preferences only, never opens the database)
+     *
+     * @return true if the last run finished every migration of this app version
+     */
+    public static boolean isUpToDate(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getInt(KEY_COMPLETED_VERSION, 0) == ExpenseDbHelper.DATABASE_VERSION;
+    }
+
+    /**
+     * Upgrade the schema if needed, then finish every pending backfill. Cheap when
+     * there is nothing to do. Run this off the UI thread.
+     *
+     * @param listener Progress callback over all pending backfills, may be null
+     * @param signal   Cancellation signal, may be null; checked between chunks
+     * @return Number of rows backfilled by this run
+     * @throws android.os.OperationCanceledException if the signal was cancelled (the next run resumes)
+     */
+    public int run(ProgressListener listener, CancellationSignal signal) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        List<Backfill> pending = new ArrayList<>();
+        int done = 0;
+        int total = 0;
+        for (SchemaMigration migration : ExpenseDbHelper.MIGRATIONS) {
+            Backfill backfill = migration.backfill();
+            if (backfill == null) continue;
+            long[] progress = readProgress(db, backfill.name);
+            if (progress == null) continue;  // Finished, or never needed (fresh install)
+            pending.add(backfill);
+            done += (int) progress[1];
+            total += (int) progress[1] + backfill.countRemaining(db, progress[0]);
+        }
+
+        int backfilled = 0;
+        for (Backfill backfill : pending) {
+            int rows = runBackfill(db, backfill, CHUNK_ROWS, listener, done, total, signal);
+            backfilled += rows;
+            done += rows;
+        }
+
+        settings.edit().putInt(KEY_COMPLETED_VERSION, ExpenseDbHelper.DATABASE_VERSION).apply();
+        return backfilled;
+    }
+
+    /**
+     * Run one backfill to completion from its recorded progress. The progress row
+     * is created if the backfill was never registered.
+     *
+     * @param doneBefore Rows reported as done before this backfill started
+     * @param total      Rows reported as the total
+     * @return Rows processed by this call
+     */
+    static int runBackfill(SQLiteDatabase db, Backfill backfill, int chunkRows, ProgressListener listener,
+                           int doneBefore, int total, CancellationSignal signal) {
+        db.execSQL("INSERT OR IGNORE INTO " + ExpenseDbHelper.TABLE_MIGRATION_PROGRESS + " (" +
+                ExpenseDbHelper.COLUMN_MIGRATION_NAME + ") VALUES (?)", new Object[]{ backfill.name });
+        long[] progress = readProgress(db, backfill.name);
+        if (progress == null) {
+            return 0;
+        }
+
+        backfill.restoreState(readState(db, backfill.name));
+
+        long lastKey = progress[0];
+        long rowsDone = progress[1];
+        int processed = 0;
+        boolean finished;
+        do {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+
+            db.beginTransaction();
+            try {
+                Backfill.Chunk chunk = backfill.runChunk(db, lastKey, chunkRows);
+                finished = chunk.rows < chunkRows;
+                lastKey = chunk.lastKey;
+                rowsDone += chunk.rows;
+                processed += chunk.rows;
+                db.execSQL("UPDATE " + ExpenseDbHelper.TABLE_MIGRATION_PROGRESS + " SET " +
+                                ExpenseDbHelper.COLUMN_MIGRATION_LAST_KEY + " = ?, " +
+                                ExpenseDbHelper.COLUMN_MIGRATION_ROWS_DONE + " = ?, " +
+                                ExpenseDbHelper.COLUMN_MIGRATION_FINISHED_AT + " = ?, " +
+                                ExpenseDbHelper.COLUMN_MIGRATION_STATE + " = ? " +
+                                "WHERE " + ExpenseDbHelper.COLUMN_MIGRATION_NAME + " = ?",
+                        new Object[]{ lastKey, rowsDone, finished ? System.currentTimeMillis() : null,
+                                backfill.saveState(), backfill.name });
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (listener != null) {
+                listener.onProgress(doneBefore + processed, Math.max(total, doneBefore + processed));
+            }
+        } while (!finished);
+
+        backfill.onFinished(db);
+        return processed;
+    }
+
+    /**
+     * @return (last_key, rows_done) of an unfinished backfill, or null if it is
+     *         finished or not registered
+     */
+    private static long[] readProgress(SQLiteDatabase db, String name) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + ExpenseDbHelper.COLUMN_MIGRATION_LAST_KEY + ", " +
+                            ExpenseDbHelper.COLUMN_MIGRATION_ROWS_DONE + " " +
+                            "FROM " + ExpenseDbHelper.TABLE_MIGRATION_PROGRESS + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_MIGRATION_NAME + " = ? " +
+                            "AND " + ExpenseDbHelper.COLUMN_MIGRATION_FINISHED_AT + " IS NULL",
+                    new String[]{ name });
+            return cursor.moveToFirst() ? new long[]{ cursor.getLong(0), cursor.getLong(1) } : null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * @return State last committed by a backfill (see Backfill.saveState), or null
+     */
+    private static String readState(SQLiteDatabase db, String name) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + ExpenseDbHelper.COLUMN_MIGRATION_STATE + " " +
+                            "FROM " + ExpenseDbHelper.TABLE_MIGRATION_PROGRESS + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_MIGRATION_NAME + " = ?",
+                    new String[]{ name });
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Close the database helper
+     */
+    public void close() {
+        dbHelper.close();
+    }
+}
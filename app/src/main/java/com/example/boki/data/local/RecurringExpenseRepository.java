@@ -0,0 +1,396 @@
+package com.example.boki.data.local;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.boki.models.Expense;
+import com.example.boki.models.RecurringExpense;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recurring expense rules and their materialization into regular expenses.
+ *
+ * Every rule keeps next_due, its first occurrence not yet written. materializeDue()
+ * writes all due occurrences of all rules in one transaction, catching up on any
+ * missed periods in the same pass, and advances next_due. Each occurrence is first
+ * claimed in recurring_occurrence under its stable ID (rule, date); an occurrence
+ * already claimed is skipped, so nothing is inserted twice, even after a rule's
+ * schedule is edited. The SpendingIndex is locked across the transaction and updated
+ * after it commits, as in ExpenseBatchInserter.
+ */
+public class RecurringExpenseRepository {
+
+    private static final RowMapper<RecurringExpense> RULE_MAPPER = new RowMapper<RecurringExpense>(
+            ExpenseDbHelper.COLUMN_RECURRING_ID,
+            ExpenseDbHelper.COLUMN_RECURRING_TITLE,
+            ExpenseDbHelper.COLUMN_RECURRING_AMOUNT,
+            ExpenseDbHelper.COLUMN_RECURRING_CATEGORY,
+            ExpenseDbHelper.COLUMN_RECURRING_NOTE,
+            ExpenseDbHelper.COLUMN_RECURRING_TIME,
+            ExpenseDbHelper.COLUMN_RECURRING_INTERVAL,
+            ExpenseDbHelper.COLUMN_RECURRING_DAY,
+            ExpenseDbHelper.COLUMN_RECURRING_START_DATE,
+            ExpenseDbHelper.COLUMN_RECURRING_END_DATE,
+            ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE,
+            ExpenseDbHelper.COLUMN_RECURRING_ACTIVE) {
+        @Override
+        RecurringExpense map(Cursor cursor, int[] at) {
+            return new RecurringExpense(
+                cursor.getLong(at[0]),
+                cursor.getString(at[1]),
+                cursor.getDouble(at[2]),
+                cursor.getString(at[3]),
+                cursor.isNull(at[4]) ? null : cursor.getString(at[4]),
+                cursor.getString(at[5]),
+                cursor.getString(at[6]),
+                cursor.getInt(at[7]),
+                cursor.getString(at[8]),
+                cursor.isNull(at[9]) ? null : cursor.getString(at[9]),
+                cursor.getString(at[10]),
+                cursor.getInt(at[11]) == 1
+            );
+        }
+    };
+
+    private final ExpenseDbHelper dbHelper;
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+
+    /**
+     * Constructor - initializes the database helper
+     * @param context Application context
+     */
+    public RecurringExpenseRepository(Context context) {
+        this(ExpenseDbHelper.getInstance(context));
+    }
+
+    /**
+     * @param dbHelper Database holding the rules (a scratch database in tests)
+     */
+    public RecurringExpenseRepository(ExpenseDbHelper dbHelper) {
+        this.dbHelper = dbHelper;
+    }
+
+    /**
+     * Insert a new rule. Its first occurrence is the first matching day on or after
+     * the start date, so a start date in the past is caught up by the next materializeDue().
+     *
+     * @param rule The rule to insert (ID and next due date are ignored)
+     * @return The row ID of the newly inserted rule, or -1 if error
+     * @throws IllegalArgumentException if a date, the time, the interval or the day is invalid
+     */
+    public long insertRule(RecurringExpense rule) {
+        requireValid(rule);
+        rule.setNextDue(EpochDays.toIso(occurrenceOnOrAfter(rule, EpochDays.fromIso(rule.getStartDate()))));
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long newRowId = db.insert(ExpenseDbHelper.TABLE_RECURRING, null, toValues(rule));
+        if (newRowId != -1) {
+            rule.setId(newRowId);
+        }
+        return newRowId;
+    }
+
+    /**
+     * Update a rule. The new schedule applies from today, or from the rule's first
+     * occurrence not yet written if that is earlier, so periods still to be caught up
+     * are not skipped (and never before its start date). Occurrences already written
+     * are kept as they are.
+     *
+     * @param rule The rule to update (must have valid ID)
+     * @return Number of rows affected (should be 1 if successful)
+     * @throws IllegalArgumentException if a date, the time, the interval or the day is invalid
+     */
+    public int updateRule(RecurringExpense rule) {
+        requireValid(rule);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String[] args = { String.valueOf(rule.getId()) };
+        db.beginTransaction();
+        Cursor cursor = null;
+        try {
+            // Read and write together, so materializeDue() cannot advance next_due in between
+            cursor = db.query(
+                ExpenseDbHelper.TABLE_RECURRING,
+                new String[]{ ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE },
+                ExpenseDbHelper.COLUMN_RECURRING_ID + " = ?",
+                args,
+                null,
+                null,
+                null
+            );
+            if (!cursor.moveToFirst()) {
+                return 0;
+            }
+            // Periods still to be caught up stay due; otherwise the new schedule starts today
+            int oldNextDue = EpochDays.fromIso(cursor.getString(0));
+            int from = Math.max(EpochDays.fromIso(rule.getStartDate()), Math.min(oldNextDue, EpochDays.today()));
+            rule.setNextDue(EpochDays.toIso(occurrenceOnOrAfter(rule, from)));
+
+            int rows = db.update(
+                ExpenseDbHelper.TABLE_RECURRING,
+                toValues(rule),
+                ExpenseDbHelper.COLUMN_RECURRING_ID + " = ?",
+                args
+            );
+            db.setTransactionSuccessful();
+            return rows;
+        } finally {
+            if (cursor != null) cursor.close();
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Delete a rule. The expenses it already wrote stay.
+     *
+     * @param id Rule ID
+     * @return true if the rule was deleted
+     */
+    public boolean deleteRule(long id) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String[] args = { String.valueOf(id) };
+        db.beginTransaction();
+        try {
+            db.delete(ExpenseDbHelper.TABLE_RECURRING_OCCURRENCE, ExpenseDbHelper.COLUMN_OCCURRENCE_RULE_ID + " = ?", args);
+            int rowsDeleted = db.delete(ExpenseDbHelper.TABLE_RECURRING, ExpenseDbHelper.COLUMN_RECURRING_ID + " = ?", args);
+            db.setTransactionSuccessful();
+            return rowsDeleted > 0;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return Every rule, newest first
+     */
+    public List<RecurringExpense> getAllRules() {
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = null;
+        try {
+            cursor = db.query(
+                ExpenseDbHelper.TABLE_RECURRING,
+                RULE_MAPPER.columns(),
+                null,
+                null,
+                null,
+                null,
+                ExpenseDbHelper.COLUMN_RECURRING_ID + " DESC"
+            );
+            return RULE_MAPPER.mapAll(cursor);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    /**
+     * Write every occurrence due up to today, for every active rule, in one transaction.
+     * Cheap when nothing is due (one query). Run this off the UI thread.
+     *
+     * @return Number of expenses written
+     */
+    public int materializeDue() {
+        int today = EpochDays.today();
+        String todayIso = EpochDays.toIso(today);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        List<Expense> written = new ArrayList<>();
+
+        synchronized (spendingIndex) {
+            db.beginTransaction();
+            SQLiteStatement claim = null;
+            SQLiteStatement insert = null;
+            SQLiteStatement advance = null;
+            Cursor cursor = null;
+            try {
+                List<RecurringExpense> due;
+                try {
+                    // Rules past their end date keep a next_due after it and drop out here
+                    cursor = db.query(
+                        ExpenseDbHelper.TABLE_RECURRING,
+                        RULE_MAPPER.columns(),
+                        ExpenseDbHelper.COLUMN_RECURRING_ACTIVE + " = 1 AND " +
+                            ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE + " <= ? AND (" +
+                            ExpenseDbHelper.COLUMN_RECURRING_END_DATE + " IS NULL OR " +
+                            ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE + " <= " + ExpenseDbHelper.COLUMN_RECURRING_END_DATE + ")",
+                        new String[]{ todayIso },
+                        null,
+                        null,
+                        null
+                    );
+                    due = RULE_MAPPER.mapAll(cursor);
+                } finally {
+                    if (cursor != null) cursor.close();
+                }
+                if (due.isEmpty()) return 0;
+
+                claim = db.compileStatement(
+                        "INSERT OR IGNORE INTO " + ExpenseDbHelper.TABLE_RECURRING_OCCURRENCE + " (" +
+                                ExpenseDbHelper.COLUMN_OCCURRENCE_RULE_ID + ", " +
+                                ExpenseDbHelper.COLUMN_OCCURRENCE_DATE + ") VALUES (?, ?)");
+                insert = db.compileStatement(
+                        "INSERT INTO " + ExpenseDbHelper.TABLE_EXPENSE + " (" +
+                                ExpenseDbHelper.COLUMN_TITLE + ", " +
+                                ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                                ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                                ExpenseDbHelper.COLUMN_NOTE + ", " +
+                                ExpenseDbHelper.COLUMN_DATE + ", " +
+                                ExpenseDbHelper.COLUMN_TIME + ") VALUES (?, ?, ?, ?, ?, ?)");
+                advance = db.compileStatement(
+                        "UPDATE " + ExpenseDbHelper.TABLE_RECURRING + " SET " +
+                                ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE + " = ? WHERE " +
+                                ExpenseDbHelper.COLUMN_RECURRING_ID + " = ?");
+
+                for (RecurringExpense rule : due) {
+                    int last = rule.getEndDate() != null ? Math.min(today, EpochDays.fromIso(rule.getEndDate())) : today;
+                    int day = EpochDays.fromIso(rule.getNextDue());
+                    // Catch up on every missed period in this one pass
+                    while (day <= last) {
+                        String date = EpochDays.toIso(day);
+                        claim.bindLong(1, rule.getId());
+                        claim.bindString(2, date);
+                        if (claim.executeUpdateDelete() == 1) {
+                            Expense expense = new Expense(rule.getTitle(), rule.getAmount(), rule.getCategory(),
+                                    rule.getNote(), date, rule.getTime());
+                            insert.clearBindings();
+                            insert.bindString(1, expense.getTitle());
+                            insert.bindDouble(2, expense.getAmount());
+                            insert.bindString(3, expense.getCategory());
+                            if (expense.getNote() != null) {
+                                insert.bindString(4, expense.getNote());
+                            } else {
+                                insert.bindNull(4);
+                            }
+                            insert.bindString(5, expense.getDate());
+                            insert.bindString(6, expense.getTime());
+                            expense.setId(insert.executeInsert());
+                            written.add(expense);
+                        }
+                        day = occurrenceOnOrAfter(rule, day + 1);
+                    }
+                    advance.bindString(1, EpochDays.toIso(day));
+                    advance.bindLong(2, rule.getId());
+                    advance.executeUpdateDelete();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                if (claim != null) claim.close();
+                if (insert != null) insert.close();
+                if (advance != null) advance.close();
+            }
+
+            for (Expense expense : written) {
+                spendingIndex.add(expense.getDate(), expense.getCategory(), expense.getAmount());
+            }
+        }
+        return written.size();
+    }
+
+    /**
+     * Forget the occurrences dated after a day, so the next materializeDue() writes them
+     * again: a restore brought back the expenses as they were on that day. Occurrences
+     * on the day itself are kept, since the restored data may already hold them.
+     *
+     * @param db      Writable database, inside the caller's transaction
+     * @param lastDay Last epoch day the restored expenses cover
+     */
+    static void rewindAfter(SQLiteDatabase db, int lastDay) {
+        String lastIso = EpochDays.toIso(lastDay);
+        db.delete(ExpenseDbHelper.TABLE_RECURRING_OCCURRENCE,
+                ExpenseDbHelper.COLUMN_OCCURRENCE_DATE + " > ?", new String[]{ lastIso });
+
+        List<RecurringExpense> ahead;
+        Cursor cursor = null;
+        try {
+            cursor = db.query(
+                ExpenseDbHelper.TABLE_RECURRING,
+                RULE_MAPPER.columns(),
+                ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE + " > ?",
+                new String[]{ lastIso },
+                null,
+                null,
+                null
+            );
+            ahead = RULE_MAPPER.mapAll(cursor);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+
+        for (RecurringExpense rule : ahead) {
+            int from = Math.max(EpochDays.fromIso(rule.getStartDate()), lastDay + 1);
+            String nextDue = EpochDays.toIso(occurrenceOnOrAfter(rule, from));
+            if (nextDue.compareTo(rule.getNextDue()) < 0) {
+                ContentValues values = new ContentValues();
+                values.put(ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE, nextDue);
+                db.update(ExpenseDbHelper.TABLE_RECURRING, values,
+                        ExpenseDbHelper.COLUMN_RECURRING_ID + " = ?", new String[]{ String.valueOf(rule.getId()) });
+            }
+        }
+    }
+
+    /**
+     * First day on or after epochDay on which the rule recurs. A monthly day past the
+     * end of a short month falls on its last day (31 -> 30 April, 28/29 February).
+     */
+    static int occurrenceOnOrAfter(RecurringExpense rule, int epochDay) {
+        if (RecurringExpense.INTERVAL_WEEKLY.equals(rule.getInterval())) {
+            return epochDay + Math.floorMod(rule.getDay() - EpochDays.dayOfWeek(epochDay), 7);
+        }
+
+        int[] ymd = EpochDays.toCivil(epochDay);
+        int year = ymd[0];
+        int month = ymd[1];
+        int candidate = EpochDays.fromCivil(year, month, Math.min(rule.getDay(), EpochDays.daysInMonth(year, month)));
+        if (candidate >= epochDay) {
+            return candidate;
+        }
+        if (++month > 12) {
+            month = 1;
+            year++;
+        }
+        return EpochDays.fromCivil(year, month, Math.min(rule.getDay(), EpochDays.daysInMonth(year, month)));
+    }
+
+    private static void requireValid(RecurringExpense rule) {
+        if (!ExpenseDateTimes.isCanonicalDate(rule.getStartDate())
+                || (rule.getEndDate() != null && !ExpenseDateTimes.isCanonicalDate(rule.getEndDate()))) {
+            throw new IllegalArgumentException("Dates must be yyyy-MM-dd: " + rule.getStartDate() + ", " + rule.getEndDate());
+        }
+        if (!ExpenseDateTimes.isCanonicalTime(rule.getTime())) {
+            throw new IllegalArgumentException("Time must be HH:mm:ss: " + rule.getTime());
+        }
+        boolean weekly = RecurringExpense.INTERVAL_WEEKLY.equals(rule.getInterval());
+        if (!weekly && !RecurringExpense.INTERVAL_MONTHLY.equals(rule.getInterval())) {
+            throw new IllegalArgumentException("Unknown interval: " + rule.getInterval());
+        }
+        if (rule.getDay() < 1 || rule.getDay() > (weekly ? 7 : 31)) {
+            throw new IllegalArgumentException("Day out of range: " + rule.getDay());
+        }
+    }
+
+    private static ContentValues toValues(RecurringExpense rule) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_TITLE, rule.getTitle());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_AMOUNT, rule.getAmount());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_CATEGORY, rule.getCategory());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_NOTE, rule.getNote());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_TIME, rule.getTime());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_INTERVAL, rule.getInterval());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_DAY, rule.getDay());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_START_DATE, rule.getStartDate());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_END_DATE, rule.getEndDate());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_NEXT_DUE, rule.getNextDue());
+        values.put(ExpenseDbHelper.COLUMN_RECURRING_ACTIVE, rule.isActive() ? 1 : 0);
+        return values;
+    }
+
+    /**
+     * Close the database helper
+     */
+    public void close() {
+        dbHelper.close();
+    }
+}
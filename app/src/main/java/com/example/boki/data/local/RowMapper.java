@@ -0,0 +1,93 @@
+package com.example.boki.data.local;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the rows of one query shape to models.
+ *
+ * A mapper owns its projection. The position of each column is resolved once per
+ * cursor, and every row is then read by position, so a row costs only its typed
+ * getters instead of a name lookup per field.
+ *
+ * @param <T> Model built from each row
+ */
+abstract class RowMapper<T> {
+
+    // Select expressions, and the result column name of each
+    private final String[] columns;
+    private final String[] names;
+    private final String projection;
+
+    /**
+     * @param columns Column names or expressions; expressions must end in "AS name"
+     */
+    RowMapper(String... columns) {
+        this.columns = columns;
+        this.names = new String[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int alias = columns[i].lastIndexOf(" AS ");
+            names[i] = alias >= 0 ? columns[i].substring(alias + 4).trim() : columns[i];
+        }
+        this.projection = TextUtils.join(", ", columns);
+    }
+
+    /**
+     * @return Comma-separated select list, for rawQuery()
+     */
+    String projection() {
+        return projection;
+    }
+
+    /**
+     * @return Column array, for SQLiteDatabase.query() (a copy)
+     */
+    String[] columns() {
+        return columns.clone();
+    }
+
+    /**
+     * Map every remaining row. The cursor is not closed.
+     */
+    List<T> mapAll(Cursor cursor) {
+        int[] at = positions(cursor);
+        List<T> rows = new ArrayList<>(Math.max(cursor.getCount(), 0));
+        while (cursor.moveToNext()) {
+            rows.add(map(cursor, at));
+        }
+        return rows;
+    }
+
+    /**
+     * Map the first row. The cursor is not closed.
+     *
+     * @return The model, or null if the cursor is empty
+     */
+    T mapFirst(Cursor cursor) {
+        return cursor.moveToFirst() ? map(cursor, positions(cursor)) : null;
+    }
+
+    /**
+     * Resolve the projection against the cursor, once per cursor
+     *
+     * @return Position of each column, in projection order
+     * @throws IllegalArgumentException if the cursor lacks a column
+     */
+    int[] positions(Cursor cursor) {
+        int[] at = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            at[i] = cursor.getColumnIndexOrThrow(names[i]);
+        }
+        return at;
+    }
+
+    /**
+     * Build the model of the current row
+     *
+     * @param at Column positions from positions(), in projection order
+     */
+    abstract T map(Cursor cursor, int[] at);
+}
@@ -0,0 +1,37 @@
+package com.example.boki.data.local;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * One step of the expense database schema, from version - 1 to version.
+ *
+ * up() runs inside SQLiteOpenHelper's upgrade transaction, so it must stay cheap:
+ * DDL and constant-time changes only. Work that touches every row belongs in a
+ * Backfill, which MigrationRunner runs afterwards in small resumable chunks.
+ */
+abstract class SchemaMigration {
+
+    final int version;
+
+    /**
+     * @param version Schema version this step produces
+     */
+    SchemaMigration(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Apply the schema change
+     *
+     * @param db         The database instance, inside the upgrade transaction
+     * @param oldVersion Version the upgrade started from (some steps depend on it)
+     */
+    abstract void up(SQLiteDatabase db, int oldVersion);
+
+    /**
+     * @return Row-by-row work this step leaves for MigrationRunner, or null
+     */
+    Backfill backfill() {
+        return null;
+    }
+}
@@ -0,0 +1,341 @@
+package com.example.boki.data.local;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.boki.models.ExpenseCategorySummary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide prefix-sum index of spending per epoch day.
+ * Keeps one Fenwick tree for the overall total and one per category, so any
+ * "total between day A and day B" is answered in O(log days) without touching SQLite.
+ *
+ * Amounts are stored as long minor units (halalas) so repeated add/remove
+ * never accumulates floating point drift.
+ *
+ * Built once from the database (see ExpenseRepository.buildSpendingIndex) and kept
+ * current by ExpenseRepository on every insert, update and delete. Writers hold this
+ * object's monitor across the SQL write and the index update, so a concurrent
+ * rebuild can never count a row twice.
+ */
+public final class SpendingIndex {
+
+    // Extra days reserved around the data so most new expenses never force a resize
+    private static final int HEADROOM_DAYS = 366;
+
+    private static final SpendingIndex INSTANCE = new SpendingIndex();
+
+    private boolean ready = false;
+    private int baseDay;                  // Epoch day stored at tree position 0
+    private FenwickTree total;
+    private final Map<String, FenwickTree> byCategory = new HashMap<>();
+    private volatile long version = 0;    // Bumped on every change, used as a cache key
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Told about every change, on the writer's thread while it holds the index (and its
+     * transaction may still be open), so it must be quick and only hand work off
+     */
+    public interface ChangeListener {
+        /**
+         * An expense amount was recorded, even before the index is built
+         *
+         * @param day        Epoch day, or EpochDays.INVALID for a date the index cannot place
+         * @param minorUnits Amount added, negative when removed
+         */
+        void onAmountChanged(int day, long minorUnits);
+
+        /**
+         * Amounts changed wholesale (rebuild, clear): running totals must be read again
+         */
+        void onReset();
+    }
+
+    private SpendingIndex() {
+    }
+
+    public static SpendingIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return true once the index has been built and can answer queries
+     */
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Never blocks, so the UI thread can check caches while a writer holds the index
+     *
+     * @return Counter that changes whenever any expense amount is written
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Rebuild the index from the expense table (one grouped query) and the archive rollup
+     *
+     * @param db Readable database
+     */
+    public synchronized void rebuild(SQLiteDatabase db) {
+        List<String> dates = new ArrayList<>();
+        List<String> categories = new ArrayList<>();
+        List<Double> totals = new ArrayList<>();
+
+        String sql =
+                "SELECT " + ExpenseDbHelper.COLUMN_DATE + ", " +
+                        ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                        "SUM(" + ExpenseDbHelper.COLUMN_AMOUNT + ") " +
+                        "FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                        "WHERE " + ExpenseDbHelper.EXPENSE_LIVE + " " +
+                        "GROUP BY " + ExpenseDbHelper.COLUMN_DATE + ", " + ExpenseDbHelper.COLUMN_CATEGORY + " " +
+                // Archived days come pre-aggregated; a day in both parts is summed below
+                "UNION ALL " +
+                "SELECT " + ExpenseDbHelper.COLUMN_DATE + ", " +
+                        ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                        ExpenseDbHelper.COLUMN_ROLLUP_TOTAL + " " +
+                        "FROM " + ExpenseDbHelper.TABLE_EXPENSE_ROLLUP;
+
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sql, null);
+            while (cursor.moveToNext()) {
+                dates.add(cursor.getString(0));
+                categories.add(cursor.getString(1));
+                totals.add(cursor.getDouble(2));
+            }
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+        build(dates, categories, totals);
+    }
+
+    /**
+     * Replace the index with per-day totals, one (date, category, total) row at a time
+     */
+    synchronized void build(List<String> dates, List<String> categories, List<Double> totals) {
+        // Find the day span covered by valid rows (legacy non-ISO dates are skipped)
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        int[] days = new int[dates.size()];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = EpochDays.fromIso(dates.get(i));
+            if (days[i] != EpochDays.INVALID) {
+                minDay = Math.min(minDay, days[i]);
+                maxDay = Math.max(maxDay, days[i]);
+            }
+        }
+        if (minDay == Integer.MAX_VALUE) {
+            minDay = EpochDays.today();
+            maxDay = minDay;
+        }
+
+        baseDay = minDay - HEADROOM_DAYS;
+        int size = (maxDay - baseDay + 1) + HEADROOM_DAYS;
+
+        long[] totalValues = new long[size];
+        Map<String, long[]> categoryValues = new HashMap<>();
+        for (int i = 0; i < days.length; i++) {
+            if (days[i] == EpochDays.INVALID) continue;
+            int position = days[i] - baseDay;
+            long minor = toMinorUnits(totals.get(i));
+            totalValues[position] += minor;
+
+            long[] values = categoryValues.get(categories.get(i));
+            if (values == null) {
+                values = new long[size];
+                categoryValues.put(categories.get(i), values);
+            }
+            values[position] += minor;
+        }
+
+        total = FenwickTree.fromValues(totalValues);
+        byCategory.clear();
+        for (Map.Entry<String, long[]> entry : categoryValues.entrySet()) {
+            byCategory.put(entry.getKey(), FenwickTree.fromValues(entry.getValue()));
+        }
+        ready = true;
+        reset();
+    }
+
+    /**
+     * Record an expense amount (no-op until the index is built)
+     */
+    public synchronized void add(String isoDate, String category, double amount) {
+        apply(isoDate, category, toMinorUnits(amount));
+    }
+
+    /**
+     * Remove a previously recorded expense amount (no-op until the index is built)
+     */
+    public synchronized void remove(String isoDate, String category, double amount) {
+        apply(isoDate, category, -toMinorUnits(amount));
+    }
+
+    /**
+     * Drop every amount, e.g. after the expense table was cleared
+     */
+    public synchronized void clear() {
+        reset();
+        if (!ready) return;
+        total = new FenwickTree(total.size());
+        byCategory.clear();
+    }
+
+    /**
+     * Total spent between two epoch days (inclusive)
+     */
+    public synchronized double totalBetween(int startDay, int endDay) {
+        if (!ready) return 0.0;
+        return fromMinorUnits(total.rangeSum(startDay - baseDay, endDay - baseDay));
+    }
+
+    /**
+     * Total spent in one category between two epoch days (inclusive)
+     */
+    public synchronized double categoryTotalBetween(String category, int startDay, int endDay) {
+        if (!ready) return 0.0;
+        FenwickTree tree = byCategory.get(category);
+        if (tree == null) return 0.0;
+        return fromMinorUnits(tree.rangeSum(startDay - baseDay, endDay - baseDay));
+    }
+
+    /**
+     * Per-category totals between two epoch days, sorted DESC by total.
+     * Categories with nothing spent in the range are left out, matching the GROUP BY query.
+     */
+    public synchronized List<ExpenseCategorySummary> categoryTotalsBetween(int startDay, int endDay) {
+        List<ExpenseCategorySummary> results = new ArrayList<>();
+        if (!ready) return results;
+
+        for (Map.Entry<String, FenwickTree> entry : byCategory.entrySet()) {
+            long minor = entry.getValue().rangeSum(startDay - baseDay, endDay - baseDay);
+            if (minor != 0) {
+                results.add(new ExpenseCategorySummary(entry.getKey(), fromMinorUnits(minor), 0.0));
+            }
+        }
+        Collections.sort(results, (a, b) -> Double.compare(b.getTotalAmount(), a.getTotalAmount()));
+        return results;
+    }
+
+    /**
+     * Names of every category that has ever been indexed
+     */
+    public synchronized String[] categories() {
+        return byCategory.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Totals for consecutive buckets, all read under one lock.
+     * Bucket i covers [bucketStarts[i], bucketStarts[i + 1] - 1]; the last one ends at endDay.
+     *
+     * @param bucketStarts Ascending epoch days each bucket starts on
+     * @param endDay       Last day of the last bucket (inclusive)
+     * @param category     Category to sum, or null for the overall total
+     * @return Total per bucket
+     */
+    public synchronized float[] bucketTotals(int[] bucketStarts, int endDay, String category) {
+        float[] out = new float[bucketStarts.length];
+        FenwickTree tree = category == null ? total : byCategory.get(category);
+        if (!ready || tree == null) return out;
+
+        for (int i = 0; i < bucketStarts.length; i++) {
+            int from = bucketStarts[i] - baseDay;
+            int to = (i + 1 < bucketStarts.length ? bucketStarts[i + 1] - 1 : endDay) - baseDay;
+            out[i] = (float) fromMinorUnits(tree.rangeSum(from, to));
+        }
+        return out;
+    }
+
+    /**
+     * Per-day totals in minor units for out.length consecutive days starting at startDay
+     *
+     * @param startDay Epoch day written to out[0]
+     * @param out      Destination, one slot per day
+     */
+    public synchronized void dailyTotals(int startDay, long[] out) {
+        Arrays.fill(out, 0);
+        if (!ready) return;
+
+        long previous = total.prefixSum(startDay - baseDay - 1);
+        for (int i = 0; i < out.length; i++) {
+            long current = total.prefixSum(startDay - baseDay + i);
+            out[i] = current - previous;
+            previous = current;
+        }
+    }
+
+    private void reset() {
+        version++;
+        for (ChangeListener listener : changeListeners) {
+            listener.onReset();
+        }
+    }
+
+    private void apply(String isoDate, String category, long minor) {
+        // The version moves even before the index is built so caches keyed on it stay honest
+        version++;
+        int day = EpochDays.fromIso(isoDate);
+        for (ChangeListener listener : changeListeners) {
+            listener.onAmountChanged(day, minor);
+        }
+        if (!ready) return;
+        if (day == EpochDays.INVALID) return;
+
+        ensureCovers(day);
+        int position = day - baseDay;
+        total.add(position, minor);
+
+        FenwickTree tree = byCategory.get(category);
+        if (tree == null) {
+            tree = new FenwickTree(total.size());
+            byCategory.put(category, tree);
+        }
+        tree.add(position, minor);
+    }
+
+    /**
+     * Grow (and if needed re-base) every tree so that the day has a position
+     */
+    private void ensureCovers(int day) {
+        int position = day - baseDay;
+        int size = total.size();
+        if (position >= 0 && position < size) return;
+
+        int shift = 0;
+        if (position < 0) {
+            shift = -position + HEADROOM_DAYS;
+            baseDay -= shift;
+            size += shift;
+        } else {
+            size = Math.max(size * 2, position + 1 + HEADROOM_DAYS);
+        }
+
+        total = total.resized(size, shift);
+        for (Map.Entry<String, FenwickTree> entry : byCategory.entrySet()) {
+            entry.setValue(entry.getValue().resized(size, shift));
+        }
+    }
+
+    static long toMinorUnits(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    static double fromMinorUnits(long minor) {
+        return minor / 100.0;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.boki.data.sync;
+
+import com.example.boki.models.Budget;
+import com.example.boki.models.Expense;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Wire format of a sync batch: a gzip-compressed stream of changes.
+ *
+ * Layout: magic, version, change count, then per change the table, uid, version
+ * stamp, tombstone flag and (for upserts) the row fields. Batches are small enough
+ * (a few hundred rows) to be built in memory.
+ */
+public final class SyncBatchCodec {
+
+    private static final int MAGIC = 0x424F4B53; // "BOKS"
+    private static final int VERSION = 1;
+
+    private SyncBatchCodec() {
+        // Utility class
+    }
+
+    /**
+     * @param changes Changes to send
+     * @return The compressed batch
+     */
+    public static byte[] encode(List<SyncChange> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(changes.size());
+            for (SyncChange change : changes) {
+                out.writeByte(change.table);
+                out.writeUTF(change.uid);
+                out.writeLong(change.updatedAt);
+                out.writeLong(change.device);
+                out.writeBoolean(change.deleted);
+                if (change.deleted) continue;
+
+                if (change.table == SyncChange.TABLE_EXPENSE) {
+                    Expense expense = change.expense;
+                    out.writeUTF(expense.getTitle());
+                    out.writeDouble(expense.getAmount());
+                    out.writeUTF(expense.getCategory());
+                    writeNullable(out, expense.getNote());
+                    out.writeUTF(expense.getDate());
+                    out.writeUTF(expense.getTime());
+                } else {
+                    Budget budget = change.budget;
+                    out.writeUTF(budget.getName());
+                    out.writeDouble(budget.getAmount());
+                    out.writeUTF(budget.getStartDate());
+                    out.writeUTF(budget.getCycleType());
+                    out.writeInt(budget.getCycleValue());
+                    out.writeBoolean(budget.isActive());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param batch A batch produced by encode()
+     * @return The changes, in batch order
+     * @throws IOException if the batch is malformed
+     */
+    public static List<SyncChange> decode(byte[] batch) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(batch)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sync batch");
+            }
+            int version = in.readUnsignedShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported sync batch version " + version);
+            }
+
+            int count = in.readInt();
+            List<SyncChange> changes = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int table = in.readUnsignedByte();
+                String uid = in.readUTF();
+                long updatedAt = in.readLong();
+                long device = in.readLong();
+                if (in.readBoolean()) {
+                    changes.add(SyncChange.tombstone(table, uid, updatedAt, device));
+                } else if (table == SyncChange.TABLE_EXPENSE) {
+                    String title = in.readUTF();
+                    double amount = in.readDouble();
+                    String category = in.readUTF();
+                    String note = readNullable(in);
+                    String date = in.readUTF();
+                    String time = in.readUTF();
+                    changes.add(SyncChange.expense(uid, updatedAt, device,
+                            new Expense(title, amount, category, note, date, time)));
+                } else if (table == SyncChange.TABLE_BUDGET) {
+                    String name = in.readUTF();
+                    double amount = in.readDouble();
+                    String startDate = in.readUTF();
+                    String cycleType = in.readUTF();
+                    int cycleValue = in.readInt();
+                    boolean active = in.readBoolean();
+                    changes.add(SyncChange.budget(uid, updatedAt, device,
+                            new Budget(name, amount, startDate, cycleType, cycleValue, active)));
+                } else {
+                    throw new IOException("Unknown table " + table);
+                }
+            }
+            return changes;
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
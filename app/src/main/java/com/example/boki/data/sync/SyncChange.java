@@ -0,0 +1,61 @@
+package com.example.boki.data.sync;
+
+import com.example.boki.models.Budget;
+import com.example.boki.models.Expense;
+
+/**
+ * One row version exchanged with the sync server: an upsert carrying the row,
+ * or a tombstone for a deleted row.
+ *
+ * Rows are identified by uid, not by local ID, because every device assigns its
+ * own autoincrement IDs. Versions are ordered by (updatedAt, device); the greater
+ * one wins (last writer wins), the device ID only breaks ties.
+ */
+public final class SyncChange {
+
+    public static final int TABLE_EXPENSE = 0;
+    public static final int TABLE_BUDGET = 1;
+
+    public final int table;         // TABLE_EXPENSE or TABLE_BUDGET
+    public final String uid;        // Household-wide row identifier
+    public final long updatedAt;    // Wall clock of the writing device, epoch millis
+    public final long device;       // ID of the writing device
+    public final boolean deleted;   // Tombstone: no payload
+    public final Expense expense;   // Payload when table is TABLE_EXPENSE and not deleted
+    public final Budget budget;     // Payload when table is TABLE_BUDGET and not deleted
+
+    private SyncChange(int table, String uid, long updatedAt, long device, boolean deleted,
+                       Expense expense, Budget budget) {
+        this.table = table;
+        this.uid = uid;
+        this.updatedAt = updatedAt;
+        this.device = device;
+        this.deleted = deleted;
+        this.expense = expense;
+        this.budget = budget;
+    }
+
+    public static SyncChange expense(String uid, long updatedAt, long device, Expense expense) {
+        return new SyncChange(TABLE_EXPENSE, uid, updatedAt, device, false, expense, null);
+    }
+
+    public static SyncChange budget(String uid, long updatedAt, long device, Budget budget) {
+        return new SyncChange(TABLE_BUDGET, uid, updatedAt, device, false, null, budget);
+    }
+
+    public static SyncChange tombstone(int table, String uid, long updatedAt, long device) {
+        return new SyncChange(table, uid, updatedAt, device, true, null, null);
+    }
+
+    /**
+     * Compare two versions of the same row
+     *
+     * @return Positive if this version wins over (updatedAt, device), 0 if it is the same version
+     */
+    public int compareVersion(long otherUpdatedAt, long otherDevice) {
+        if (updatedAt != otherUpdatedAt) {
+            return updatedAt > otherUpdatedAt ? 1 : -1;
+        }
+        return Long.compare(device, otherDevice);
+    }
+}
@@ -0,0 +1,578 @@
+package com.example.boki.data.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+
+import com.example.boki.data.local.BudgetRepository;
+import com.example.boki.data.local.ExpenseArchive;
+import com.example.boki.data.local.ExpenseBackup;
+import com.example.boki.data.local.ExpenseDbHelper;
+import com.example.boki.data.local.SpendingIndex;
+import com.example.boki.models.Budget;
+import com.example.boki.models.Expense;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Two-way sync of expenses and budgets through a SyncTransport.
+ *
+ * Push reads change_log entries after the last pushed sequence (the same log the
+ * incremental backups use), so its cost follows the number of local changes, not
+ * the size of the database. Pull asks the server for changes after the last pulled
+ * server sequence. Both move in batches of BATCH_SIZE and save their cursor after
+ * every batch, so an interrupted sync continues where it stopped.
+ *
+ * Rows are matched across devices through sync_row (uid to local ID). Conflicts
+ * are resolved per row, last writer wins; deletions travel as tombstones so an old
+ * upsert cannot bring a deleted row back.
+ *
+ * Nothing in the app starts a sync yet: there is no backend to connect to, so the
+ * engine only runs in tests, against an in-process server.
+ */
+public class SyncEngine {
+
+    // Changes per pushed or pulled batch
+    public static final int BATCH_SIZE = 500;
+
+    // Only one sync at a time, whichever engine instance starts it
+    private static final Object SYNC_LOCK = new Object();
+
+    /**
+     * Outcome of one sync run
+     */
+    public static final class Result {
+        public final int pushed;    // Local changes sent to the server
+        public final int pulled;    // Changes received from the server
+        public final int applied;   // Received changes that won and were written locally
+
+        Result(int pushed, int pulled, int applied) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+            this.applied = applied;
+        }
+    }
+
+    private static final class SyncRow {
+        final String uid;
+        final long rowId;       // -1 for a tombstone of a row never seen here
+        final long updatedAt;
+        final long device;
+        final boolean deleted;
+
+        SyncRow(String uid, long rowId, long updatedAt, long device, boolean deleted) {
+            this.uid = uid;
+            this.rowId = rowId;
+            this.updatedAt = updatedAt;
+            this.device = device;
+            this.deleted = deleted;
+        }
+    }
+
+    private static final String SYNC_ROW_SELECT =
+            "SELECT " + ExpenseDbHelper.COLUMN_SYNC_UID + ", " +
+                    ExpenseDbHelper.COLUMN_SYNC_ROW_ID + ", " +
+                    ExpenseDbHelper.COLUMN_SYNC_UPDATED_AT + ", " +
+                    ExpenseDbHelper.COLUMN_SYNC_DEVICE + ", " +
+                    ExpenseDbHelper.COLUMN_SYNC_DELETED + " " +
+                    "FROM " + ExpenseDbHelper.TABLE_SYNC_ROW + " ";
+
+    private final ExpenseDbHelper dbHelper;
+    private final ExpenseBackup backup;
+    private final SyncTransport transport;
+    private final SpendingIndex spendingIndex = SpendingIndex.getInstance();
+
+    /**
+     * @param context   Application context
+     * @param transport Connection to the server
+     */
+    public SyncEngine(Context context, SyncTransport transport) {
+        this(context, ExpenseDbHelper.getInstance(context), transport);
+    }
+
+    /**
+     * @param context   Application context
+     * @param dbHelper  Database to sync (another device's database in tests)
+     * @param transport Connection to the server
+     */
+    public SyncEngine(Context context, ExpenseDbHelper dbHelper, SyncTransport transport) {
+        this.dbHelper = dbHelper;
+        this.backup = new ExpenseBackup(context, dbHelper);
+        this.transport = transport;
+    }
+
+    /**
+     * Push local changes, then pull remote ones. Run this off the UI thread.
+     *
+     * @param signal Cancellation signal, may be null; checked between batches
+     * @return Counts of pushed, pulled and applied changes
+     * @throws IOException if the transport fails; completed batches stay synced
+     * @throws android.os.OperationCanceledException if the signal was cancelled
+     */
+    public Result sync(CancellationSignal signal) throws IOException {
+        synchronized (SYNC_LOCK) {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            long device = deviceId(db);
+
+            int pushed = push(db, device, signal);
+            int[] pulled = pull(db, signal);
+            compactChangeLog(db);
+            return new Result(pushed, pulled[0], pulled[1]);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Push
+    // ---------------------------------------------------------------------------------
+
+    private int push(SQLiteDatabase db, long device, CancellationSignal signal) throws IOException {
+        // Entries logged while pushing are left for the next sync
+        long target = maxLogSeq(db);
+        long pushedSeq = readState(db, ExpenseDbHelper.SYNC_KEY_PUSHED_SEQ, -1);
+        int pushed = 0;
+
+        if (pushedSeq < 0) {
+            // First sync (or first after a restore): the log does not cover existing rows
+            pushed += pushSnapshot(db, ExpenseDbHelper.TABLE_EXPENSE, ExpenseDbHelper.TABLE_EXPENSE, device, signal);
+            pushed += pushSnapshot(db, ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE, ExpenseDbHelper.TABLE_EXPENSE, device, signal);
+            pushed += pushSnapshot(db, ExpenseDbHelper.TABLE_BUDGET, ExpenseDbHelper.TABLE_BUDGET, device, signal);
+            writeState(db, ExpenseDbHelper.SYNC_KEY_PUSHED_SEQ, target);
+            return pushed;
+        }
+
+        String sql = "SELECT " + ExpenseDbHelper.COLUMN_LOG_SEQ + ", " +
+                ExpenseDbHelper.COLUMN_LOG_TABLE + ", " +
+                ExpenseDbHelper.COLUMN_LOG_ROW_ID + ", " +
+                ExpenseDbHelper.COLUMN_LOG_CHANGED_AT + " " +
+                "FROM " + ExpenseDbHelper.TABLE_CHANGE_LOG + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_LOG_SEQ + " > ? " +
+                "AND " + ExpenseDbHelper.COLUMN_LOG_SEQ + " <= ? " +
+                "AND " + ExpenseDbHelper.COLUMN_LOG_ORIGIN + " = " + ExpenseDbHelper.ORIGIN_LOCAL + " " +
+                "ORDER BY " + ExpenseDbHelper.COLUMN_LOG_SEQ + " " +
+                "LIMIT " + BATCH_SIZE;
+
+        while (pushedSeq < target) {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+
+            // Several edits of one row in the page collapse into its latest version
+            Map<String, Long> changedAt = new LinkedHashMap<>();
+            long lastSeq = target;
+            int entries = 0;
+            Cursor cursor = null;
+            try {
+                cursor = db.rawQuery(sql, new String[]{ String.valueOf(pushedSeq), String.valueOf(target) });
+                while (cursor.moveToNext()) {
+                    lastSeq = cursor.getLong(0);
+                    changedAt.put(cursor.getString(1) + ":" + cursor.getLong(2), cursor.getLong(3));
+                    entries++;
+                }
+            } finally {
+                if (cursor != null) cursor.close();
+            }
+            if (entries < BATCH_SIZE) {
+                lastSeq = target;
+            }
+
+            List<SyncChange> changes = new ArrayList<>(changedAt.size());
+            db.beginTransaction();
+            try {
+                for (Map.Entry<String, Long> entry : changedAt.entrySet()) {
+                    String key = entry.getKey();
+                    int colon = key.lastIndexOf(':');
+                    SyncChange change = localChange(db, key.substring(0, colon),
+                            Long.parseLong(key.substring(colon + 1)), entry.getValue(), device);
+                    if (change != null) changes.add(change);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (!changes.isEmpty()) {
+                transport.push(SyncBatchCodec.encode(changes));
+            }
+            writeState(db, ExpenseDbHelper.SYNC_KEY_PUSHED_SEQ, lastSeq);
+            pushedSeq = lastSeq;
+            pushed += changes.size();
+        }
+        return pushed;
+    }
+
+    /**
+     * Push every row of a table, stamped now, so restored or pre-sync data reaches the server
+     *
+     * @param source Table to scan (the archive holds old expenses)
+     * @param table  Synced table the rows belong to
+     */
+    private int pushSnapshot(SQLiteDatabase db, String source, String table, long device, CancellationSignal signal)
+            throws IOException {
+        String sql = "SELECT " + ExpenseDbHelper.COLUMN_ID + " FROM " + source + " " +
+                "WHERE " + ExpenseDbHelper.COLUMN_ID + " > ? " +
+                "ORDER BY " + ExpenseDbHelper.COLUMN_ID + " " +
+                "LIMIT " + BATCH_SIZE;
+        long now = System.currentTimeMillis();
+        long lastId = 0;
+        int pushed = 0;
+        int rowsInChunk;
+        do {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+
+            List<SyncChange> changes = new ArrayList<>(BATCH_SIZE);
+            rowsInChunk = 0;
+            db.beginTransaction();
+            try {
+                Cursor cursor = null;
+                try {
+                    cursor = db.rawQuery(sql, new String[]{ String.valueOf(lastId) });
+                    while (cursor.moveToNext()) {
+                        lastId = cursor.getLong(0);
+                        rowsInChunk++;
+                        SyncChange change = localChange(db, table, lastId, now, device);
+                        if (change != null) changes.add(change);
+                    }
+                } finally {
+                    if (cursor != null) cursor.close();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            if (!changes.isEmpty()) {
+                transport.push(SyncBatchCodec.encode(changes));
+            }
+            pushed += changes.size();
+        } while (rowsInChunk == BATCH_SIZE);
+        return pushed;
+    }
+
+    /**
+     * Build the outgoing version of a changed local row and record it in sync_row
+     *
+     * @return The upsert or tombstone, or null if there is nothing to send
+     */
+    private static SyncChange localChange(SQLiteDatabase db, String table, long rowId, long changedAt, long device) {
+        int tableCode = tableCode(table);
+        SyncRow known = findSyncRow(db, ExpenseDbHelper.COLUMN_SYNC_TABLE + " = ? AND " +
+                ExpenseDbHelper.COLUMN_SYNC_ROW_ID + " = ?", table, String.valueOf(rowId));
+        // A local edit must beat the version it edits, even if this device's clock is behind
+        long updatedAt = known != null ? Math.max(changedAt, known.updatedAt + 1) : changedAt;
+
+        Expense expense = null;
+        Budget budget = null;
+        if (tableCode == SyncChange.TABLE_EXPENSE) {
+            expense = readExpense(db, rowId);
+        } else {
+            budget = readBudget(db, rowId);
+        }
+
+        if (expense == null && budget == null) {
+            // Deleted: the server only needs to hear about it if it knew the row
+            if (known == null || known.deleted) return null;
+            saveSyncRow(db, known.uid, table, rowId, updatedAt, device, true);
+            return SyncChange.tombstone(tableCode, known.uid, updatedAt, device);
+        }
+
+        String uid = known != null ? known.uid : UUID.randomUUID().toString();
+        saveSyncRow(db, uid, table, rowId, updatedAt, device, false);
+        return expense != null
+                ? SyncChange.expense(uid, updatedAt, device, expense)
+                : SyncChange.budget(uid, updatedAt, device, budget);
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Pull
+    // ---------------------------------------------------------------------------------
+
+    private int[] pull(SQLiteDatabase db, CancellationSignal signal) throws IOException {
+        long pulledSeq = readState(db, ExpenseDbHelper.SYNC_KEY_PULLED_SEQ, 0);
+        int pulled = 0;
+        int applied = 0;
+        SyncTransport.PullResult page;
+        do {
+            if (signal != null) {
+                signal.throwIfCanceled();
+            }
+
+            page = transport.pull(pulledSeq, BATCH_SIZE);
+            List<SyncChange> changes = SyncBatchCodec.decode(page.batch);
+            applied += apply(db, changes, page.lastSeq);
+            pulled += changes.size();
+            pulledSeq = page.lastSeq;
+        } while (page.hasMore);
+        return new int[]{ pulled, applied };
+    }
+
+    /**
+     * Apply one pulled batch in a single transaction, together with the new pull cursor
+     *
+     * @return Number of changes that won and were written
+     */
+    private int apply(SQLiteDatabase db, List<SyncChange> changes, long lastSeq) {
+        List<Expense> removed = new ArrayList<>();
+        List<Expense> added = new ArrayList<>();
+        int applied = 0;
+
+        synchronized (spendingIndex) {
+            db.beginTransaction();
+            try {
+                long seqBefore = maxLogSeq(db);
+                for (SyncChange change : changes) {
+                    if (applyChange(db, change, removed, added)) applied++;
+                }
+
+                // The triggers logged these writes; mark them so push does not echo them back
+                ContentValues origin = new ContentValues();
+                origin.put(ExpenseDbHelper.COLUMN_LOG_ORIGIN, ExpenseDbHelper.ORIGIN_REMOTE);
+                db.update(ExpenseDbHelper.TABLE_CHANGE_LOG, origin,
+                        ExpenseDbHelper.COLUMN_LOG_SEQ + " > ?", new String[]{ String.valueOf(seqBefore) });
+
+                writeState(db, ExpenseDbHelper.SYNC_KEY_PULLED_SEQ, lastSeq);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            for (Expense expense : removed) {
+                spendingIndex.remove(expense.getDate(), expense.getCategory(), expense.getAmount());
+            }
+            for (Expense expense : added) {
+                spendingIndex.add(expense.getDate(), expense.getCategory(), expense.getAmount());
+            }
+        }
+        if (applied > 0) {
+            // Budget rows may have changed too
+            BudgetRepository.notifyChanged();
+        }
+        return applied;
+    }
+
+    /**
+     * Write a remote version if it wins over the local one
+     *
+     * @param removed Collects expenses whose amounts leave the SpendingIndex
+     * @param added   Collects expenses whose amounts enter the SpendingIndex
+     * @return true if the change was written
+     */
+    private static boolean applyChange(SQLiteDatabase db, SyncChange change,
+                                       List<Expense> removed, List<Expense> added) {
+        SyncRow local = findSyncRow(db, ExpenseDbHelper.COLUMN_SYNC_UID + " = ?", change.uid);
+        if (local != null && change.compareVersion(local.updatedAt, local.device) <= 0) {
+            return false; // Local version is newer, or this is our own change coming back
+        }
+
+        boolean isExpense = change.table == SyncChange.TABLE_EXPENSE;
+        String table = isExpense ? ExpenseDbHelper.TABLE_EXPENSE : ExpenseDbHelper.TABLE_BUDGET;
+        long rowId = local != null ? local.rowId : -1;
+        if (isExpense && rowId > 0) {
+            // Archived rows are changed in the hot table
+            ExpenseArchive.unarchive(db, rowId);
+        }
+        Expense previous = isExpense && rowId > 0 ? readExpense(db, rowId) : null;
+        if (previous != null) {
+            removed.add(previous);
+        }
+        String[] idArgs = { String.valueOf(rowId) };
+
+        if (change.deleted) {
+            if (rowId > 0) {
+                db.delete(table, ExpenseDbHelper.COLUMN_ID + " = ?", idArgs);
+            }
+            saveSyncRow(db, change.uid, table, rowId, change.updatedAt, change.device, true);
+            return true;
+        }
+
+        ContentValues values = isExpense ? expenseValues(change.expense) : budgetValues(change.budget);
+        boolean updated = rowId > 0 && db.update(table, values, ExpenseDbHelper.COLUMN_ID + " = ?", idArgs) > 0;
+        if (!updated) {
+            rowId = db.insert(table, null, values);
+        }
+
+        if (isExpense) {
+            added.add(change.expense);
+        } else if (change.budget.isActive()) {
+            // Same rule as BudgetRepository: one active budget at a time
+            ContentValues inactive = new ContentValues();
+            inactive.put(ExpenseDbHelper.COLUMN_BUDGET_ACTIVE, 0);
+            db.update(ExpenseDbHelper.TABLE_BUDGET, inactive,
+                    ExpenseDbHelper.COLUMN_BUDGET_ID + " != ? AND " + ExpenseDbHelper.COLUMN_BUDGET_ACTIVE + " = 1",
+                    new String[]{ String.valueOf(rowId) });
+        }
+        saveSyncRow(db, change.uid, table, rowId, change.updatedAt, change.device, false);
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------------------
+
+    /**
+     * Drop change_log entries that both sync and the backup chain are done with
+     */
+    private void compactChangeLog(SQLiteDatabase db) {
+        long pushedSeq = readState(db, ExpenseDbHelper.SYNC_KEY_PUSHED_SEQ, 0);
+        long bound = Math.min(pushedSeq, backup.getBackedUpSeq());
+        db.delete(ExpenseDbHelper.TABLE_CHANGE_LOG,
+                ExpenseDbHelper.COLUMN_LOG_SEQ + " <= ?", new String[]{ String.valueOf(bound) });
+    }
+
+    private static long deviceId(SQLiteDatabase db) {
+        long device = readState(db, ExpenseDbHelper.SYNC_KEY_DEVICE_ID, 0);
+        if (device == 0) {
+            device = UUID.randomUUID().getLeastSignificantBits();
+            if (device == 0) device = 1;
+            writeState(db, ExpenseDbHelper.SYNC_KEY_DEVICE_ID, device);
+        }
+        return device;
+    }
+
+    private static int tableCode(String table) {
+        return ExpenseDbHelper.TABLE_EXPENSE.equals(table) ? SyncChange.TABLE_EXPENSE : SyncChange.TABLE_BUDGET;
+    }
+
+    private static SyncRow findSyncRow(SQLiteDatabase db, String where, String... args) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(SYNC_ROW_SELECT + "WHERE " + where, args);
+            if (!cursor.moveToFirst()) return null;
+            return new SyncRow(
+                    cursor.getString(0),
+                    cursor.isNull(1) ? -1 : cursor.getLong(1),
+                    cursor.getLong(2),
+                    cursor.getLong(3),
+                    cursor.getInt(4) == 1);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static void saveSyncRow(SQLiteDatabase db, String uid, String table, long rowId,
+                                    long updatedAt, long device, boolean deleted) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_SYNC_UID, uid);
+        values.put(ExpenseDbHelper.COLUMN_SYNC_TABLE, table);
+        if (rowId > 0) {
+            values.put(ExpenseDbHelper.COLUMN_SYNC_ROW_ID, rowId);
+        } else {
+            values.putNull(ExpenseDbHelper.COLUMN_SYNC_ROW_ID);
+        }
+        values.put(ExpenseDbHelper.COLUMN_SYNC_UPDATED_AT, updatedAt);
+        values.put(ExpenseDbHelper.COLUMN_SYNC_DEVICE, device);
+        values.put(ExpenseDbHelper.COLUMN_SYNC_DELETED, deleted ? 1 : 0);
+        db.insertWithOnConflict(ExpenseDbHelper.TABLE_SYNC_ROW, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Live expense by ID from the hot table or the archive, null if deleted
+     */
+    private static Expense readExpense(SQLiteDatabase db, long id) {
+        String columns = ExpenseDbHelper.COLUMN_TITLE + ", " +
+                ExpenseDbHelper.COLUMN_AMOUNT + ", " +
+                ExpenseDbHelper.COLUMN_CATEGORY + ", " +
+                ExpenseDbHelper.COLUMN_NOTE + ", " +
+                ExpenseDbHelper.COLUMN_DATE + ", " +
+                ExpenseDbHelper.COLUMN_TIME;
+        String where = ExpenseDbHelper.COLUMN_ID + " = ?";
+        String[] args = { String.valueOf(id) };
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + columns + " FROM " + ExpenseDbHelper.TABLE_EXPENSE + " " +
+                            "WHERE " + where + " AND " + ExpenseDbHelper.EXPENSE_LIVE + " " +
+                            "UNION ALL " +
+                            "SELECT " + columns + " FROM " + ExpenseDbHelper.TABLE_EXPENSE_ARCHIVE + " " +
+                            "WHERE " + where,
+                    new String[]{ args[0], args[0] });
+            if (!cursor.moveToFirst()) return null;
+            return new Expense(id, cursor.getString(0), cursor.getDouble(1), cursor.getString(2),
+                    cursor.isNull(3) ? null : cursor.getString(3), cursor.getString(4), cursor.getString(5));
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static Budget readBudget(SQLiteDatabase db, long id) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + ExpenseDbHelper.COLUMN_BUDGET_NAME + ", " +
+                            ExpenseDbHelper.COLUMN_BUDGET_AMOUNT + ", " +
+                            ExpenseDbHelper.COLUMN_BUDGET_START_DATE + ", " +
+                            ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE + ", " +
+                            ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE + ", " +
+                            ExpenseDbHelper.COLUMN_BUDGET_ACTIVE + " " +
+                            "FROM " + ExpenseDbHelper.TABLE_BUDGET + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_BUDGET_ID + " = ?",
+                    new String[]{ String.valueOf(id) });
+            if (!cursor.moveToFirst()) return null;
+            return new Budget(id, cursor.getString(0), cursor.getDouble(1), cursor.getString(2),
+                    cursor.getString(3), cursor.getInt(4), cursor.getInt(5) == 1);
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static ContentValues expenseValues(Expense expense) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_TITLE, expense.getTitle());
+        values.put(ExpenseDbHelper.COLUMN_AMOUNT, expense.getAmount());
+        values.put(ExpenseDbHelper.COLUMN_CATEGORY, expense.getCategory());
+        values.put(ExpenseDbHelper.COLUMN_NOTE, expense.getNote());
+        values.put(ExpenseDbHelper.COLUMN_DATE, expense.getDate());
+        values.put(ExpenseDbHelper.COLUMN_TIME, expense.getTime());
+        // A winning remote version revives a row deleted here
+        values.putNull(ExpenseDbHelper.COLUMN_DELETED_AT);
+        return values;
+    }
+
+    private static ContentValues budgetValues(Budget budget) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_BUDGET_NAME, budget.getName());
+        values.put(ExpenseDbHelper.COLUMN_BUDGET_AMOUNT, budget.getAmount());
+        values.put(ExpenseDbHelper.COLUMN_BUDGET_START_DATE, budget.getStartDate());
+        values.put(ExpenseDbHelper.COLUMN_BUDGET_CYCLE_TYPE, budget.getCycleType());
+        values.put(ExpenseDbHelper.COLUMN_BUDGET_CYCLE_VALUE, budget.getCycleValue());
+        values.put(ExpenseDbHelper.COLUMN_BUDGET_ACTIVE, budget.isActive() ? 1 : 0);
+        return values;
+    }
+
+    private static long maxLogSeq(SQLiteDatabase db) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT COALESCE(MAX(" + ExpenseDbHelper.COLUMN_LOG_SEQ + "), 0) " +
+                    "FROM " + ExpenseDbHelper.TABLE_CHANGE_LOG, null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static long readState(SQLiteDatabase db, String key, long defaultValue) {
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT " + ExpenseDbHelper.COLUMN_STATE_VALUE + " " +
+                            "FROM " + ExpenseDbHelper.TABLE_SYNC_STATE + " " +
+                            "WHERE " + ExpenseDbHelper.COLUMN_STATE_KEY + " = ?",
+                    new String[]{ key });
+            return cursor.moveToFirst() ? cursor.getLong(0) : defaultValue;
+        } finally {
+            if (cursor != null) cursor.close();
+        }
+    }
+
+    private static void writeState(SQLiteDatabase db, String key, long value) {
+        ContentValues values = new ContentValues();
+        values.put(ExpenseDbHelper.COLUMN_STATE_KEY, key);
+        values.put(ExpenseDbHelper.COLUMN_STATE_VALUE, value);
+        db.insertWithOnConflict(ExpenseDbHelper.TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
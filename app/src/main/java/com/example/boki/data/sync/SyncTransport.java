@@ -0,0 +1,41 @@
+package com.example.boki.data.sync;
+
+import java.io.IOException;
+
+/**
+ * Connection to the sync server. Batches are opaque bytes (see SyncBatchCodec),
+ * so an HTTP client, a socket or an in-process fake in tests can carry them.
+ */
+public interface SyncTransport {
+
+    /**
+     * A page of changes from the server log
+     */
+    final class PullResult {
+        public final byte[] batch;      // Encoded changes
+        public final long lastSeq;      // Server sequence of the last change in the batch
+        public final boolean hasMore;   // More changes follow lastSeq
+
+        public PullResult(byte[] batch, long lastSeq, boolean hasMore) {
+            this.batch = batch;
+            this.lastSeq = lastSeq;
+            this.hasMore = hasMore;
+        }
+    }
+
+    /**
+     * Upload a batch. The server keeps, per row, the winning version only.
+     *
+     * @param batch Encoded changes
+     * @throws IOException if the batch was not accepted; pushing it again is safe
+     */
+    void push(byte[] batch) throws IOException;
+
+    /**
+     * Download changes the server accepted after a sequence number
+     *
+     * @param afterSeq Last sequence already applied locally (0 for everything)
+     * @param limit    Maximum number of changes to return
+     */
+    PullResult pull(long afterSeq, int limit) throws IOException;
+}
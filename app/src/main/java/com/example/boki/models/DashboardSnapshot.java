@@ -0,0 +1,95 @@
+package com.example.boki.models;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only figures for the Home and Expenses screens, all read from the same
+ * database state: spending in a date range with its category breakdown, and the
+ * active budget with its current cycle.
+ */
+public final class DashboardSnapshot {
+
+    private final String startDate;     // Range, yyyy-MM-dd (inclusive)
+    private final String endDate;
+    private final double total;
+    private final List<ExpenseCategorySummary> categories;
+    private final Budget budget;        // null when no budget is active
+    private final String cycleStart;    // Cycle window, null without a budget
+    private final String cycleEnd;
+    private final double spent;         // Spent in the cycle
+    private final double spentToday;
+
+    public DashboardSnapshot(String startDate, String endDate, double total,
+                             List<ExpenseCategorySummary> categories, Budget budget,
+                             String cycleStart, String cycleEnd, double spent, double spentToday) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.total = total;
+        this.categories = Collections.unmodifiableList(categories);
+        this.budget = budget;
+        this.cycleStart = cycleStart;
+        this.cycleEnd = cycleEnd;
+        this.spent = spent;
+        this.spentToday = spentToday;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * @return Total spent in the range (the sum of the category totals)
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * @return Category totals in the range with their percentages, sorted DESC by total
+     */
+    public List<ExpenseCategorySummary> getCategories() {
+        return categories;
+    }
+
+    public boolean hasBudget() {
+        return budget != null;
+    }
+
+    public Budget getBudget() {
+        return budget;
+    }
+
+    public String getCycleStart() {
+        return cycleStart;
+    }
+
+    public String getCycleEnd() {
+        return cycleEnd;
+    }
+
+    /**
+     * @return Spent in the current budget cycle, 0 without a budget
+     */
+    public double getSpent() {
+        return spent;
+    }
+
+    /**
+     * @return Spent today, with or without a budget
+     */
+    public double getSpentToday() {
+        return spentToday;
+    }
+
+    /**
+     * @return Budget amount minus the cycle spending (negative when over budget), 0 without a budget
+     */
+    public double getRemaining() {
+        return budget != null ? budget.getAmount() - spent : 0.0;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.boki.models;
+
+/**
+ * Read-only list row of an expense: the columns a list item shows, without the note.
+ * The category is its numeric id (see ExpenseCategories) and the date an epoch day,
+ * so a row costs a few fixed-size values in the CursorWindow instead of strings.
+ * Load the full Expense by id when the row is opened for editing.
+ */
+public final class ExpenseRow {
+    
+    private final long id;
+    private final String title;
+    private final double amount;
+    private final int categoryId;   // ExpenseCategories id
+    private final int day;          // Days since 1970-01-01
+    private final String time;      // HH:mm:ss
+    private final String rawDate;   // Stored date when day could not be computed, else null
+    
+    public ExpenseRow(long id, String title, double amount, int categoryId, int day, String time, String rawDate) {
+        this.id = id;
+        this.title = title;
+        this.amount = amount;
+        this.categoryId = categoryId;
+        this.day = day;
+        this.time = time;
+        this.rawDate = rawDate;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public double getAmount() {
+        return amount;
+    }
+    
+    public int getCategoryId() {
+        return categoryId;
+    }
+    
+    public int getDay() {
+        return day;
+    }
+    
+    public String getTime() {
+        return time;
+    }
+    
+    /**
+     * @return The stored date if it is not yyyy-MM-dd (getDay() is then
+     *         EpochDays.INVALID), or null
+     */
+    public String getRawDate() {
+        return rawDate;
+    }
+    
+    @Override
+    public String toString() {
+        return "ExpenseRow{" +
+                "id=" + id +
+                ", title='" + title + '\'' +
+                ", amount=" + amount +
+                ", categoryId=" + categoryId +
+                ", day=" + day +
+                ", time='" + time + '\'' +
+                ", rawDate='" + rawDate + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.boki.models;
+
+/**
+ * Time-bucketed spending totals for charts.
+ * Every bucket in the requested range is present (zero-filled), and values are
+ * kept in primitive arrays so they can be turned into chart entries directly.
+ */
+public class ExpenseSeries {
+
+    /**
+     * Bucket size of a series. Weeks start on Sunday like the Expenses screen.
+     */
+    public enum Bucket { DAY, WEEK, MONTH }
+
+    private final Bucket bucket;
+    private final int[] bucketStartDays;    // Epoch day each bucket starts on
+    private final float[] totals;           // Total per bucket
+    private final String[] categories;      // Empty unless requested by category
+    private final float[][] categoryTotals; // [category][bucket], parallel to categories
+
+    public ExpenseSeries(Bucket bucket, int[] bucketStartDays, float[] totals,
+                         String[] categories, float[][] categoryTotals) {
+        this.bucket = bucket;
+        this.bucketStartDays = bucketStartDays;
+        this.totals = totals;
+        this.categories = categories;
+        this.categoryTotals = categoryTotals;
+    }
+
+    public Bucket getBucket() {
+        return bucket;
+    }
+
+    public int size() {
+        return totals.length;
+    }
+
+    public int[] getBucketStartDays() {
+        return bucketStartDays;
+    }
+
+    public float[] getTotals() {
+        return totals;
+    }
+
+    public String[] getCategories() {
+        return categories;
+    }
+
+    public float[][] getCategoryTotals() {
+        return categoryTotals;
+    }
+
+    /**
+     * @return true if per-category totals were requested
+     */
+    public boolean hasCategories() {
+        return categories.length > 0;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.boki.models;
+
+/**
+ * Domain model representing a recurring expense rule (rent, subscriptions, bills).
+ * Each occurrence becomes a regular Expense once it is due, see RecurringExpenseRepository.
+ */
+public class RecurringExpense {
+
+    public static final String INTERVAL_MONTHLY = "MONTHLY";
+    public static final String INTERVAL_WEEKLY = "WEEKLY";
+
+    // Database primary key (-1 indicates unsaved rule)
+    private long id;
+
+    // What every occurrence records
+    private String title;
+    private double amount;
+    private String category;
+    private String note;           // Optional
+    private String time;           // HH:mm:ss of each occurrence
+
+    // When it recurs
+    private String interval;       // "MONTHLY" or "WEEKLY"
+    private int day;               // For MONTHLY: day of month (1-31, clamped to short months), For WEEKLY: day of week (1=Sunday, 7=Saturday)
+    private String startDate;      // yyyy-MM-dd, first day an occurrence may fall on
+    private String endDate;        // yyyy-MM-dd (inclusive), null to recur forever
+    private String nextDue;        // yyyy-MM-dd of the first occurrence not materialized yet (kept by the repository)
+    private boolean active;
+
+    /**
+     * Constructor for new rules (no ID yet)
+     * Use this when creating rules before inserting to database
+     */
+    public RecurringExpense(String title, double amount, String category, String note, String time,
+                            String interval, int day, String startDate, String endDate, boolean active) {
+        this(-1, title, amount, category, note, time, interval, day, startDate, endDate, null, active);
+    }
+
+    /**
+     * Constructor for existing rules (with ID from database)
+     * Use this when retrieving rules from database
+     */
+    public RecurringExpense(long id, String title, double amount, String category, String note, String time,
+                            String interval, int day, String startDate, String endDate, String nextDue,
+                            boolean active) {
+        this.id = id;
+        this.title = title;
+        this.amount = amount;
+        this.category = category;
+        this.note = note;
+        this.time = time;
+        this.interval = interval;
+        this.day = day;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.nextDue = nextDue;
+        this.active = active;
+    }
+
+    // Getters and Setters
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public void setAmount(double amount) {
+        this.amount = amount;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public String getNote() {
+        return note;
+    }
+
+    public void setNote(String note) {
+        this.note = note;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    public void setTime(String time) {
+        this.time = time;
+    }
+
+    public String getInterval() {
+        return interval;
+    }
+
+    public void setInterval(String interval) {
+        this.interval = interval;
+    }
+
+    public int getDay() {
+        return day;
+    }
+
+    public void setDay(int day) {
+        this.day = day;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(String startDate) {
+        this.startDate = startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(String endDate) {
+        this.endDate = endDate;
+    }
+
+    public String getNextDue() {
+        return nextDue;
+    }
+
+    public void setNextDue(String nextDue) {
+        this.nextDue = nextDue;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+}
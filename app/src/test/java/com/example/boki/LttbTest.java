@@ -0,0 +1,73 @@
+package com.example.boki;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lttb point selection: sizes, endpoints and shape
+ */
+public class LttbTest {
+
+    @Test
+    public void keepsEverythingWhenNoDownsamplingIsNeeded() {
+        float[] xs = { 0, 1, 2, 3 };
+        float[] ys = { 5, 1, 4, 2 };
+
+        assertArrayEquals(new int[]{ 0, 1, 2, 3 }, Lttb.select(xs, ys, 4));
+        assertArrayEquals(new int[]{ 0, 1, 2, 3 }, Lttb.select(xs, ys, 100));
+        // Fewer than three points cannot hold both endpoints and a bucket
+        assertArrayEquals(new int[]{ 0, 1, 2, 3 }, Lttb.select(xs, ys, 2));
+        assertArrayEquals(new int[0], Lttb.select(new float[0], new float[0], 10));
+    }
+
+    @Test
+    public void keepsEndpointsAndThreshold() {
+        Random random = new Random(28);
+        int n = 1_000;
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+            ys[i] = random.nextFloat() * 100;
+        }
+
+        for (int threshold : new int[]{ 3, 4, 50, 999 }) {
+            int[] kept = Lttb.select(xs, ys, threshold);
+
+            assertEquals(threshold, kept.length);
+            assertEquals(0, kept[0]);
+            assertEquals(n - 1, kept[kept.length - 1]);
+            for (int i = 1; i < kept.length; i++) {
+                assertTrue("Indices must ascend", kept[i] > kept[i - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void keepsSpikes() {
+        int n = 365;
+        float[] xs = new float[n];
+        float[] ys = new float[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = i;
+            ys[i] = 10;
+        }
+        ys[100] = 900;
+        ys[250] = 0;
+
+        int[] kept = Lttb.select(xs, ys, 20);
+
+        assertTrue(contains(kept, 100));
+        assertTrue(contains(kept, 250));
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+}
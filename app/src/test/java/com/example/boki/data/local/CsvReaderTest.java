@@ -0,0 +1,72 @@
+package com.example.boki.data.local;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * CsvReader quoting, delimiter detection and line endings
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void plainRecords() throws IOException {
+        CsvReader csv = reader("date,amount\r\n2025-12-06,45\n\n2025-12-07,,\n");
+
+        assertArrayEquals(new String[]{ "date", "amount" }, csv.readRecord());
+        assertArrayEquals(new String[]{ "2025-12-06", "45" }, csv.readRecord());
+        // Blank lines are skipped, empty fields kept
+        assertArrayEquals(new String[]{ "2025-12-07", "", "" }, csv.readRecord());
+        assertNull(csv.readRecord());
+        assertEquals(3, csv.getRecordNumber());
+    }
+
+    @Test
+    public void quotedFields() throws IOException {
+        CsvReader csv = reader("title,note\n\"Dinner, friends\",\"said \"\"hi\"\"\nthen left\"\n");
+
+        csv.readRecord();
+        assertArrayEquals(new String[]{ "Dinner, friends", "said \"hi\"\nthen left" }, csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void lastRecordWithoutLineBreak() throws IOException {
+        CsvReader csv = reader("a,b\n1,2");
+
+        csv.readRecord();
+        assertArrayEquals(new String[]{ "1", "2" }, csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    public void detectsDelimiter() throws IOException {
+        assertArrayEquals(new String[]{ "date", "amount", "note" }, reader("date;amount;note\n").readRecord());
+        assertArrayEquals(new String[]{ "date", "amount" }, reader("date\tamount\n").readRecord());
+        // Delimiters inside quotes do not count
+        assertArrayEquals(new String[]{ "a;b;c", "d" }, reader("\"a;b;c\",d\n").readRecord());
+        // Detected from the header, so comma decimals in the rows do not matter
+        CsvReader european = reader("date;amount\n06.12.2025;1.234,50\n");
+        european.readRecord();
+        assertArrayEquals(new String[]{ "06.12.2025", "1.234,50" }, european.readRecord());
+    }
+
+    @Test
+    public void skipsByteOrderMark() throws IOException {
+        assertArrayEquals(new String[]{ "date", "amount" }, reader("﻿date,amount\n").readRecord());
+    }
+
+    @Test(expected = IOException.class)
+    public void unterminatedQuote() throws IOException {
+        CsvReader csv = reader("a,b\n\"open,2\n");
+        csv.readRecord();
+        csv.readRecord();
+    }
+
+    private static CsvReader reader(String content) throws IOException {
+        return new CsvReader(new StringReader(content));
+    }
+}
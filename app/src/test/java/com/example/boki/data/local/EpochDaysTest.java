@@ -0,0 +1,83 @@
+package com.example.boki.data.local;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Calendar;
+
+import static org.junit.Assert.*;
+
+/**
+ * EpochDays arithmetic checked against java.time (available on the JVM, not on our minSdk)
+ */
+public class EpochDaysTest {
+
+    @Test
+    public void epochAndNegativeDays() {
+        assertEquals(0, EpochDays.fromIso("1970-01-01"));
+        assertEquals(-1, EpochDays.fromIso("1969-12-31"));
+        assertEquals("1969-12-31", EpochDays.toIso(-1));
+        assertEquals(-719_162, EpochDays.fromIso("0001-01-01"));
+        assertEquals("0001-01-01", EpochDays.toIso(-719_162));
+    }
+
+    @Test
+    public void roundTripMatchesJavaTime() {
+        // Every day from 1600 to 2400, so both 400-year era boundaries are crossed
+        int from = EpochDays.fromIso("1600-01-01");
+        int to = EpochDays.fromIso("2400-12-31");
+        for (int day = from; day <= to; day++) {
+            LocalDate expected = LocalDate.ofEpochDay(day);
+            String iso = expected.toString();
+
+            assertEquals(iso, EpochDays.toIso(day));
+            assertEquals(day, EpochDays.fromIso(iso));
+            assertEquals(day, EpochDays.fromCivil(expected.getYear(), expected.getMonthValue(),
+                    expected.getDayOfMonth()));
+        }
+    }
+
+    @Test
+    public void leapYears() {
+        assertEquals(29, EpochDays.daysInMonth(2024, 2));
+        assertEquals(28, EpochDays.daysInMonth(2023, 2));
+        assertEquals(28, EpochDays.daysInMonth(1900, 2));
+        assertEquals(29, EpochDays.daysInMonth(2000, 2));
+        assertEquals(30, EpochDays.daysInMonth(2025, 4));
+        assertEquals(31, EpochDays.daysInMonth(2025, 12));
+
+        assertEquals(EpochDays.fromIso("2024-03-01") - 1, EpochDays.fromIso("2024-02-29"));
+        assertEquals(EpochDays.INVALID, EpochDays.fromIso("2023-02-29"));
+        assertEquals(EpochDays.INVALID, EpochDays.fromIso("1900-02-29"));
+    }
+
+    @Test
+    public void rejectsNonCanonicalDates() {
+        String[] invalid = { null, "", "2025-1-05", "2025/01/05", "6-12-2025", "2025-13-01",
+                "2025-00-10", "2025-04-31", "2025-01-00", "abcd-ef-gh", "2025-01-05 " };
+        for (String iso : invalid) {
+            assertEquals(iso, EpochDays.INVALID, EpochDays.fromIso(iso));
+        }
+    }
+
+    @Test
+    public void dayOfWeek() {
+        // 1970-01-01 was a Thursday
+        assertEquals(Calendar.THURSDAY, EpochDays.dayOfWeek(0));
+        assertEquals(Calendar.WEDNESDAY, EpochDays.dayOfWeek(-1));
+        assertEquals(Calendar.SUNDAY, EpochDays.dayOfWeek(-4));
+        for (int day = -800; day <= 800; day++) {
+            int expected = LocalDate.ofEpochDay(day).getDayOfWeek().getValue() % 7 + Calendar.SUNDAY;
+            assertEquals(expected, EpochDays.dayOfWeek(day));
+        }
+    }
+
+    @Test
+    public void fromCalendarUsesLocalDate() {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(2025, Calendar.DECEMBER, 6, 23, 59);
+
+        assertEquals(EpochDays.fromIso("2025-12-06"), EpochDays.fromCalendar(cal));
+    }
+}
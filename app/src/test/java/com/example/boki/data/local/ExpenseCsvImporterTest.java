@@ -0,0 +1,146 @@
+package com.example.boki.data.local;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.Assert.*;
+
+/**
+ * Field parsers of ExpenseCsvImporter and the sign convention read from a file
+ */
+public class ExpenseCsvImporterTest {
+
+    @Test
+    public void parseDateFormats() {
+        assertEquals("2025-12-06", ExpenseCsvImporter.parseDate("2025-12-06"));
+        assertEquals("2025-12-06", ExpenseCsvImporter.parseDate("2025/12/6"));
+        // Day first when the year comes last
+        assertEquals("2025-12-06", ExpenseCsvImporter.parseDate("6-12-2025"));
+        assertEquals("2025-12-06", ExpenseCsvImporter.parseDate("06/12/2025"));
+        assertEquals("2025-12-06", ExpenseCsvImporter.parseDate("06.12.25"));
+        assertEquals("2025-12-06", ExpenseCsvImporter.parseDate("٠٦/١٢/٢٠٢٥"));
+        assertEquals("2024-02-29", ExpenseCsvImporter.parseDate("29/02/2024"));
+    }
+
+    @Test
+    public void parseDateRejects() {
+        String[] invalid = { "", "2025-12", "2025-13-01", "31/04/2025", "29/02/2023", "12/06/202",
+                "2025-12-06-01", "06-Dec-2025", "-12-2025", "2025--06", "12345-01-01", "1/1/1" };
+        for (String raw : invalid) {
+            assertNull(raw, ExpenseCsvImporter.parseDate(raw));
+        }
+    }
+
+    @Test
+    public void parseTimeFormats() {
+        assertEquals("00:00:00", ExpenseCsvImporter.parseTime(""));
+        assertEquals("14:30:00", ExpenseCsvImporter.parseTime("14:30"));
+        assertEquals("14:30:05", ExpenseCsvImporter.parseTime("14:30:05"));
+        assertEquals("19:05:00", ExpenseCsvImporter.parseTime("7:05 PM"));
+        assertEquals("07:05:00", ExpenseCsvImporter.parseTime("7:05am"));
+        assertEquals("00:15:00", ExpenseCsvImporter.parseTime("12:15 AM"));
+        assertEquals("12:15:00", ExpenseCsvImporter.parseTime("12:15 PM"));
+        assertEquals("21:00:00", ExpenseCsvImporter.parseTime("٩:٠٠ م"));
+        assertEquals("09:00:00", ExpenseCsvImporter.parseTime("9:00 ص"));
+    }
+
+    @Test
+    public void parseTimeRejects() {
+        String[] invalid = { "14", "24:00", "12:60", "13:00 PM", "0:30 AM", "1:2:3:4", "noon", "123:00", ":30" };
+        for (String raw : invalid) {
+            assertNull(raw, ExpenseCsvImporter.parseTime(raw));
+        }
+    }
+
+    @Test
+    public void parseAmountSeparators() {
+        assertEquals(1234.5, ExpenseCsvImporter.parseAmount("1,234.50"), 0);
+        assertEquals(1234.5, ExpenseCsvImporter.parseAmount("1.234,50"), 0);
+        assertEquals(12.5, ExpenseCsvImporter.parseAmount("12,5"), 0);
+        // A lone comma followed by three digits groups thousands
+        assertEquals(1234, ExpenseCsvImporter.parseAmount("1,234"), 0);
+        assertEquals(1234567, ExpenseCsvImporter.parseAmount("1,234,567"), 0);
+        assertEquals(45, ExpenseCsvImporter.parseAmount("45 SAR"), 0);
+        assertEquals(1234.5, ExpenseCsvImporter.parseAmount("١٬٢٣٤٫٥٠"), 0);
+    }
+
+    @Test
+    public void parseAmountKeepsSign() {
+        assertEquals(45, ExpenseCsvImporter.parseAmount("+45"), 0);
+        assertEquals(-45, ExpenseCsvImporter.parseAmount("-45"), 0);
+        assertEquals(-45, ExpenseCsvImporter.parseAmount("45-"), 0);
+        assertEquals(-12.5, ExpenseCsvImporter.parseAmount("(12.50)"), 0);
+        assertEquals(-1234.5, ExpenseCsvImporter.parseAmount("SAR -1,234.50"), 0);
+        assertEquals(-3, ExpenseCsvImporter.parseAmount("−3"), 0);
+    }
+
+    @Test
+    public void parseAmountRejects() {
+        assertTrue(Double.isNaN(ExpenseCsvImporter.parseAmount("")));
+        assertTrue(Double.isNaN(ExpenseCsvImporter.parseAmount("SAR")));
+        assertTrue(Double.isNaN(ExpenseCsvImporter.parseAmount("0.00")));
+        assertTrue(Double.isNaN(ExpenseCsvImporter.parseAmount("-0")));
+        assertTrue(Double.isNaN(ExpenseCsvImporter.parseAmount("1.2.3,4,5")));
+    }
+
+    @Test
+    public void spentSignFromMinusStatement() throws IOException {
+        // Debits negative, a salary and a refund positive
+        String csv = "date,amount\n" +
+                "2025-12-01,-20\n2025-12-01,8000\n2025-12-02,-5.5\n2025-12-03,-100\n2025-12-04,30\n";
+        assertEquals(-1, spentSign(csv));
+    }
+
+    @Test
+    public void spentSignFromParenthesesStatement() throws IOException {
+        // Debits positive, deposits in accounting parentheses
+        String csv = "date,amount\n" +
+                "2025-12-01,20\n2025-12-01,(8000.00)\n2025-12-02,5.50\n2025-12-03,100\n";
+        assertEquals(1, spentSign(csv));
+    }
+
+    @Test
+    public void spentSignOfExpensesOnly() throws IOException {
+        assertEquals(1, spentSign("date,amount\n2025-12-01,20\n2025-12-02,x\n"));
+        // A tie follows the usual statement convention
+        assertEquals(-1, spentSign("date,amount\n2025-12-01,-20\n2025-12-02,20\n"));
+    }
+
+    @Test
+    public void spentSignSampleIsReplayed() throws IOException {
+        StringBuilder csv = new StringBuilder("date,amount\n");
+        int rows = ExpenseCsvImporter.SIGN_SAMPLE + 5;
+        for (int i = 0; i < rows; i++) {
+            csv.append("2025-12-01,-").append(i + 1).append('\n');
+        }
+        CsvReader reader = new CsvReader(new StringReader(csv.toString()));
+        reader.readRecord();
+        Deque<String[]> lookahead = new ArrayDeque<>();
+
+        assertEquals(-1, ExpenseCsvImporter.readSpentSign(reader, 1, lookahead));
+        assertEquals(ExpenseCsvImporter.SIGN_SAMPLE, lookahead.size());
+        assertEquals("-1", lookahead.peekFirst()[1]);
+        // The records after the sample are still in the reader
+        assertEquals("-" + (ExpenseCsvImporter.SIGN_SAMPLE + 1), reader.readRecord()[1]);
+    }
+
+    @Test
+    public void rowHashIgnoresCaseAndSpacing() {
+        long hash = ExpenseCsvImporter.rowHash("2025-12-06", 4550, "Coffee  Shop");
+
+        assertEquals(hash, ExpenseCsvImporter.rowHash("2025-12-06", 4550, " coffee shop "));
+        assertNotEquals(hash, ExpenseCsvImporter.rowHash("2025-12-06", 4551, "Coffee Shop"));
+        assertNotEquals(hash, ExpenseCsvImporter.rowHash("2025-12-07", 4550, "Coffee Shop"));
+        assertNotEquals(hash, ExpenseCsvImporter.rowHash("2025-12-06", 4550, "CoffeeShop"));
+    }
+
+    private static int spentSign(String csv) throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(csv));
+        reader.readRecord();
+        return ExpenseCsvImporter.readSpentSign(reader, 1, new ArrayDeque<>());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.boki.data.local;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * FenwickTree sums checked against a plain array
+ */
+public class FenwickTreeTest {
+
+    @Test
+    public void prefixSumAtBounds() {
+        FenwickTree tree = FenwickTree.fromValues(new long[]{ 5, 3, 0, 7 });
+
+        assertEquals(0, tree.prefixSum(-1));
+        assertEquals(5, tree.prefixSum(0));
+        assertEquals(5, tree.rangeSum(0, 0));
+        assertEquals(15, tree.prefixSum(3));
+        // Positions past the end are clamped
+        assertEquals(15, tree.prefixSum(100));
+        assertEquals(0, tree.rangeSum(2, 1));
+    }
+
+    @Test
+    public void emptyTree() {
+        FenwickTree tree = new FenwickTree(0);
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.prefixSum(0));
+        assertArrayEquals(new long[0], tree.toValues());
+    }
+
+    @Test
+    public void addMatchesNaiveSums() {
+        Random random = new Random(26);
+        long[] values = new long[257];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(10_000) - 2_000;
+        }
+        FenwickTree tree = FenwickTree.fromValues(values);
+        for (int i = 0; i < 1_000; i++) {
+            int position = random.nextInt(values.length);
+            long delta = random.nextInt(10_000) - 5_000;
+            values[position] += delta;
+            tree.add(position, delta);
+        }
+
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+            assertEquals(sum, tree.prefixSum(i));
+        }
+        assertEquals(values[100] + values[101] + values[102], tree.rangeSum(100, 102));
+        assertArrayEquals(values, tree.toValues());
+    }
+
+    @Test
+    public void fromValuesMatchesAdds() {
+        long[] values = { 4, 0, -2, 9, 1, 1, 6 };
+        FenwickTree added = new FenwickTree(values.length);
+        for (int i = 0; i < values.length; i++) {
+            added.add(i, values[i]);
+        }
+        FenwickTree built = FenwickTree.fromValues(values);
+
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(added.prefixSum(i), built.prefixSum(i));
+        }
+        assertArrayEquals(values, added.toValues());
+    }
+
+    @Test
+    public void resizedMovesValues() {
+        FenwickTree tree = FenwickTree.fromValues(new long[]{ 1, 2, 3 });
+
+        FenwickTree grown = tree.resized(8, 0);
+        assertArrayEquals(new long[]{ 1, 2, 3, 0, 0, 0, 0, 0 }, grown.toValues());
+
+        FenwickTree shifted = tree.resized(6, 2);
+        assertArrayEquals(new long[]{ 0, 0, 1, 2, 3, 0 }, shifted.toValues());
+        assertEquals(3, shifted.rangeSum(2, 3));
+    }
+}
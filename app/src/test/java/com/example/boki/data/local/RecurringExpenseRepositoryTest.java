@@ -0,0 +1,82 @@
+package com.example.boki.data.local;
+
+import com.example.boki.models.RecurringExpense;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecurringExpenseRepositoryTest {
+
+    @Test
+    public void monthlyDayOnOrAfter() {
+        RecurringExpense rule = monthly(15);
+        assertEquals("2025-03-15", next(rule, "2025-03-01"));
+        assertEquals("2025-03-15", next(rule, "2025-03-15"));
+        assertEquals("2025-04-15", next(rule, "2025-03-16"));
+    }
+
+    @Test
+    public void monthlyDayPastMonthEndFallsOnLastDay() {
+        RecurringExpense rule = monthly(31);
+        assertEquals("2025-04-30", next(rule, "2025-04-01"));
+        assertEquals("2025-02-28", next(rule, "2025-02-01"));
+        assertEquals("2024-02-29", next(rule, "2024-02-01"));
+        // Clamping is per month: March is back on the 31st
+        assertEquals("2025-03-31", next(rule, "2025-03-01"));
+    }
+
+    @Test
+    public void monthlyWrapsIntoNextYear() {
+        assertEquals("2026-01-05", next(monthly(5), "2025-12-06"));
+        assertEquals("2026-01-31", next(monthly(31), "2026-01-01"));
+    }
+
+    @Test
+    public void weeklyWrapsToNextWeek() {
+        // 2025-12-06 is a Saturday
+        assertEquals("2025-12-06", next(weekly(Calendar.SATURDAY), "2025-12-06"));
+        assertEquals("2025-12-08", next(weekly(Calendar.MONDAY), "2025-12-06"));
+        assertEquals("2025-12-07", next(weekly(Calendar.SUNDAY), "2025-12-06"));
+        assertEquals("2025-12-12", next(weekly(Calendar.FRIDAY), "2025-12-06"));
+    }
+
+    @Test
+    public void catchUpVisitsEveryMissedPeriod() {
+        // As materializeDue() walks a rule from next_due up to today
+        assertEquals(Arrays.asList("2025-01-31", "2025-02-28", "2025-03-31", "2025-04-30"),
+                dueBetween(monthly(31), "2025-01-01", "2025-05-15"));
+        assertEquals(Arrays.asList("2025-12-26", "2026-01-02", "2026-01-09"),
+                dueBetween(weekly(Calendar.FRIDAY), "2025-12-24", "2026-01-14"));
+    }
+
+    private static List<String> dueBetween(RecurringExpense rule, String fromIso, String todayIso) {
+        List<String> dates = new ArrayList<>();
+        int today = EpochDays.fromIso(todayIso);
+        for (int day = RecurringExpenseRepository.occurrenceOnOrAfter(rule, EpochDays.fromIso(fromIso));
+             day <= today;
+             day = RecurringExpenseRepository.occurrenceOnOrAfter(rule, day + 1)) {
+            dates.add(EpochDays.toIso(day));
+        }
+        return dates;
+    }
+
+    private static String next(RecurringExpense rule, String iso) {
+        return EpochDays.toIso(RecurringExpenseRepository.occurrenceOnOrAfter(rule, EpochDays.fromIso(iso)));
+    }
+
+    private static RecurringExpense monthly(int day) {
+        return new RecurringExpense("Rent", 1000, "سكن", null, "09:00:00",
+                RecurringExpense.INTERVAL_MONTHLY, day, "2020-01-01", null, true);
+    }
+
+    private static RecurringExpense weekly(int dayOfWeek) {
+        return new RecurringExpense("Gym", 50, "صحة", null, "18:00:00",
+                RecurringExpense.INTERVAL_WEEKLY, dayOfWeek, "2020-01-01", null, true);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.boki.data.local;
+
+import com.example.boki.models.ExpenseCategorySummary;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * SpendingIndex range totals, including days that force the trees to grow or re-base
+ */
+public class SpendingIndexTest {
+
+    private static final int DAY = EpochDays.fromIso("2025-06-15");
+
+    private final SpendingIndex index = SpendingIndex.getInstance();
+
+    @Before
+    public void setUp() {
+        index.build(
+                Arrays.asList("2025-06-15", "2025-06-15", "2025-06-20", "6-12-2025"),
+                Arrays.asList("Food", "Transport", "Food", "Food"),
+                Arrays.asList(10.0, 2.5, 4.25, 99.0));
+    }
+
+    @Test
+    public void rangeTotals() {
+        assertTrue(index.isReady());
+        assertEquals(16.75, index.totalBetween(DAY, DAY + 5), 0);
+        assertEquals(12.5, index.totalBetween(DAY, DAY), 0);
+        assertEquals(14.25, index.categoryTotalBetween("Food", DAY - 100, DAY + 100), 0);
+        assertEquals(0.0, index.categoryTotalBetween("Missing", DAY, DAY), 0);
+        // The non-ISO row has no day to be counted on
+        assertEquals(16.75, index.totalBetween(Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2), 0);
+    }
+
+    @Test
+    public void addPastTheEndGrows() {
+        int later = DAY + 5_000;
+        index.add(EpochDays.toIso(later), "Food", 1.5);
+
+        assertEquals(1.5, index.totalBetween(later, later), 0);
+        assertEquals(18.25, index.totalBetween(DAY, later), 0);
+        assertEquals(15.75, index.categoryTotalBetween("Food", DAY, later), 0);
+    }
+
+    @Test
+    public void addBeforeTheStartRebases() {
+        int earlier = DAY - 5_000;
+        index.add(EpochDays.toIso(earlier), "Bills", 7.0);
+
+        assertEquals(7.0, index.totalBetween(earlier, earlier), 0);
+        assertEquals(7.0, index.categoryTotalBetween("Bills", earlier, DAY), 0);
+        // Existing days keep their totals after the shift
+        assertEquals(12.5, index.totalBetween(DAY, DAY), 0);
+        assertEquals(4.25, index.categoryTotalBetween("Food", DAY + 1, DAY + 5), 0);
+    }
+
+    @Test
+    public void removeCancelsAdd() {
+        index.add("2025-06-16", "Transport", 0.1);
+        index.remove("2025-06-16", "Transport", 0.1);
+        index.add("2025-06-16", "Transport", 0.2);
+
+        // Minor units never drift, however often amounts are added and removed
+        assertEquals(0.2, index.totalBetween(DAY + 1, DAY + 1), 0);
+    }
+
+    @Test
+    public void categoryTotalsSkipEmptyCategories() {
+        List<ExpenseCategorySummary> totals = index.categoryTotalsBetween(DAY + 1, DAY + 5);
+
+        assertEquals(1, totals.size());
+        assertEquals("Food", totals.get(0).getCategory());
+        assertEquals(4.25, totals.get(0).getTotalAmount(), 0);
+    }
+
+    @Test
+    public void dailyTotals() {
+        long[] out = new long[7];
+        index.dailyTotals(DAY - 1, out);
+
+        assertArrayEquals(new long[]{ 0, 1250, 0, 0, 0, 0, 425 }, out);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.boki.data.sync;
+
+import com.example.boki.models.Budget;
+import com.example.boki.models.Expense;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class SyncBatchCodecTest {
+
+    @Test
+    public void roundTripsEveryKindOfChange() throws IOException {
+        List<SyncChange> changes = Arrays.asList(
+                SyncChange.expense("e1", 1_700_000_000_000L, 7,
+                        new Expense("قهوة", 12.5, "طعام", null, "2025-12-06", "08:15:00")),
+                SyncChange.budget("b1", 1_700_000_000_001L, 7,
+                        new Budget("Monthly", 3000, "2025-12-01", "MONTHLY", 1, true)),
+                SyncChange.tombstone(SyncChange.TABLE_EXPENSE, "e2", 1_700_000_000_002L, 9));
+
+        List<SyncChange> decoded = SyncBatchCodec.decode(SyncBatchCodec.encode(changes));
+
+        assertEquals(3, decoded.size());
+        SyncChange expense = decoded.get(0);
+        assertEquals(SyncChange.TABLE_EXPENSE, expense.table);
+        assertEquals("e1", expense.uid);
+        assertEquals(1_700_000_000_000L, expense.updatedAt);
+        assertEquals(7, expense.device);
+        assertFalse(expense.deleted);
+        assertEquals("قهوة", expense.expense.getTitle());
+        assertEquals(12.5, expense.expense.getAmount(), 0);
+        assertEquals("طعام", expense.expense.getCategory());
+        assertNull(expense.expense.getNote());
+        assertEquals("2025-12-06", expense.expense.getDate());
+        assertEquals("08:15:00", expense.expense.getTime());
+
+        SyncChange budget = decoded.get(1);
+        assertEquals(SyncChange.TABLE_BUDGET, budget.table);
+        assertEquals("b1", budget.uid);
+        assertEquals("Monthly", budget.budget.getName());
+        assertEquals(3000, budget.budget.getAmount(), 0);
+        assertEquals("2025-12-01", budget.budget.getStartDate());
+        assertEquals("MONTHLY", budget.budget.getCycleType());
+        assertEquals(1, budget.budget.getCycleValue());
+        assertTrue(budget.budget.isActive());
+
+        SyncChange tombstone = decoded.get(2);
+        assertEquals(SyncChange.TABLE_EXPENSE, tombstone.table);
+        assertEquals("e2", tombstone.uid);
+        assertEquals(9, tombstone.device);
+        assertTrue(tombstone.deleted);
+        assertNull(tombstone.expense);
+    }
+
+    @Test
+    public void emptyBatchRoundTrips() throws IOException {
+        assertTrue(SyncBatchCodec.decode(SyncBatchCodec.encode(Collections.emptyList())).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsWrongMagic() throws IOException {
+        SyncBatchCodec.decode(header(0x12345678, 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        SyncBatchCodec.decode(header(0x424F4B53, 2));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedBatch() throws IOException {
+        SyncBatchCodec.decode(header(0x424F4B53, 1));
+    }
+
+    private static byte[] header(int magic, int version) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(magic);
+            out.writeShort(version);
+        }
+        return bytes.toByteArray();
+    }
+}